@@ -0,0 +1,77 @@
+package demos;
+import java.util.function.DoubleUnaryOperator;
+
+import jflow.data.FastMath;
+
+/**
+ * Check of the FastMath kernels against the double-precision java.lang.Math functions. <p>
+ * Sweeps each kernel over its range, reports the largest error, and fails
+ * if it exceeds the bound documented on the FastMath method.
+ * erf has no java.lang.Math counterpart, so it is compared against a double-precision series.
+ */
+public class FastMathAccuracy {
+    private static final int NUM_SAMPLES = 2_000_000;
+
+    private interface FloatFunction {
+        float apply(float x);
+    }
+
+    private static boolean allWithinBounds = true;
+
+    // Sweep [low, high] and check the largest relative or absolute error against a bound
+    private static void check(String name, FloatFunction fast, DoubleUnaryOperator reference,
+            float low, float high, boolean relative, double bound) {
+        double maxError = 0;
+        float worstInput = low;
+        for (int i = 0; i <= NUM_SAMPLES; i++) {
+            float x = low + (high - low) * i / NUM_SAMPLES;
+            double expected = reference.applyAsDouble(x);
+            double error = Math.abs(fast.apply(x) - expected);
+            if (relative) {
+                error /= Math.abs(expected);
+            }
+            // NaN errors count as failures
+            if (!(error <= maxError)) {
+                maxError = error;
+                worstInput = x;
+            }
+        }
+        boolean withinBound = maxError < bound;
+        allWithinBounds &= withinBound;
+        System.out.printf("%-9s [%6.1f, %5.1f]  max %s error %.3e at x = %-12g bound %.0e  %s%n",
+            name, low, high, relative ? "rel" : "abs", maxError, worstInput, bound,
+            withinBound ? "ok" : "FAILED");
+    }
+
+    // erf(x) = 2/sqrt(pi) * e^(-x^2) * sum 2^n x^(2n+1) / (1 * 3 * ... * (2n+1)), with only positive terms
+    private static double erf(double x) {
+        double term = x;
+        double sum = x;
+        for (int n = 1; Math.abs(term) > 1e-17 * Math.abs(sum); n++) {
+            term *= 2 * x * x / (2 * n + 1);
+            sum += term;
+        }
+        return 2 / Math.sqrt(Math.PI) * Math.exp(-x * x) * sum;
+    }
+
+    public static void main(String[] args) {
+        check("exp", FastMath::exp, Math::exp, -87.3f, 88.3f, true, 3e-7);
+        // log is checked in absolute error near 1 and relative error away from it
+        check("log", FastMath::log, Math::log, 0.5f, 2.0f, false, 1e-7);
+        // Elsewhere, inputs e^t are swept over t so that all normal floats are covered
+        check("log(e^t)", t -> FastMath.log((float)Math.exp(t)), t -> Math.log((float)Math.exp(t)),
+            -87.0f, -0.7f, true, 2e-7);
+        check("log(e^t)", t -> FastMath.log((float)Math.exp(t)), t -> Math.log((float)Math.exp(t)),
+            0.7f, 88.0f, true, 2e-7);
+        check("sigmoid", FastMath::sigmoid, x -> 1 / (1 + Math.exp(-x)), -87.0f, 88.0f, true, 5e-7);
+        check("tanh", FastMath::tanh, Math::tanh, -20.0f, 20.0f, false, 4e-7);
+        check("erf", FastMath::erf, FastMathAccuracy::erf, -10.0f, 10.0f, false, 6e-7);
+        check("softplus", FastMath::softplus, x -> Math.max(x, 0) + Math.log1p(Math.exp(-Math.abs(x))),
+            -80.0f, 80.0f, true, 5e-7);
+
+        if (!allWithinBounds) {
+            throw new IllegalStateException("FastMath error exceeds a documented bound.");
+        }
+        System.out.println("All FastMath kernels are within their documented error bounds.");
+    }
+}
@@ -0,0 +1,119 @@
+package demos;
+import java.util.Random;
+
+import jflow.data.*;
+import jflow.model.Sequential;
+import jflow.utils.Metrics;
+
+// Static import for cleaner UI
+import static jflow.model.Builder.*;
+
+/**
+ * Demo to compare int8 inference of Conv2D and Dense layers against the float model. <p>
+ * Trains a small CNN on generated stripe images (horizontal, vertical, diagonal),
+ * calibrates int8 quantization on training batches, and reports how far the int8
+ * outputs and predictions are from float inference on the test images.
+ * Any batched Dataloader, e.g. the MNIST or CIFAR-10 loaders of the other demos, can be used instead.
+ */
+public class Int8Accuracy {
+    private static final int IMAGE_SIZE = 16;
+    private static final int NUM_CLASSES = 3;
+
+    // A stripe pattern of one class with a random period, phase and noise
+    private static float[][][] stripeImage(int label, Random random) {
+        float[][][] image = new float[1][IMAGE_SIZE][IMAGE_SIZE];
+        int period = 3 + random.nextInt(3);
+        int phase = random.nextInt(period);
+        for (int y = 0; y < IMAGE_SIZE; y++) {
+            for (int x = 0; x < IMAGE_SIZE; x++) {
+                int position = (label == 0) ? y : (label == 1) ? x : x + y;
+                float stripe = ((position + phase) % period == 0) ? 1.0f : 0.0f;
+                image[0][y][x] = stripe + (float)(random.nextGaussian() * 0.3);
+            }
+        }
+        return image;
+    }
+
+    public static void main(String[] args) {
+        // training constants
+        final int BATCH_SIZE = 32;
+        final int NUM_IMAGES = 1500;
+        final double VAL_PERCENT = 0.1;
+        final double TEST_PERCENT = 0.2;
+        final int CALIBRATION_BATCHES = 8;
+
+        // Generate data
+        Dataloader loader = new Dataloader();
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_IMAGES; i++) {
+            int label = i % NUM_CLASSES;
+            loader.addArrayAsImage(stripeImage(label, random), label);
+        }
+
+        // Prepare data for training
+        loader.setSeed(42);
+        loader.valTestSplit(VAL_PERCENT, TEST_PERCENT);
+        loader.batch(BATCH_SIZE);
+
+        // Build the model
+        Sequential model = new Sequential("Int8_accuracy_CNN");
+
+        model.setInputShape(InputShape(1, IMAGE_SIZE, IMAGE_SIZE));
+
+        model
+            .add(Conv2D(8, 3, 1, "same_padding"))
+            .add(ReLU())
+            .add(MaxPool2D(2, 2))
+
+            .add(Conv2D(16, 3, 1, "same_padding"))
+            .add(ReLU())
+            .add(MaxPool2D(2, 2))
+
+            .add(Flatten())
+            .add(Dense(32))
+            .add(ReLU())
+
+            .add(Dense(NUM_CLASSES))
+            .add(Softmax())
+
+            .summary();
+
+        model.compile(Adam(0.005));
+
+        // Train the model
+        model.train(loader, 15);
+
+        // Float inference
+        JMatrix testImages = loader.getTestImages();
+        int[] testLabels = loader.getTestLabels();
+        float[] floatOutput = model.forward(testImages, false).getMatrix().clone();
+        int[] floatPredictions = model.predict(testImages);
+
+        // Int8 inference of Conv2D and Dense layers
+        model.quantize(loader, CALIBRATION_BATCHES);
+        float[] int8Output = model.forward(testImages, false).getMatrix();
+        int[] int8Predictions = model.predict(testImages);
+
+        // Compare
+        double maxAbsDelta = 0;
+        double sumAbsDelta = 0;
+        for (int i = 0; i < floatOutput.length; i++) {
+            double delta = Math.abs(floatOutput[i] - int8Output[i]);
+            maxAbsDelta = Math.max(maxAbsDelta, delta);
+            sumAbsDelta += delta;
+        }
+        int agreements = 0;
+        for (int i = 0; i < floatPredictions.length; i++) {
+            if (floatPredictions[i] == int8Predictions[i]) {
+                agreements++;
+            }
+        }
+
+        System.out.printf("Max abs output delta: %.5f%n", maxAbsDelta);
+        System.out.printf("Mean abs output delta: %.5f%n", sumAbsDelta / floatOutput.length);
+        System.out.printf("Top-1 agreement: %.2f%% (%d/%d)%n",
+            100.0 * agreements / floatPredictions.length, agreements, floatPredictions.length);
+        System.out.println("Float test accuracy:" + Metrics.getAccuracy(floatPredictions, testLabels));
+        System.out.println("Int8 test accuracy:" + Metrics.getAccuracy(int8Predictions, testLabels));
+    }
+}
@@ -17,6 +17,8 @@ public class Dataloader {
     private ArrayList<Image> images = new ArrayList<>();
 
     private Random random = new Random(0);
+    // Transforms applied to images, whose random state is part of a training snapshot
+    private ArrayList<Transform> appliedTransforms = new ArrayList<>();
 
     private ArrayList<Image> trainImages = new ArrayList<>(); 
     private ArrayList<Image> testImages = new ArrayList<>(); 
@@ -57,6 +59,7 @@ public class Dataloader {
      * @param transform                 A transform containing image functions.
      */
     public void applyTransform(Transform transform) {
+        appliedTransforms.add(transform);
         for (Image image : images) {
             for (Function<float[][][], float[][][]> func : transform.getTransforms()) {
                 image.addTransform(func);
@@ -233,6 +236,18 @@ public class Dataloader {
         this.numBatches = trainImages.size()/batchSize;
     }
 
+    /**
+     * The random streams of all transforms and augmentations applied to this Dataloader,
+     * in the order they were applied.
+     */
+    public List<RandomStream> getRandomStreams() {
+        ArrayList<RandomStream> streams = new ArrayList<>();
+        for (Transform transform : appliedTransforms) {
+            streams.add(transform.getRandomStream());
+        }
+        return streams;
+    }
+
     /**
       * Shuffles images in the Dataloader. Not effective after train-test split.
       */
@@ -422,6 +437,7 @@ public class Dataloader {
       * @param augmentations         A Transform with stored augmentation functions.
       */
     public void applyAugmentations(Transform augmentations) {
+        appliedTransforms.add(augmentations);
         ArrayList<Image> arrayToUse;
         if (trainImages.isEmpty()) {
             arrayToUse = images;
@@ -0,0 +1,140 @@
+package jflow.data;
+
+/**
+ * Float-precision approximations of the transcendental functions used by activations. <p>
+ * Each function is branch-free or nearly so, built from polynomials, a rational
+ * function and exponent bit manipulation, so loops over arrays stay simple enough
+ * for the JIT to inline and unroll. Inputs outside the float range saturate instead
+ * of producing infinities. Error bounds against the double-precision java.lang.Math
+ * functions are listed with each method.
+ */
+public final class FastMath {
+    private static final float LOG2E = 1.44269504f;
+    // ln(2) split so that n * LN2_HI is exact for |n| < 2^9
+    private static final float LN2_HI = 0.693145752f;
+    private static final float LN2_LO = 1.42860677e-6f;
+    private static final float LN2 = 0.693147181f;
+    // Adding 1.5 * 2^23 rounds a float to the nearest integer
+    private static final float ROUND_MAGIC = 12582912.0f;
+    private static final float EXP_MIN = -87.3f;
+    private static final float EXP_MAX = 88.3f;
+
+    private static final float SQRT_HALF = 0.707106781f;
+    private static final float TANH_MAX = 7.90531111f;
+    private static final float TANH_LINEAR = 0.0004f;
+
+    private FastMath() {}
+
+    /**
+     * e^x, with relative error below 3e-7. <p>
+     * Saturates to about 1.2e-38 below -87.3 and 2.2e38 above 88.3.
+     */
+    public static float exp(float x) {
+        x = Math.max(EXP_MIN, Math.min(EXP_MAX, x));
+        // x = n * ln(2) + r, with |r| <= ln(2) / 2
+        float rounded = x * LOG2E + ROUND_MAGIC;
+        int n = Float.floatToRawIntBits(rounded) - Float.floatToRawIntBits(ROUND_MAGIC);
+        float nf = rounded - ROUND_MAGIC;
+        float r = x - nf * LN2_HI - nf * LN2_LO;
+
+        // e^r by its Taylor series to r^6
+        float p = 1.0f / 720;
+        p = p * r + 1.0f / 120;
+        p = p * r + 1.0f / 24;
+        p = p * r + 1.0f / 6;
+        p = p * r + 0.5f;
+        p = p * r + 1.0f;
+        p = p * r + 1.0f;
+
+        // Scale by 2^n through the exponent bits
+        return p * Float.intBitsToFloat((n + 127) << 23);
+    }
+
+    /**
+     * The natural logarithm of a positive, normal x, with relative error below 2e-7
+     * away from x = 1 and absolute error below 1e-7 near it.
+     */
+    public static float log(float x) {
+        // x = m * 2^e, with m in [sqrt(1/2), sqrt(2))
+        int bits = Float.floatToRawIntBits(x);
+        int e = ((bits >>> 23) & 0xff) - 127;
+        float m = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000);
+        if (m > 2 * SQRT_HALF) {
+            m *= 0.5f;
+            e++;
+        }
+        // log(m) = 2 * atanh(s), with s = (m - 1) / (m + 1) and |s| < 0.172
+        float s = (m - 1.0f) / (m + 1.0f);
+        float s2 = s * s;
+        float p = 1.0f / 9;
+        p = p * s2 + 1.0f / 7;
+        p = p * s2 + 1.0f / 5;
+        p = p * s2 + 1.0f / 3;
+        p = p * s2 + 1.0f;
+        return e * LN2 + 2.0f * s * p;
+    }
+
+    /**
+     * The logistic sigmoid, 1 / (1 + e^-x), with relative error below 5e-7.
+     */
+    public static float sigmoid(float x) {
+        return 1.0f / (1.0f + exp(-x));
+    }
+
+    /**
+     * The hyperbolic tangent, from a 13/6 degree rational approximation,
+     * with absolute error below 4e-7 and exact sign and saturation.
+     */
+    public static float tanh(float x) {
+        float clamped = Math.max(-TANH_MAX, Math.min(TANH_MAX, x));
+        float x2 = clamped * clamped;
+
+        float p = -2.76076847742355e-16f;
+        p = p * x2 + 2.00018790482477e-13f;
+        p = p * x2 - 8.60467152213735e-11f;
+        p = p * x2 + 5.12229709037114e-08f;
+        p = p * x2 + 1.48572235717979e-05f;
+        p = p * x2 + 6.37261928875436e-04f;
+        p = p * x2 + 4.89352455891786e-03f;
+        p = p * clamped;
+
+        float q = 1.19825839466702e-06f;
+        q = q * x2 + 1.18534705686654e-04f;
+        q = q * x2 + 2.26843463243900e-03f;
+        q = q * x2 + 4.89352518554385e-03f;
+
+        // Small inputs are returned as is, since tanh(x) = x to float precision
+        return Math.abs(x) < TANH_LINEAR ? x : p / q;
+    }
+
+    /**
+     * The error function, by Abramowitz and Stegun 7.1.26,
+     * with absolute error below 6e-7.
+     */
+    public static float erf(float x) {
+        float a = Math.abs(x);
+        float t = 1.0f / (1.0f + 0.3275911f * a);
+        float p = 1.061405429f;
+        p = p * t - 1.453152027f;
+        p = p * t + 1.421413741f;
+        p = p * t - 0.284496736f;
+        p = p * t + 0.254829592f;
+        float y = 1.0f - p * t * exp(-a * a);
+        return Math.copySign(y, x);
+    }
+
+    /**
+     * The softplus function, log(1 + e^x), with relative error below 5e-7.
+     */
+    public static float softplus(float x) {
+        // log(1 + e^x) = max(x, 0) + log1p(e^-|x|)
+        return Math.max(x, 0.0f) + log1p(exp(-Math.abs(x)));
+    }
+
+    // log(1 + y) for y >= 0, accurate for small y
+    private static float log1p(float y) {
+        float u = 1.0f + y;
+        // Correct for the rounding of 1 + y
+        return u == 1.0f ? y : log(u) * (y / (u - 1.0f));
+    }
+}
@@ -47,6 +47,8 @@ public class Image {
 
     protected Image(float[][][] image, int label) {
         this.channels = image.length;
+        // Kept in memory like CSV images, since there is no file to reload
+        this.loadedFromCSV = true;
         originalImage = image;
         yData = label;
     }
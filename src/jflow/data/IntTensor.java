@@ -0,0 +1,174 @@
+package jflow.data;
+
+import java.util.stream.IntStream;
+
+/**
+ * An int32 companion to JMatrix for labels and token IDs,
+ * using the same (length, channels, height, width) shape model.
+ */
+public class IntTensor {
+    private int[] values;
+    private int length, channels, height, width;
+
+    /**
+     * Initialize a new IntTensor with default values of zero.
+     * @param length                The batch dimension.
+     * @param channels              The channel dimension.
+     * @param height                The height dimension.
+     * @param width                 The width dimension.
+     */
+    public IntTensor(int length, int channels, int height, int width) {
+        this(new int[length * channels * height * width], length, channels, height, width);
+    }
+
+    /**
+     * Wrap an array in a new IntTensor.
+     * @param values                The values in (length, channels, height, width) order.
+     * @param length                The batch dimension.
+     * @param channels              The channel dimension.
+     * @param height                The height dimension.
+     * @param width                 The width dimension.
+     * @throws IllegalArgumentException if the shape doesn't match the number of values.
+     */
+    public IntTensor(int[] values, int length, int channels, int height, int width) {
+        if (values.length != length * channels * height * width) {
+            throw new IllegalArgumentException(
+                "Sizes must match. Reported: " + (length * channels * height * width) +
+                " Actual: " + values.length
+            );
+        }
+        this.values = values;
+        this.length = length;
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+    }
+
+    /**
+     * Wrap a 1D array of labels in a new IntTensor with shape (labels.length, 1, 1, 1).
+     * @param labels                The labels to wrap.
+     */
+    public IntTensor(int[] labels) {
+        this(labels, labels.length, 1, 1, 1);
+    }
+
+    /**
+     * Convert a float JMatrix of indices to an IntTensor, truncating each value.
+     * @param indices               The JMatrix to convert.
+     */
+    public static IntTensor fromJMatrix(JMatrix indices) {
+        int[] values = new int[indices.size()];
+        IntStream.range(0, values.length).parallel().forEach(i -> {
+            values[i] = (int)indices.get(i);
+        });
+        int[] shape = indices.shape();
+        return new IntTensor(values, shape[0], shape[1], shape[2], shape[3]);
+    }
+
+    /**
+     * Convert this IntTensor to a float JMatrix with the same shape.
+     */
+    public JMatrix toJMatrix() {
+        float[] converted = new float[values.length];
+        IntStream.range(0, values.length).parallel().forEach(i -> {
+            converted[i] = values[i];
+        });
+        return new JMatrix(converted, length, channels, height, width);
+    }
+
+    /**
+     * Access the wrapped array.
+     */
+    public int[] getArray() {
+        return values;
+    }
+
+    /**
+     * Get an individual element.
+     * @param index               The 1D index of the item to get.
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Get an individual element.
+     * @param lengthIndex               The batch index of the item to get.
+     * @param channelIndex              The channel index of the item to get.
+     * @param heightIndex               The height index of the item to get.
+     * @param widthIndex                The width index of the item to get.
+     */
+    public int get(int lengthIndex, int channelIndex, int heightIndex, int widthIndex) {
+        return values[lengthIndex * channels * height * width +
+            channelIndex * height * width + heightIndex * width + widthIndex];
+    }
+
+    /**
+     * Set an item with 1D indexing.
+     * @param index             The 1D index to alter.
+     * @param value             The value to set.
+     */
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    /**
+     * Set an item with 4D indexing.
+     * @param lengthIndex               The batch index of the item to set.
+     * @param channelIndex              The channel index of the item to set.
+     * @param heightIndex               The height index of the item to set.
+     * @param widthIndex                The width index of the item to set.
+     * @param value                     The value to set.
+     */
+    public void set(int lengthIndex, int channelIndex, int heightIndex, int widthIndex, int value) {
+        values[lengthIndex * channels * height * width +
+            channelIndex * height * width + heightIndex * width + widthIndex] = value;
+    }
+
+    /**
+     * The total number of elements.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * The shape of the IntTensor.
+     * @returns {length, channels, height, width} in an int[4].
+     */
+    public int[] shape() {
+        return new int[]{length, channels, height, width};
+    }
+
+    /**
+     * The shape of the IntTensor as a String.
+     */
+    public String shapeAsString() {
+        return "(" + length + "," + channels + "," + height + "," + width + ")";
+    }
+
+    /**
+     * The specified batch dimension.
+     */
+    public int length() {
+        return length;
+    }
+    /**
+     * The specified channel dimension.
+     */
+    public int channels() {
+        return channels;
+    }
+    /**
+     * The specified height dimension.
+     */
+    public int height() {
+        return height;
+    }
+    /**
+     * The specified width dimension.
+     */
+    public int width() {
+        return width;
+    }
+}
@@ -8,6 +8,12 @@ import java.util.stream.IntStream;
 
 public class JMatrix {
     private float[] matrix;
+    // Half-precision storage, in use instead of matrix when not null
+    private short[] halfMatrix;
+    private String dtype = "float32";
+    private boolean bfloat16;
+    // Memory order of the elements. The shape is always (N, C, H, W)
+    private String layout = "NCHW";
     private int length, channels, height, width;
     private Random rand = new Random();
     private String name = null;
@@ -21,6 +27,8 @@ public class JMatrix {
     private static final int BLOCK_SIZE_M = 128;
     private static final int BLOCK_SIZE_N = 128;
     private static final int BLOCK_SIZE_K = 512;
+    // Tile size for layout conversions
+    private static final int LAYOUT_TILE = 32;
 
     
 
@@ -129,17 +137,241 @@ public class JMatrix {
     }
 
     protected float access(int index) {
-        // Groundwork for new features
+        if (halfMatrix != null) {
+            return widen(halfMatrix[index], bfloat16);
+        }
         return matrix[index];
     }
 
+    protected void store(int index, float value) {
+        if (halfMatrix != null) {
+            halfMatrix[index] = narrow(value, bfloat16);
+        } else {
+            matrix[index] = value;
+        }
+    }
+
+    private static float widen(short value, boolean bfloat16) {
+        if (bfloat16) {
+            return Float.intBitsToFloat(value << 16);
+        }
+        return Float.float16ToFloat(value);
+    }
+
+    private static short narrow(float value, boolean bfloat16) {
+        if (bfloat16) {
+            int bits = Float.floatToRawIntBits(value);
+            if (Float.isNaN(value)) {
+                return (short)((bits >>> 16) | 0x40); // Keep NaN quiet
+            }
+            // Round to nearest even
+            bits += 0x7FFF + ((bits >>> 16) & 1);
+            return (short)(bits >>> 16);
+        }
+        return Float.floatToFloat16(value);
+    }
+
+    // The values as float32, widened into a new array for half-precision storage
+    private float[] floatValues() {
+        if (halfMatrix == null) {
+            return matrix;
+        }
+        float[] values = new float[halfMatrix.length];
+        IntStream.range(0, values.length).parallel().forEach(i -> {
+            values[i] = widen(halfMatrix[i], bfloat16);
+        });
+        return values;
+    }
+
+    // A float32 copy of a range of values
+    private float[] copyRange(int start, int count) {
+        float[] values = new float[count];
+        if (halfMatrix == null) {
+            System.arraycopy(matrix, start, values, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                values[i] = widen(halfMatrix[start + i], bfloat16);
+            }
+        }
+        return values;
+    }
+
     /**
-     * Access the wrapped array.
+     * Access the wrapped array. <p>
+     * Raw access needs float32 storage. For a JMatrix stored in half precision, read values
+     * through toFloat32(), or change the storage with setDtype("float32").
+     * @throws IllegalStateException if the JMatrix is stored in bfloat16 or float16.
      */
     public float[] getMatrix() {
+        if (halfMatrix != null) {
+            throw new IllegalStateException(
+                "getMatrix() requires float32 storage. Got: " + dtype + 
+                ". Use toFloat32() or setDtype(\"float32\")."
+            );
+        }
         return matrix;
     }
 
+    /**
+     * The storage type of this JMatrix.
+     * @return float32, bfloat16 or float16.
+     */
+    public String dtype() {
+        return dtype;
+    }
+
+    /**
+     * Change the storage type of this JMatrix in place. <p>
+     * Half-precision storage uses 2 bytes per element. Reads widen to float32,
+     * so computation always runs in float32.
+     * @param dtype                     The storage type. Options: <p>
+     *                                      - float32 - bfloat16 - float16
+     * @return                      This JMatrix, for chaining.
+     */
+    public JMatrix setDtype(String dtype) {
+        if (!(dtype.equals("float32") || dtype.equals("bfloat16") || dtype.equals("float16"))) {
+            throw new IllegalArgumentException("Only float32, bfloat16 and float16 allowed.");
+        }
+        if (dtype.equals(this.dtype)) {
+            return this;
+        }
+        JMatrix converted = toDtype(dtype);
+        this.matrix = converted.matrix;
+        this.halfMatrix = converted.halfMatrix;
+        this.dtype = converted.dtype;
+        this.bfloat16 = converted.bfloat16;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this JMatrix stored in bfloat16.
+     */
+    public JMatrix toBFloat16() {
+        return toDtype("bfloat16");
+    }
+
+    /**
+     * Returns a copy of this JMatrix stored in IEEE float16.
+     */
+    public JMatrix toFloat16() {
+        return toDtype("float16");
+    }
+
+    /**
+     * Returns a copy of this JMatrix stored in float32.
+     */
+    public JMatrix toFloat32() {
+        return toDtype("float32");
+    }
+
+    // Convert storage in a single pass, without an intermediate copy
+    private JMatrix toDtype(String dtype) {
+        if (!(dtype.equals("float32") || dtype.equals("bfloat16") || dtype.equals("float16"))) {
+            throw new IllegalArgumentException("Only float32, bfloat16 and float16 allowed.");
+        }
+        int size = size();
+        JMatrix converted = new JMatrix(null, length, channels, height, width, name);
+        converted.dtype = dtype;
+        converted.layout = layout;
+        if (dtype.equals("float32")) {
+            float[] widened = new float[size];
+            IntStream.range(0, size).parallel().forEach(i -> {
+                widened[i] = access(i);
+            });
+            converted.matrix = widened;
+        } else {
+            boolean toBFloat16 = dtype.equals("bfloat16");
+            short[] narrowed = new short[size];
+            IntStream.range(0, size).parallel().forEach(i -> {
+                narrowed[i] = narrow(access(i), toBFloat16);
+            });
+            converted.halfMatrix = narrowed;
+            converted.bfloat16 = toBFloat16;
+        }
+        return converted;
+    }
+
+    /**
+     * The memory layout of this JMatrix. <p>
+     * The shape is always (N, channels, height, width). The layout is the order
+     * the elements are stored in: NCHW keeps each channel plane together,
+     * NHWC keeps the channels of each pixel together.
+     * @return NCHW or NHWC.
+     */
+    public String layout() {
+        return layout;
+    }
+
+    /**
+     * Mark the order the elements of this JMatrix are stored in, without moving them.
+     * To reorder the elements, use toLayout().
+     * @param layout                    The layout. Options: <p>
+     *                                      - NCHW - NHWC
+     * @return                      This JMatrix, for chaining.
+     */
+    public JMatrix setLayout(String layout) {
+        checkLayout(layout);
+        this.layout = layout;
+        return this;
+    }
+
+    /**
+     * Returns this JMatrix with its elements reordered to a layout. <p>
+     * Returns this JMatrix if it is already in the layout. When no elements move,
+     * as with one channel or a 1x1 image, the result shares storage with this JMatrix.
+     * @param layout                    The layout. Options: <p>
+     *                                      - NCHW - NHWC
+     */
+    public JMatrix toLayout(String layout) {
+        checkLayout(layout);
+        if (layout.equals(this.layout)) {
+            return this;
+        }
+        int planeSize = height * width;
+        JMatrix converted;
+        if (channels == 1 || planeSize == 1) {
+            converted = new JMatrix(matrix, length, channels, height, width, name);
+            converted.halfMatrix = halfMatrix;
+            converted.dtype = dtype;
+            converted.bfloat16 = bfloat16;
+        } else {
+            float[] reordered = new float[size()];
+            if (layout.equals("NHWC")) {
+                transposeImages(reordered, channels, planeSize);
+            } else {
+                transposeImages(reordered, planeSize, channels);
+            }
+            converted = new JMatrix(reordered, length, channels, height, width, name);
+        }
+        converted.layout = layout;
+        return converted;
+    }
+
+    // Transpose each image, viewed as a (rows, cols) matrix, through cache-sized tiles
+    private void transposeImages(float[] transposed, int rows, int cols) {
+        int imageSize = rows * cols;
+        int rowTiles = (rows + LAYOUT_TILE - 1) / LAYOUT_TILE;
+        IntStream.range(0, length * rowTiles).parallel().forEach(task -> {
+            int offset = (task / rowTiles) * imageSize;
+            int rowStart = (task % rowTiles) * LAYOUT_TILE;
+            int rowEnd = Math.min(rowStart + LAYOUT_TILE, rows);
+            for (int colStart = 0; colStart < cols; colStart += LAYOUT_TILE) {
+                int colEnd = Math.min(colStart + LAYOUT_TILE, cols);
+                for (int r = rowStart; r < rowEnd; r++) {
+                    for (int c = colStart; c < colEnd; c++) {
+                        transposed[offset + c * rows + r] = access(offset + r * cols + c);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void checkLayout(String layout) {
+        if (!(layout.equals("NCHW") || layout.equals("NHWC"))) {
+            throw new IllegalArgumentException("Only NCHW and NHWC allowed.");
+        }
+    }
+
     /**
      * Name this JMatrix
      * @param name          The name to assign.
@@ -196,6 +428,9 @@ public class JMatrix {
             );
         }
         this.matrix = matrix;
+        this.halfMatrix = null;
+        this.dtype = "float32";
+        this.bfloat16 = false;
     }
 
     /**
@@ -214,6 +449,9 @@ public class JMatrix {
             );
         }
         this.matrix = matrix;
+        this.halfMatrix = null;
+        this.dtype = "float32";
+        this.bfloat16 = false;
         this.length = shape[0];
         this.channels = shape[1];
         this.height = shape[2];
@@ -229,14 +467,14 @@ public class JMatrix {
      */
     public void arrayCopyBatch(int batchIndex, JMatrix values) {
         int itemSize = channels * height * width;
-        float[] internalValues = values.getMatrix();
+        float[] internalValues = values.floatValues();
         if (internalValues.length != itemSize) {
             throw new IllegalArgumentException("Unexpected length: " + values.length + 
                 ". Expected: " + itemSize);
         }
         IntStream.range(0, itemSize)
             .parallel().forEach(i -> {
-            matrix[batchIndex * itemSize + i] = internalValues[i];
+            store(batchIndex * itemSize + i, internalValues[i]);
         });
     }
 
@@ -275,7 +513,7 @@ public class JMatrix {
      * The total number of elements.
      */
     public int size() {
-        return matrix.length;
+        return (halfMatrix != null) ? halfMatrix.length : matrix.length;
     }
 
     /**
@@ -336,7 +574,7 @@ public class JMatrix {
         float[] result = new float[length];
 
         IntStream.range(0, length).parallel().forEach(i -> {
-            result[i] = matrix[i + startIdx];
+            result[i] = access(i + startIdx);
         });
 
         return new JMatrix(result, length, 1, 1, 1);
@@ -349,7 +587,9 @@ public class JMatrix {
         int sliceSize = channels * height * width;
         int startIdx = lengthIndex * sliceSize;  
         double[] slice = new double[sliceSize];
-        System.arraycopy(matrix, startIdx, slice, 0, sliceSize);
+        for (int i = 0; i < sliceSize; i++) {
+            slice[i] = access(startIdx + i);
+        }
         return slice;
     }
 
@@ -361,8 +601,7 @@ public class JMatrix {
      public JMatrix getWrapped(int lengthIndex) {
         int sliceSize = channels * height * width;
         int startIdx = lengthIndex * sliceSize;  
-        float[] slice = new float[sliceSize];
-        System.arraycopy(matrix, startIdx, slice, 0, sliceSize);
+        float[] slice = copyRange(startIdx, sliceSize);
         return new JMatrix(slice, 1, channels, height, width);
     }
 
@@ -374,8 +613,7 @@ public class JMatrix {
     public float[] get(int lengthIndex, int channelIndex) {
         int sliceSize = height * width;
         int startIdx = lengthIndex * channels * sliceSize + channelIndex * sliceSize;
-        float[] slice = new float[sliceSize];
-        System.arraycopy(matrix, startIdx, slice, 0, sliceSize);
+        float[] slice = copyRange(startIdx, sliceSize);
         return slice;
     }
 
@@ -387,8 +625,7 @@ public class JMatrix {
     public JMatrix getWrapped(int lengthIndex, int channelIndex) {
         int sliceSize = height * width;
         int startIdx = lengthIndex * channels * sliceSize + channelIndex * sliceSize;
-        float[] slice = new float[sliceSize];
-        System.arraycopy(matrix, startIdx, slice, 0, sliceSize);
+        float[] slice = copyRange(startIdx, sliceSize);
         return new JMatrix(slice, 1, 1, height, width);
     }
 
@@ -406,7 +643,9 @@ public class JMatrix {
             throw new IllegalArgumentException("Invalid slice size. Expected " + sliceSize + " values.");
         }
         int startIdx = lengthIndex * channels * sliceSize + channelIndex * sliceSize;
-        System.arraycopy(values, 0, matrix, startIdx, sliceSize);
+        for (int i = 0; i < sliceSize; i++) {
+            store(startIdx + i, (float)values[i]);
+        }
     }
 
     
@@ -430,7 +669,12 @@ public class JMatrix {
                 + numItems + " Reshape: " + newNumItems);
         }
 
-        return new JMatrix(matrix, newLength, newChannels, newHeight, newWidth);
+        // Share storage in any precision
+        JMatrix reshaped = new JMatrix(matrix, newLength, newChannels, newHeight, newWidth);
+        reshaped.halfMatrix = halfMatrix;
+        reshaped.dtype = dtype;
+        reshaped.bfloat16 = bfloat16;
+        return reshaped;
     }
 
      /**
@@ -453,7 +697,7 @@ public class JMatrix {
      * @param value             The value to set, cast to a float.            
      */
     public void set(int index, double value) {
-        matrix[index] = (float)value;
+        store(index, (float)value);
     }
 
     /**
@@ -465,9 +709,9 @@ public class JMatrix {
      * @param value             The value to set, cast to a float.            
      */
     public void set(int lengthIndex, int channelIndex, int widthIndex, int heightIndex, double value) {
-        matrix[lengthIndex * channels * height * 
+        store(lengthIndex * channels * height * 
         width + channelIndex * height * width + 
-        heightIndex * width + widthIndex] = (float)value;
+        heightIndex * width + widthIndex, (float)value);
     }
 
 // Statistics
@@ -476,6 +720,7 @@ public class JMatrix {
      * The max value in the JMatrix.             
      */
     public double max() {
+        float[] matrix = floatValues();
         double max = Double.NEGATIVE_INFINITY;
         for (double d : matrix) {
             max = Math.max(max, d);
@@ -486,6 +731,7 @@ public class JMatrix {
      * The max absolute value in the JMatrix.             
      */
     public double absMax() {
+        float[] matrix = floatValues();
         double max = Double.NEGATIVE_INFINITY;
         for (double d : matrix) {
             max = Math.max(max, Math.abs(d));
@@ -512,6 +758,7 @@ public class JMatrix {
      * @return                  An array containing the indexes of max values along the given axis
      */
     public int[] argmax(int axis) {
+        float[] matrix = floatValues();
         if (axis < 0 || axis > 3) {
             throw new IllegalArgumentException("Axis must be between 0 and 3");
         }
@@ -702,6 +949,22 @@ public class JMatrix {
      * @return A new JMatrix with softmax applied along the specified axis.
      */
     public JMatrix softmax(int axis) {
+        return softmax(axis, "exact");
+    }
+
+    /**
+     * Perform softmax along a given axis. Avoids overflow.
+     * @param axis the axis to apply softmax to: <p>
+     * <ul> <li> 0 = across batch dimension 
+     * <li> 1 = across channel dimension
+     * <li> 2 = across height dimension
+     * <li> 3 = across width dimension </ul>
+     * @param mathMode exact, or fast to use the float approximation of exp in FastMath.
+     * @return A new JMatrix with softmax applied along the specified axis.
+     */
+    public JMatrix softmax(int axis, String mathMode) {
+        float[] matrix = floatValues();
+        boolean fast = useFastMath(mathMode);
         if (axis < 0 || axis > 3) {
             throw new IllegalArgumentException("Axis must be between 0 and 3");
         }
@@ -734,17 +997,21 @@ public class JMatrix {
                         maxVal = Math.max(maxVal, matrix[offset]);
                     }
                     
-                    // Calculate sum of exponentials
+                    // Calculate exponentials once, and their sum
                     float sumExp = 0.0f;
                     for (int i = 0; i < axisSize; i++) {
                         int offset = baseOffset + i * strides[axis];
-                        sumExp += Math.exp(matrix[offset] - maxVal);
+                        float exp = fast ? FastMath.exp(matrix[offset] - maxVal) : 
+                            (float) Math.exp(matrix[offset] - maxVal);
+                        result[offset] = exp;
+                        sumExp += exp;
                     }
                     
                     // Calculate softmax values
+                    float invSum = 1.0f / sumExp;
                     for (int i = 0; i < axisSize; i++) {
                         int offset = baseOffset + i * strides[axis];
-                        result[offset] = (float) Math.exp(matrix[offset] - maxVal) / sumExp;
+                        result[offset] *= invSum;
                     }
                 });
             }).get();
@@ -765,6 +1032,22 @@ public class JMatrix {
      * @return A new JMatrix with log softmax applied along the specified axis.
      */
     public JMatrix logSoftmax(int axis) {
+        return logSoftmax(axis, "exact");
+    }
+
+    /**
+     * Perform log softmax along a given axis. Avoids overflow and underflow.
+     * @param axis the axis to apply log softmax to: <p>
+     * <ul> <li> 0 = across batch dimension
+     * <li> 1 = across channel dimension
+     * <li> 2 = across height dimension
+     * <li> 3 = across width dimension </ul>
+     * @param mathMode exact, or fast to use the float approximation of exp in FastMath.
+     * @return A new JMatrix with log softmax applied along the specified axis.
+     */
+    public JMatrix logSoftmax(int axis, String mathMode) {
+        float[] matrix = floatValues();
+        boolean fast = useFastMath(mathMode);
         if (axis < 0 || axis > 3) {
             throw new IllegalArgumentException("Axis must be between 0 and 3");
         }
@@ -795,7 +1078,8 @@ public class JMatrix {
                     float sumExp = 0.0f;
                     for (int i = 0; i < axisSize; i++) {
                         int offset = baseOffset + i * strides[axis];
-                        sumExp += Math.exp(matrix[offset] - maxVal);
+                        sumExp += fast ? FastMath.exp(matrix[offset] - maxVal) : 
+                            Math.exp(matrix[offset] - maxVal);
                     }
                     // Calculate log softmax values
                     float logSumExp = (float) Math.log(sumExp) + maxVal;
@@ -811,6 +1095,13 @@ public class JMatrix {
         return new JMatrix(result, length, channels, height, width);
     }
 
+    private static boolean useFastMath(String mathMode) {
+        if (!(mathMode.equals("exact") || mathMode.equals("fast"))) {
+            throw new IllegalArgumentException("Only exact and fast allowed.");
+        }
+        return mathMode.equals("fast");
+    }
+
     // NOTE: THIS METHOD IS ADAPTED FROM CODE GENERATED BY CLAUDE.AI
     private static int indexHelper(int opIndex, int axis, int[] dimensions, int[] strides) {
         int[] indices = new int[4];
@@ -873,6 +1164,30 @@ public class JMatrix {
         return oneHotMatrix;
     }
 
+    /**
+     * Creates a one-hot encoded representation of token indices.
+     * 
+     * @param indices An IntTensor of token indices in the shape [batch, seqLen]
+     * @param vocabSize The size of the vocabulary (number of possible token values)
+     * @return A new JMatrix with one-hot encoding in the shape [batch, seqLen, vocabSize, 1]
+     */
+    public static JMatrix oneHot(IntTensor indices, int vocabSize) {
+        int batchSize = indices.length();
+        int seqLen = indices.channels();
+        int[] tokens = indices.getArray();
+        int stride = indices.height() * indices.width();
+
+        float[] oneHot = new float[batchSize * seqLen * vocabSize];
+        IntStream.range(0, batchSize * seqLen).parallel().forEach(i -> {
+            int tokenIndex = tokens[i * stride];
+            // Invalid token indices stay all zero
+            if (tokenIndex >= 0 && tokenIndex < vocabSize) {
+                oneHot[i * vocabSize + tokenIndex] = 1.0f;
+            }
+        });
+        return new JMatrix(oneHot, batchSize, seqLen, vocabSize, 1);
+    }
+
     /**
      * Create a JMatrix with random values in the range [0,1]
      * @param length                        the N dimension of the JMatrix.
@@ -918,6 +1233,25 @@ public class JMatrix {
     
         return positions;
     }
+
+    /**
+     * Generates position IDs for a batch of token ID sequences.
+     *
+     * @param tokenIDs An IntTensor of shape [batch, seqLen] representing token IDs for a batch of sequences.
+     * @return An IntTensor of shape [batch, seqLen, 1, 1] where each entry contains the position index of the token.
+     */
+    public static IntTensor positionIDs(IntTensor tokenIDs) {
+        int batch = tokenIDs.length();
+        int seqLen = tokenIDs.channels();
+        int[] positions = new int[batch * seqLen];
+
+        for (int b = 0; b < batch; b++) {
+            for (int t = 0; t < seqLen; t++) {
+                positions[b * seqLen + t] = t;
+            }
+        }
+        return new IntTensor(positions, batch, seqLen, 1, 1);
+    }
     
 
     /**
@@ -1114,13 +1448,21 @@ public class JMatrix {
      * Returns an exact copy of this JMatrix.
      */
     public JMatrix copy() {
-        return new JMatrix(matrix.clone(), length, channels, height, width);
+        if (halfMatrix != null) {
+            JMatrix copy = new JMatrix(null, length, channels, height, width);
+            copy.halfMatrix = halfMatrix.clone();
+            copy.dtype = dtype;
+            copy.bfloat16 = bfloat16;
+            copy.layout = layout;
+            return copy;
+        }
+        return new JMatrix(matrix.clone(), length, channels, height, width).setLayout(layout);
     }
     /**
-     * Returns a new empty JMatrix with the same dimensions as this JMatrix.
+     * Returns a new empty JMatrix with the same dimensions and layout as this JMatrix.
      */
     public JMatrix zerosLike() {
-        return new JMatrix(new float[size()], length, channels, height, width);
+        return new JMatrix(new float[size()], length, channels, height, width).setLayout(layout);
     }
 
     /**
@@ -1131,8 +1473,8 @@ public class JMatrix {
     public JMatrix clip(double min, double max) {
         float fMin = (float)min;
         float fMax = (float)max;
-        IntStream.range(0, matrix.length).parallel().forEach(i -> {
-            matrix[i] = Math.max(fMin, Math.min(fMax, matrix[i]));
+        IntStream.range(0, size()).parallel().forEach(i -> {
+            store(i, Math.max(fMin, Math.min(fMax, access(i))));
         });
         return this; // For chaining
     }
@@ -1143,8 +1485,8 @@ public class JMatrix {
      */
     public JMatrix fill(double fillValue) {
         float valueF = (float)fillValue;
-        IntStream.range(0, matrix.length).parallel().forEach(i -> {
-            matrix[i] = valueF;
+        IntStream.range(0, size()).parallel().forEach(i -> {
+            store(i, valueF);
         });
         return this; // For chaining
     }
@@ -1160,6 +1502,7 @@ public class JMatrix {
      */
 
     public JMatrix matmul(JMatrix secondMatrix, boolean scale) {
+        float[] matrix = floatValues();
         // Treat channels * height * width as flat
         int m = length;
         int n = secondMatrix.channels() * secondMatrix.height() * secondMatrix.width();
@@ -1175,7 +1518,7 @@ public class JMatrix {
         }
         
         float[] matrixA = matrix;
-        float[] matrixB = secondMatrix.getMatrix();
+        float[] matrixB = secondMatrix.floatValues();
         
         // Use simple algorithm for small matrices
         if (m < cutoffSize && n < cutoffSize && k < cutoffSize) {
@@ -1192,11 +1535,12 @@ public class JMatrix {
      * Simple matrix multiplication for smaller matrices.
      */
     private JMatrix simpleMatmul(JMatrix secondMatrix, boolean scale, int m, int n, int k) {
+        float[] matrix = floatValues();
         float scaleFactor = (float)(1.0f / Math.sqrt(k));
         float[] result = new float[m * n];
         
         float[] matrixA = matrix;
-        float[] matrixB = secondMatrix.getMatrix();
+        float[] matrixB = secondMatrix.floatValues();
         
         IntStream.range(0, m).parallel().forEach(i -> {
             for (int j = 0; j < n; j++) {
@@ -1241,6 +1585,7 @@ public class JMatrix {
      * @return A new JMatrix representing the batch dot product.
      */
     public JMatrix batchMatmul(JMatrix secondMatrix, boolean scale) {
+        float[] matrix = floatValues();
         int batchSize = length;
         int inputChannels = channels;
         int flatSpatialDim = height * width;
@@ -1256,7 +1601,7 @@ public class JMatrix {
             );
         }
 
-        float[] result = OptimizedMatmul.batchMatmul(matrix, secondMatrix.getMatrix(), length, 
+        float[] result = OptimizedMatmul.batchMatmul(matrix, secondMatrix.floatValues(), length, 
             inputChannels, outFlatSpatialDim, outputChannels, scale, BLOCK_SIZE_M, BLOCK_SIZE_N, BLOCK_SIZE_K, THREAD_POOL);
 
         return new JMatrix(result, batchSize, channels, outFlatSpatialDim / secondMatrix.width(), secondMatrix.width());
@@ -1348,7 +1693,7 @@ public class JMatrix {
         // Full element-wise subtraction
         if (size == secondMatrix.size()) {
             IntStream.range(0, size).parallel().forEach(i -> {
-                matrix[i] = access(i) - secondMatrix.access(i);
+                store(i, access(i) - secondMatrix.access(i));
             });
             return this; // For chaining
         }
@@ -1364,7 +1709,7 @@ public class JMatrix {
                     float subtractor = secondMatrix.access(c); // one subtractor per channel
                     int offset = n * channels * channelSize + c * channelSize;
                     for (int i = 0; i < channelSize; i++) {
-                        matrix[offset + i] = access(offset + i) - subtractor;
+                        store(offset + i, access(offset + i) - subtractor);
                     }
                 }
             });
@@ -1435,7 +1780,7 @@ public class JMatrix {
         // Full element-wise subtraction
         if (size == secondMatrix.size()) {
             IntStream.range(0, size).parallel().forEach(i -> {
-                matrix[i] = access(i) + secondMatrix.access(i);
+                store(i, access(i) + secondMatrix.access(i));
             });
             return this; // For chaining
         }
@@ -1451,7 +1796,7 @@ public class JMatrix {
                     float adder = secondMatrix.access(c); // one adder per channel
                     int offset = n * channels * channelSize + c * channelSize;
                     for (int i = 0; i < channelSize; i++) {
-                        matrix[offset + i] = access(offset + i) + adder;
+                        store(offset + i, access(offset + i) + adder);
                     }
                 }
             });
@@ -1535,7 +1880,7 @@ public class JMatrix {
         // Full element-wise subtraction
         if (size == secondMatrix.size()) {
             IntStream.range(0, size).parallel().forEach(i -> {
-                matrix[i] = access(i) * secondMatrix.access(i);
+                store(i, access(i) * secondMatrix.access(i));
             });
             return this; // For chaining
         }
@@ -1551,7 +1896,7 @@ public class JMatrix {
                     float multiplier = secondMatrix.access(c); // one multiplier per channel
                     int offset = n * channels * channelSize + c * channelSize;
                     for (int i = 0; i < channelSize; i++) {
-                        matrix[offset + i] = access(offset + i) * multiplier;
+                        store(offset + i, access(offset + i) * multiplier);
                     }
                 }
             });
@@ -1621,7 +1966,7 @@ public class JMatrix {
         // Full element-wise subtraction
         if (size == secondMatrix.size()) {
             IntStream.range(0, size).parallel().forEach(i -> {
-                matrix[i] = access(i) / secondMatrix.access(i);
+                store(i, access(i) / secondMatrix.access(i));
             });
             return this; // For chaining
         }
@@ -1637,7 +1982,7 @@ public class JMatrix {
                     float divisor = secondMatrix.access(c); // one divisor per channel
                     int offset = n * channels * channelSize + c * channelSize;
                     for (int i = 0; i < channelSize; i++) {
-                        matrix[offset + i] = access(offset + i) / divisor;
+                        store(offset + i, access(offset + i) / divisor);
                     }
                 }
             });
@@ -1679,7 +2024,7 @@ public class JMatrix {
         float fScalar = (float)scalar;
 
         IntStream.range(0, size).parallel().forEach(i -> {
-            matrix[i] = access(i) - fScalar;
+            store(i, access(i) - fScalar);
         });
 
         return this; // For chaining
@@ -1713,7 +2058,7 @@ public class JMatrix {
         float fScalar = (float)scalar;
 
         IntStream.range(0, size).parallel().forEach(i -> {
-            matrix[i] = access(i) + fScalar;
+            store(i, access(i) + fScalar);
         });
 
         return this; // For chaining
@@ -1746,7 +2091,7 @@ public class JMatrix {
         float fScalar = (float)scalar;
 
         IntStream.range(0, size).parallel().forEach(i -> {
-            matrix[i] = access(i) * fScalar;
+            store(i, access(i) * fScalar);
         });
         return this; // For chaining
     }
@@ -1779,7 +2124,7 @@ public class JMatrix {
         float fScalar = (float)scalar;
 
         IntStream.range(0, size).parallel().forEach(i -> {
-            matrix[i] = access(i) / fScalar;
+            store(i, access(i) / fScalar);
         });
         
         return this; // For chaining
@@ -0,0 +1,317 @@
+package jflow.data;
+
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric int8 weights with one scale per output channel,
+ * along with int8 x int8 -> int32 kernels for inference. <p>
+ * The output channel is the length dimension, matching Dense weights (outputSize, inputSize)
+ * and Conv2D filters (numFilters, channels, filterSize, filterSize).
+ * Kernel results are dequantized in a float epilogue that also applies biases.
+ */
+public class QuantizedMatrix {
+    private byte[] data;
+    private float[] scales;
+    private int length, channels, height, width;
+    private String name = null;
+
+    /**
+     * Wrap existing int8 values and per-channel scales.
+     * @param data                  The int8 values in (length, channels, height, width) order.
+     * @param scales                One scale per output channel, of size length.
+     * @param length                The output channel dimension.
+     * @param channels              The channel dimension.
+     * @param height                The height dimension.
+     * @param width                 The width dimension.
+     */
+    public QuantizedMatrix(byte[] data, float[] scales, int length, int channels, int height, int width) {
+        if (data.length != length * channels * height * width) {
+            throw new IllegalArgumentException(
+                "Data size " + data.length + " does not match shape (" +
+                length + "," + channels + "," + height + "," + width + ")."
+            );
+        }
+        if (scales.length != length) {
+            throw new IllegalArgumentException(
+                "Expected " + length + " scales. Got: " + scales.length + "."
+            );
+        }
+        this.data = data;
+        this.scales = scales;
+        this.length = length;
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+    }
+
+    /**
+     * Quantize a JMatrix to int8 with one symmetric scale per output channel.
+     * @param weights               The weights to quantize. Output channels are along the length dimension.
+     */
+    public static QuantizedMatrix quantizePerChannel(JMatrix weights) {
+        int length = weights.length();
+        int rowSize = weights.channels() * weights.height() * weights.width();
+        float[] values = weights.getMatrix();
+        byte[] data = new byte[values.length];
+        float[] scales = new float[length];
+
+        IntStream.range(0, length).parallel().forEach(o -> {
+            int offset = o * rowSize;
+            float absMax = 0;
+            for (int i = 0; i < rowSize; i++) {
+                absMax = Math.max(absMax, Math.abs(values[offset + i]));
+            }
+            float scale = scaleFor(absMax);
+            scales[o] = scale;
+            float invScale = 1.0f / scale;
+            for (int i = 0; i < rowSize; i++) {
+                data[offset + i] = quantize(values[offset + i], invScale);
+            }
+        });
+        return new QuantizedMatrix(data, scales, length, weights.channels(), weights.height(), weights.width())
+            .setName(weights.getName());
+    }
+
+    /**
+     * The symmetric int8 scale that maps [-absMax, absMax] onto [-127, 127].
+     * @param absMax                The largest absolute value to represent.
+     */
+    public static float scaleFor(double absMax) {
+        return (absMax > 0) ? (float)(absMax / 127.0) : 1.0f;
+    }
+
+    private static byte quantize(float value, float invScale) {
+        int q = Math.round(value * invScale);
+        return (byte)Math.max(-127, Math.min(127, q));
+    }
+
+    /**
+     * Dense forward pass in int8. Computes weights x input like JMatrix.matmul(),
+     * accumulating in int32 and dequantizing once per output.
+     * @param input                 The input in the shape (inputSize, batch), as Dense multiplies it.
+     * @param inputScale            The static int8 scale of the input activations.
+     * @param biases                One bias per output row, or null.
+     * @param scale                 Whether to scale results by 1/sqrt(inputSize), as Dense does.
+     * @return                  The output in the shape (outputSize, batch, 1, 1).
+     */
+    public JMatrix denseForward(JMatrix input, float inputScale, JMatrix biases, boolean scale) {
+        int m = length;
+        int k = channels * height * width;
+        int n = input.size() / k;
+        if (input.length() != k) {
+            throw new IllegalArgumentException(
+                "Input rows " + input.length() + " do not match weight columns " + k + "."
+            );
+        }
+        float[] x = input.getMatrix();
+        float invInputScale = 1.0f / inputScale;
+
+        // Quantize the input transposed to (batch, inputSize) so dot products are contiguous
+        byte[] xq = new byte[n * k];
+        IntStream.range(0, n).parallel().forEach(j -> {
+            int rowOffset = j * k;
+            for (int i = 0; i < k; i++) {
+                xq[rowOffset + i] = quantize(x[i * n + j], invInputScale);
+            }
+        });
+
+        float scaleFactor = scale ? (float)(1.0f / Math.sqrt(k)) : 1.0f;
+        float[] result = new float[m * n];
+        float[] bias = (biases == null) ? null : biases.getMatrix();
+
+        IntStream.range(0, m).parallel().forEach(o -> {
+            int weightOffset = o * k;
+            // Dequantizing epilogue
+            float outScale = scales[o] * inputScale * scaleFactor;
+            float outBias = (bias == null) ? 0 : bias[o];
+            for (int j = 0; j < n; j++) {
+                int inputOffset = j * k;
+                int acc0 = 0, acc1 = 0, acc2 = 0, acc3 = 0;
+                int i = 0;
+                for (; i + 3 < k; i += 4) {
+                    acc0 += data[weightOffset + i] * xq[inputOffset + i];
+                    acc1 += data[weightOffset + i + 1] * xq[inputOffset + i + 1];
+                    acc2 += data[weightOffset + i + 2] * xq[inputOffset + i + 2];
+                    acc3 += data[weightOffset + i + 3] * xq[inputOffset + i + 3];
+                }
+                for (; i < k; i++) {
+                    acc0 += data[weightOffset + i] * xq[inputOffset + i];
+                }
+                result[o * n + j] = (acc0 + acc1 + acc2 + acc3) * outScale + outBias;
+            }
+        });
+        return new JMatrix(result, m, n, 1, 1);
+    }
+
+    /**
+     * Conv2D forward pass in int8, accumulating in int32 and dequantizing once per output.
+     * @param input                 The input in the shape (N, channels, height, width).
+     * @param inputScale            The static int8 scale of the input activations.
+     * @param biases                One bias per filter, or null.
+     * @param stride                The stride to apply in convolution.
+     * @param padTop                Zero padding above the input.
+     * @param padLeft               Zero padding left of the input.
+     * @param outputHeight          The output height.
+     * @param outputWidth           The output width.
+     * @return                  The output in the shape (N, numFilters, outputHeight, outputWidth).
+     */
+    public JMatrix conv2dForward(JMatrix input, float inputScale, JMatrix biases,
+            int stride, int padTop, int padLeft, int outputHeight, int outputWidth) {
+        return conv2dForward(input, inputScale, biases, stride, stride, 1, 1, 
+            padTop, padLeft, outputHeight, outputWidth, 1);
+    }
+
+    /**
+     * Conv2D forward pass in int8 with per-axis stride and dilation, and channel groups.
+     * Filters hold the channels of their group, and each group of filters reads its own
+     * slice of input channels.
+     * @param strideHeight          The vertical stride.
+     * @param strideWidth           The horizontal stride.
+     * @param dilationHeight        The vertical spacing between filter taps.
+     * @param dilationWidth         The horizontal spacing between filter taps.
+     * @param groups                The number of channel groups.
+     * @see #conv2dForward(JMatrix, float, JMatrix, int, int, int, int, int)
+     */
+    public JMatrix conv2dForward(JMatrix input, float inputScale, JMatrix biases,
+            int strideHeight, int strideWidth, int dilationHeight, int dilationWidth,
+            int padTop, int padLeft, int outputHeight, int outputWidth, int groups) {
+        int numImages = input.length();
+        int numFilters = length;
+        int numChannels = channels;
+        int filterHeight = height;
+        int filterWidth = width;
+        int inputHeight = input.height();
+        int inputWidth = input.width();
+        int inputChannels = numChannels * groups;
+        int groupFilters = numFilters / groups;
+        if (input.channels() != inputChannels) {
+            throw new IllegalArgumentException(
+                "Input channels " + input.channels() + " do not match filter channels " + inputChannels + "."
+            );
+        }
+        float[] x = input.getMatrix();
+        float invInputScale = 1.0f / inputScale;
+
+        // Quantize the input once for every filter
+        byte[] xq = new byte[x.length];
+        IntStream.range(0, numImages * inputChannels).parallel().forEach(plane -> {
+            int offset = plane * inputHeight * inputWidth;
+            for (int i = 0; i < inputHeight * inputWidth; i++) {
+                xq[offset + i] = quantize(x[offset + i], invInputScale);
+            }
+        });
+
+        int outputPlane = outputHeight * outputWidth;
+        float[] result = new float[numImages * numFilters * outputPlane];
+        float[] bias = (biases == null) ? null : biases.getMatrix();
+
+        IntStream.range(0, numImages * numFilters).parallel().forEach(task -> {
+            int n = task / numFilters;
+            int f = task % numFilters;
+            int[] acc = new int[outputPlane];
+
+            int firstChannel = (f / groupFilters) * numChannels;
+            for (int c = 0; c < numChannels; c++) {
+                int inputOffset = (n * inputChannels + firstChannel + c) * inputHeight * inputWidth;
+                int filterOffset = (f * numChannels + c) * filterHeight * filterWidth;
+                for (int fh = 0; fh < filterHeight; fh++) {
+                    // Output rows whose input row is in bounds
+                    int rowOffset = fh * dilationHeight - padTop;
+                    int ohStart = Math.max(0, ceilDiv(-rowOffset, strideHeight));
+                    int ohEnd = Math.min(outputHeight, Math.floorDiv(inputHeight - 1 - rowOffset, strideHeight) + 1);
+                    for (int fw = 0; fw < filterWidth; fw++) {
+                        int w = data[filterOffset + fh * filterWidth + fw];
+                        if (w == 0) {
+                            continue;
+                        }
+                        // Output columns whose input column is in bounds
+                        int colOffset = fw * dilationWidth - padLeft;
+                        int owStart = Math.max(0, ceilDiv(-colOffset, strideWidth));
+                        int owEnd = Math.min(outputWidth, Math.floorDiv(inputWidth - 1 - colOffset, strideWidth) + 1);
+                        for (int oh = ohStart; oh < ohEnd; oh++) {
+                            int inputRow = inputOffset + (oh * strideHeight + rowOffset) * inputWidth + colOffset;
+                            int outputRow = oh * outputWidth;
+                            for (int ow = owStart; ow < owEnd; ow++) {
+                                acc[outputRow + ow] += w * xq[inputRow + ow * strideWidth];
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Dequantizing epilogue
+            float outScale = scales[f] * inputScale;
+            float outBias = (bias == null) ? 0 : bias[f];
+            int outputOffset = task * outputPlane;
+            for (int i = 0; i < outputPlane; i++) {
+                result[outputOffset + i] = acc[i] * outScale + outBias;
+            }
+        });
+        return new JMatrix(result, numImages, numFilters, outputHeight, outputWidth);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    /**
+     * Dequantize to a float JMatrix.
+     */
+    public JMatrix toJMatrix() {
+        int rowSize = channels * height * width;
+        float[] values = new float[data.length];
+        IntStream.range(0, length).parallel().forEach(o -> {
+            int offset = o * rowSize;
+            for (int i = 0; i < rowSize; i++) {
+                values[offset + i] = data[offset + i] * scales[o];
+            }
+        });
+        return new JMatrix(values, length, channels, height, width, name);
+    }
+
+    /**
+     * Access the wrapped int8 values.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Access the per-channel scales.
+     */
+    public float[] getScales() {
+        return scales;
+    }
+
+    /**
+     * The shape of the QuantizedMatrix.
+     * @returns {length, channels, height, width} in an int[4].
+     */
+    public int[] shape() {
+        return new int[]{length, channels, height, width};
+    }
+
+    /**
+     * The number of int8 values.
+     */
+    public int size() {
+        return data.length;
+    }
+
+    /**
+     * Name this QuantizedMatrix
+     * @param name          The name to assign.
+     */
+    public QuantizedMatrix setName(String name) {
+        this.name = name;
+        return this; // For chaining
+    }
+
+    /**
+     * Access the name of this QuantizedMatrix.
+     * @return the name if set. <li> otherwise null.
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,94 @@
+package jflow.data;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A reproducible stream of random numbers. <p>
+ * Each value is a hash of the seed and its position in the stream, so values can be
+ * drawn in parallel and the whole state is the seed and the current position.
+ * Saving and restoring the state resumes the stream exactly.
+ */
+public class RandomStream {
+    private volatile long seed;
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * Initializes a stream with a random seed.
+     */
+    public RandomStream() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Initializes a stream with a seed.
+     * @param seed                  The seed of the stream.
+     */
+    public RandomStream(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Restart the stream from a seed.
+     * @param seed                  The seed of the stream.
+     */
+    public void setSeed(long seed) {
+        setState(seed, 0);
+    }
+
+    /**
+     * The seed of the stream.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The number of values drawn so far.
+     */
+    public long getPosition() {
+        return position.get();
+    }
+
+    /**
+     * Restore the stream to a saved seed and position.
+     * @param seed                  The seed of the stream.
+     * @param position              The number of values drawn so far.
+     */
+    public void setState(long seed, long position) {
+        this.seed = seed;
+        this.position.set(position);
+    }
+
+    /**
+     * The next value in the range [0, 1).
+     */
+    public double nextDouble() {
+        return uniform(position.getAndIncrement());
+    }
+
+    /**
+     * Reserve a block of values to be read in parallel with uniform().
+     * @param count                 The number of values in the block.
+     * @return                  The position of the first value of the block.
+     */
+    public long reserve(long count) {
+        return position.getAndAdd(count);
+    }
+
+    /**
+     * The value at a position in the stream, in the range [0, 1).
+     * Does not advance the stream.
+     * @param position              The position of the value.
+     */
+    public double uniform(long position) {
+        return (mix(seed + position * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
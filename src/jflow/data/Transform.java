@@ -7,6 +7,8 @@ public class Transform {
     private ArrayList<Function<float[][][], float[][][]>> transforms;
     // Keep track of image bounds for clipping
     private int[] normBounds = new int[2];
+    // Source of random augmentations
+    private RandomStream random = new RandomStream();
     /**
      * Initializes an empty Transform.
      */
@@ -18,6 +20,22 @@ public class Transform {
         return transforms;
     }
 
+    /**
+     * Seed the random augmentations of this Transform.
+     * @param seed                  The seed.
+     */
+    public Transform setSeed(long seed) {
+        random.setSeed(seed);
+        return this;
+    }
+
+    /**
+     * The random numbers that augmentations are drawn from.
+     */
+    public RandomStream getRandomStream() {
+        return random;
+    }
+
     // Provide information about 
     protected int[] normBounds() {
         return normBounds;
@@ -112,7 +130,7 @@ public class Transform {
         transforms.add(
             image -> {
                 int channels = image.length;
-                int numRotations = (int)(Math.random() * 3) + 1;
+                int numRotations = (int)(random.nextDouble() * 3) + 1;
                 float[][][] rotatedImage = copy(image);
                 for (int c = 0; c < channels; c++) {
                     for (int r = 0; r < numRotations; r++) {
@@ -130,7 +148,7 @@ public class Transform {
     public Transform randomFlip() {
         transforms.add(
             image -> {
-                if (Math.random() > 0.5) {
+                if (random.nextDouble() > 0.5) {
                     int channels = image.length;
                     int height = image[0].length;
                     int width = image[0][0].length;
@@ -157,7 +175,7 @@ public class Transform {
         transforms.add(
             image -> {
                 // Random value from -0.2 to 0.2
-                double brightness = Math.random() / 2.5 - 0.2;
+                double brightness = random.nextDouble() / 2.5 - 0.2;
                 return DataUtility.clip(
                     DataUtility.add(image, brightness), 
                     normBounds[0], normBounds[1]);
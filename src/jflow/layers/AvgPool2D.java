@@ -0,0 +1,187 @@
+package jflow.layers;
+
+import java.util.stream.IntStream;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.ShapeAlteringLayer;
+
+public class AvgPool2D extends ShapeAlteringLayer {
+    private int poolSize;
+    private int stride;
+    private int numImages;
+    private int channels;
+    private int imageHeight;
+    private int imageWidth;
+    private int outputHeight;
+    private int outputWidth;
+    private String inputLayout;
+
+    public AvgPool2D(int poolSize, int stride) {
+        super("avg_pool_2d");
+        this.poolSize = poolSize;
+        this.stride = stride;
+    }
+
+    @Override
+    public JMatrix forward(JMatrix input, boolean training) {
+        int imageHeight = input.height();
+        int imageWidth = input.width();
+        int numImages = input.length();
+        int channels = input.channels();
+
+        // Calculate output dimensions
+        int outputHeight = (imageHeight - poolSize) / stride + 1;
+        int outputWidth = (imageWidth - poolSize) / stride + 1;
+
+        // Backward only needs the shapes, so no activation is kept
+        if (training) {
+            this.imageHeight = imageHeight;
+            this.imageWidth = imageWidth;
+            this.numImages = numImages;
+            this.channels = channels;
+            this.outputHeight = outputHeight;
+            this.outputWidth = outputWidth;
+            this.inputLayout = input.layout();
+        }
+
+        JMatrix output = new JMatrix(numImages, channels, outputHeight, outputWidth);
+        float[] in = Elementwise.values(input);
+        float[] out = output.getMatrix();
+        float scale = 1.0f / (poolSize * poolSize);
+
+        if (input.layout().equals("NHWC")) {
+            output.setLayout("NHWC");
+            // Sum the channel vectors of each window, parallel across output rows of all images
+            IntStream.range(0, numImages * outputHeight).parallel().forEach(row -> {
+                int i = row / outputHeight;
+                int sX = row % outputHeight;
+                for (int sY = 0; sY < outputWidth; sY++) {
+                    int outIdx = (row * outputWidth + sY) * channels;
+                    for (int poolX = 0; poolX < poolSize; poolX++) {
+                        for (int poolY = 0; poolY < poolSize; poolY++) {
+                            int x = sX * stride + poolX;
+                            int y = sY * stride + poolY;
+                            int inIdx = ((i * imageHeight + x) * imageWidth + y) * channels;
+                            for (int c = 0; c < channels; c++) {
+                                out[outIdx + c] += in[inIdx + c];
+                            }
+                        }
+                    }
+                    for (int c = 0; c < channels; c++) {
+                        out[outIdx + c] *= scale;
+                    }
+                }
+            });
+            return trackOutput(output, training);
+        }
+
+        // Average each window of each image plane
+        IntStream.range(0, numImages * channels).parallel().forEach(plane -> {
+            int inputOffset = plane * imageHeight * imageWidth;
+            int outputOffset = plane * outputHeight * outputWidth;
+
+            if (poolSize == 2 && stride == 2) {
+                for (int sX = 0; sX < outputHeight; sX++) {
+                    int row0 = inputOffset + 2 * sX * imageWidth;
+                    int row1 = row0 + imageWidth;
+                    int outRow = outputOffset + sX * outputWidth;
+                    for (int sY = 0; sY < outputWidth; sY++) {
+                        int a = row0 + 2 * sY;
+                        int b = row1 + 2 * sY;
+                        out[outRow + sY] = (in[a] + in[a + 1] + in[b] + in[b + 1]) * scale;
+                    }
+                }
+                return;
+            }
+            for (int sX = 0; sX < outputHeight; sX++) {
+                for (int sY = 0; sY < outputWidth; sY++) {
+                    float sum = 0;
+                    for (int poolX = 0; poolX < poolSize; poolX++) {
+                        int rowIdx = inputOffset + (sX * stride + poolX) * imageWidth + sY * stride;
+                        for (int poolY = 0; poolY < poolSize; poolY++) {
+                            sum += in[rowIdx + poolY];
+                        }
+                    }
+                    out[outputOffset + sX * outputWidth + sY] = sum * scale;
+                }
+            }
+        });
+
+        return trackOutput(output, training);
+    }
+
+    @Override
+    public JMatrix backward(JMatrix dOutput) {
+        JMatrix gradient = new JMatrix(numImages, channels, imageHeight, imageWidth)
+            .setLayout(inputLayout);
+        float[] dOut = Elementwise.values(dOutput);
+        float[] grad = gradient.getMatrix();
+        float scale = 1.0f / (poolSize * poolSize);
+
+        if (inputLayout.equals("NHWC")) {
+            // Windows may overlap, so each image is handled by one task
+            IntStream.range(0, numImages).parallel().forEach(i -> {
+                for (int sX = 0; sX < outputHeight; sX++) {
+                    for (int sY = 0; sY < outputWidth; sY++) {
+                        int outIdx = ((i * outputHeight + sX) * outputWidth + sY) * channels;
+                        for (int poolX = 0; poolX < poolSize; poolX++) {
+                            for (int poolY = 0; poolY < poolSize; poolY++) {
+                                int x = sX * stride + poolX;
+                                int y = sY * stride + poolY;
+                                int inIdx = ((i * imageHeight + x) * imageWidth + y) * channels;
+                                for (int c = 0; c < channels; c++) {
+                                    grad[inIdx + c] += dOut[outIdx + c] * scale;
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+            return trackGradient(gradient);
+        }
+
+        // Spread each gradient evenly over its window, one image plane per task
+        IntStream.range(0, numImages * channels).parallel().forEach(plane -> {
+            int inputOffset = plane * imageHeight * imageWidth;
+            int outputOffset = plane * outputHeight * outputWidth;
+            for (int sX = 0; sX < outputHeight; sX++) {
+                for (int sY = 0; sY < outputWidth; sY++) {
+                    float share = dOut[outputOffset + sX * outputWidth + sY] * scale;
+                    for (int poolX = 0; poolX < poolSize; poolX++) {
+                        int rowIdx = inputOffset + (sX * stride + poolX) * imageWidth + sY * stride;
+                        for (int poolY = 0; poolY < poolSize; poolY++) {
+                            grad[rowIdx + poolY] += share;
+                        }
+                    }
+                }
+            }
+        });
+
+        return trackGradient(gradient);
+    }
+
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
+    }
+
+    @Override
+    public int[] outputShape() {
+        int[] outputShape = null;
+        int[] prev = getPreviousLayer().outputShape();
+
+        if (getOutput() != null) {
+            outputShape = getOutput().shape();
+        } else {
+            int oldHeight = prev[2];
+            int oldWidth = prev[3];
+
+            int outputHeight = (oldHeight - poolSize) / stride + 1;
+            int outputWidth = (oldWidth - poolSize) / stride + 1;
+
+            return new int[]{-1, prev[1], outputHeight, outputWidth};
+
+        }
+        return outputShape;
+    }
+}
@@ -5,6 +5,13 @@ import java.util.stream.IntStream;
 import jflow.data.JMatrix;
 import jflow.layers.templates.TrainableLayer;
 
+/**
+ * Batch Normalization over the batch and spatial dimensions of each channel. <p>
+ * Batch statistics are computed in a single pass with Welford's algorithm over shards
+ * of the batch, which are combined in order. Normalization and the affine transform
+ * are fused into one per-channel scale and shift. Backward recomputes the normalized
+ * values from the input, so only per-channel statistics are kept.
+ */
 public class BatchNorm extends TrainableLayer {
     private int featureSize;
     private double epsilon = 1e-5;
@@ -13,20 +20,19 @@ public class BatchNorm extends TrainableLayer {
     private JMatrix beta;
     private JMatrix runningMean;
     private JMatrix runningVar;
-    private JMatrix batchMean;
-    private JMatrix batchVar;
-    private JMatrix xHat;
-    private JMatrix input;
-
-    private JMatrix output;
-    
-    // Pre-allocated matrices for backward pass
+
+    // Kept for backward
+    private JMatrix lastInput;
+    private float[] batchMean;
+    private float[] invStd;
+
     private JMatrix dGamma;
     private JMatrix dBeta;
     private JMatrix dx;
-    private JMatrix dxHat;
-    private JMatrix dxHatSum;
-    private JMatrix dxHatXhatSum;
+    // Pixels per shard in channels-last kernels
+    private static final int PIXEL_BLOCK = 256;
+    // Elements reduced exactly before a Welford merge in channels-first kernels
+    private static final int WELFORD_BLOCK = 64;
 
 
     public BatchNorm() {
@@ -42,10 +48,10 @@ public class BatchNorm extends TrainableLayer {
 
         // Initialize gamma values as 1.0
         this.gamma = new JMatrix(1, featureSize, 1, 1, "gamma").fill(1.0f);
-        
+
         // Initialize beta values as 0.0
         this.beta = new JMatrix(1, featureSize, 1, 1, "beta");
-        
+
         // Initialize running mean as 0.0
         this.runningMean = new JMatrix(1, featureSize, 1, 1, "runningMean");
 
@@ -56,303 +62,309 @@ public class BatchNorm extends TrainableLayer {
         // Initialize derivatives as 0.0
         this.dGamma = new JMatrix(1, featureSize, 1, 1, "dGamma");
         this.dBeta = new JMatrix(1, featureSize, 1, 1, "dBeta");
-        this.dxHatSum = new JMatrix(1, featureSize, 1, 1);
-        this.dxHatXhatSum = new JMatrix(1, featureSize, 1, 1);
 
     }
 
     public JMatrix forward(JMatrix input, boolean training) {
-        if (training) {
-            this.input = input;
-        }
-        
         if (getPreviousShapeInfluencer() instanceof Dense) {
             input = input.transpose2D();
         }
-        // Ensure dx and dxHat have the right dimensions
-        if (dx == null || dx.length() != input.length() || dx.channels() != input.channels()) {
-            dx = input.zerosLike();
-            dxHat = input.zerosLike();
-        }
-         
         if (input.channels() != featureSize) {
             System.out.println("Warning: BatchNorm feature size doesn't match input channels");
         }
-        
+        int channels = input.channels();
+        float[] mean = new float[channels];
+        float[] stdInvs = new float[channels];
+
         if (training) {
             // Calculate batch statistics
-            batchMean = calcMean(input);
-            batchVar = calcVariance(input, batchMean);
-            
-            // Update running averages
-            runningMean.multiplyInPlace(momentum).addInPlace(batchMean.multiply(1 - momentum));
-            runningVar.multiplyInPlace(momentum).addInPlace(batchVar.multiply(1 - momentum));
-            
-            // Normalize
-            xHat = normalize(input, batchMean, batchVar);
+            Moments[] moments = calcMoments(input);
+            for (int c = 0; c < channels; c++) {
+                double var = moments[c].variance();
+                mean[c] = (float)moments[c].mean;
+                stdInvs[c] = (float)(1.0 / Math.sqrt(var + epsilon));
+
+                // Update running averages
+                runningMean.set(c, momentum * runningMean.get(c) + (1 - momentum) * mean[c]);
+                runningVar.set(c, momentum * runningVar.get(c) + (1 - momentum) * (float)var);
+            }
+            batchMean = mean;
+            invStd = stdInvs;
+            lastInput = retain(input);
         } else {
-            // Normalize using running averages
-            xHat = normalize(input, runningMean, runningVar);
+            // Normalize using running averages, keeping no state for inference
+            for (int c = 0; c < channels; c++) {
+                mean[c] = runningMean.get(c);
+                stdInvs[c] = (float)(1.0 / Math.sqrt(runningVar.get(c) + epsilon));
+            }
         }
-        
-        // Scale and shift
-        output = scaleAndShift(xHat, gamma, beta);
-        
+
+        // Fold normalization, scale and shift into one multiply-add per element
+        float[] scale = new float[channels];
+        float[] shift = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            scale[c] = gamma.get(c) * stdInvs[c];
+            shift[c] = beta.get(c) - mean[c] * scale[c];
+        }
+        JMatrix output = input.zerosLike();
+        scaleAndShift(input.getMatrix(), output.getMatrix(), scale, shift, input);
+
         return trackOutput(output, training);
     }
-    
-    /*
-     * Calculate the mean across the batch 
-     * and spatial dimensions for each channel.
-     */ 
-    private JMatrix calcMean(JMatrix input) {
-        JMatrix mean = new JMatrix(1, featureSize, 1, 1);
-        
-        int batchSize = input.length();
-        int channels = input.channels();
-        int height = input.height();
-        int width = input.width();
-        int spatialSize = height * width;
-        
-        IntStream.range(0, channels).parallel().forEach(c -> {
-            float sum = 0;
-            for (int n = 0; n < batchSize; n++) {
-                int batchOffset = n * channels * height * width;
-                int channelOffset = c * height * width;
-                    
-                for (int h = 0; h < height; h++) {
-                    int rowOffset = h * width;
-                        
-                    for (int w = 0; w < width; w++) {
-                        int idx = batchOffset + channelOffset + rowOffset + w;
-                        sum += input.get(idx);
-                    }
-                }
-            }
-            mean.set(c, sum / (batchSize * spatialSize));
-        });
-        
-        return mean;
-    }
 
     /*
-     * Calculate the mean across the batch 
-     * and spatial dimensions for each channel.
-     * Reuse the mean calculation.
-     */ 
-    private JMatrix calcVariance(JMatrix input, JMatrix mean) {
-        JMatrix var = new JMatrix(1, featureSize, 1, 1);
-        
+     * Calculate the mean and variance across the batch and spatial dimensions
+     * for each channel, in one pass. Each shard, a channel of one image in NCHW or
+     * a block of pixels in NHWC, is reduced with Welford's algorithm in parallel,
+     * and the shards of each channel are combined in order.
+     */
+    private Moments[] calcMoments(JMatrix input) {
         int batchSize = input.length();
         int channels = input.channels();
-        int height = input.height();
-        int width = input.width();
-        int spatialSize = height * width;
-        
-        IntStream.range(0, channels).parallel().forEach(c -> {
-            float sum = 0;
-            float meanVal = mean.get(c);
-                
-            for (int n = 0; n < batchSize; n++) {
-                int batchOffset = n * channels * height * width;
-                int channelOffset = c * height * width;
-                    
-                for (int h = 0; h < height; h++) {
-                    int rowOffset = h * width;
-                        
-                    for (int w = 0; w < width; w++) {
-                        int idx = batchOffset + channelOffset + rowOffset + w;
-                        double diff = input.get(idx) - meanVal;
-                        sum += diff * diff;
+        int spatialSize = input.height() * input.width();
+        float[] x = input.getMatrix();
+
+        Moments[] moments = new Moments[channels];
+        for (int c = 0; c < channels; c++) {
+            moments[c] = new Moments();
+        }
+
+        if (input.layout().equals("NHWC")) {
+            int numPixels = batchSize * spatialSize;
+            int numShards = (numPixels + PIXEL_BLOCK - 1) / PIXEL_BLOCK;
+            double[][] shardMeans = new double[numShards][];
+            double[][] shardM2s = new double[numShards][];
+            IntStream.range(0, numShards).parallel().forEach(s -> {
+                int start = s * PIXEL_BLOCK;
+                int end = Math.min(numPixels, start + PIXEL_BLOCK);
+                double[] shardMean = new double[channels];
+                double[] shardM2 = new double[channels];
+                // All channels of a pixel share a count
+                for (int p = start; p < end; p++) {
+                    double invCount = 1.0 / (p - start + 1);
+                    int offset = p * channels;
+                    for (int c = 0; c < channels; c++) {
+                        double value = x[offset + c];
+                        double delta = value - shardMean[c];
+                        shardMean[c] += delta * invCount;
+                        shardM2[c] += delta * (value - shardMean[c]);
                     }
                 }
+                shardMeans[s] = shardMean;
+                shardM2s[s] = shardM2;
+            });
+            for (int s = 0; s < numShards; s++) {
+                int count = Math.min(numPixels, (s + 1) * PIXEL_BLOCK) - s * PIXEL_BLOCK;
+                for (int c = 0; c < channels; c++) {
+                    moments[c].combine(count, shardMeans[s][c], shardM2s[s][c]);
+                }
             }
-            var.set(c, sum / (batchSize * spatialSize));
-        });
-        
-        return var;
-    }
-    
-    private JMatrix normalize(JMatrix input, JMatrix mean, JMatrix variance) {
-        JMatrix normalized = input.zerosLike();
-        
-        int batchSize = input.length();
-        int channels = input.channels();
-        int height = input.height();
-        int width = input.width();
-        
-        // Pre-compute standard deviation inverses for efficiency
-        float[] stdInvs = new float[channels];
-        for (int c = 0; c < channels; c++) {
-            stdInvs[c] = (float)(1.0f / Math.sqrt(variance.get(c) + epsilon));
+            return moments;
         }
-        
-        IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
-            int n = nc / channels;
-            int c = nc % channels;
-                
-            float meanVal = mean.get(c);
-            float stdInv = stdInvs[c];
-            int batchOffset = n * channels * height * width;
-            int channelOffset = c * height * width;
-                
-            for (int h = 0; h < height; h++) {
-                int rowOffset = h * width;
-                    
-                for (int w = 0; w < width; w++) {
-                    int idx = batchOffset + channelOffset + rowOffset + w;
-                    normalized.set(idx, (input.get(idx) - meanVal) * stdInv);
+
+        double[] planeMeans = new double[batchSize * channels];
+        double[] planeM2s = new double[batchSize * channels];
+        IntStream.range(0, batchSize * channels).parallel().forEach(plane -> {
+            int offset = plane * spatialSize;
+            Moments planeMoments = new Moments();
+            // Reduce blocks that stay in cache exactly, and merge them into the plane
+            for (int start = offset; start < offset + spatialSize; start += WELFORD_BLOCK) {
+                int end = Math.min(offset + spatialSize, start + WELFORD_BLOCK);
+                double sum = 0;
+                for (int i = start; i < end; i++) {
+                    sum += x[i];
                 }
+                double blockMean = sum / (end - start);
+                double blockM2 = 0;
+                for (int i = start; i < end; i++) {
+                    double delta = x[i] - blockMean;
+                    blockM2 += delta * delta;
+                }
+                planeMoments.combine(end - start, blockMean, blockM2);
             }
+            planeMeans[plane] = planeMoments.mean;
+            planeM2s[plane] = planeMoments.m2;
         });
-        
-        return normalized;
+        for (int n = 0; n < batchSize; n++) {
+            for (int c = 0; c < channels; c++) {
+                moments[c].combine(spatialSize, planeMeans[n * channels + c], planeM2s[n * channels + c]);
+            }
+        }
+        return moments;
     }
-    
-    private JMatrix scaleAndShift(JMatrix normalized, JMatrix gamma, JMatrix beta) {
-        JMatrix output = normalized.zerosLike();
-
-        int batchSize = normalized.length();
-        int channels = normalized.channels();
-        int height = normalized.height();
-        int width = normalized.width();
-        
+
+    // output = input * scale + shift, with one scale and shift per channel
+    private static void scaleAndShift(float[] input, float[] output, float[] scale, float[] shift, JMatrix shape) {
+        int channels = shape.channels();
+        int spatialSize = shape.height() * shape.width();
+
+        if (shape.layout().equals("NHWC")) {
+            forEachPixelBlock(shape.length() * spatialSize, (start, end) -> {
+                for (int p = start; p < end; p++) {
+                    int offset = p * channels;
+                    for (int c = 0; c < channels; c++) {
+                        output[offset + c] = input[offset + c] * scale[c] + shift[c];
+                    }
+                }
+            });
+            return;
+        }
+
         // Iterate across batches and channels
-        IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
-            int n = nc / channels;
+        IntStream.range(0, shape.length() * channels).parallel().forEach(nc -> {
             int c = nc % channels;
-                
-            float gammaVal = gamma.get(c);
-            float betaVal = beta.get(c);
-            int batchOffset = n * channels * height * width;
-            int channelOffset = c * height * width;
-                
-            for (int h = 0; h < height; h++) {
-                int rowOffset = h * width;
-                    
-                for (int w = 0; w < width; w++) {
-                    int idx = batchOffset + channelOffset + rowOffset + w;
-
-                    output.set(idx, normalized.get(idx) * gammaVal + betaVal);
-                }
+            float scaleVal = scale[c];
+            float shiftVal = shift[c];
+            int offset = nc * spatialSize;
+            for (int i = offset; i < offset + spatialSize; i++) {
+                output[i] = input[i] * scaleVal + shiftVal;
             }
         });
-
-       
-        
-        return output;
-
     }
 
     public JMatrix backward(JMatrix dOut) {
-        int batchSize = input.length();
-        int channels = input.channels();
-        int height = input.height();
-        int width = input.width();
-        int spatialSize = height * width;
+        int batchSize = lastInput.length();
+        int channels = lastInput.channels();
+        int spatialSize = lastInput.height() * lastInput.width();
         int elements = batchSize * spatialSize;
-        
-        // Calculate dGamma and dBeta
-        IntStream.range(0, channels).parallel().forEach(c -> {
-                float dGammaSum = 0;
-                float dBetaSum = 0;
-                
-                for (int n = 0; n < batchSize; n++) {
-                    int batchOffset = n * channels * height * width;
-                    int channelOffset = c * height * width;
-                    
-                    for (int h = 0; h < height; h++) {
-                        int rowOffset = h * width;
-                        
-                        for (int w = 0; w < width; w++) {
-                            int idx = batchOffset + channelOffset + rowOffset + w;
-                            dGammaSum += dOut.get(idx) * xHat.get(idx);
-                            dBetaSum += dOut.get(idx);
-                        }
+        boolean channelsLast = lastInput.layout().equals("NHWC");
+
+        float[] x = lastInput.dtype().equals("float32") ?
+            lastInput.getMatrix() : lastInput.toFloat32().getMatrix();
+        float[] g = dOut.getMatrix();
+        float[] mean = batchMean;
+        float[] stdInvs = invStd;
+
+        // Calculate dBeta = sum(dOut) and dGamma = sum(dOut * xHat), with xHat recomputed from the input
+        double[] sums = new double[2 * channels];
+        if (channelsLast) {
+            int numPixels = elements;
+            int numShards = (numPixels + PIXEL_BLOCK - 1) / PIXEL_BLOCK;
+            double[][] partials = new double[numShards][];
+            IntStream.range(0, numShards).parallel().forEach(s -> {
+                double[] partial = new double[2 * channels];
+                int end = Math.min(numPixels, (s + 1) * PIXEL_BLOCK);
+                for (int p = s * PIXEL_BLOCK; p < end; p++) {
+                    int offset = p * channels;
+                    for (int c = 0; c < channels; c++) {
+                        float xHat = (x[offset + c] - mean[c]) * stdInvs[c];
+                        partial[c] += g[offset + c];
+                        partial[channels + c] += g[offset + c] * xHat;
                     }
                 }
-                
-                dGamma.set(c, dGammaSum);
-                dBeta.set(c, dBetaSum);
+                partials[s] = partial;
             });
-        
-        // Calculate dxHat = dout * gamma
-        IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
-                int n = nc / channels;
+            for (double[] partial : partials) {
+                for (int i = 0; i < 2 * channels; i++) {
+                    sums[i] += partial[i];
+                }
+            }
+        } else {
+            double[][] partials = new double[batchSize * channels][];
+            IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
                 int c = nc % channels;
-                float gammaVal = gamma.get(c);
-                
-                int batchOffset = n * channels * height * width;
-                int channelOffset = c * height * width;
-                
-                for (int h = 0; h < height; h++) {
-                    int rowOffset = h * width;
-                    
-                    for (int w = 0; w < width; w++) {
-                        int idx = batchOffset + channelOffset + rowOffset + w;
-                        dxHat.set(idx, dOut.get(idx) * gammaVal);
-                    }
+                int offset = nc * spatialSize;
+                double dBetaSum = 0;
+                double dGammaSum = 0;
+                for (int i = offset; i < offset + spatialSize; i++) {
+                    float xHat = (x[i] - mean[c]) * stdInvs[c];
+                    dBetaSum += g[i];
+                    dGammaSum += g[i] * xHat;
                 }
+                partials[nc] = new double[]{dBetaSum, dGammaSum};
             });
-        
-        // Calculate intermediate sums for dx calculation
-        IntStream.range(0, channels).parallel().forEach(c -> {
-                float dxHatSumVal = 0;
-                float dxHatXhatSumVal = 0;
-                
-                for (int n = 0; n < batchSize; n++) {
-                    int batchOffset = n * channels * height * width;
-                    int channelOffset = c * height * width;
-                    
-                    for (int h = 0; h < height; h++) {
-                        int rowOffset = h * width;
-                        
-                        for (int w = 0; w < width; w++) {
-                            int idx = batchOffset + channelOffset + rowOffset + w;
-                            dxHatSumVal += dxHat.get(idx);
-                            dxHatXhatSumVal += dxHat.get(idx) * xHat.get(idx);
-                        }
+            for (int nc = 0; nc < batchSize * channels; nc++) {
+                int c = nc % channels;
+                sums[c] += partials[nc][0];
+                sums[channels + c] += partials[nc][1];
+            }
+        }
+
+        /*
+         * dx = gamma * invStd * (dOut - mean(dOut) - xHat * mean(dOut * xHat)),
+         * as a per-channel multiply-add of dOut and the input
+         */
+        float[] gradScale = new float[channels];
+        float[] inputScale = new float[channels];
+        float[] gradShift = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            dBeta.set(c, sums[c]);
+            dGamma.set(c, sums[channels + c]);
+            float dBetaMean = (float)(sums[c] / elements);
+            float dGammaMean = (float)(sums[channels + c] / elements);
+            float coefficient = gamma.get(c) * stdInvs[c];
+            gradScale[c] = coefficient;
+            inputScale[c] = -coefficient * dGammaMean * stdInvs[c];
+            gradShift[c] = -coefficient * (dBetaMean - mean[c] * stdInvs[c] * dGammaMean);
+        }
+
+        if (dx == null || !dx.isSameShapeAs(lastInput) || !dx.layout().equals(lastInput.layout())) {
+            dx = new JMatrix(batchSize, channels, lastInput.height(), lastInput.width()).setLayout(lastInput.layout());
+        }
+        float[] dxMatrix = dx.getMatrix();
+        if (channelsLast) {
+            forEachPixelBlock(elements, (start, end) -> {
+                for (int p = start; p < end; p++) {
+                    int offset = p * channels;
+                    for (int c = 0; c < channels; c++) {
+                        float value = g[offset + c] * gradScale[c] + x[offset + c] * inputScale[c] + gradShift[c];
+                        dxMatrix[offset + c] = Math.max(-1.0f, Math.min(1.0f, value));
                     }
                 }
-                
-                dxHatSum.set(c, dxHatSumVal);
-                dxHatXhatSum.set(c, dxHatXhatSumVal);
             });
-        
-        // Calculate dx
-        float[] stdInvs = new float[channels];
-        for (int c = 0; c < channels; c++) {
-            stdInvs[c] = (float)(1.0f / Math.sqrt(batchVar.get(c) + epsilon));
-        }
-        
-        IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
-            int n = nc / channels;
-            int c = nc % channels;
-            float stdInv = stdInvs[c];
-            float dxHatSumVal = dxHatSum.get(c) / elements;
-            float dxHatXhatSumVal = dxHatXhatSum.get(c) / elements;
-                
-            int batchOffset = n * channels * height * width;
-            int channelOffset = c * height * width;
-                
-            for (int h = 0; h < height; h++) {
-                int rowOffset = h * width;
-                    
-                for (int w = 0; w < width; w++) {
-                    int idx = batchOffset + channelOffset + rowOffset + w;
-                    dx.set(idx, stdInv * (
-                        dxHat.get(idx) - 
-                        dxHatSumVal - 
-                        xHat.get(idx) * dxHatXhatSumVal
-                    ));
+        } else {
+            IntStream.range(0, batchSize * channels).parallel().forEach(nc -> {
+                int c = nc % channels;
+                int offset = nc * spatialSize;
+                for (int i = offset; i < offset + spatialSize; i++) {
+                    float value = g[i] * gradScale[c] + x[i] * inputScale[c] + gradShift[c];
+                    dxMatrix[i] = Math.max(-1.0f, Math.min(1.0f, value));
                 }
-            }
-        });
-        dx.clip(-1.0f, 1.0f);
-        
+            });
+        }
+
         return dx;
     }
 
+    // Run a task over each block of pixels of a channels-last tensor in parallel
+    private static void forEachPixelBlock(int numPixels, PixelBlockTask task) {
+        int numBlocks = (numPixels + PIXEL_BLOCK - 1) / PIXEL_BLOCK;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            task.run(b * PIXEL_BLOCK, Math.min(numPixels, (b + 1) * PIXEL_BLOCK));
+        });
+    }
+
+    @FunctionalInterface
+    private interface PixelBlockTask {
+        void run(int start, int end);
+    }
+
+    // Count, mean and sum of squared deviations of a channel, combined shard by shard
+    private static final class Moments {
+        long count;
+        double mean;
+        double m2;
+
+        // Chan et al.'s parallel update
+        void combine(long shardCount, double shardMean, double shardM2) {
+            long total = count + shardCount;
+            double delta = shardMean - mean;
+            mean += delta * shardCount / total;
+            m2 += shardM2 + delta * delta * ((double)count * shardCount / total);
+            count = total;
+        }
+
+        double variance() {
+            return m2 / count;
+        }
+    }
+
+    @Override
+    protected boolean supportsChannelsLast() {
+        // Inputs from Dense layers are (features, batch)
+        return !(getPreviousShapeInfluencer() instanceof Dense);
+    }
+
     @Override
     public JMatrix[] getWeights() {
         return new JMatrix[]{gamma, beta, runningMean, runningVar};
@@ -364,26 +376,30 @@ public class BatchNorm extends TrainableLayer {
     }
     @Override
     public void updateParameters(JMatrix[] parameterUpdates) {
-        // Scale gamma gradients to prevent large updates
-        JMatrix scaledGammaUpdate = parameterUpdates[0].multiply(0.1);
-        
-        gamma.subtractInPlace(scaledGammaUpdate);
+        gamma.subtractInPlace(parameterUpdates[0].multiply(updateScale(0)));
         beta.subtractInPlace(parameterUpdates[1]);
-        
+        parametersUpdated();
+    }
+
+    @Override
+    public float updateScale(int index) {
+        // Scale gamma gradients to prevent large updates
+        return (index == 0) ? 0.1f : 1.0f;
+    }
+
+    @Override
+    public void parametersUpdated() {
         // Ensure gamma doesn't get too small to avoid vanishing gradients
         for (int c = 0; c < featureSize; c++) {
             if (Math.abs(gamma.get(c)) < 0.01f) {
                 gamma.set(c, 0.01f * Math.signum(gamma.get(c)));
             }
         }
+        super.parametersUpdated();
     }
 
-    
 
-    @Override
-    public JMatrix getOutput() {
-        return output;
-    }
+
     @Override
     public JMatrix getGradient() {
         return dx;
@@ -392,4 +408,4 @@ public class BatchNorm extends TrainableLayer {
     public JMatrix[] getParameterGradients() {
         return new JMatrix[]{dGamma, dBeta};
     }
-}
\ No newline at end of file
+}
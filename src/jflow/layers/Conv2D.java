@@ -1,13 +1,16 @@
 package jflow.layers;
 
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import jflow.data.JMatrix;
+import jflow.data.QuantizedMatrix;
+import jflow.layers.templates.Quantizable;
 import jflow.layers.templates.TrainableLayer;
 
 import java.util.concurrent.ThreadLocalRandom;
 
-public class Conv2D extends TrainableLayer {
+public class Conv2D extends TrainableLayer implements Quantizable {
     private JMatrix filters;
     private JMatrix dFilters;
     private JMatrix lastInput;
@@ -15,53 +18,122 @@ public class Conv2D extends TrainableLayer {
     private JMatrix dBiases;
 
     private int numFilters;
-    private int filterSize;
-    private int stride;
+    private int kernelHeight;
+    private int kernelWidth;
+    private int strideHeight;
+    private int strideWidth;
+    private int dilationHeight;
+    private int dilationWidth;
     private int numChannels;
-    private int inputHeight;
-    private int inputWidth;
+    // Channels and filters are split into groups, with each filter seeing only its group's channels
+    private int groups;
+    private int groupChannels;
+    private int groupFilters;
     private int numImages;
 
     private String padding;
-    // Hyperparameters for gradient clipping
-    final double epsilon = 1e-8;         // Small constant for numerical stability
-    final double clipThreshold = 5.0;   // Global gradient clipping threshold
+    // Input shape given to the constructor, applied in build()
+    private int[] constructorInputShape;
+
+    // Geometry for the most recent input size, and for the last training forward pass
+    private ConvGeometry geometry;
+    private ConvGeometry trainingGeometry;
+
+    // Int8 inference
+    private QuantizedMatrix quantizedFilters;
+    private float inputScale;
+    private boolean calibrating;
+    private double inputAbsMax;
 
     public Conv2D(int numFilters, int filterSize, int stride, String padding) {
-        super("conv_2d");
+        this(numFilters, filterSize, stride, padding, 1);
+    }
+    public Conv2D(int numFilters, int filterSize, int stride, String padding, int groups) {
+        this("conv_2d", numFilters, new int[]{filterSize, filterSize}, new int[]{stride, stride}, 
+            new int[]{1, 1}, padding, groups);
+    }
+    public Conv2D(int numFilters, int filterSize, int stride, String padding, int[] inputShape) {
+        this(numFilters, filterSize, stride, padding, 1, inputShape);
+    }
+    public Conv2D(int numFilters, int filterSize, int stride, String padding, int groups, int[] inputShape) {
+        this(numFilters, filterSize, stride, padding, groups);
+        setConvInputShape(inputShape);
+    }
+    /**
+     * @param kernelSize            The filter (height, width).
+     * @param stride                The (vertical, horizontal) stride.
+     * @param dilation              The (vertical, horizontal) spacing between filter taps.
+     */
+    public Conv2D(int numFilters, int[] kernelSize, int[] stride, int[] dilation, String padding, int groups) {
+        this("conv_2d", numFilters, kernelSize, stride, dilation, padding, groups);
+    }
+    public Conv2D(int numFilters, int[] kernelSize, int[] stride, int[] dilation, String padding, 
+            int groups, int[] inputShape) {
+        this(numFilters, kernelSize, stride, dilation, padding, groups);
+        setConvInputShape(inputShape);
+    }
+    protected Conv2D(String type, int numFilters, int[] kernelSize, int[] stride, int[] dilation, 
+            String padding, int groups) {
+        super(type);
+        checkPair("kernel size", kernelSize);
+        checkPair("stride", stride);
+        checkPair("dilation", dilation);
         this.numFilters = numFilters;
-        this.filterSize = filterSize;
-        this.stride = stride;
+        this.kernelHeight = kernelSize[0];
+        this.kernelWidth = kernelSize[1];
+        this.strideHeight = stride[0];
+        this.strideWidth = stride[1];
+        this.dilationHeight = dilation[0];
+        this.dilationWidth = dilation[1];
         this.padding = padding;
+        this.groups = groups;
         if (!(padding.equals("same_padding") || padding.equals("valid_padding"))) {
             throw new IllegalArgumentException("Only same_padding and valid_padding allowed.");
         }
+        if (groups < 1) {
+            throw new IllegalArgumentException("Conv2D groups should be positive. Got: " + groups + ".");
+        }
     }
-    public Conv2D(int numFilters, int filterSize, int stride, String padding, int[] inputShape) {
-        super("conv_2d");
-        this.numFilters = numFilters;
-        this.filterSize = filterSize;
-        this.stride = stride;
-        
-        
-        if (!(padding.equals("same_padding") || padding.equals("valid_padding"))) {
-            throw new IllegalArgumentException("Only same_padding and valid_padding allowed.");
+
+    private static void checkPair(String name, int[] pair) {
+        if (pair.length != 2 || pair[0] < 1 || pair[1] < 1) {
+            throw new IllegalArgumentException(
+                "Conv2D " + name + " should be two positive values. Got: " + Arrays.toString(pair) + "."
+            );
         }
-        this.padding = padding;
+    }
+
+    private void setConvInputShape(int[] inputShape) {
         if (inputShape.length != 3) {
             throw new IllegalArgumentException(
                 "Conv2D input shape should have 3 dimensions. Got: "
                 + inputShape.length + "."
             );
         }
-        setInputShape(inputShape);
+        this.constructorInputShape = inputShape;
+    }
+
+    // Set the filter count and groups once the number of input channels is known
+    void setFilterGroups(int numFilters, int groups) {
+        this.numFilters = numFilters;
+        this.groups = groups;
+    }
+
+    // Lets layers that run Conv2D stages internally pass on their storage precision
+    void setRetainedPrecision(String storagePrecision) {
+        setStoragePrecision(storagePrecision);
     }
 
     @Override
     public void build(int IDnum) {
+        if (constructorInputShape != null && internalGetInputShape() == null) {
+            setInputShape(constructorInputShape);
+        }
         super.build(IDnum);
+        int[] inputShape;
         if (internalGetInputShape() != null) {
-            this.numChannels = internalGetInputShape()[0];
+            int[] shape = internalGetInputShape();
+            inputShape = new int[]{-1, shape[0], shape[1], shape[2]};
         } else {
             if (getPreviousLayer() == null) {
                 throw new IllegalStateException(
@@ -69,98 +141,144 @@ public class Conv2D extends TrainableLayer {
                     ": Cannot build the first layer without an input shape."
                 );
             }
-            this.numChannels = getPreviousLayer().outputShape()[1];
+            inputShape = getPreviousLayer().outputShape();
+        }
+        this.numChannels = inputShape[1];
+        if (numChannels % groups != 0 || numFilters % groups != 0) {
+            throw new IllegalArgumentException(
+                "In " + getName() + ": " + numChannels + " input channels and " + numFilters + 
+                " filters are not both divisible by " + groups + " groups."
+            );
         }
-        setNumTrainableParameters(numFilters * numChannels * filterSize * filterSize + numFilters);
+        this.groupChannels = numChannels / groups;
+        this.groupFilters = numFilters / groups;
+        int taps = kernelHeight * kernelWidth;
+        setNumTrainableParameters(numFilters * groupChannels * taps + numFilters);
         // He initialization
 
-        double stdDev = Math.sqrt(2.0 / (numChannels * filterSize * filterSize));
+        double stdDev = Math.sqrt(2.0 / (groupChannels * taps));
 
         double filterScale = 1.0;
 
-        int filterSizeTotal = numFilters * numChannels * filterSize * filterSize;
+        int filterSizeTotal = numFilters * groupChannels * taps;
         float[] filters = new float[filterSizeTotal];
 
         IntStream.range(0, filterSizeTotal).parallel().forEach(i -> {
             filters[i] = (float)(ThreadLocalRandom.current().nextGaussian() * stdDev * filterScale);
         });
 
-        this.filters = new JMatrix(filters, numFilters, numChannels, filterSize, filterSize, "filters");
+        this.filters = new JMatrix(filters, numFilters, groupChannels, kernelHeight, kernelWidth, "filters");
 
         // Initialize biases to 0
         biases = new JMatrix(numFilters, 1, 1, 1, "biases");
 
         // Set name for debug capability
-        dFilters = new JMatrix(numFilters, numChannels, filterSize, filterSize, "dFilters");
+        dFilters = new JMatrix(numFilters, groupChannels, kernelHeight, kernelWidth, "dFilters");
         dBiases = new JMatrix(numFilters, 1, 1, 1, "dBiases");
-        
+
+        // Prepare the geometry for the expected input size
+        if (inputShape.length == 4 && inputShape[2] > 0 && inputShape[3] > 0) {
+            geometry(inputShape[2], inputShape[3]);
+        }
+    }
+
+    // The cached geometry for an input size, recomputed only when the size changes
+    private ConvGeometry geometry(int inputHeight, int inputWidth) {
+        ConvGeometry cached = geometry;
+        if (cached == null || !cached.matches(inputHeight, inputWidth)) {
+            cached = new ConvGeometry(kernelHeight, kernelWidth, strideHeight, strideWidth, 
+                dilationHeight, dilationWidth, padding.equals("same_padding"), inputHeight, inputWidth);
+            geometry = cached;
+        }
+        return cached;
     }
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
+        return trackOutput(convolve(input, training), training);
+    }
+
+    @Override
+    public JMatrix backward(JMatrix input) {
+        return trackGradient(convolveBackward(input));
+    }
+
+    // The forward pass, without tracking the output
+    JMatrix convolve(JMatrix input, boolean training) {
+        int numImages = input.length();
+        ConvGeometry g = geometry(input.height(), input.width());
+        // Only training writes per-call state, keeping inference safe to share
         if (training) {
-            lastInput = input;
+            lastInput = retain(input);
+            this.numImages = numImages;
+            this.trainingGeometry = g;
         }
-        this.inputHeight = input.height();
-        this.inputWidth = input.width();
-        this.numImages = input.length();
     
-        // Calculate output dimensions based on padding and stride
-        int outputHeight, outputWidth;
-        if (padding.equals("same_padding")) {
-            outputHeight = (int)Math.ceil((double)inputHeight / stride);
-            outputWidth = (int)Math.ceil((double)inputWidth / stride);
-        } else { // valid padding
-            outputHeight = (inputHeight - filterSize) / stride + 1;
-            outputWidth = (inputWidth - filterSize) / stride + 1;
+        if (!training) {
+            if (calibrating) {
+                inputAbsMax = Math.max(inputAbsMax, input.absMax());
+            }
+            if (quantizedFilters != null) {
+                // Int8 kernels run in NCHW
+                JMatrix output = quantizedFilters.conv2dForward(input.toLayout("NCHW"), inputScale, biases, 
+                    strideHeight, strideWidth, dilationHeight, dilationWidth, g.padTop, g.padLeft, 
+                    g.outputHeight, g.outputWidth, groups);
+                return output.toLayout(input.layout());
+            }
+        }
+
+        if (input.layout().equals("NHWC")) {
+            return forwardChannelsLast(input, g);
         }
     
         // Initialize output matrix with proper dimensions
-        JMatrix A = new JMatrix(numImages, numFilters, outputHeight, outputWidth);
+        JMatrix A = new JMatrix(numImages, numFilters, g.outputHeight, g.outputWidth);
+        float[] out = A.getMatrix();
+        float[] in = input.getMatrix();
         
         // Calculate forward output
         if (numImages <= Runtime.getRuntime().availableProcessors() / 2) {
             // For each image in the batch
             for (int imageIndex = 0; imageIndex < numImages; imageIndex++) {
                 final int imgIdx = imageIndex;
-                int startIdx = imgIdx * numChannels * inputHeight * inputWidth;
                 
                 // Parallelize across filters
                 IntStream.range(0, numFilters).parallel().forEach(filterIndex -> {
-                    int outputIdx = (imgIdx * numFilters + filterIndex) * outputHeight * outputWidth;
-                    convolveWithKernel(A.getMatrix(), outputIdx, input.getMatrix(), startIdx,
-                            filters.getMatrix(), filterIndex, biases.get(filterIndex), padding);
+                    convolveWithKernel(out, in, imgIdx, filterIndex, g);
                 });
             }
         } else {
             // Parallelize across batch for larger batch sizes
             IntStream.range(0, numImages).parallel().forEach(imageIndex -> {
                 for (int filterIndex = 0; filterIndex < numFilters; filterIndex++) {
-                    int startIdx = imageIndex * numChannels * inputHeight * inputWidth;
-                    int outputIdx = (imageIndex * numFilters + filterIndex) * outputHeight * outputWidth;
-                    convolveWithKernel(A.getMatrix(), outputIdx, input.getMatrix(), startIdx,
-                            filters.getMatrix(), filterIndex, biases.get(filterIndex), padding);
+                    convolveWithKernel(out, in, imageIndex, filterIndex, g);
                 }
             });
         }
        
-        return trackOutput(A, training);
+        return A;
     }
 
-    @Override
-    public JMatrix backward(JMatrix input) {
-        // Calculate output dimensions based on padding and stride
-        int outputHeight, outputWidth;
-        if (padding.equals("same_padding")) {
-            outputHeight = (int)Math.ceil((double)inputHeight / stride);
-            outputWidth = (int)Math.ceil((double)inputWidth / stride);
-        } else { // valid padding
-            outputHeight = (inputHeight - filterSize) / stride + 1;
-            outputWidth = (inputWidth - filterSize) / stride + 1;
+    // The backward pass, without tracking the gradient
+    JMatrix convolveBackward(JMatrix input) {
+        ConvGeometry g = trainingGeometry;
+        int inputHeight = g.inputHeight;
+        int inputWidth = g.inputWidth;
+        int outputHeight = g.outputHeight;
+        int outputWidth = g.outputWidth;
+
+        if (lastInput.layout().equals("NHWC")) {
+            return backwardChannelsLast(input, g);
         }
         
         // Initialize dX with proper dimensions
         JMatrix dX = new JMatrix(numImages, numChannels, inputHeight, inputWidth);
+        float[] x = Elementwise.values(lastInput);
+        float[] dZ = Elementwise.values(input);
+        float[] dFilterValues = dFilters.getMatrix();
+        int taps = kernelHeight * kernelWidth;
+        int inputPlane = inputHeight * inputWidth;
+        int outputPlane = outputHeight * outputWidth;
         
         // Calculate gradients in batch
     
@@ -169,262 +287,287 @@ public class Conv2D extends TrainableLayer {
             // Calculate bias gradients
             float biasGrad = 0;
             for (int i = 0; i < numImages; i++) {
-                int dZFilterOffset = (i * numFilters + k) * outputHeight * outputWidth;
-                for (int oh = 0; oh < outputHeight; oh++) {
-                    for (int ow = 0; ow < outputWidth; ow++) {
-                        biasGrad += input.get(dZFilterOffset + oh * outputWidth + ow);
-                    }
+                int dZFilterOffset = (i * numFilters + k) * outputPlane;
+                for (int o = 0; o < outputPlane; o++) {
+                    biasGrad += dZ[dZFilterOffset + o];
                 }
             }
             dBiases.set(k, biasGrad);
             
-            // Calculate filter gradients
-            for (int c = 0; c < numChannels; c++) {
-                int filterChannelOffset = ((k * numChannels) + c) * filterSize * filterSize;
+            // Calculate filter gradients over the channels of this filter's group
+            int firstChannel = (k / groupFilters) * groupChannels;
+            for (int c = 0; c < groupChannels; c++) {
+                int filterChannelOffset = ((k * groupChannels) + c) * taps;
                 
-                for (int fh = 0; fh < filterSize; fh++) {
-                    for (int fw = 0; fw < filterSize; fw++) {
+                for (int fh = 0; fh < kernelHeight; fh++) {
+                    for (int fw = 0; fw < kernelWidth; fw++) {
                         float filterGrad = 0;
                         
                         // Accumulate gradients from all images in batch
                         for (int i = 0; i < numImages; i++) {
-                            int inputChannelOffset = (i * numChannels + c) * inputHeight * inputWidth;
-                            int dZFilterOffset = (i * numFilters + k) * outputHeight * outputWidth;
-                            
-                            for (int oh = 0; oh < outputHeight; oh++) {
-                                for (int ow = 0; ow < outputWidth; ow++) {
-                                    // Map output coordinates to input coordinates
-                                    int ih_base, iw_base;
-                                    
-                                    if (padding.equals("same_padding")) {
-                                        // Calculate padding size
-                                        int padTotal_h = Math.max(0, (outputHeight - 1) * stride + filterSize - inputHeight);
-                                        int padTotal_w = Math.max(0, (outputWidth - 1) * stride + filterSize - inputWidth);
-                                        int padTop = padTotal_h / 2;
-                                        int padLeft = padTotal_w / 2;
-                                        
-                                        // Adjust for stride and padding
-                                        ih_base = oh * stride - padTop;
-                                        iw_base = ow * stride - padLeft;
-                                    } else { // valid padding
-                                        ih_base = oh * stride;
-                                        iw_base = ow * stride;
-                                    }
-                                    
-                                    // The position in input corresponding to this filter position
-                                    int ih = ih_base + fh;
-                                    int iw = iw_base + fw;
-                                    
-                                    if (ih >= 0 && ih < inputHeight && iw >= 0 && iw < inputWidth) {
-                                        int inputIdx = inputChannelOffset + (ih * inputWidth + iw);
-                                        int dZIdx = dZFilterOffset + (oh * outputWidth + ow);
-                                        filterGrad += lastInput.get(inputIdx) * input.get(dZIdx);
-                                    }
-                                }
-                            }
+                            int inputChannelOffset = (i * numChannels + firstChannel + c) * inputPlane;
+                            int dZFilterOffset = (i * numFilters + k) * outputPlane;
+                            filterGrad = g.accumulateTapGradient(filterGrad, x, inputChannelOffset, 
+                                dZ, dZFilterOffset, fh, fw);
                         }
                         
-                        dFilters.set(filterChannelOffset + (fh * filterSize + fw), filterGrad);
+                        dFilterValues[filterChannelOffset + (fh * kernelWidth + fw)] = filterGrad;
                     }
                 }
             }
         });
         
         // Calculate input gradients (dX)
-        // Parallelize across input channels and spatial blocks
-        final int TILE_SIZE = 32;
-        int numTilesH = (inputHeight + TILE_SIZE - 1) / TILE_SIZE;
-        int numTilesW = (inputWidth + TILE_SIZE - 1) / TILE_SIZE;
-    
-        // Create parallel tasks for each channel+tile combination
-        IntStream.range(0, numChannels * numTilesH * numTilesW).parallel().forEach(taskIdx -> {
-            int c = taskIdx / (numTilesH * numTilesW);
-            int tileIdx = taskIdx % (numTilesH * numTilesW);
-            int tileH = tileIdx / numTilesW;
-            int tileW = tileIdx % numTilesW;
-            
-            // Calculate tile boundaries
-            int ih_start = tileH * TILE_SIZE;
-            int ih_end = Math.min(ih_start + TILE_SIZE, inputHeight);
-            int iw_start = tileW * TILE_SIZE;
-            int iw_end = Math.min(iw_start + TILE_SIZE, inputWidth);
-            
-            // Calculate padding for position mapping
-            int padTop = 0, padLeft = 0;
-            if (padding.equals("same_padding")) {
-                int padTotal_h = Math.max(0, (outputHeight - 1) * stride + filterSize - inputHeight);
-                int padTotal_w = Math.max(0, (outputWidth - 1) * stride + filterSize - inputWidth);
-                padTop = padTotal_h / 2;
-                padLeft = padTotal_w / 2;
+        // Parallelize across image planes, scattering each output gradient back through the filters
+        float[] kernel = filters.getMatrix();
+        float[] dx = dX.getMatrix();
+        IntStream.range(0, numImages * numChannels).parallel().forEach(plane -> {
+            int i = plane / numChannels;
+            int c = plane % numChannels;
+
+            // Only the filters of this channel's group read it
+            int firstFilter = (c / groupChannels) * groupFilters;
+            int groupChannel = c % groupChannels;
+            for (int k = firstFilter; k < firstFilter + groupFilters; k++) {
+                g.convolveTransposedPlane(dZ, (i * numFilters + k) * outputPlane, 
+                    kernel, (k * groupChannels + groupChannel) * taps, dx, plane * inputPlane);
             }
-            
-            // Process for all images in the batch
-            for (int i = 0; i < numImages; i++) {
-                int dXChannelOffset = (i * numChannels + c) * inputHeight * inputWidth;
-                
-                // Compute gradients for this tile
-                for (int ih = ih_start; ih < ih_end; ih++) {
-                    for (int iw = iw_start; iw < iw_end; iw++) {
-                        float sum = 0;
-                        
-                        // For each filter
-                        for (int k = 0; k < numFilters; k++) {
-                            int filterChannelBaseOffset = (k * numChannels + c) * filterSize * filterSize;
-                            int dZFilterOffset = (i * numFilters + k) * outputHeight * outputWidth;
-                            
-                            // For each filter position that affects this input pixel
-                            for (int fh = 0; fh < filterSize; fh++) {
-                                for (int fw = 0; fw < filterSize; fw++) {
-                                    // Rotate filter by 180 degrees for the transposed convolution
-                                    int rotatedFh = filterSize - 1 - fh;
-                                    int rotatedFw = filterSize - 1 - fw;
-                                    int filterPos = filterChannelBaseOffset + (rotatedFh * filterSize + rotatedFw);
-                                    
-                                    // Calculate corresponding output position with padding and stride
-                                    int oh, ow;
-                                    
-                                    if (padding.equals("same_padding")) {
-                                        // Determine which output cell affects this input position
-                                        oh = (ih - rotatedFh + padTop) / stride;
-                                        ow = (iw - rotatedFw + padLeft) / stride;
-                                        
-                                        // Check for stride boundary
-                                        if ((ih - rotatedFh + padTop) % stride != 0 || 
-                                            (iw - rotatedFw + padLeft) % stride != 0) {
-                                            continue;
-                                        }
-                                    } else { // valid padding
-                                        // For valid padding
-                                        oh = (ih - rotatedFh) / stride;
-                                        ow = (iw - rotatedFw) / stride;
-                                        
-                                        // Check for stride boundary
-                                        if ((ih - rotatedFh) % stride != 0 || 
-                                            (iw - rotatedFw) % stride != 0) {
-                                            continue;
-                                        }
-                                    }
-                                    
-                                    if (oh >= 0 && oh < outputHeight && ow >= 0 && ow < outputWidth) {
-                                        int dZPos = dZFilterOffset + (oh * outputWidth + ow);
-                                        sum += filters.get(filterPos) * input.get(dZPos);
-                                    }
-                                }
+        });
+    
+        return dX;
+    }
+    
+    // Apply one filter to one image, starting from its bias
+    private void convolveWithKernel(float[] output, float[] input, int imageIndex, int filterIdx, 
+                                ConvGeometry g) {
+        int inputPlane = g.inputHeight * g.inputWidth;
+        int outputPlane = g.outputHeight * g.outputWidth;
+        int outIdx = (imageIndex * numFilters + filterIdx) * outputPlane;
+        Arrays.fill(output, outIdx, outIdx + outputPlane, biases.get(filterIdx));
+
+        // The input channels of this filter's group
+        int firstChannel = (filterIdx / groupFilters) * groupChannels;
+        int taps = kernelHeight * kernelWidth;
+        for (int c = 0; c < groupChannels; c++) {
+            int inputChannelOffset = (imageIndex * numChannels + firstChannel + c) * inputPlane;
+            int filterChannelOffset = (filterIdx * groupChannels + c) * taps;
+            g.convolvePlane(input, inputChannelOffset, filters.getMatrix(), filterChannelOffset, 
+                output, outIdx);
+        }
+    }
+
+    /*
+     * Forward pass on channels-last input. Filters are reordered to 
+     * (kernelHeight, kernelWidth, groupChannels, numFilters), so each input value 
+     * updates the contiguous outputs of the filters of its group at a pixel.
+     */
+    private JMatrix forwardChannelsLast(JMatrix input, ConvGeometry g) {
+        int inputHeight = g.inputHeight;
+        int inputWidth = g.inputWidth;
+        int outputHeight = g.outputHeight;
+        int outputWidth = g.outputWidth;
+        int numImages = input.length();
+        boolean depthwise = groupChannels == 1 && groupFilters == 1;
+
+        float[] in = input.getMatrix();
+        float[] kernel = reorderFilters(true);
+        float[] bias = biases.getMatrix();
+        JMatrix A = new JMatrix(numImages, numFilters, outputHeight, outputWidth).setLayout("NHWC");
+        float[] out = A.getMatrix();
+
+        // Parallelize across output rows of all images
+        IntStream.range(0, numImages * outputHeight).parallel().forEach(row -> {
+            int n = row / outputHeight;
+            int oh = row % outputHeight;
+            for (int ow = 0; ow < outputWidth; ow++) {
+                int outIdx = (row * outputWidth + ow) * numFilters;
+                System.arraycopy(bias, 0, out, outIdx, numFilters);
+
+                for (int fh = 0; fh < kernelHeight; fh++) {
+                    if (oh < g.rowStart[fh] || oh >= g.rowEnd[fh]) {
+                        continue;
+                    }
+                    int ih = oh * strideHeight + fh * dilationHeight - g.padTop;
+                    for (int fw = 0; fw < kernelWidth; fw++) {
+                        if (ow < g.colStart[fw] || ow >= g.colEnd[fw]) {
+                            continue;
+                        }
+                        int iw = ow * strideWidth + fw * dilationWidth - g.padLeft;
+                        int inIdx = ((n * inputHeight + ih) * inputWidth + iw) * numChannels;
+                        int kernelIdx = (fh * kernelWidth + fw) * groupChannels * numFilters;
+                        if (depthwise) {
+                            // Each channel feeds only its own filter
+                            for (int c = 0; c < numChannels; c++) {
+                                out[outIdx + c] += in[inIdx + c] * kernel[kernelIdx + c];
+                            }
+                            continue;
+                        }
+                        for (int c = 0; c < numChannels; c++) {
+                            float value = in[inIdx + c];
+                            int group = c / groupChannels;
+                            int filterIdx = kernelIdx + (c % groupChannels) * numFilters + group * groupFilters;
+                            int groupOutIdx = outIdx + group * groupFilters;
+                            for (int k = 0; k < groupFilters; k++) {
+                                out[groupOutIdx + k] += value * kernel[filterIdx + k];
                             }
                         }
-                        
-                        int dXPos = dXChannelOffset + (ih * inputWidth + iw);
-                        dX.set(dXPos, sum);
                     }
                 }
             }
         });
-        
-        // Apply adaptive gradient scaling
-        adaptiveScale(dFilters, dBiases, dX);
-    
-        return trackGradient(dX);
+        return A;
     }
-    
-    // Apply convolution to one image at a time
-    private void convolveWithKernel(float[] output, int outIdx, float[] input, int inIdx, 
-                               float[] kernel, int filterIdx, float bias, String padding) {
-        // Calculate padding and output dimensions
-        int outputHeight, outputWidth;
-        int padTop = 0, padBottom = 0, padLeft = 0, padRight = 0;
-        
-        if (padding.equals("same_padding")) {
-            int padTotal_h = Math.max(0, (inputHeight - 1) * stride + filterSize - inputHeight);
-            int padTotal_w = Math.max(0, (inputWidth - 1) * stride + filterSize - inputWidth);
-            
-            padTop = padTotal_h / 2;
-            padBottom = padTotal_h - padTop;
-            padLeft = padTotal_w / 2;
-            padRight = padTotal_w - padLeft;
-            
-            outputHeight = (int)Math.ceil((double)inputHeight / stride);
-            outputWidth = (int)Math.ceil((double)inputWidth / stride);
-        } else { // valid padding
-            outputHeight = (inputHeight - filterSize) / stride + 1;
-            outputWidth = (inputWidth - filterSize) / stride + 1;
+
+    // Backward pass on channels-last input, with the same sums as the NCHW backward pass
+    private JMatrix backwardChannelsLast(JMatrix dZ, ConvGeometry geometry) {
+        int inputHeight = geometry.inputHeight;
+        int inputWidth = geometry.inputWidth;
+        int outputHeight = geometry.outputHeight;
+        int outputWidth = geometry.outputWidth;
+        int top = geometry.padTop;
+        int left = geometry.padLeft;
+        int taps = kernelHeight * kernelWidth;
+        boolean depthwise = groupChannels == 1 && groupFilters == 1;
+
+        float[] x = lastInput.dtype().equals("float32") ? 
+            lastInput.getMatrix() : lastInput.toFloat32().getMatrix();
+        float[] g = dZ.getMatrix();
+
+        // Bias gradients
+        float[] biasGrads = new float[numFilters];
+        int numPixels = numImages * outputHeight * outputWidth;
+        for (int p = 0; p < numPixels; p++) {
+            for (int k = 0; k < numFilters; k++) {
+                biasGrads[k] += g[p * numFilters + k];
+            }
         }
-        
-        // Process each position in the output feature map
-        for (int oh = 0; oh < outputHeight; oh++) {
-            for (int ow = 0; ow < outputWidth; ow++) {
-                float sum = bias;
-                
-                // For each input channel
-                for (int c = 0; c < numChannels; c++) {
-                    int inputChannelOffset = inIdx + (c * inputHeight * inputWidth);
-                    int filterChannelOffset = (filterIdx * numChannels + c) * filterSize * filterSize;
-                    
-                    // For each element in the filter
-                    for (int fh = 0; fh < filterSize; fh++) {
-                        for (int fw = 0; fw < filterSize; fw++) {
-                            // Calculate input position
-                            int ih, iw;
-                            
-                            if (padding.equals("same_padding")) {
-                                ih = oh * stride + fh - padTop;
-                                iw = ow * stride + fw - padLeft;
-                            } else { // valid padding
-                                ih = oh * stride + fh;
-                                iw = ow * stride + fw;
+        System.arraycopy(biasGrads, 0, dBiases.getMatrix(), 0, numFilters);
+
+        // Filter gradients in (kernelHeight, kernelWidth, groupChannels, numFilters) order, 
+        // one task per filter tap and channel, each writing the filters of the channel's group
+        float[] filterGrads = new float[taps * groupChannels * numFilters];
+        IntStream.range(0, taps * numChannels).parallel().forEach(task -> {
+            int fh = (task / numChannels) / kernelWidth;
+            int fw = (task / numChannels) % kernelWidth;
+            int c = task % numChannels;
+            int group = c / groupChannels;
+            int firstFilter = group * groupFilters;
+            int gradIdx = ((task / numChannels) * groupChannels + c % groupChannels) * numFilters + firstFilter;
+            for (int n = 0; n < numImages; n++) {
+                for (int oh = geometry.rowStart[fh]; oh < geometry.rowEnd[fh]; oh++) {
+                    int ih = oh * strideHeight - top + fh * dilationHeight;
+                    for (int ow = geometry.colStart[fw]; ow < geometry.colEnd[fw]; ow++) {
+                        int iw = ow * strideWidth - left + fw * dilationWidth;
+                        float value = x[((n * inputHeight + ih) * inputWidth + iw) * numChannels + c];
+                        if (value == 0) {
+                            continue;
+                        }
+                        int dZIdx = ((n * outputHeight + oh) * outputWidth + ow) * numFilters + firstFilter;
+                        for (int k = 0; k < groupFilters; k++) {
+                            filterGrads[gradIdx + k] += value * g[dZIdx + k];
+                        }
+                    }
+                }
+            }
+        });
+        float[] dFilterValues = dFilters.getMatrix();
+        IntStream.range(0, numFilters).parallel().forEach(k -> {
+            for (int c = 0; c < groupChannels; c++) {
+                for (int t = 0; t < taps; t++) {
+                    dFilterValues[(k * groupChannels + c) * taps + t] = 
+                        filterGrads[(t * groupChannels + c) * numFilters + k];
+                }
+            }
+        });
+
+        // Input gradients, gathered per input pixel from every output it contributed to
+        float[] kernel = reorderFilters(false);
+        JMatrix dX = new JMatrix(numImages, numChannels, inputHeight, inputWidth).setLayout("NHWC");
+        float[] dx = dX.getMatrix();
+        IntStream.range(0, numImages * inputHeight).parallel().forEach(row -> {
+            int n = row / inputHeight;
+            int ih = row % inputHeight;
+            for (int iw = 0; iw < inputWidth; iw++) {
+                int dXIdx = (row * inputWidth + iw) * numChannels;
+                for (int fh = 0; fh < kernelHeight; fh++) {
+                    int ohStride = ih + top - fh * dilationHeight;
+                    if (ohStride < 0 || ohStride % strideHeight != 0 || ohStride / strideHeight >= outputHeight) {
+                        continue;
+                    }
+                    int oh = ohStride / strideHeight;
+                    for (int fw = 0; fw < kernelWidth; fw++) {
+                        int owStride = iw + left - fw * dilationWidth;
+                        if (owStride < 0 || owStride % strideWidth != 0 || owStride / strideWidth >= outputWidth) {
+                            continue;
+                        }
+                        int ow = owStride / strideWidth;
+                        int dZIdx = ((n * outputHeight + oh) * outputWidth + ow) * numFilters;
+                        int kernelIdx = (fh * kernelWidth + fw) * numFilters * groupChannels;
+                        if (depthwise) {
+                            for (int c = 0; c < numChannels; c++) {
+                                dx[dXIdx + c] += g[dZIdx + c] * kernel[kernelIdx + c];
                             }
-                            
-                            // Check bounds and accumulate weighted value if within bounds
-                            if (ih >= 0 && ih < inputHeight && iw >= 0 && iw < inputWidth) {
-                                int inputPos = inputChannelOffset + (ih * inputWidth + iw);
-                                int filterPos = filterChannelOffset + (fh * filterSize + fw);
-                                
-                                sum += input[inputPos] * kernel[filterPos];
+                            continue;
+                        }
+                        for (int k = 0; k < numFilters; k++) {
+                            float grad = g[dZIdx + k];
+                            if (grad == 0) {
+                                continue;
+                            }
+                            int filterIdx = kernelIdx + k * groupChannels;
+                            int groupDXIdx = dXIdx + (k / groupFilters) * groupChannels;
+                            for (int c = 0; c < groupChannels; c++) {
+                                dx[groupDXIdx + c] += grad * kernel[filterIdx + c];
                             }
                         }
                     }
                 }
-                
-                // Store result in output
-                output[outIdx + (oh * outputWidth + ow)] = sum;
             }
-        }
+        });
+
+        return dX;
+    }
+
+    /*
+     * Reorder filters from (numFilters, groupChannels, kernelHeight, kernelWidth) to 
+     * (kernelHeight, kernelWidth, groupChannels, numFilters) when filtersInner, 
+     * otherwise to (kernelHeight, kernelWidth, numFilters, groupChannels).
+     */
+    private float[] reorderFilters(boolean filtersInner) {
+        float[] values = filters.getMatrix();
+        int taps = kernelHeight * kernelWidth;
+        float[] reordered = new float[values.length];
+        IntStream.range(0, numFilters).parallel().forEach(k -> {
+            for (int c = 0; c < groupChannels; c++) {
+                for (int t = 0; t < taps; t++) {
+                    int idx = filtersInner ? 
+                        (t * groupChannels + c) * numFilters + k : 
+                        (t * numFilters + k) * groupChannels + c;
+                    reordered[idx] = values[(k * groupChannels + c) * taps + t];
+                }
+            }
+        });
+        return reordered;
+    }
+
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
     }
 
     @Override
     public void updateParameters(JMatrix[] parameterUpdates) {
         filters.subtractInPlace(parameterUpdates[0]);
         biases.subtractInPlace(parameterUpdates[1]);
+        parametersUpdated();
     }
 
-    private void adaptiveScale(JMatrix dFilters, JMatrix dBiases, JMatrix dX) {
-        // Clip filter gradients
-        double filterNorm = filters.frobeniusNorm();
-        double dFilterNorm = dFilters.frobeniusNorm();
-        double maxFilterNorm = epsilon * filterNorm;
-        
-        if (dFilterNorm > maxFilterNorm) {
-            double scaleFilter = maxFilterNorm / dFilterNorm;
-            dFilters.multiplyInPlace(scaleFilter);
-        }
-        
-        // Clip bias gradients
-        double biasNorm = biases.frobeniusNorm();
-        double dBiasNorm = dBiases.frobeniusNorm();
-        double maxBiasNorm = Math.max(dBiasNorm, epsilon * biasNorm);
-        
-        if (dBiasNorm > maxBiasNorm) {
-            double scaleBias = maxBiasNorm / dBiasNorm;
-            dBiases.multiplyInPlace(scaleBias);
-        }
-        
-        // Apply gradient scaling for input gradients if needed
-        double dXNorm = dX.frobeniusNorm();
-        if (dXNorm > clipThreshold) {
-            double scale = clipThreshold / (dXNorm + epsilon);
-            dX.multiplyInPlace(scale);
-        }
+    @Override
+    public void weightsChanged() {
+        // Int8 filters are stale after an update
+        quantizedFilters = null;
     }
-    
+
     @Override
     public JMatrix[] getWeights() {
         return new JMatrix[]{filters, biases};
@@ -435,6 +578,53 @@ public class Conv2D extends TrainableLayer {
         return new JMatrix[]{dFilters, dBiases};
     }
 
+    @Override
+    public void setCalibrating(boolean calibrating) {
+        if (calibrating) {
+            inputAbsMax = 0;
+        }
+        this.calibrating = calibrating;
+    }
+
+    @Override
+    public void quantize() {
+        inputScale = QuantizedMatrix.scaleFor(inputAbsMax);
+        quantizedFilters = QuantizedMatrix.quantizePerChannel(filters);
+    }
+
+    @Override
+    public void dequantize() {
+        quantizedFilters = null;
+    }
+
+    @Override
+    public boolean isQuantized() {
+        return quantizedFilters != null;
+    }
+
+    @Override
+    public QuantizedMatrix getQuantizedWeights() {
+        return quantizedFilters;
+    }
+
+    @Override
+    public float getInputScale() {
+        return inputScale;
+    }
+
+    @Override
+    public void setQuantizedWeights(QuantizedMatrix quantizedFilters, float inputScale) {
+        if (quantizedFilters.size() != filters.size()) {
+            throw new IllegalArgumentException(
+                "In " + getName() + ": Expected " + filters.size() + 
+                " quantized filter values. Got: " + quantizedFilters.size() + "."
+            );
+        }
+        System.arraycopy(quantizedFilters.toJMatrix().getMatrix(), 0, filters.getMatrix(), 0, filters.size());
+        this.quantizedFilters = quantizedFilters;
+        this.inputScale = inputScale;
+    }
+
 
     @Override
     public int[] outputShape() {
@@ -449,21 +639,13 @@ public class Conv2D extends TrainableLayer {
             } else {
                 prevShape = getPreviousLayer().outputShape().clone();
             }
-            if (padding.equals("same_padding")) {
-                outputShape = new int[]{
-                    prevShape[0],
-                    numFilters,
-                    (int)Math.ceil((double)prevShape[2] / stride),
-                    (int)Math.ceil((double)prevShape[3] / stride)
-                };
-            } else { // valid padding
-                outputShape = new int[]{
-                    prevShape[0],
-                    numFilters,
-                    (prevShape[2] - filterSize) / stride + 1,
-                    (prevShape[3] - filterSize) / stride + 1
-                };
-            }
+            boolean samePadding = padding.equals("same_padding");
+            outputShape = new int[]{
+                prevShape[0],
+                numFilters,
+                ConvGeometry.outputSize(prevShape[2], kernelHeight, strideHeight, dilationHeight, samePadding),
+                ConvGeometry.outputSize(prevShape[3], kernelWidth, strideWidth, dilationWidth, samePadding)
+            };
         }
         return outputShape;
     }
@@ -0,0 +1,236 @@
+package jflow.layers;
+
+/**
+ * The geometry of a 2D convolution over inputs of one spatial size: padding, output size
+ * and, for each filter row and column, the outputs whose input lies inside the image. <p>
+ * Layers compute it once per input size and cache it, so kernels run without padding
+ * arithmetic or bounds checks in their inner loops. The plane kernels are selected here
+ * too: fused taps for 3x3 filters with unit stride and dilation, contiguous loops for
+ * unit column stride, and strided loops otherwise.
+ */
+final class ConvGeometry {
+    private static final int GENERAL = 0;
+    private static final int UNIT_STRIDE = 1;
+    private static final int UNIT_3X3 = 2;
+
+    final int inputHeight;
+    final int inputWidth;
+    final int outputHeight;
+    final int outputWidth;
+    final int kernelHeight;
+    final int kernelWidth;
+    final int strideHeight;
+    final int strideWidth;
+    final int dilationHeight;
+    final int dilationWidth;
+    final int padTop;
+    final int padLeft;
+
+    // Output rows [rowStart[fh], rowEnd[fh]) read an input row inside the image, likewise for columns
+    final int[] rowStart;
+    final int[] rowEnd;
+    final int[] colStart;
+    final int[] colEnd;
+    // Output columns where every filter column is inside the image
+    private final int interiorStart;
+    private final int interiorEnd;
+
+    private final int variant;
+
+    ConvGeometry(int kernelHeight, int kernelWidth, int strideHeight, int strideWidth,
+            int dilationHeight, int dilationWidth, boolean samePadding, int inputHeight, int inputWidth) {
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.strideHeight = strideHeight;
+        this.strideWidth = strideWidth;
+        this.dilationHeight = dilationHeight;
+        this.dilationWidth = dilationWidth;
+        this.inputHeight = inputHeight;
+        this.inputWidth = inputWidth;
+
+        outputHeight = outputSize(inputHeight, kernelHeight, strideHeight, dilationHeight, samePadding);
+        outputWidth = outputSize(inputWidth, kernelWidth, strideWidth, dilationWidth, samePadding);
+        if (samePadding) {
+            // Split the total padding, with any extra row or column at the bottom and right
+            padTop = Math.max(0, (outputHeight - 1) * strideHeight +
+                span(kernelHeight, dilationHeight) - inputHeight) / 2;
+            padLeft = Math.max(0, (outputWidth - 1) * strideWidth +
+                span(kernelWidth, dilationWidth) - inputWidth) / 2;
+        } else {
+            padTop = 0;
+            padLeft = 0;
+        }
+
+        rowStart = new int[kernelHeight];
+        rowEnd = new int[kernelHeight];
+        for (int fh = 0; fh < kernelHeight; fh++) {
+            int offset = fh * dilationHeight - padTop;
+            rowStart[fh] = Math.min(outputHeight, Math.max(0, ceilDiv(-offset, strideHeight)));
+            rowEnd[fh] = Math.max(rowStart[fh],
+                Math.min(outputHeight, Math.floorDiv(inputHeight - 1 - offset, strideHeight) + 1));
+        }
+        colStart = new int[kernelWidth];
+        colEnd = new int[kernelWidth];
+        int start = 0;
+        int end = outputWidth;
+        for (int fw = 0; fw < kernelWidth; fw++) {
+            int offset = fw * dilationWidth - padLeft;
+            colStart[fw] = Math.min(outputWidth, Math.max(0, ceilDiv(-offset, strideWidth)));
+            colEnd[fw] = Math.max(colStart[fw],
+                Math.min(outputWidth, Math.floorDiv(inputWidth - 1 - offset, strideWidth) + 1));
+            start = Math.max(start, colStart[fw]);
+            end = Math.min(end, colEnd[fw]);
+        }
+        interiorStart = start;
+        interiorEnd = Math.max(start, end);
+
+        if (kernelHeight == 3 && kernelWidth == 3 && strideHeight == 1 && strideWidth == 1 &&
+                dilationHeight == 1 && dilationWidth == 1) {
+            variant = UNIT_3X3;
+        } else if (strideWidth == 1) {
+            variant = UNIT_STRIDE;
+        } else {
+            variant = GENERAL;
+        }
+    }
+
+    /**
+     * The output size along one axis.
+     */
+    static int outputSize(int inputSize, int kernelSize, int stride, int dilation, boolean samePadding) {
+        if (samePadding) {
+            return (inputSize + stride - 1) / stride;
+        }
+        return (inputSize - span(kernelSize, dilation)) / stride + 1;
+    }
+
+    // The extent of a dilated filter along one axis
+    private static int span(int kernelSize, int dilation) {
+        return (kernelSize - 1) * dilation + 1;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    boolean matches(int inputHeight, int inputWidth) {
+        return this.inputHeight == inputHeight && this.inputWidth == inputWidth;
+    }
+
+    // The offset from an output's first input to the input of tap (fh, fw)
+    private int tapOffset(int fh, int fw) {
+        return (fh * dilationHeight - padTop) * inputWidth + fw * dilationWidth - padLeft;
+    }
+
+    /**
+     * Add the convolution of one input plane with one filter plane to an output plane. <p>
+     * Each output receives the taps in row-major order.
+     */
+    void convolvePlane(float[] in, int inOffset, float[] kernel, int kernelOffset,
+            float[] out, int outOffset) {
+        if (variant == UNIT_3X3) {
+            convolvePlane3x3(in, inOffset, kernel, kernelOffset, out, outOffset);
+            return;
+        }
+        for (int fh = 0; fh < kernelHeight; fh++) {
+            for (int fw = 0; fw < kernelWidth; fw++) {
+                float w = kernel[kernelOffset + fh * kernelWidth + fw];
+                int c0 = colStart[fw];
+                int c1 = colEnd[fw];
+                for (int oh = rowStart[fh]; oh < rowEnd[fh]; oh++) {
+                    int inRow = inOffset + oh * strideHeight * inputWidth + tapOffset(fh, fw);
+                    int outRow = outOffset + oh * outputWidth;
+                    if (variant == UNIT_STRIDE) {
+                        for (int ow = c0; ow < c1; ow++) {
+                            out[outRow + ow] += w * in[inRow + ow];
+                        }
+                    } else {
+                        for (int ow = c0; ow < c1; ow++) {
+                            out[outRow + ow] += w * in[inRow + ow * strideWidth];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // 3x3 filters, unit stride and dilation: the three taps of a filter row in one pass
+    private void convolvePlane3x3(float[] in, int inOffset, float[] kernel, int kernelOffset,
+            float[] out, int outOffset) {
+        for (int fh = 0; fh < 3; fh++) {
+            int tapRow = kernelOffset + fh * 3;
+            float w0 = kernel[tapRow];
+            float w1 = kernel[tapRow + 1];
+            float w2 = kernel[tapRow + 2];
+            for (int oh = rowStart[fh]; oh < rowEnd[fh]; oh++) {
+                // The input of tap (fh, 0) for output column 0
+                int inRow = inOffset + oh * inputWidth + tapOffset(fh, 0);
+                int outRow = outOffset + oh * outputWidth;
+
+                // Left border, then the interior with all three taps, then the right border
+                for (int fw = 0; fw < 3; fw++) {
+                    float w = kernel[tapRow + fw];
+                    int borderEnd = Math.min(interiorStart, colEnd[fw]);
+                    for (int ow = colStart[fw]; ow < borderEnd; ow++) {
+                        out[outRow + ow] += w * in[inRow + ow + fw];
+                    }
+                }
+                for (int ow = interiorStart; ow < interiorEnd; ow++) {
+                    int i = inRow + ow;
+                    out[outRow + ow] = out[outRow + ow] + w0 * in[i] + w1 * in[i + 1] + w2 * in[i + 2];
+                }
+                for (int fw = 0; fw < 3; fw++) {
+                    float w = kernel[tapRow + fw];
+                    for (int ow = Math.max(interiorEnd, colStart[fw]); ow < colEnd[fw]; ow++) {
+                        out[outRow + ow] += w * in[inRow + ow + fw];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the transposed convolution of one output gradient plane with one filter plane
+     * to an input gradient plane.
+     */
+    void convolveTransposedPlane(float[] dOut, int dOutOffset, float[] kernel, int kernelOffset,
+            float[] dIn, int dInOffset) {
+        for (int fh = 0; fh < kernelHeight; fh++) {
+            for (int fw = 0; fw < kernelWidth; fw++) {
+                float w = kernel[kernelOffset + fh * kernelWidth + fw];
+                int c0 = colStart[fw];
+                int c1 = colEnd[fw];
+                for (int oh = rowStart[fh]; oh < rowEnd[fh]; oh++) {
+                    int inRow = dInOffset + oh * strideHeight * inputWidth + tapOffset(fh, fw);
+                    int outRow = dOutOffset + oh * outputWidth;
+                    if (strideWidth == 1) {
+                        for (int ow = c0; ow < c1; ow++) {
+                            dIn[inRow + ow] += w * dOut[outRow + ow];
+                        }
+                    } else {
+                        for (int ow = c0; ow < c1; ow++) {
+                            dIn[inRow + ow * strideWidth] += w * dOut[outRow + ow];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the gradient of filter tap (fh, fw) from one input plane and its output gradient plane to sum.
+     */
+    float accumulateTapGradient(float sum, float[] in, int inOffset, float[] dOut, int dOutOffset,
+            int fh, int fw) {
+        int c0 = colStart[fw];
+        int c1 = colEnd[fw];
+        for (int oh = rowStart[fh]; oh < rowEnd[fh]; oh++) {
+            int inRow = inOffset + oh * strideHeight * inputWidth + tapOffset(fh, fw);
+            int outRow = dOutOffset + oh * outputWidth;
+            for (int ow = c0; ow < c1; ow++) {
+                sum += in[inRow + ow * strideWidth] * dOut[outRow + ow];
+            }
+        }
+        return sum;
+    }
+}
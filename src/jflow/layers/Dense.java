@@ -4,9 +4,11 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 import jflow.data.JMatrix;
+import jflow.data.QuantizedMatrix;
+import jflow.layers.templates.Quantizable;
 import jflow.layers.templates.TrainableLayer;
 
-public class Dense extends TrainableLayer {
+public class Dense extends TrainableLayer implements Quantizable {
     private JMatrix weights;
     private JMatrix dWeights;
     private JMatrix lastInput;
@@ -19,6 +21,12 @@ public class Dense extends TrainableLayer {
 
     private boolean useBias = true;
 
+    // Int8 inference
+    private QuantizedMatrix quantizedWeights;
+    private float inputScale;
+    private boolean calibrating;
+    private double inputAbsMax;
+
     public Dense(int size, int[] inputShape, boolean useBias) {
         this(size, inputShape);
         this.useBias = useBias;
@@ -106,7 +114,15 @@ public class Dense extends TrainableLayer {
         }
         // Store lastInput for backpropagation
         if (training) {
-            lastInput = input;
+            lastInput = retain(input);
+        } else {
+            if (calibrating) {
+                inputAbsMax = Math.max(inputAbsMax, input.absMax());
+            }
+            if (quantizedWeights != null) {
+                return trackOutput(quantizedWeights.denseForward(
+                    input, inputScale, (useBias) ? biases : null, true), training); // scaled
+            }
         }
 
         // Calculate forward output
@@ -134,10 +150,6 @@ public class Dense extends TrainableLayer {
 
         // Save memory
         lastInput = null;
-       
-
-        // Normalize dWeights and dBiases
-        adaptiveGradientClip(weights, biases, dWeights, dBiases, 1e-2);
 
         // Calculate loss w.r.t previous layer
         JMatrix dX = weights.transpose2D().matmul(gradient, true); // Scaled matmul product
@@ -160,6 +172,13 @@ public class Dense extends TrainableLayer {
         if (useBias) {
             biases.subtractInPlace(parameterUpdates[1]);
         }
+        parametersUpdated();
+    }
+
+    @Override
+    public void weightsChanged() {
+        // Int8 weights are stale after an update
+        quantizedWeights = null;
     }
 
     private void applyBiasByRow(JMatrix A, JMatrix bias) {
@@ -173,31 +192,6 @@ public class Dense extends TrainableLayer {
         });
     }
     
-    // Adaptively clip with frobenius norm
-    private void adaptiveGradientClip(JMatrix weights, JMatrix biases, JMatrix dWeights, JMatrix dBiases, double epsilon) {
-        // Clip weights
-        double weightNorm = weights.frobeniusNorm();
-        double gradWeightNorm = dWeights.frobeniusNorm();
-        double maxWeightNorm = Math.max(gradWeightNorm, epsilon * weightNorm);
-        
-        if (gradWeightNorm > maxWeightNorm) {
-            double scaleWeight = maxWeightNorm / gradWeightNorm;
-            dWeights.multiplyInPlace(scaleWeight);
-        }
-        
-        // Clip biases
-        if (useBias) {
-            double biasNorm = biases.frobeniusNorm();
-            double gradBiasNorm = dBiases.frobeniusNorm();
-            double maxBiasNorm = Math.max(gradBiasNorm, epsilon * biasNorm);
-            
-            if (gradBiasNorm > maxBiasNorm) {
-                double scaleBias = maxBiasNorm / gradBiasNorm;
-                dBiases.multiplyInPlace(scaleBias);
-            }
-        }
-   
-    }
     /**
      * Set the weight matrix for weight tying.
      * @param weights a reference to the weight matrix to use for this Dense layer.
@@ -227,6 +221,53 @@ public class Dense extends TrainableLayer {
         }
     }
 
+    @Override
+    public void setCalibrating(boolean calibrating) {
+        if (calibrating) {
+            inputAbsMax = 0;
+        }
+        this.calibrating = calibrating;
+    }
+
+    @Override
+    public void quantize() {
+        inputScale = QuantizedMatrix.scaleFor(inputAbsMax);
+        quantizedWeights = QuantizedMatrix.quantizePerChannel(weights);
+    }
+
+    @Override
+    public void dequantize() {
+        quantizedWeights = null;
+    }
+
+    @Override
+    public boolean isQuantized() {
+        return quantizedWeights != null;
+    }
+
+    @Override
+    public QuantizedMatrix getQuantizedWeights() {
+        return quantizedWeights;
+    }
+
+    @Override
+    public float getInputScale() {
+        return inputScale;
+    }
+
+    @Override
+    public void setQuantizedWeights(QuantizedMatrix quantizedWeights, float inputScale) {
+        if (quantizedWeights.size() != weights.size()) {
+            throw new IllegalArgumentException(
+                "In " + getName() + ": Expected " + weights.size() + 
+                " quantized weights. Got: " + quantizedWeights.size() + "."
+            );
+        }
+        System.arraycopy(quantizedWeights.toJMatrix().getMatrix(), 0, weights.getMatrix(), 0, weights.size());
+        this.quantizedWeights = quantizedWeights;
+        this.inputScale = inputScale;
+    }
+
     @Override
     public int[] outputShape() {
         int[] outputShape = new int[] {-1, outputSize};
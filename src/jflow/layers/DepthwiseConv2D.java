@@ -0,0 +1,49 @@
+package jflow.layers;
+
+/**
+ * A Conv2D layer with one group per input channel, so each channel is convolved
+ * with its own depthMultiplier filters. Filters have the shape
+ * (channels * depthMultiplier, 1, filterSize, filterSize).
+ */
+public class DepthwiseConv2D extends Conv2D {
+    private int depthMultiplier;
+    // Input shape given to the constructor, applied in build()
+    private int[] constructorInputShape;
+
+    public DepthwiseConv2D(int depthMultiplier, int filterSize, int stride, String padding) {
+        super("depthwise_conv_2d", 0, new int[]{filterSize, filterSize}, new int[]{stride, stride}, 
+            new int[]{1, 1}, padding, 1);
+        if (depthMultiplier < 1) {
+            throw new IllegalArgumentException(
+                "DepthwiseConv2D depth multiplier should be positive. Got: " + depthMultiplier + "."
+            );
+        }
+        this.depthMultiplier = depthMultiplier;
+    }
+    public DepthwiseConv2D(int depthMultiplier, int filterSize, int stride, String padding, int[] inputShape) {
+        this(depthMultiplier, filterSize, stride, padding);
+        if (inputShape.length != 3) {
+            throw new IllegalArgumentException(
+                "DepthwiseConv2D input shape should have 3 dimensions. Got: "
+                + inputShape.length + "."
+            );
+        }
+        this.constructorInputShape = inputShape;
+    }
+
+    @Override
+    public void build(int IDnum) {
+        if (constructorInputShape != null && internalGetInputShape() == null) {
+            setInputShape(constructorInputShape);
+        }
+        // Filters and groups follow the number of input channels
+        int[] inputShape = internalGetInputShape();
+        if (inputShape != null) {
+            setFilterGroups(inputShape[0] * depthMultiplier, inputShape[0]);
+        } else if (getPreviousLayer() != null) {
+            int channels = getPreviousLayer().outputShape()[1];
+            setFilterGroups(channels * depthMultiplier, channels);
+        }
+        super.build(IDnum);
+    }
+}
@@ -1,27 +1,39 @@
 package jflow.layers;
 
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 import jflow.data.JMatrix;
+import jflow.data.RandomStream;
 import jflow.layers.templates.ShapePreservingLayer;
 import jflow.model.Layer;
 
 public class Dropout extends ShapePreservingLayer{
     private double dropoutRate;
     private JMatrix dropoutMask;
+    private RandomStream random = new RandomStream();
 
     public Dropout(double dropoutRate) {
         super("dropout");
         this.dropoutRate = dropoutRate;
     }
+    /**
+     * The random numbers that dropout masks are drawn from.
+     * Restoring its state reproduces the following masks.
+     */
+    public RandomStream getRandomStream() {
+        return random;
+    }
+
     // Reset the dropout mask
     private void newDropoutMask(int inputSize, int outputSize) {
         dropoutMask = new JMatrix(inputSize, outputSize, 1, 1);
+        float[] mask = dropoutMask.getMatrix();
+        // Draw from a reserved block, so masks don't depend on thread scheduling
+        long first = random.reserve((long)inputSize * outputSize);
         IntStream.range(0, inputSize).parallel().forEach(i -> {
             for (int j = 0; j < outputSize; j++) {
-                dropoutMask.set(i * outputSize + j, (
-                    ThreadLocalRandom.current().nextDouble() < dropoutRate) ? 0 : 1);
+                int index = i * outputSize + j;
+                mask[index] = (random.uniform(first + index) < dropoutRate) ? 0 : 1;
             }
         });
     }
@@ -39,6 +51,9 @@ public class Dropout extends ShapePreservingLayer{
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
+        if (!training) {
+            return trackOutput(applyMask(input, false), training);
+        }
         // Determine the type of mask to use
         Layer prevLayer = getPreviousShapeInfluencer();
       
@@ -0,0 +1,37 @@
+package jflow.layers;
+
+import java.util.stream.IntStream;
+
+import jflow.data.JMatrix;
+
+/**
+ * Helpers for element-wise kernels over the raw arrays of activations.
+ */
+final class Elementwise {
+    // Elements per parallel task
+    private static final int CHUNK_SIZE = 1 << 13;
+
+    private Elementwise() {}
+
+    @FunctionalInterface
+    interface RangeTask {
+        void run(int start, int end);
+    }
+
+    /**
+     * Run a task over each chunk of [0, size) in parallel.
+     */
+    static void forEachChunk(int size, RangeTask task) {
+        int numChunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            task.run(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE));
+        });
+    }
+
+    /**
+     * The float32 values of a tensor, leaving half-precision storage in place.
+     */
+    static float[] values(JMatrix tensor) {
+        return tensor.dtype().equals("float32") ? tensor.getMatrix() : tensor.toFloat32().getMatrix();
+    }
+}
@@ -1,7 +1,10 @@
 package jflow.layers;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.stream.IntStream;
 
+import jflow.data.IntTensor;
 import jflow.data.JMatrix;
 import jflow.layers.templates.TrainableLayer;
 
@@ -12,7 +15,10 @@ public class Embedding extends TrainableLayer {
     private JMatrix embeddings;         // shape: [vocabSize, embedDim]
     private JMatrix gradEmbeddings;     // shape: same
 
-    private JMatrix lastInput;          // save token IDs for backward
+    private IntTensor lastInput;        // save token IDs for backward
+
+    private BitSet touched;             // rows with gradients since the last update
+    private int[] touchedRows;          // sorted touched rows, built on request
 
     public Embedding(int vocabSize, int embedDim) {
         super("embedding");
@@ -21,6 +27,7 @@ public class Embedding extends TrainableLayer {
 
         this.embeddings = JMatrix.randn(vocabSize, embedDim, 1, 1).multiply(0.02).setName("embedding"); // standard scale factor
         this.gradEmbeddings = new JMatrix(vocabSize, embedDim, 1, 1).setName("dEmbedding");
+        this.touched = new BitSet(vocabSize);
     }
 
     public Embedding(int vocabSize, int embedDim, int[] inputShape) {
@@ -38,23 +45,34 @@ public class Embedding extends TrainableLayer {
 
     @Override
     public JMatrix forward(JMatrix tokenIDs, boolean training) {
-        this.lastInput = tokenIDs;
+        return forward(IntTensor.fromJMatrix(tokenIDs), training);
+    }
 
-        int batch = tokenIDs.shape()[0];
-        int seqLen = tokenIDs.shape()[1];
+    /**
+     * Look up embeddings for integer token IDs.
+     * @param tokenIDs              Token IDs in the shape (batch, seqLen, 1, 1).
+     * @param training              Indicate whether for training or inference.
+     */
+    public JMatrix forward(IntTensor tokenIDs, boolean training) {
+        if (training) {
+            this.lastInput = tokenIDs;
+        }
 
-        JMatrix output = new JMatrix(batch, seqLen, embedDim, 1);
+        int batch = tokenIDs.length();
+        int seqLen = tokenIDs.channels();
+        int[] ids = tokenIDs.getArray();
+        int stride = tokenIDs.height() * tokenIDs.width();
 
-        IntStream.range(0, batch).parallel().forEach(b -> {
-            for (int t = 0; t < seqLen; t++) {
-                int id = (int) tokenIDs.get(b, t, 0, 0);
-                for (int e = 0; e < embedDim; e++) {
-                    output.set(b, t, e, 0, embeddings.get(id, e, 0, 0));
-                }
-            }
+        float[] table = embeddings.getMatrix();
+        float[] output = new float[batch * seqLen * embedDim];
+
+        // Copy one embedding row per token
+        IntStream.range(0, batch * seqLen).parallel().forEach(i -> {
+            int id = ids[i * stride];
+            System.arraycopy(table, id * embedDim, output, i * embedDim, embedDim);
         });
 
-        return trackOutput(output, training);
+        return trackOutput(new JMatrix(output, batch, seqLen, embedDim, 1), training);
     }
 
     @Override
@@ -62,16 +80,41 @@ public class Embedding extends TrainableLayer {
 
         int batch = dOutput.shape()[0];
         int seqLen = dOutput.shape()[1];
+        int[] ids = lastInput.getArray();
+        int stride = lastInput.height() * lastInput.width();
+
+        float[] dOut = dOutput.getMatrix();
+        float[] grad = gradEmbeddings.getMatrix();
 
-        for (int b = 0; b < batch; b++) {
-            for (int t = 0; t < seqLen; t++) {
-                int id = (int) lastInput.get(b, t, 0, 0);
+        // Sort tokens by row, so each row is accumulated by one task
+        int numTokens = batch * seqLen;
+        long[] keys = new long[numTokens];
+        for (int i = 0; i < numTokens; i++) {
+            keys[i] = ((long)ids[i * stride] << 32) | i;
+        }
+        Arrays.parallelSort(keys);
+
+        // Start of each run of tokens with the same row, followed by numTokens
+        int[] runStarts = new int[numTokens + 1];
+        int numRuns = 0;
+        for (int i = 0; i < numTokens; i++) {
+            if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) {
+                runStarts[numRuns++] = i;
+                touched.set((int)(keys[i] >>> 32));
+            }
+        }
+        runStarts[numRuns] = numTokens;
+        touchedRows = null;
+
+        IntStream.range(0, numRuns).parallel().forEach(run -> {
+            int rowOffset = (int)(keys[runStarts[run]] >>> 32) * embedDim;
+            for (int t = runStarts[run]; t < runStarts[run + 1]; t++) {
+                int dOutOffset = (int)keys[t] * embedDim;
                 for (int e = 0; e < embedDim; e++) {
-                    double grad = dOutput.get(b, t, e, 0);
-                    gradEmbeddings.set(id, e, 0, 0, gradEmbeddings.get(id, e, 0, 0) + grad);
+                    grad[rowOffset + e] += dOut[dOutOffset + e];
                 }
             }
-        }
+        });
 
         // Return nothing since Embedding has no input gradient
         return null;
@@ -89,7 +132,28 @@ public class Embedding extends TrainableLayer {
 
     @Override
     public void updateParameters(JMatrix[] updates) {
-        this.embeddings.add(updates[0]);
+        embeddings.subtractInPlace(updates[0]);
+        parametersUpdated();
+    }
+
+    /**
+     * The embedding rows looked up since the last update. 
+     * Only these rows of the gradient are nonzero.
+     */
+    @Override
+    public int[] touchedRows(int index) {
+        if (touchedRows == null) {
+            touchedRows = touched.stream().toArray();
+        }
+        return touchedRows;
+    }
+
+    @Override
+    public void parametersUpdated() {
+        // Gradients were reset by the update
+        touched.clear();
+        touchedRows = null;
+        super.parametersUpdated();
     }
 
     @Override
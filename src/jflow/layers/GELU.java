@@ -1,6 +1,7 @@
 package jflow.layers;
 
 import java.util.stream.IntStream;
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
@@ -8,6 +9,8 @@ import jflow.layers.templates.ShapePreservingLayer;
  * GELU (Gaussian Error Linear Unit) activation function.
  */
 public class GELU extends ShapePreservingLayer {
+    private static final float SQRT_HALF = 0.70710678f;
+    private static final float INV_SQRT_2PI = 0.39894228f;
     private JMatrix lastInput;
     
     public GELU() {
@@ -17,9 +20,22 @@ public class GELU extends ShapePreservingLayer {
     
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
-        lastInput = input;
+        if (training) {
+            lastInput = retain(input);
+        }
         int size = input.size();
         JMatrix output = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = input.getMatrix();
+            float[] y = output.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    y[i] = 0.5f * x[i] * (1 + FastMath.erf(x[i] * SQRT_HALF));
+                }
+            });
+            return trackOutput(output, training);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
@@ -40,16 +56,30 @@ public class GELU extends ShapePreservingLayer {
         int size = gradient.size();
         JMatrix input = lastInput; // Use original input x
         JMatrix dZ = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = Elementwise.values(input);
+            float[] g = gradient.getMatrix();
+            float[] dx = dZ.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    float cdf = 0.5f * (1 + FastMath.erf(x[i] * SQRT_HALF));
+                    float pdf = INV_SQRT_2PI * FastMath.exp(-0.5f * x[i] * x[i]);
+                    dx[i] = g[i] * (cdf + x[i] * pdf);
+                }
+            });
+            return trackGradient(dZ);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
             double derivative;
             
             // Derivative of GELU exact formula
-            // 0.5 * (1 + erf(x/sqrt(2))) + x * 0.5 * (2/sqrt(2*pi)) * exp(-(x/sqrt(2))^2)
+            // 0.5 * (1 + erf(x/sqrt(2))) + x * exp(-x^2/2) / sqrt(2*pi)
             double xOverSqrt2 = x / Math.sqrt(2);
             double erfTerm = 0.5 * (1 + erf(xOverSqrt2));
-            double gaussianTerm = 0.5 * Math.exp(-0.5 * x * x) / Math.sqrt(2 * Math.PI);
+            double gaussianTerm = Math.exp(-0.5 * x * x) / Math.sqrt(2 * Math.PI);
             derivative = erfTerm + x * gaussianTerm;
             
             dZ.set(i, gradient.get(i) * derivative);
@@ -78,4 +108,9 @@ public class GELU extends ShapePreservingLayer {
         
         return sign * y;
     }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -19,12 +19,38 @@ public class GlobalAveragePooling2D extends ShapeAlteringLayer{
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
-        batchSize = input.length();
-        channels = input.channels();
-        height = input.height();
-        width = input.width();
+        int batchSize = input.length();
+        int channels = input.channels();
+        int height = input.height();
+        int width = input.width();
+        // Only training writes per-call state, keeping inference safe to share
+        if (training) {
+            this.batchSize = batchSize;
+            this.channels = channels;
+            this.height = height;
+            this.width = width;
+        }
         int imageDim = height * width;
         JMatrix averaged = new JMatrix(batchSize, channels, 1, 1);
+
+        if (input.layout().equals("NHWC")) {
+            // Sum contiguous channel vectors over all pixels
+            float[] inputMatrix = input.getMatrix();
+            float[] averagedMatrix = averaged.setLayout("NHWC").getMatrix();
+            IntStream.range(0, batchSize).parallel().forEach(n -> {
+                int outputOffset = n * channels;
+                for (int p = 0; p < imageDim; p++) {
+                    int inputOffset = (n * imageDim + p) * channels;
+                    for (int c = 0; c < channels; c++) {
+                        averagedMatrix[outputOffset + c] += inputMatrix[inputOffset + c];
+                    }
+                }
+                for (int c = 0; c < channels; c++) {
+                    averagedMatrix[outputOffset + c] /= imageDim;
+                }
+            });
+            return trackOutput(averaged, training);
+        }
         
         // For each batch item and channel
         IntStream.range(0, batchSize).parallel().forEach(n -> {
@@ -47,6 +73,21 @@ public class GlobalAveragePooling2D extends ShapeAlteringLayer{
     public JMatrix backward(JMatrix input) {
         int imageDim = height * width;
         JMatrix expanded = new JMatrix(batchSize, channels, height, width);
+
+        if (input.layout().equals("NHWC")) {
+            // Copy the scaled channel vector of each image to every pixel
+            float[] expandedMatrix = expanded.setLayout("NHWC").getMatrix();
+            IntStream.range(0, batchSize).parallel().forEach(n -> {
+                float[] gradients = new float[channels];
+                for (int c = 0; c < channels; c++) {
+                    gradients[c] = input.get(n * channels + c) / imageDim;
+                }
+                for (int p = 0; p < imageDim; p++) {
+                    System.arraycopy(gradients, 0, expandedMatrix, (n * imageDim + p) * channels, channels);
+                }
+            });
+            return trackGradient(expanded);
+        }
         
         // For each batch item and channel
         IntStream.range(0, batchSize).parallel().forEach(n -> {
@@ -67,6 +108,11 @@ public class GlobalAveragePooling2D extends ShapeAlteringLayer{
     }
 
 
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
+    }
+
     @Override
     public int[] outputShape() {
         // Channels of the previous layer
@@ -16,11 +16,14 @@ public class LayerNorm extends TrainableLayer {
     private JMatrix beta;
     private JMatrix dBeta;
 
-    // Cached for backpropagation
-    private JMatrix normalizedCache;
-    private float[] varianceCache;
+    // Cached for backpropagation, with xHat recomputed from the input
+    private JMatrix lastInput;
+    private float[] meanCache;
+    private float[] invStdCache;
 
     private final static float EPSILON = 1e-5f;
+    // Elements per parallel task
+    private final static int ROW_BLOCK_ELEMENTS = 4096;
 
     private int embedDim;  // Size of the embedding dimension (H in NCHW format)
 
@@ -53,114 +56,141 @@ public class LayerNorm extends TrainableLayer {
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
-        int batchSize = input.length();      // N
-        int seqLength = input.channels();    // C
-        int numPositions = batchSize * seqLength;
+        int numPositions = input.length() * input.channels();
 
         JMatrix output = input.zerosLike();
+        float[] x = input.getMatrix();
+        float[] y = output.getMatrix();
+        float[] g = gamma.getMatrix();
+        float[] b = beta.getMatrix();
 
         // Cache for backpropagation
-        if (training) {
-            this.normalizedCache = input.zerosLike();
-            this.varianceCache = new float[numPositions];
-        }
-
-        // Process each position (batch × seqLen) 
-        IntStream.range(0, numPositions).parallel().forEach(posIdx -> {
-            int batchIdx = posIdx / seqLength;
-            int seqIdx = posIdx % seqLength;
-            
-            // Calculate mean for this position
-            float mean = 0;
-            for (int e = 0; e < embedDim; e++) {
-                mean += input.get(batchIdx, seqIdx, e, 0);
-            }
-            mean /= embedDim;
-            
-            // Calculate variance for this position
-            float variance = 0;
-            for (int e = 0; e < embedDim; e++) {
-                float diff = input.get(batchIdx, seqIdx, e, 0) - mean;
-                variance += diff * diff;
-            }
-            variance /= embedDim;
-            
-            // Cache statistics for backpropagation
-            if (training) {
-                varianceCache[posIdx] = variance;
-            }
-            
-            float invStdDev = 1.0f / (float)Math.sqrt(variance + EPSILON);
-            
-            // Normalize, scale, and shift
-            for (int e = 0; e < embedDim; e++) {
-                float normalized = (input.get(batchIdx, seqIdx, e, 0) - mean) * invStdDev;
-                
-                if (training) {
-                    normalizedCache.set(batchIdx, seqIdx, e, 0, normalized);
+        float[] means = new float[numPositions];
+        float[] invStds = new float[numPositions];
+
+        // Each position (batch × seqLen) is a contiguous row of embedDim values
+        forEachRowBlock(numPositions, (start, end) -> {
+            for (int row = start; row < end; row++) {
+                int offset = row * embedDim;
+
+                // Mean and variance in one pass, shifted by the first value for stability
+                float shift = x[offset];
+                float sum = 0;
+                float sumSquares = 0;
+                for (int e = 0; e < embedDim; e++) {
+                    float diff = x[offset + e] - shift;
+                    sum += diff;
+                    sumSquares += diff * diff;
+                }
+                float shiftedMean = sum / embedDim;
+                float variance = Math.max(0.0f, sumSquares / embedDim - shiftedMean * shiftedMean);
+                float mean = shift + shiftedMean;
+                float invStdDev = 1.0f / (float)Math.sqrt(variance + EPSILON);
+                means[row] = mean;
+                invStds[row] = invStdDev;
+
+                // Normalize, scale, and shift
+                for (int e = 0; e < embedDim; e++) {
+                    y[offset + e] = (x[offset + e] - mean) * invStdDev * g[e] + b[e];
                 }
-                
-                // Scale and shift
-                float result = normalized * gamma.get(e) + beta.get(e);
-                output.set(batchIdx, seqIdx, e, 0, result);
             }
         });
+        if (training) {
+            meanCache = means;
+            invStdCache = invStds;
+            lastInput = retain(input);
+        }
 
         return trackOutput(output, training);
     }
 
     @Override
     public JMatrix backward(JMatrix dOutput) {
-        int batchSize = dOutput.length();
-        int seqLength = dOutput.channels();
-        int numPositions = batchSize * seqLength;
+        int numPositions = dOutput.length() * dOutput.channels();
 
         JMatrix dInput = dOutput.zerosLike();
+        float[] dy = dOutput.getMatrix();
+        float[] dx = dInput.getMatrix();
+        float[] x = lastInput.dtype().equals("float32") ? 
+            lastInput.getMatrix() : lastInput.toFloat32().getMatrix();
+        float[] g = gamma.getMatrix();
+        float[] means = meanCache;
+        float[] invStds = invStdCache;
+
+        // Parameter gradients are summed per block of rows, then combined in order
+        int numBlocks = numRowBlocks(numPositions);
+        float[][] dGammaPartials = new float[numBlocks][];
+        float[][] dBetaPartials = new float[numBlocks][];
+
+        forEachRowBlock(numPositions, (start, end) -> {
+            float[] dGammaPartial = new float[embedDim];
+            float[] dBetaPartial = new float[embedDim];
+            for (int row = start; row < end; row++) {
+                int offset = row * embedDim;
+                float mean = means[row];
+                float invStdDev = invStds[row];
+
+                // Calculate sum terms for the gradient formula, with dxHat = dy * gamma
+                float sumDxHat = 0;
+                float sumDxHatXHat = 0;
+                for (int e = 0; e < embedDim; e++) {
+                    float grad = dy[offset + e];
+                    float xHat = (x[offset + e] - mean) * invStdDev;
+                    float dxHat = grad * g[e];
+                    dGammaPartial[e] += grad * xHat;
+                    dBetaPartial[e] += grad;
+                    sumDxHat += dxHat;
+                    sumDxHatXHat += dxHat * xHat;
+                }
+                float meanDxHat = sumDxHat / embedDim;
+                float meanDxHatXHat = sumDxHatXHat / embedDim;
 
-        // Calculate gradients for each position
-        IntStream.range(0, numPositions).parallel().forEach(posIdx -> {
-            int batchIdx = posIdx / seqLength;
-            int seqIdx = posIdx % seqLength;
-            
-            float variance = varianceCache[posIdx];
-            float invStdDev = 1.0f / (float)Math.sqrt(variance + EPSILON);
-            
-            // Calculate sum terms for the gradient formula
-            float sumDy = 0;
-            float sumDyxHat = 0;
-            
-            for (int e = 0; e < embedDim; e++) {
-                float dy = dOutput.get(batchIdx, seqIdx, e, 0);
-                float xHat = normalizedCache.get(batchIdx, seqIdx, e, 0);
-                
-                // Accumulate parameter gradients
-                synchronized (dGamma) {
-                    dGamma.set(e, dGamma.get(e) + dy * xHat);
-                    dBeta.set(e, dBeta.get(e) + dy);
+                // Calculate input gradients
+                for (int e = 0; e < embedDim; e++) {
+                    float xHat = (x[offset + e] - mean) * invStdDev;
+                    dx[offset + e] = invStdDev * (dy[offset + e] * g[e] - meanDxHat - xHat * meanDxHatXHat);
                 }
-                
-                sumDy += dy;
-                sumDyxHat += dy * xHat;
-            }
-            
-            // Calculate input gradients
-            for (int e = 0; e < embedDim; e++) {
-                float dy = dOutput.get(batchIdx, seqIdx, e, 0);
-                float xHat = normalizedCache.get(batchIdx, seqIdx, e, 0);
-                
-                // Following the chain rule for layer normalization
-                float term1 = dy * gamma.get(e);
-                float term2 = sumDy / embedDim;
-                float term3 = xHat * sumDyxHat / embedDim;
-                
-                float dx = invStdDev * (term1 - (term2 + term3));
-                dInput.set(batchIdx, seqIdx, e, 0, dx);
             }
+            dGammaPartials[start / rowsPerBlock()] = dGammaPartial;
+            dBetaPartials[start / rowsPerBlock()] = dBetaPartial;
         });
 
+        for (int e = 0; e < embedDim; e++) {
+            float dGammaSum = 0;
+            float dBetaSum = 0;
+            for (int block = 0; block < numBlocks; block++) {
+                dGammaSum += dGammaPartials[block][e];
+                dBetaSum += dBetaPartials[block][e];
+            }
+            dGamma.set(e, dGammaSum);
+            dBeta.set(e, dBetaSum);
+        }
+
         return trackGradient(dInput);
     }
 
+    // Rows per parallel task, so small embedding dims still give tasks of useful size
+    private int rowsPerBlock() {
+        return Math.max(1, ROW_BLOCK_ELEMENTS / embedDim);
+    }
+
+    private int numRowBlocks(int numRows) {
+        return (numRows + rowsPerBlock() - 1) / rowsPerBlock();
+    }
+
+    // Run a task over each block of rows in parallel
+    private void forEachRowBlock(int numRows, RowBlockTask task) {
+        int rowsPerBlock = rowsPerBlock();
+        IntStream.range(0, numRowBlocks(numRows)).parallel().forEach(block -> {
+            task.run(block * rowsPerBlock, Math.min(numRows, (block + 1) * rowsPerBlock));
+        });
+    }
+
+    @FunctionalInterface
+    private interface RowBlockTask {
+        void run(int start, int end);
+    }
+
     @Override
     public JMatrix[] getParameterGradients() {
         return new JMatrix[]{dGamma, dBeta};
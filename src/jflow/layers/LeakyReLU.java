@@ -38,4 +38,9 @@ public class LeakyReLU extends ShapePreservingLayer{
 
         return trackGradient(dZ);
     }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
@@ -14,8 +14,10 @@ public class MaxPool2D extends ShapeAlteringLayer {
     private int imageWidth;
     private int outputHeight;
     private int outputWidth;
+    private String inputLayout;
 
-    private JMatrix lastInput;
+    // The input index of the max of each output, recorded in training forward passes
+    private int[] argmax;
 
     public MaxPool2D(int poolSize, int stride) {
         super("max_pool_2d");
@@ -25,97 +27,208 @@ public class MaxPool2D extends ShapeAlteringLayer {
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
-        this.imageHeight = input.height();
-        this.imageWidth = input.width();
-        this.numImages = input.length();
-        this.channels = input.channels();
-
-        lastInput = input;
+        int imageHeight = input.height();
+        int imageWidth = input.width();
+        int numImages = input.length();
+        int channels = input.channels();
 
         // Calculate output dimensions
-        outputHeight = (imageHeight - poolSize) / stride + 1;
-        outputWidth = (imageWidth - poolSize) / stride + 1;
- 
-        JMatrix output = new JMatrix(numImages, channels, outputHeight, outputWidth);
+        int outputHeight = (imageHeight - poolSize) / stride + 1;
+        int outputWidth = (imageWidth - poolSize) / stride + 1;
 
+        JMatrix output = new JMatrix(numImages, channels, outputHeight, outputWidth);
+        float[] in = Elementwise.values(input);
+        float[] out = output.getMatrix();
+
+        // Only training writes per-call state, keeping inference safe to share
+        int[] argmax = null;
+        if (training) {
+            this.imageHeight = imageHeight;
+            this.imageWidth = imageWidth;
+            this.numImages = numImages;
+            this.channels = channels;
+            this.outputHeight = outputHeight;
+            this.outputWidth = outputWidth;
+            this.inputLayout = input.layout();
+            argmax = new int[out.length];
+            this.argmax = argmax;
+        }
 
-        // Perform max pooling
-        IntStream.range(0, numImages).parallel().forEach(i -> {
-            for (int c = 0; c < channels; c++) {
-                int inputOffset = i * channels * imageHeight * imageWidth + c * imageHeight * imageWidth;
-                int outputOffset = i * channels * outputHeight * outputWidth + c * outputHeight * outputWidth;
+        if (input.layout().equals("NHWC")) {
+            output.setLayout("NHWC");
+            maxPoolChannelsLast(in, imageHeight, imageWidth, channels,
+                out, outputHeight, outputWidth, argmax);
+            return trackOutput(output, training);
+        }
 
-                maxPool2D(input, inputOffset, output, outputOffset);
+        // Perform max pooling on each image plane
+        int[] indices = argmax;
+        IntStream.range(0, numImages * channels).parallel().forEach(plane -> {
+            int inputOffset = plane * imageHeight * imageWidth;
+            int outputOffset = plane * outputHeight * outputWidth;
+
+            if (poolSize == 2 && stride == 2) {
+                maxPool2x2(in, inputOffset, imageWidth, out, outputOffset,
+                    outputHeight, outputWidth, indices);
+            } else if (poolSize == 3 && stride == 2) {
+                maxPool3x3(in, inputOffset, imageWidth, out, outputOffset,
+                    outputHeight, outputWidth, indices);
+            } else {
+                maxPool2D(in, inputOffset, imageWidth, out, outputOffset,
+                    outputHeight, outputWidth, indices);
             }
         });
 
-        return trackOutput(output, training); 
+        return trackOutput(output, training);
     }
 
     @Override
     public JMatrix backward(JMatrix dOutput) {
-        JMatrix gradient = lastInput.zerosLike();
-
-        // Calculate maxpool gradients
-        IntStream.range(0, numImages).parallel().forEach(i -> {
-            for (int c = 0; c < channels; c++) {
-                int inputOffset = i * channels * imageHeight * imageWidth + c * imageHeight * imageWidth;
-                int outputOffset = i * channels * outputHeight * outputWidth + c * outputHeight * outputWidth;
-        
-                backpropMaxPool2D(dOutput, outputOffset, gradient, inputOffset, lastInput); 
+        JMatrix gradient = new JMatrix(numImages, channels, imageHeight, imageWidth)
+            .setLayout(inputLayout);
+        float[] dOut = Elementwise.values(dOutput);
+        float[] grad = gradient.getMatrix();
+        int[] argmax = this.argmax;
+
+        // Scatter each gradient to the max of its window. Windows may overlap,
+        // but never across image planes (NCHW) or images (NHWC)
+        int numTasks = inputLayout.equals("NHWC") ? numImages : numImages * channels;
+        int outputsPerTask = dOut.length / numTasks;
+        IntStream.range(0, numTasks).parallel().forEach(task -> {
+            int end = (task + 1) * outputsPerTask;
+            for (int o = task * outputsPerTask; o < end; o++) {
+                grad[argmax[o]] += dOut[o];
             }
         });
 
         return trackGradient(gradient);
     }
 
-    // Perform max pooling on one image
-    private void maxPool2D(JMatrix input, int inputOffset, JMatrix output, int outputOffset) {
+    // Perform max pooling on one image plane, keeping the first max of each window
+    private void maxPool2D(float[] in, int inputOffset, int imageWidth, float[] out,
+            int outputOffset, int outputHeight, int outputWidth, int[] argmax) {
         for (int sX = 0; sX < outputHeight; sX++) {
             for (int sY = 0; sY < outputWidth; sY++) {
-                float max = Float.NEGATIVE_INFINITY;
+                int maxIdx = inputOffset + sX * stride * imageWidth + sY * stride;
+                float max = in[maxIdx];
 
                 for (int poolX = 0; poolX < poolSize; poolX++) {
+                    int rowIdx = inputOffset + (sX * stride + poolX) * imageWidth + sY * stride;
                     for (int poolY = 0; poolY < poolSize; poolY++) {
-                        int x = sX * stride + poolX;
-                        int y = sY * stride + poolY;
-                        int idx = inputOffset + x * imageWidth + y;
-
-                        max = Math.max(max, input.get(idx));
+                        if (in[rowIdx + poolY] > max) {
+                            max = in[rowIdx + poolY];
+                            maxIdx = rowIdx + poolY;
+                        }
                     }
                 }
-                output.set(outputOffset + sX * outputWidth + sY, max);
+                int outIdx = outputOffset + sX * outputWidth + sY;
+                out[outIdx] = max;
+                if (argmax != null) {
+                    argmax[outIdx] = maxIdx;
+                }
             }
         }
     }
-    // Calculate the max pool gradient for one image
-    private void backpropMaxPool2D(JMatrix dOutput, int dOutputOffset, JMatrix gradient, int gradientOffset, JMatrix lastInput) {
+
+    // Max pooling with 2x2 windows and stride 2, unrolled
+    private static void maxPool2x2(float[] in, int inputOffset, int imageWidth, float[] out,
+            int outputOffset, int outputHeight, int outputWidth, int[] argmax) {
         for (int sX = 0; sX < outputHeight; sX++) {
+            int row0 = inputOffset + 2 * sX * imageWidth;
+            int row1 = row0 + imageWidth;
+            int outRow = outputOffset + sX * outputWidth;
             for (int sY = 0; sY < outputWidth; sY++) {
-                float max = Float.NEGATIVE_INFINITY;
-                int maxX = 0, maxY = 0;
-    
-                // Find max position
+                int a = row0 + 2 * sY;
+                int b = row1 + 2 * sY;
+                int maxIdx = a;
+                float max = in[a];
+                if (in[a + 1] > max) { max = in[a + 1]; maxIdx = a + 1; }
+                if (in[b] > max) { max = in[b]; maxIdx = b; }
+                if (in[b + 1] > max) { max = in[b + 1]; maxIdx = b + 1; }
+
+                out[outRow + sY] = max;
+                if (argmax != null) {
+                    argmax[outRow + sY] = maxIdx;
+                }
+            }
+        }
+    }
+
+    // Max pooling with 3x3 windows and stride 2, unrolled
+    private static void maxPool3x3(float[] in, int inputOffset, int imageWidth, float[] out,
+            int outputOffset, int outputHeight, int outputWidth, int[] argmax) {
+        for (int sX = 0; sX < outputHeight; sX++) {
+            int row0 = inputOffset + 2 * sX * imageWidth;
+            int row1 = row0 + imageWidth;
+            int row2 = row1 + imageWidth;
+            int outRow = outputOffset + sX * outputWidth;
+            for (int sY = 0; sY < outputWidth; sY++) {
+                int a = row0 + 2 * sY;
+                int b = row1 + 2 * sY;
+                int c = row2 + 2 * sY;
+                int maxIdx = a;
+                float max = in[a];
+                if (in[a + 1] > max) { max = in[a + 1]; maxIdx = a + 1; }
+                if (in[a + 2] > max) { max = in[a + 2]; maxIdx = a + 2; }
+                if (in[b] > max) { max = in[b]; maxIdx = b; }
+                if (in[b + 1] > max) { max = in[b + 1]; maxIdx = b + 1; }
+                if (in[b + 2] > max) { max = in[b + 2]; maxIdx = b + 2; }
+                if (in[c] > max) { max = in[c]; maxIdx = c; }
+                if (in[c + 1] > max) { max = in[c + 1]; maxIdx = c + 1; }
+                if (in[c + 2] > max) { max = in[c + 2]; maxIdx = c + 2; }
+
+                out[outRow + sY] = max;
+                if (argmax != null) {
+                    argmax[outRow + sY] = maxIdx;
+                }
+            }
+        }
+    }
+
+    // Max pooling on channels-last input, taking the max of contiguous channel vectors
+    private void maxPoolChannelsLast(float[] in, int imageHeight, int imageWidth, int channels,
+            float[] out, int outputHeight, int outputWidth, int[] argmax) {
+        int numRows = out.length / (outputWidth * channels);
+
+        // Parallelize across output rows of all images
+        IntStream.range(0, numRows).parallel().forEach(row -> {
+            int i = row / outputHeight;
+            int sX = row % outputHeight;
+            for (int sY = 0; sY < outputWidth; sY++) {
+                int outIdx = (row * outputWidth + sY) * channels;
+                int firstIdx = ((i * imageHeight + sX * stride) * imageWidth + sY * stride) * channels;
+                System.arraycopy(in, firstIdx, out, outIdx, channels);
+                if (argmax != null) {
+                    for (int c = 0; c < channels; c++) {
+                        argmax[outIdx + c] = firstIdx + c;
+                    }
+                }
                 for (int poolX = 0; poolX < poolSize; poolX++) {
                     for (int poolY = 0; poolY < poolSize; poolY++) {
                         int x = sX * stride + poolX;
                         int y = sY * stride + poolY;
-                        int inputIdx = gradientOffset + x * imageWidth + y;
-    
-                        if (lastInput.get(inputIdx) > max) { 
-                            max = lastInput.get(inputIdx);
-                            maxX = x;
-                            maxY = y;
+                        int inIdx = ((i * imageHeight + x) * imageWidth + y) * channels;
+                        if (argmax == null) {
+                            for (int c = 0; c < channels; c++) {
+                                out[outIdx + c] = Math.max(out[outIdx + c], in[inIdx + c]);
+                            }
+                        } else {
+                            for (int c = 0; c < channels; c++) {
+                                if (in[inIdx + c] > out[outIdx + c]) {
+                                    out[outIdx + c] = in[inIdx + c];
+                                    argmax[outIdx + c] = inIdx + c;
+                                }
+                            }
                         }
                     }
                 }
-    
-                // Pass back the gradient only to the max position
-                int maxIdx = gradientOffset + maxX * imageWidth + maxY;
-                int dOutputIdx = dOutputOffset + sX * outputWidth + sY;
-                gradient.set(maxIdx, gradient.get(maxIdx) + dOutput.get(dOutputIdx));
             }
-        }
+        });
+    }
+
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
     }
 
     @Override
@@ -133,7 +246,7 @@ public class MaxPool2D extends ShapeAlteringLayer {
             int outputWidth = (oldWidth - poolSize) / stride + 1;
 
             return new int[]{-1, prev[1], outputHeight, outputWidth};
-            
+
         }
         return outputShape;
     }
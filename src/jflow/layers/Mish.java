@@ -1,10 +1,13 @@
 package jflow.layers;
 
 import java.util.stream.IntStream;
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
 public class Mish extends ShapePreservingLayer {
+    // tanh(softplus(x)) rounds to 1 beyond this
+    private static final float SATURATION = 20.0f;
     private JMatrix lastInput;
     
     public Mish() {
@@ -14,10 +17,21 @@ public class Mish extends ShapePreservingLayer {
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
         if (training) {
-            lastInput = input;
+            lastInput = retain(input);
         }
         int size = input.size();
         JMatrix output = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = input.getMatrix();
+            float[] y = output.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    y[i] = x[i] * tanhSoftplus(FastMath.exp(Math.min(x[i], SATURATION)));
+                }
+            });
+            return trackOutput(output, training);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
@@ -33,6 +47,20 @@ public class Mish extends ShapePreservingLayer {
         int size = gradient.size();
         JMatrix input = lastInput; // Use original input x
         JMatrix dZ = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = Elementwise.values(input);
+            float[] g = gradient.getMatrix();
+            float[] dx = dZ.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    float ex = FastMath.exp(Math.min(x[i], SATURATION));
+                    float tanhSoftplus = tanhSoftplus(ex);
+                    dx[i] = g[i] * (tanhSoftplus + x[i] * (1 - tanhSoftplus * tanhSoftplus) * ex / (1 + ex));
+                }
+            });
+            return trackGradient(dZ);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
@@ -49,4 +77,18 @@ public class Mish extends ShapePreservingLayer {
         
         return trackGradient(dZ);
     }
+
+    /*
+     * tanh(log(1 + e^x)) = ((1 + e^x)^2 - 1) / ((1 + e^x)^2 + 1),
+     * so one exponential gives both the softplus and the tanh
+     */
+    private static float tanhSoftplus(float ex) {
+        float n = ex * (ex + 2);
+        return n / (n + 2);
+    }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
@@ -0,0 +1,371 @@
+package jflow.layers;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * Multi-head self-attention over sequences in the shape (batch, seqLen, embedDim, 1). <p>
+ * Queries, keys and values come from one fused projection (embedDim, 3 * embedDim) as in GPT-2,
+ * and the heads are joined by an output projection (embedDim, embedDim). <p>
+ * Attention is computed in blocks of queries and keys with an online softmax, so the
+ * (seqLen, seqLen) score matrix is never stored. The backward pass recomputes scores
+ * block by block from the log-sum-exp of each query row.
+ */
+public class MultiHeadAttention extends TrainableLayer {
+    private int numHeads;
+    private boolean causal;
+    private int embedDim;
+    private int headDim;
+
+    private JMatrix qkvWeights;         // shape: [embedDim, 3 * embedDim]
+    private JMatrix dQkvWeights;
+    private JMatrix qkvBiases;          // shape: [3 * embedDim]
+    private JMatrix dQkvBiases;
+    private JMatrix outputWeights;      // shape: [embedDim, embedDim]
+    private JMatrix dOutputWeights;
+    private JMatrix outputBiases;       // shape: [embedDim]
+    private JMatrix dOutputBiases;
+
+    // Cached for backpropagation, all linear in seqLen
+    private JMatrix lastInput;          // shape: [batch * seqLen, embedDim]
+    private JMatrix lastQkv;            // shape: [batch * seqLen, 3 * embedDim]
+    private JMatrix lastAttention;      // heads before the output projection, [batch * seqLen, embedDim]
+    private float[] logSumExp;          // per (batch, head, query)
+    private int batch;
+    private int seqLen;
+
+    // Queries and keys per tile
+    private final static int QUERY_BLOCK = 64;
+    private final static int KEY_BLOCK = 64;
+
+    public MultiHeadAttention(int numHeads) {
+        this(numHeads, false);
+    }
+
+    /**
+     * @param numHeads              The number of attention heads. Must divide the embedding dimension.
+     * @param causal                Whether each position only attends to itself and earlier positions.
+     */
+    public MultiHeadAttention(int numHeads, boolean causal) {
+        super("multi_head_attention");
+        if (numHeads < 1) {
+            throw new IllegalArgumentException(
+                "MultiHeadAttention number of heads should be positive. Got: " + numHeads + "."
+            );
+        }
+        this.numHeads = numHeads;
+        this.causal = causal;
+    }
+
+    @Override
+    public void build(int IDnum) {
+        super.build(IDnum);
+        if (getPreviousLayer() == null) {
+            throw new IllegalStateException(
+                "In " + this.getClass().getSimpleName() +
+                ": Cannot build the first layer without an input shape."
+            );
+        }
+        // Embedding dimension (H in NCHW format)
+        embedDim = getPreviousLayer().outputShape()[2];
+        if (embedDim % numHeads != 0) {
+            throw new IllegalArgumentException(
+                "MultiHeadAttention embedding dimension should be divisible by the number of heads. Got: "
+                + embedDim + " and " + numHeads + "."
+            );
+        }
+        headDim = embedDim / numHeads;
+
+        setNumTrainableParameters(4 * embedDim * embedDim + 4 * embedDim);
+
+        // Initialize as in GPT-2, with zero biases
+        qkvWeights = JMatrix.randn(embedDim, 3 * embedDim, 1, 1).multiply(0.02).setName("qkv_weights");
+        dQkvWeights = qkvWeights.zerosLike().setName("dQkvWeights");
+        qkvBiases = new JMatrix(3 * embedDim, 1, 1, 1, "qkv_biases");
+        dQkvBiases = qkvBiases.zerosLike().setName("dQkvBiases");
+        outputWeights = JMatrix.randn(embedDim, embedDim, 1, 1).multiply(0.02).setName("output_weights");
+        dOutputWeights = outputWeights.zerosLike().setName("dOutputWeights");
+        outputBiases = new JMatrix(embedDim, 1, 1, 1, "output_biases");
+        dOutputBiases = outputBiases.zerosLike().setName("dOutputBiases");
+    }
+
+    @Override
+    public JMatrix forward(JMatrix input, boolean training) {
+        int batch = input.length();
+        int seqLen = input.channels();
+        int numTokens = batch * seqLen;
+
+        // Each token is a row of embedDim values
+        JMatrix tokens = new JMatrix(Elementwise.values(input), numTokens, embedDim, 1, 1);
+        JMatrix qkv = tokens.matmul(qkvWeights, false);
+        addBiasToRows(qkv.getMatrix(), qkvBiases.getMatrix(), numTokens, 3 * embedDim);
+
+        float[] lse = new float[batch * numHeads * seqLen];
+        JMatrix attention = new JMatrix(numTokens, embedDim, 1, 1);
+        attentionForward(qkv.getMatrix(), attention.getMatrix(), lse, batch, seqLen);
+
+        JMatrix output = attention.matmul(outputWeights, false);
+        addBiasToRows(output.getMatrix(), outputBiases.getMatrix(), numTokens, embedDim);
+
+        if (training) {
+            this.batch = batch;
+            this.seqLen = seqLen;
+            lastInput = retain(tokens);
+            lastQkv = retain(qkv);
+            lastAttention = retain(attention);
+            logSumExp = lse;
+        }
+
+        return trackOutput(new JMatrix(output.getMatrix(), batch, seqLen, embedDim, 1), training);
+    }
+
+    @Override
+    public JMatrix backward(JMatrix dOutput) {
+        int numTokens = batch * seqLen;
+        JMatrix dOut = new JMatrix(Elementwise.values(dOutput), numTokens, embedDim, 1, 1);
+        JMatrix attention = float32(lastAttention);
+        JMatrix qkv = float32(lastQkv);
+        JMatrix tokens = float32(lastInput);
+
+        // Output projection
+        dOutputWeights.setMatrix(attention.transpose2D().matmul(dOut, false).getMatrix());
+        dOutputBiases.setMatrix(sumRows(dOut.getMatrix(), numTokens, embedDim));
+        JMatrix dAttention = dOut.matmul(outputWeights.transpose2D(), false);
+
+        JMatrix dQkv = new JMatrix(numTokens, 3 * embedDim, 1, 1);
+        attentionBackward(qkv.getMatrix(), attention.getMatrix(), dAttention.getMatrix(),
+            dQkv.getMatrix(), batch, seqLen);
+
+        // Query, key and value projection
+        dQkvWeights.setMatrix(tokens.transpose2D().matmul(dQkv, false).getMatrix());
+        dQkvBiases.setMatrix(sumRows(dQkv.getMatrix(), numTokens, 3 * embedDim));
+        JMatrix dX = dQkv.matmul(qkvWeights.transpose2D(), false);
+
+        // Save memory
+        lastInput = null;
+        lastQkv = null;
+        lastAttention = null;
+        logSumExp = null;
+
+        return trackGradient(new JMatrix(dX.getMatrix(), batch, seqLen, embedDim, 1));
+    }
+
+    /*
+     * Queries, keys and values of head h for token t start at
+     * qkv[t * 3 * embedDim + h * headDim], offset by embedDim for keys and 2 * embedDim for values.
+     */
+
+    // One task per (batch, head, query block), keeping a running max, sum and output per query
+    private void attentionForward(float[] qkv, float[] out, float[] lse, int batch, int seqLen) {
+        int qkvWidth = 3 * embedDim;
+        int numQueryBlocks = (seqLen + QUERY_BLOCK - 1) / QUERY_BLOCK;
+        float scale = (float)(1.0 / Math.sqrt(headDim));
+
+        IntStream.range(0, batch * numHeads * numQueryBlocks).parallel().forEach(task -> {
+            int batchHead = task / numQueryBlocks;
+            int b = batchHead / numHeads;
+            int h = batchHead % numHeads;
+            int queryStart = (task % numQueryBlocks) * QUERY_BLOCK;
+            int queryEnd = Math.min(seqLen, queryStart + QUERY_BLOCK);
+            int rows = queryEnd - queryStart;
+
+            float[] rowMax = new float[rows];
+            float[] rowSum = new float[rows];
+            float[] acc = new float[rows * headDim];
+            float[] scores = new float[KEY_BLOCK];
+            Arrays.fill(rowMax, Float.NEGATIVE_INFINITY);
+
+            // Causal queries never see keys past the end of their block
+            int keyLimit = causal ? queryEnd : seqLen;
+            for (int keyStart = 0; keyStart < keyLimit; keyStart += KEY_BLOCK) {
+                int keyBlockEnd = Math.min(keyLimit, keyStart + KEY_BLOCK);
+                for (int r = 0; r < rows; r++) {
+                    int i = queryStart + r;
+                    int keyEnd = causal ? Math.min(keyBlockEnd, i + 1) : keyBlockEnd;
+                    if (keyEnd <= keyStart) {
+                        continue;
+                    }
+                    int qOffset = (b * seqLen + i) * qkvWidth + h * headDim;
+
+                    float max = rowMax[r];
+                    for (int j = keyStart; j < keyEnd; j++) {
+                        int kOffset = (b * seqLen + j) * qkvWidth + embedDim + h * headDim;
+                        float score = dot(qkv, qOffset, qkv, kOffset) * scale;
+                        scores[j - keyStart] = score;
+                        max = Math.max(max, score);
+                    }
+
+                    // Rescale what was accumulated under the previous max
+                    float correction = (float)Math.exp(rowMax[r] - max);
+                    float sum = rowSum[r] * correction;
+                    int accOffset = r * headDim;
+                    for (int e = 0; e < headDim; e++) {
+                        acc[accOffset + e] *= correction;
+                    }
+                    for (int j = keyStart; j < keyEnd; j++) {
+                        float p = (float)Math.exp(scores[j - keyStart] - max);
+                        sum += p;
+                        int vOffset = (b * seqLen + j) * qkvWidth + 2 * embedDim + h * headDim;
+                        for (int e = 0; e < headDim; e++) {
+                            acc[accOffset + e] += p * qkv[vOffset + e];
+                        }
+                    }
+                    rowMax[r] = max;
+                    rowSum[r] = sum;
+                }
+            }
+
+            for (int r = 0; r < rows; r++) {
+                int i = queryStart + r;
+                float invSum = 1.0f / rowSum[r];
+                int outOffset = (b * seqLen + i) * embedDim + h * headDim;
+                for (int e = 0; e < headDim; e++) {
+                    out[outOffset + e] = acc[r * headDim + e] * invSum;
+                }
+                lse[batchHead * seqLen + i] = rowMax[r] + (float)Math.log(rowSum[r]);
+            }
+        });
+    }
+
+    /*
+     * With P = softmax(scores) recomputed from the log-sum-exp and D = rowsum(dO * O):
+     * dV = P^T dO, dScores = P * (dO V^T - D), dQ = dScores K * scale, dK = dScores^T Q * scale.
+     * dQ is computed per query block and dK, dV per key block, so no two tasks write the same rows.
+     */
+    private void attentionBackward(float[] qkv, float[] attention, float[] dAttention, float[] dQkv,
+            int batch, int seqLen) {
+        int qkvWidth = 3 * embedDim;
+        float scale = (float)(1.0 / Math.sqrt(headDim));
+        float[] lse = logSumExp;
+
+        // D per (batch, head, query)
+        float[] delta = new float[batch * numHeads * seqLen];
+        IntStream.range(0, batch * numHeads).parallel().forEach(batchHead -> {
+            int b = batchHead / numHeads;
+            int h = batchHead % numHeads;
+            for (int i = 0; i < seqLen; i++) {
+                int offset = (b * seqLen + i) * embedDim + h * headDim;
+                delta[batchHead * seqLen + i] = dot(dAttention, offset, attention, offset);
+            }
+        });
+
+        // dQ, one task per (batch, head, query block)
+        int numQueryBlocks = (seqLen + QUERY_BLOCK - 1) / QUERY_BLOCK;
+        IntStream.range(0, batch * numHeads * numQueryBlocks).parallel().forEach(task -> {
+            int batchHead = task / numQueryBlocks;
+            int b = batchHead / numHeads;
+            int h = batchHead % numHeads;
+            int queryStart = (task % numQueryBlocks) * QUERY_BLOCK;
+            int queryEnd = Math.min(seqLen, queryStart + QUERY_BLOCK);
+
+            int keyLimit = causal ? queryEnd : seqLen;
+            for (int keyStart = 0; keyStart < keyLimit; keyStart += KEY_BLOCK) {
+                int keyBlockEnd = Math.min(keyLimit, keyStart + KEY_BLOCK);
+                for (int i = queryStart; i < queryEnd; i++) {
+                    int keyEnd = causal ? Math.min(keyBlockEnd, i + 1) : keyBlockEnd;
+                    int qOffset = (b * seqLen + i) * qkvWidth + h * headDim;
+                    int dOutOffset = (b * seqLen + i) * embedDim + h * headDim;
+                    float rowLse = lse[batchHead * seqLen + i];
+                    float rowDelta = delta[batchHead * seqLen + i];
+                    for (int j = keyStart; j < keyEnd; j++) {
+                        int kOffset = (b * seqLen + j) * qkvWidth + embedDim + h * headDim;
+                        int vOffset = kOffset + embedDim;
+                        float p = (float)Math.exp(dot(qkv, qOffset, qkv, kOffset) * scale - rowLse);
+                        float dScore = p * (dot(dAttention, dOutOffset, qkv, vOffset) - rowDelta) * scale;
+                        for (int e = 0; e < headDim; e++) {
+                            dQkv[qOffset + e] += dScore * qkv[kOffset + e];
+                        }
+                    }
+                }
+            }
+        });
+
+        // dK and dV, one task per (batch, head, key block)
+        int numKeyBlocks = (seqLen + KEY_BLOCK - 1) / KEY_BLOCK;
+        IntStream.range(0, batch * numHeads * numKeyBlocks).parallel().forEach(task -> {
+            int batchHead = task / numKeyBlocks;
+            int b = batchHead / numHeads;
+            int h = batchHead % numHeads;
+            int keyStart = (task % numKeyBlocks) * KEY_BLOCK;
+            int keyBlockEnd = Math.min(seqLen, keyStart + KEY_BLOCK);
+
+            // Causal keys are only seen by queries at or after them
+            for (int i = causal ? keyStart : 0; i < seqLen; i++) {
+                int keyEnd = causal ? Math.min(keyBlockEnd, i + 1) : keyBlockEnd;
+                int qOffset = (b * seqLen + i) * qkvWidth + h * headDim;
+                int dOutOffset = (b * seqLen + i) * embedDim + h * headDim;
+                float rowLse = lse[batchHead * seqLen + i];
+                float rowDelta = delta[batchHead * seqLen + i];
+                for (int j = keyStart; j < keyEnd; j++) {
+                    int kOffset = (b * seqLen + j) * qkvWidth + embedDim + h * headDim;
+                    int vOffset = kOffset + embedDim;
+                    float p = (float)Math.exp(dot(qkv, qOffset, qkv, kOffset) * scale - rowLse);
+                    float dScore = p * (dot(dAttention, dOutOffset, qkv, vOffset) - rowDelta) * scale;
+                    for (int e = 0; e < headDim; e++) {
+                        dQkv[vOffset + e] += p * dAttention[dOutOffset + e];
+                        dQkv[kOffset + e] += dScore * qkv[qOffset + e];
+                    }
+                }
+            }
+        });
+    }
+
+    private float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        float sum = 0;
+        for (int e = 0; e < headDim; e++) {
+            sum += a[aOffset + e] * b[bOffset + e];
+        }
+        return sum;
+    }
+
+    private static void addBiasToRows(float[] values, float[] bias, int rows, int cols) {
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            int offset = row * cols;
+            for (int col = 0; col < cols; col++) {
+                values[offset + col] += bias[col];
+            }
+        });
+    }
+
+    private static float[] sumRows(float[] values, int rows, int cols) {
+        float[] sum = new float[cols];
+        for (int row = 0; row < rows; row++) {
+            int offset = row * cols;
+            for (int col = 0; col < cols; col++) {
+                sum[col] += values[offset + col];
+            }
+        }
+        return sum;
+    }
+
+    private static JMatrix float32(JMatrix retained) {
+        return retained.dtype().equals("float32") ? retained : retained.toFloat32();
+    }
+
+    @Override
+    public void updateParameters(JMatrix[] parameterUpdates) {
+        JMatrix[] weights = getWeights();
+        for (int i = 0; i < weights.length; i++) {
+            weights[i].subtractInPlace(parameterUpdates[i]);
+        }
+        parametersUpdated();
+    }
+
+    @Override
+    public JMatrix[] getWeights() {
+        return new JMatrix[]{qkvWeights, qkvBiases, outputWeights, outputBiases};
+    }
+
+    @Override
+    public JMatrix[] getParameterGradients() {
+        return new JMatrix[]{dQkvWeights, dQkvBiases, dOutputWeights, dOutputBiases};
+    }
+
+    @Override
+    public int[] outputShape() {
+        return getPreviousLayer().outputShape();
+    }
+}
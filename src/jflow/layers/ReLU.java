@@ -34,5 +34,10 @@ public class ReLU extends ShapePreservingLayer{
        
         return trackGradient(dZ);
     }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
 
@@ -22,10 +22,12 @@ public class Reshape extends ShapeAlteringLayer{
 
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
-        this.oldLength = input.length();
-        this.oldChannels = input.channels();
-        this.oldHeight = input.height();
-        this.oldWidth = input.width();
+        if (training) {
+            this.oldLength = input.length();
+            this.oldChannels = input.channels();
+            this.oldHeight = input.height();
+            this.oldWidth = input.width();
+        }
 
         // Account for dense layers being transposed
         if (getPreviousShapeInfluencer() instanceof Dense) {
@@ -0,0 +1,173 @@
+package jflow.layers;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * A depthwise convolution followed by a pointwise (1x1) convolution that mixes channels. <p>
+ * Weights are depthwise filters (channels * depthMultiplier, 1, filterSize, filterSize),
+ * pointwise filters (numFilters, channels * depthMultiplier, 1, 1) and one bias per filter.
+ */
+public class SeparableConv2D extends TrainableLayer {
+    private int numFilters;
+    private int filterSize;
+    private int stride;
+    private int depthMultiplier;
+    private String padding;
+    // Input shape given to the constructor, applied in build()
+    private int[] constructorInputShape;
+
+    // The two stages, run without tracking their own outputs
+    private DepthwiseConv2D depthwise;
+    private Conv2D pointwise;
+
+    public SeparableConv2D(int numFilters, int filterSize, int stride, String padding) {
+        this(numFilters, filterSize, stride, padding, 1);
+    }
+    public SeparableConv2D(int numFilters, int filterSize, int stride, String padding, int depthMultiplier) {
+        super("separable_conv_2d");
+        if (!(padding.equals("same_padding") || padding.equals("valid_padding"))) {
+            throw new IllegalArgumentException("Only same_padding and valid_padding allowed.");
+        }
+        if (depthMultiplier < 1) {
+            throw new IllegalArgumentException(
+                "SeparableConv2D depth multiplier should be positive. Got: " + depthMultiplier + "."
+            );
+        }
+        this.numFilters = numFilters;
+        this.filterSize = filterSize;
+        this.stride = stride;
+        this.padding = padding;
+        this.depthMultiplier = depthMultiplier;
+    }
+    public SeparableConv2D(int numFilters, int filterSize, int stride, String padding,
+            int depthMultiplier, int[] inputShape) {
+        this(numFilters, filterSize, stride, padding, depthMultiplier);
+        if (inputShape.length != 3) {
+            throw new IllegalArgumentException(
+                "SeparableConv2D input shape should have 3 dimensions. Got: "
+                + inputShape.length + "."
+            );
+        }
+        this.constructorInputShape = inputShape;
+    }
+
+    @Override
+    public void build(int IDnum) {
+        if (constructorInputShape != null && internalGetInputShape() == null) {
+            setInputShape(constructorInputShape);
+        }
+        super.build(IDnum);
+        int[] inputShape;
+        if (internalGetInputShape() != null) {
+            inputShape = internalGetInputShape();
+        } else {
+            if (getPreviousLayer() == null) {
+                throw new IllegalStateException(
+                    "In " + this.getClass().getSimpleName() +
+                    ": Cannot build the first layer without an input shape."
+                );
+            }
+            int[] prevShape = getPreviousLayer().outputShape();
+            inputShape = new int[]{prevShape[1], prevShape[2], prevShape[3]};
+        }
+
+        depthwise = new DepthwiseConv2D(depthMultiplier, filterSize, stride, padding, inputShape);
+        depthwise.build(IDnum);
+        int[] depthwiseShape = depthwise.outputShape();
+        pointwise = new Conv2D(numFilters, 1, 1, "valid_padding",
+            new int[]{depthwiseShape[1], depthwiseShape[2], depthwiseShape[3]});
+        pointwise.build(IDnum);
+
+        // Name weights for saving and debug
+        depthwise.getWeights()[0].setName("depthwise_filters");
+        depthwise.getParameterGradients()[0].setName("dDepthwiseFilters");
+        pointwise.getWeights()[0].setName("pointwise_filters");
+        pointwise.getParameterGradients()[0].setName("dPointwiseFilters");
+
+        depthwise.setRetainedPrecision(getStoragePrecision());
+        pointwise.setRetainedPrecision(getStoragePrecision());
+
+        // The depthwise stage has no bias, so its biases stay zero
+        setNumTrainableParameters(depthwise.getWeights()[0].size() +
+            pointwise.getWeights()[0].size() + numFilters);
+    }
+
+    @Override
+    public JMatrix forward(JMatrix input, boolean training) {
+        JMatrix depthwiseOutput = depthwise.convolve(input, training);
+        return trackOutput(pointwise.convolve(depthwiseOutput, training), training);
+    }
+
+    @Override
+    public JMatrix backward(JMatrix input) {
+        JMatrix dDepthwiseOutput = pointwise.convolveBackward(input);
+        return trackGradient(depthwise.convolveBackward(dDepthwiseOutput));
+    }
+
+    @Override
+    protected void setStoragePrecision(String storagePrecision) {
+        super.setStoragePrecision(storagePrecision);
+        if (depthwise != null) {
+            depthwise.setRetainedPrecision(storagePrecision);
+            pointwise.setRetainedPrecision(storagePrecision);
+        }
+    }
+
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
+    }
+
+    @Override
+    public void updateParameters(JMatrix[] parameterUpdates) {
+        JMatrix[] weights = getWeights();
+        for (int i = 0; i < weights.length; i++) {
+            weights[i].subtractInPlace(parameterUpdates[i]);
+        }
+        parametersUpdated();
+    }
+
+    @Override
+    public JMatrix[] getWeights() {
+        return new JMatrix[]{depthwise.getWeights()[0], pointwise.getWeights()[0], pointwise.getWeights()[1]};
+    }
+
+    @Override
+    public JMatrix[] getParameterGradients() {
+        return new JMatrix[]{depthwise.getParameterGradients()[0],
+            pointwise.getParameterGradients()[0], pointwise.getParameterGradients()[1]};
+    }
+
+    @Override
+    public int[] outputShape() {
+        int[] outputShape = null;
+        if (getOutput() != null) {
+            outputShape = getOutput().shape();
+        } else {
+            int[] prevShape;
+            if (getPreviousLayer() == null) {
+                int[] inputShape = internalGetInputShape();
+                prevShape = new int[]{-1, inputShape[0], inputShape[1], inputShape[2]};
+            } else {
+                prevShape = getPreviousLayer().outputShape().clone();
+            }
+            if (padding.equals("same_padding")) {
+                outputShape = new int[]{
+                    prevShape[0],
+                    numFilters,
+                    (int)Math.ceil((double)prevShape[2] / stride),
+                    (int)Math.ceil((double)prevShape[3] / stride)
+                };
+            } else { // valid padding
+                outputShape = new int[]{
+                    prevShape[0],
+                    numFilters,
+                    (prevShape[2] - filterSize) / stride + 1,
+                    (prevShape[3] - filterSize) / stride + 1
+                };
+            }
+        }
+        return outputShape;
+    }
+}
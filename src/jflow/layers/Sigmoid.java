@@ -2,6 +2,7 @@ package jflow.layers;
 
 import java.util.stream.IntStream;
 
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
@@ -16,6 +17,17 @@ public class Sigmoid extends ShapePreservingLayer{
         JMatrix Z = input.zerosLike();
 
         int size = input.size();
+
+        if (useFastMath()) {
+            float[] x = input.getMatrix();
+            float[] y = Z.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    y[i] = FastMath.sigmoid(x[i]);
+                }
+            });
+            return trackOutput(Z, training);
+        }
         // Apply sigmoid: 1 / (1 + e ^(-x)) 
         IntStream.range(0, size).parallel().forEach(i -> {
             Z.set(i, 1.0 / (1.0 + Math.exp(-input.get(i))));
@@ -42,4 +54,9 @@ public class Sigmoid extends ShapePreservingLayer{
         });
         return trackGradient(dSigmoid.multiply(gradient));
     }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
@@ -2,10 +2,17 @@ package jflow.layers;
 
 import java.util.stream.IntStream;
 
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
 public class Softmax extends ShapePreservingLayer{
+    // Kept in training so losses can take log probabilities that underflow from the logits.
+    // The logits are the input matrix itself, not a copy.
+    private JMatrix lastLogits;
+    private float[] logSumExp;
+    private JMatrix trainingOutput;
+
     public Softmax() {
         super("softmax");
     }
@@ -17,6 +24,12 @@ public class Softmax extends ShapePreservingLayer{
         int cols = A.channels() * A.height() * A.width();
 
         JMatrix Z = A.zerosLike();
+        float[] a = A.getMatrix();
+        float[] z = Z.getMatrix();
+        boolean fast = useFastMath();
+        // Reused between training steps of the same batch size
+        float[] columnLogSumExp = !training ? null :
+            (logSumExp != null && logSumExp.length == cols) ? logSumExp : new float[cols];
 
         // Compute softmax column-wise
         IntStream.range(0, cols).parallel().forEach(i -> {
@@ -24,18 +37,29 @@ public class Softmax extends ShapePreservingLayer{
 
             // Find max value in column
             for (int j = 0; j < rows; j++) {
-                max = Math.max(A.get(j * cols + i), max);
+                max = Math.max(a[j * cols + i], max);
             }
 
+            // Exponentiate once, keeping the values to normalize
             float sum = 0;
             for (int j = 0; j < rows; j++) {
-                sum += (float)Math.exp(A.get(j * cols + i) - max);
+                float exp = fast ? FastMath.exp(a[j * cols + i] - max) : (float)Math.exp(a[j * cols + i] - max);
+                z[j * cols + i] = exp;
+                sum += exp;
             }
 
             for (int j = 0; j < rows; j++) {
-                Z.set(j * cols + i, (float)Math.exp(A.get(j * cols + i) - max) / sum);
+                z[j * cols + i] /= sum;
+            }
+            if (training) {
+                columnLogSumExp[i] = max + (fast ? FastMath.log(sum) : (float)Math.log(sum));
             }
         });
+        if (training) {
+            lastLogits = A;
+            logSumExp = columnLogSumExp;
+            trainingOutput = Z;
+        }
         return trackOutput(Z, training);
     }
 
@@ -43,4 +67,21 @@ public class Softmax extends ShapePreservingLayer{
     public JMatrix backward(JMatrix gradient) {
         return trackGradient(getOutput().subtract(gradient));
     }
+
+    /**
+     * The log of an output probability. If the probability underflows in the output
+     * of the last training pass, it is computed from the logits, logits - logSumExp, so it stays finite.
+     * @param output                The output of this layer the probability belongs to.
+     * @param index                 The index of the probability in the output.
+     */
+    public float logProbability(JMatrix output, int index) {
+        float probability = output.get(index);
+        if (probability >= Float.MIN_NORMAL) {
+            return (float)Math.log(probability);
+        }
+        if (output == trainingOutput && logSumExp != null) {
+            return lastLogits.get(index) - logSumExp[index % logSumExp.length];
+        }
+        return (float)Math.log(probability + 1e-12);
+    }
 }
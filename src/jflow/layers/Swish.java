@@ -1,6 +1,7 @@
 package jflow.layers;
 
 import java.util.stream.IntStream;
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
@@ -13,10 +14,21 @@ public class Swish extends ShapePreservingLayer {
     @Override
     public JMatrix forward(JMatrix input, boolean training) {
         if (training) {
-            lastInput = input;
+            lastInput = retain(input);
         }
         int size = input.size();
         JMatrix output = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = input.getMatrix();
+            float[] y = output.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    y[i] = x[i] * FastMath.sigmoid(x[i]);
+                }
+            });
+            return trackOutput(output, training);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
@@ -32,6 +44,19 @@ public class Swish extends ShapePreservingLayer {
         int size = gradient.size();
         JMatrix input = lastInput; // Use original input x
         JMatrix dZ = input.zerosLike();
+
+        if (useFastMath()) {
+            float[] x = Elementwise.values(input);
+            float[] g = gradient.getMatrix();
+            float[] dx = dZ.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    float sigmoid = FastMath.sigmoid(x[i]);
+                    dx[i] = g[i] * (sigmoid + x[i] * sigmoid * (1 - sigmoid));
+                }
+            });
+            return trackGradient(dZ);
+        }
         
         IntStream.range(0, size).parallel().forEach(i -> {
             double x = input.get(i);
@@ -45,4 +70,9 @@ public class Swish extends ShapePreservingLayer {
         
         return trackGradient(dZ);
     }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
\ No newline at end of file
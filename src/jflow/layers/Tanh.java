@@ -1,6 +1,7 @@
 package jflow.layers;
 
 import java.util.stream.IntStream;
+import jflow.data.FastMath;
 import jflow.data.JMatrix;
 import jflow.layers.templates.ShapePreservingLayer;
 
@@ -13,6 +14,16 @@ public class Tanh extends ShapePreservingLayer{
         JMatrix output = input.zerosLike();
 
         int size = input.size();
+        if (useFastMath()) {
+            float[] x = input.getMatrix();
+            float[] y = output.getMatrix();
+            Elementwise.forEachChunk(size, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    y[i] = FastMath.tanh(x[i]);
+                }
+            });
+            return trackOutput(output, training);
+        }
         IntStream.range(0, size).parallel().forEach(i -> {
             output.set(i, Math.tanh(input.get(i)));
         });
@@ -25,11 +36,20 @@ public class Tanh extends ShapePreservingLayer{
         JMatrix dZ = output.zerosLike();
         int size = output.size();
 
-        IntStream.range(0, size).parallel().forEach(i -> {
-            double tanhVal = Math.tanh(output.get(i));  
-            double dTanh = 1 - tanhVal * tanhVal;  
-            dZ.set(i, gradient.get(i) * dTanh);
+        // The output already holds tanh(x)
+        float[] y = Elementwise.values(output);
+        float[] g = gradient.getMatrix();
+        float[] dx = dZ.getMatrix();
+        Elementwise.forEachChunk(size, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                dx[i] = g[i] * (1 - y[i] * y[i]);
+            }
         });
         return trackGradient(dZ);
-    }    
+    }
+
+    @Override
+    protected boolean isLayoutAgnostic() {
+        return true;
+    }
 }
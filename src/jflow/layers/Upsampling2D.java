@@ -28,6 +28,27 @@ public class Upsampling2D extends ShapeAlteringLayer{
 
         JMatrix output = new JMatrix(numImages, channels, newHeight, newWidth);
 
+        if (input.layout().equals("NHWC")) {
+            // Copy the channel vector of each pixel to its square region
+            float[] outputMatrix = output.setLayout("NHWC").getMatrix();
+            IntStream.range(0, numImages * height).parallel().forEach(row -> {
+                int i = row / height;
+                int h = row % height;
+                for (int w = 0; w < width; w++) {
+                    int inputIndex = (row * width + w) * channels;
+                    for (int a = 0; a < scaleFactor; a++) {
+                        for (int b = 0; b < scaleFactor; b++) {
+                            int newH = h * scaleFactor + a;
+                            int newW = w * scaleFactor + b;
+                            System.arraycopy(inputMatrix, inputIndex, outputMatrix, 
+                                ((i * newHeight + newH) * newWidth + newW) * channels, channels);
+                        }
+                    }
+                }
+            });
+            return trackOutput(output, training);
+        }
+
         IntStream.range(0, numImages * channels).parallel().forEach(index -> {
             int i = index / channels;  
             int c = index % channels;  
@@ -65,6 +86,29 @@ public class Upsampling2D extends ShapeAlteringLayer{
         int newWidth = width / scaleFactor;
 
         JMatrix gradient = new JMatrix(numImages, channels, newHeight, newWidth);
+
+        if (input.layout().equals("NHWC")) {
+            // Sum the channel vectors of each square region
+            float[] gradientMatrix = gradient.setLayout("NHWC").getMatrix();
+            IntStream.range(0, numImages * newHeight).parallel().forEach(row -> {
+                int i = row / newHeight;
+                int newH = row % newHeight;
+                for (int newW = 0; newW < newWidth; newW++) {
+                    int outputIndex = (row * newWidth + newW) * channels;
+                    for (int a = 0; a < scaleFactor; a++) {
+                        for (int b = 0; b < scaleFactor; b++) {
+                            int h = newH * scaleFactor + a;
+                            int w = newW * scaleFactor + b;
+                            int inputIndex = ((i * height + h) * width + w) * channels;
+                            for (int c = 0; c < channels; c++) {
+                                gradientMatrix[outputIndex + c] += inputMatrix[inputIndex + c];
+                            }
+                        }
+                    }
+                }
+            });
+            return trackGradient(gradient);
+        }
     
         IntStream.range(0, numImages * channels).parallel().forEach(index -> {
             int i = index / channels;  
@@ -93,6 +137,11 @@ public class Upsampling2D extends ShapeAlteringLayer{
     }
 
 
+    @Override
+    protected boolean supportsChannelsLast() {
+        return true;
+    }
+
     @Override
     public int[] outputShape() {
         int[] shape = getPreviousLayer().outputShape().clone();
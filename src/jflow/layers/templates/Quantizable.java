@@ -0,0 +1,46 @@
+package jflow.layers.templates;
+
+import jflow.data.QuantizedMatrix;
+
+/**
+ * A layer that supports int8 post-training quantization for inference. <p>
+ * Calibration observes the range of the layer input during inference forward passes,
+ * which sets a static activation scale. Weights are quantized per output channel.
+ * Training always runs in float.
+ */
+public interface Quantizable {
+    /**
+     * Start or stop observing input ranges in inference forward passes.
+     * Starting resets previously observed ranges.
+     */
+    public void setCalibrating(boolean calibrating);
+
+    /**
+     * Quantize weights to int8 and fix the activation scale from calibration.
+     * Subsequent inference forward passes run in int8.
+     */
+    public void quantize();
+
+    /**
+     * Return to float inference.
+     */
+    public void dequantize();
+
+    public boolean isQuantized();
+
+    /**
+     * The int8 weights, or null if not quantized.
+     */
+    public QuantizedMatrix getQuantizedWeights();
+
+    /**
+     * The static activation scale of the layer input.
+     */
+    public float getInputScale();
+
+    /**
+     * Use previously quantized weights and activation scale.
+     * The float weights are replaced by their dequantized values.
+     */
+    public void setQuantizedWeights(QuantizedMatrix weights, float inputScale);
+}
@@ -13,6 +13,39 @@ public abstract class TrainableLayer extends ShapeAlteringLayer{
 
     public abstract JMatrix[] getWeights();
 
+    /**
+     * The factor that optimizers apply to updates of a parameter. <p>
+     * Optimizers update getWeights()[index] in place using getParameterGradients()[index].
+     * @param index                 The index of the parameter in getParameterGradients().
+     */
+    public float updateScale(int index) {
+        return 1.0f;
+    }
+
+    /**
+     * The rows of a parameter gradient that may be nonzero, for layers with sparse gradients. <p>
+     * A row is one entry along the length of the gradient. Optimizers that support
+     * sparse updates skip all other rows.
+     * @param index                 The index of the parameter in getParameterGradients().
+     * @return                  The row indices in ascending order, or null if the gradient is dense.
+     */
+    public int[] touchedRows(int index) {
+        return null;
+    }
+
+    /**
+     * Called after an optimizer has updated the parameters in place.
+     */
+    public void parametersUpdated() {
+        weightsChanged();
+    }
+
+    /**
+     * Called after the parameter values changed, by an optimizer step or otherwise,
+     * e.g. when averaged weights are swapped in. Values derived from the weights are stale.
+     */
+    public void weightsChanged() {}
+
 
     @Override 
     protected JMatrix[] debugData() {
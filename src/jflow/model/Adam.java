@@ -1,7 +1,6 @@
 package jflow.model;
 
 import java.util.HashMap;
-import java.util.Map;
 
 import jflow.data.JMatrix;
 import jflow.layers.templates.TrainableLayer;
@@ -9,96 +8,54 @@ import jflow.layers.templates.TrainableLayer;
 public class Adam extends Optimizer{
     private double beta1; // Momentum coefficient of the first moment
     private double beta2; // Momentum coefficient of the second moment
-    private double learningRate;
     private double epsilon = 1e-8; // Small constant for numerical stability
-    private long timesteps = 0;
 
     protected Adam(double learningRate, double beta1, double beta2) {
-        super("adam");
+        super("adam", learningRate);
         this.beta1 = beta1;
         this.beta2 = beta2;
-        this.learningRate = learningRate;
     }
 
     protected Adam(double learningRate) {
-        super("adam");
+        super("adam", learningRate);
         this.beta1 = 0.9;
         this.beta2 = 0.999;
-        this.learningRate = learningRate;
     }
 
-    protected long getTimeSteps() {
-        return timesteps;
-    }
-    protected void setTimeSteps(long timeSteps) {
-        this.timesteps = timeSteps;
+    @Override
+    public double getMomentum() {
+        return beta1;
     }
 
     @Override
-    public void apply(HashMap<String, JMatrix[]> layerGradients) {
-        timesteps++;
-
-        boolean needsClipping = false;
-        double clipScale = 1.0;
-        if (useClipping()) {
-            double globalGradNormSquared = 0.0;
-            for (JMatrix[] grads : layerGradients.values()) {
-                for (JMatrix grad : grads) {
-                    double frobeniusNorm = grad.frobeniusNorm();
-                    globalGradNormSquared += frobeniusNorm * frobeniusNorm;
-                }
-            }
-
-            double globalGradNorm = Math.sqrt(globalGradNormSquared);
-            
-            if (useClipping() && globalGradNorm > getClipNorm()) {
-                clipScale = getClipNorm() / (globalGradNorm + 1e-6);  // epsilon for numerical stability
-                needsClipping = true;
-            }
-        }
-        for (Map.Entry<String, JMatrix[]> entry : layerGradients.entrySet()) {
-            TrainableLayer layer = getLayerID().get(entry.getKey());
-
-            JMatrix[] gradients = entry.getValue();
-
-            JMatrix[] moments = getMoments().get(layer);
-
-            JMatrix[] updates = new JMatrix[gradients.length];
-
-            
-            for (int i = 0; i < gradients.length; i++) {
-                JMatrix weightGradients = gradients[i];
-                JMatrix mWeights = moments[2 * i];
-                JMatrix vWeights = moments[2 * i + 1];
-
-                // Clip if needed
-                if (needsClipping) {
-                    weightGradients.multiplyInPlace(clipScale);
-                }
-                // Update first moments (momentum)
-                mWeights.multiplyInPlace(beta1).addInPlace(weightGradients.multiply(1 - beta1));
-
-                // Update second moments (velocity)
-                vWeights.multiplyInPlace(beta2).addInPlace(weightGradients.multiply(weightGradients).multiply(1 - beta2));
-
-                // Calculate bias-corrected moments
-                JMatrix mWeightsCorrected = mWeights.divide(1 - Math.pow(beta1, timesteps));
-                JMatrix vWeightsCorrected = vWeights.divide(1 - Math.pow(beta2, timesteps));
+    public void setMomentum(double momentum) {
+        this.beta1 = momentum;
+    }
 
-                // Calculate parameter updates
-                JMatrix weightUpdate = mWeightsCorrected.divideInPlace(
-                    vWeightsCorrected.sqrt().addInPlace(epsilon));
-                
-                updates[i] = weightUpdate.multiplyInPlace(learningRate);
-            }
+    /**
+     * Lazy updates: rows without gradients, such as unused Embedding rows, are skipped.
+     */
+    @Override
+    protected boolean sparseUpdates() {
+        return true;
+    }
 
-            // Apply updates
-            layer.updateParameters(updates);
-            // Reset gradients
-            for (JMatrix m : layer.getParameterGradients()) {
-                m.fill(0);
-            }
-        }
+    @Override
+    public void apply(HashMap<String, JMatrix[]> layerGradients) {
+        long timesteps = incrementTimeSteps();
+
+        // Bias corrections are shared by every parameter in this step
+        float biasCorrection1 = (float)(1 - Math.pow(beta1, timesteps));
+        float biasCorrection2 = (float)(1 - Math.pow(beta2, timesteps));
+
+        // Update moments and parameters and reset gradients in one pass
+        prepareStep(layerGradients).update((segment, start, end, clipScale) -> {
+            JMatrix[] moments = segment.moments;
+            OptimizerKernels.adam(segment.parameter, segment.gradient,
+                moments[2 * segment.index], moments[2 * segment.index + 1], start, end,
+                (float)getLearningRate(), (float)beta1, (float)beta2, biasCorrection1, biasCorrection2,
+                (float)epsilon, clipScale, segment.updateScale);
+        });
     }
 
     @Override
@@ -117,7 +74,6 @@ public class Adam extends Optimizer{
             moments[2 * i + 1] = vWeights;
         }
 
-        getMoments().put(layer, moments);
-        getLayerID().put(layer.getName(), layer);
+        registerLayer(layer, moments);
     }
 }
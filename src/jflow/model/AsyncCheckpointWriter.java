@@ -0,0 +1,135 @@
+package jflow.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/**
+ * Writes checkpoints on a background thread, so training continues while files are written. <p>
+ * A save copies every tensor into one of two snapshot buffers and returns.
+ * Snapshots are written in order, each through a temporary file and an atomic rename.
+ * If both buffers are still waiting to be written, the next save blocks until one is free.
+ */
+final class AsyncCheckpointWriter {
+    private static final int NUM_BUFFERS = 2;
+
+    // Snapshot buffers that are not being written, with arrays reused between saves
+    private final BlockingQueue<float[][]> freeBuffers = new ArrayBlockingQueue<>(NUM_BUFFERS);
+    private final ExecutorService executor;
+    private volatile IOException failure;
+
+    /**
+     * Called on the writer thread after a checkpoint file is in place.
+     * An IOException is reported like a failed write.
+     */
+    interface Callback {
+        void written(Path file) throws IOException;
+    }
+
+    AsyncCheckpointWriter() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jflow-checkpoint-writer");
+            // Pending writes never keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int b = 0; b < NUM_BUFFERS; b++) {
+            freeBuffers.add(new float[0][]);
+        }
+    }
+
+    /**
+     * Snapshot tensors and write them to a file in the background.
+     * Blocks while both snapshot buffers are waiting to be written.
+     * @param file                  The checkpoint file to write.
+     * @param tensors               The tensors to write. Their values are copied before returning.
+     * @param onWritten             Called on the writer thread after the file is in place.
+     * @throws IOException if an earlier background write failed.
+     */
+    void save(Path file, List<CheckpointFile.Tensor> tensors, Callback onWritten) throws IOException {
+        rethrowFailure();
+        float[][] buffer = takeBuffer();
+        float[][] arrays = (buffer.length == tensors.size()) ? buffer : new float[tensors.size()][];
+        boolean queued = false;
+        try {
+            List<CheckpointFile.Tensor> snapshot = snapshot(tensors, arrays);
+            executor.execute(() -> {
+                try {
+                    CheckpointFile.write(file, snapshot);
+                    onWritten.written(file);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (Throwable e) {
+                    failure = new IOException("Error writing checkpoint to " + file, e);
+                } finally {
+                    freeBuffers.add(arrays);
+                }
+            });
+            queued = true;
+        } finally {
+            // The writer returns the buffer once queued, otherwise it is returned here
+            if (!queued) {
+                freeBuffers.add(arrays);
+            }
+        }
+    }
+
+    /**
+     * Wait until every pending checkpoint is written.
+     * @throws IOException if a background write failed.
+     */
+    void flush() throws IOException {
+        try {
+            // Writes run in order, so this completes after all of them
+            executor.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for checkpoint writes.", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        rethrowFailure();
+    }
+
+    private float[][] takeBuffer() throws IOException {
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a checkpoint buffer.", e);
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    // Copy tensor values into a buffer, reusing its arrays when sizes match
+    private static List<CheckpointFile.Tensor> snapshot(List<CheckpointFile.Tensor> tensors, float[][] arrays) {
+        CheckpointFile.Tensor[] snapshot = new CheckpointFile.Tensor[tensors.size()];
+        IntStream.range(0, tensors.size()).parallel().forEach(t -> {
+            CheckpointFile.Tensor tensor = tensors.get(t);
+            if (tensor.values == null) {
+                // Int64 and float64 state is built fresh for every save
+                snapshot[t] = tensor;
+                return;
+            }
+            if (arrays[t] == null || arrays[t].length != tensor.values.length) {
+                arrays[t] = new float[tensor.values.length];
+            }
+            System.arraycopy(tensor.values, 0, arrays[t], 0, tensor.values.length);
+            snapshot[t] = CheckpointFile.Tensor.of(tensor.name, tensor.shape, arrays[t]);
+        });
+        return List.of(snapshot);
+    }
+}
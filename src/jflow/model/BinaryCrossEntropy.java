@@ -0,0 +1,36 @@
+package jflow.model;
+
+/**
+ * Binary cross-entropy of each output against a target in [0, 1], averaged over the outputs of a sample. <p>
+ * With a Sigmoid output the gradient is p - target with respect to the logits.
+ */
+public class BinaryCrossEntropy extends Loss {
+    protected BinaryCrossEntropy() {
+        super("binary_cross_entropy");
+    }
+
+    @Override
+    double sample(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        int features = batch.features;
+        boolean fused = batch.activation.equals("sigmoid");
+
+        double loss = 0;
+        for (int j = 0; j < features; j++) {
+            int index = batch.index(sample, j);
+            float target = batch.target(sample, j);
+            loss -= target * batch.logProbability(sample, j) + 
+                (1 - target) * batch.logComplement(sample, j);
+
+            float error = p[index] - target;
+            // dL/dp = (p - t) / (p * (1 - p)), which the sigmoid derivative cancels
+            g[index] = fused ? error / features : 
+                error / (features * Math.max(p[index] * (1 - p[index]), Float.MIN_NORMAL));
+        }
+        if (!fused) {
+            activationBackward(batch, sample);
+        }
+        return loss / features;
+    }
+}
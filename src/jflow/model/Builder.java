@@ -65,26 +65,127 @@ public class Builder {
     /**
      * A Conv2D layer.
      * @param numFilters            The number of filters in the Conv2D layer.
-     * @param filterSize            The square size of each filter. Currently only square filters are supported.
+     * @param filterSize            The height and width of each filter. For rectangular filters, use the int[] kernelSize overloads.
      * @param padding               The type of padding to use. Current options: <p> 
      *                                  - same_padding - valid_padding
-     * @param stride                The stride to apply in convolution.
+     * @param stride                The stride along both axes. For per-axis stride or dilation, use the int[] overloads.
      */
     public static Conv2D Conv2D(int numFilters, int filterSize, int stride, String padding) {
         return new Conv2D(numFilters, filterSize, stride, padding);
     }
-        /**
+    /**
      * A Conv2D layer.
      * @param numFilters            The number of filters in the Conv2D layer.
-     * @param filterSize            The square size of each filter. Currently only square filters are supported.
+     * @param filterSize            The height and width of each filter. For rectangular filters, use the int[] kernelSize overloads.
      * @param padding               The type of padding to use. Current options: <p> 
      *                                  - same_padding - valid_padding
-     * @param stride                The stride to apply in convolution.
+     * @param stride                The stride along both axes. For per-axis stride or dilation, use the int[] overloads.
      * @param InputShape            The 3D input shape to the Conv2D layer.
      */
     public static Conv2D Conv2D(int numFilters, int filterSize, int stride, String padding, InputShape input) {
         return new Conv2D(numFilters, filterSize, stride, padding, input.getShape());
     }
+    /**
+     * A grouped Conv2D layer. Channels and filters are split into groups,
+     * and each filter only sees the channels of its group.
+     * @param numFilters            The number of filters in the Conv2D layer.
+     * @param filterSize            The height and width of each filter.
+     * @param stride                The stride to apply in convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     * @param groups                The number of groups. Must divide both the input channels and numFilters.
+     */
+    public static Conv2D Conv2D(int numFilters, int filterSize, int stride, String padding, int groups) {
+        return new Conv2D(numFilters, filterSize, stride, padding, groups);
+    }
+    /**
+     * A grouped Conv2D layer.
+     * @param numFilters            The number of filters in the Conv2D layer.
+     * @param filterSize            The height and width of each filter.
+     * @param stride                The stride to apply in convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     * @param groups                The number of groups. Must divide both the input channels and numFilters.
+     * @param InputShape            The 3D input shape to the Conv2D layer.
+     */
+    public static Conv2D Conv2D(int numFilters, int filterSize, int stride, String padding, int groups, InputShape input) {
+        return new Conv2D(numFilters, filterSize, stride, padding, groups, input.getShape());
+    }
+    /**
+     * A Conv2D layer with rectangular filters, per-axis stride and dilation.
+     * @param numFilters            The number of filters in the Conv2D layer.
+     * @param kernelSize            The filter (height, width).
+     * @param stride                The (vertical, horizontal) stride.
+     * @param dilation              The (vertical, horizontal) spacing between filter taps. 1 for a dense filter.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     */
+    public static Conv2D Conv2D(int numFilters, int[] kernelSize, int[] stride, int[] dilation, String padding) {
+        return new Conv2D(numFilters, kernelSize, stride, dilation, padding, 1);
+    }
+    /**
+     * A Conv2D layer with rectangular filters, per-axis stride, dilation and channel groups.
+     * @param numFilters            The number of filters in the Conv2D layer.
+     * @param kernelSize            The filter (height, width).
+     * @param stride                The (vertical, horizontal) stride.
+     * @param dilation              The (vertical, horizontal) spacing between filter taps. 1 for a dense filter.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     * @param groups                The number of groups. Must divide both the input channels and numFilters.
+     * @param InputShape            The 3D input shape to the Conv2D layer.
+     */
+    public static Conv2D Conv2D(int numFilters, int[] kernelSize, int[] stride, int[] dilation, String padding,
+            int groups, InputShape input) {
+        return new Conv2D(numFilters, kernelSize, stride, dilation, padding, groups, input.getShape());
+    }
+    /**
+     * A DepthwiseConv2D layer, convolving each input channel with its own filters.
+     * @param depthMultiplier       The number of filters per input channel.
+     * @param filterSize            The height and width of each filter.
+     * @param stride                The stride to apply in convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     */
+    public static DepthwiseConv2D DepthwiseConv2D(int depthMultiplier, int filterSize, int stride, String padding) {
+        return new DepthwiseConv2D(depthMultiplier, filterSize, stride, padding);
+    }
+    /**
+     * A DepthwiseConv2D layer, convolving each input channel with its own filters.
+     * @param depthMultiplier       The number of filters per input channel.
+     * @param filterSize            The height and width of each filter.
+     * @param stride                The stride to apply in convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     * @param InputShape            The 3D input shape to the DepthwiseConv2D layer.
+     */
+    public static DepthwiseConv2D DepthwiseConv2D(int depthMultiplier, int filterSize, int stride, String padding, InputShape input) {
+        return new DepthwiseConv2D(depthMultiplier, filterSize, stride, padding, input.getShape());
+    }
+    /**
+     * A SeparableConv2D layer: a depthwise convolution followed by a 1x1 convolution.
+     * @param numFilters            The number of output filters.
+     * @param filterSize            The height and width of each depthwise filter.
+     * @param stride                The stride to apply in the depthwise convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     */
+    public static SeparableConv2D SeparableConv2D(int numFilters, int filterSize, int stride, String padding) {
+        return new SeparableConv2D(numFilters, filterSize, stride, padding);
+    }
+    /**
+     * A SeparableConv2D layer: a depthwise convolution followed by a 1x1 convolution.
+     * @param numFilters            The number of output filters.
+     * @param filterSize            The height and width of each depthwise filter.
+     * @param stride                The stride to apply in the depthwise convolution.
+     * @param padding               The type of padding to use. Current options: <p>
+     *                                  - same_padding - valid_padding
+     * @param depthMultiplier       The number of depthwise filters per input channel.
+     * @param InputShape            The 3D input shape to the SeparableConv2D layer.
+     */
+    public static SeparableConv2D SeparableConv2D(int numFilters, int filterSize, int stride, String padding,
+            int depthMultiplier, InputShape input) {
+        return new SeparableConv2D(numFilters, filterSize, stride, padding, depthMultiplier, input.getShape());
+    }
     /**
      * A MaxPool2D layer.
      * @param poolSize              The pool size to use in max pooling.
@@ -93,6 +194,14 @@ public class Builder {
     public static MaxPool2D MaxPool2D(int poolSize, int stride) {
         return new MaxPool2D(poolSize, stride);
     }
+    /**
+     * An AvgPool2D layer.
+     * @param poolSize              The pool size to use in average pooling.
+     * @param stride                The stride to use in average pooling.
+     */
+    public static AvgPool2D AvgPool2D(int poolSize, int stride) {
+        return new AvgPool2D(poolSize, stride);
+    }
     /**
      * Averages spatial dimensions along every channel.
      */
@@ -196,6 +305,15 @@ public class Builder {
         return new LayerNorm();
     }
 
+    /**
+     * The MultiHeadAttention layer, for self-attention over sequences.
+     * @param numHeads              The number of attention heads. Must divide the embedding dimension.
+     * @param causal                Whether each position only attends to itself and earlier positions.
+     */
+    public static MultiHeadAttention MultiHeadAttention(int numHeads, boolean causal) {
+        return new MultiHeadAttention(numHeads, causal);
+    }
+
     /**
      * The Embedding layer.
      * @param vocabSize             The number of tokens.
@@ -327,6 +445,175 @@ public class Builder {
         return new AdaGrad(learningRate, epsilon);
     }
 
+    /**
+     * The LAMB optimizer for large-batch training, with beta1 0.9, beta2 0.999 and weight decay 0.01.
+     * @param learningRate                  The learning rate for parameter updates.
+     */
+    public static Optimizer LAMB(double learningRate) {
+        return new LAMB(learningRate);
+    }
+
+    /**
+     * The LAMB optimizer for large-batch training.
+     * @param learningRate                  The learning rate for parameter updates.
+     * @param beta1                         The momentum coefficient of the first moment.
+     * @param beta2                         The momentum coefficient of the second moment.
+     * @param weightDecay                   The decoupled weight decay coefficient.
+     */
+    public static Optimizer LAMB(double learningRate, double beta1, double beta2, double weightDecay) {
+        return new LAMB(learningRate, beta1, beta2, weightDecay);
+    }
+
+    /**
+     * The LARS optimizer for large-batch training, with momentum 0.9, 
+     * weight decay 5e-4 and trust coefficient 0.001.
+     * @param learningRate                  The global learning rate for parameter updates.
+     */
+    public static Optimizer LARS(double learningRate) {
+        return new LARS(learningRate);
+    }
+
+    /**
+     * The LARS optimizer for large-batch training.
+     * @param learningRate                  The global learning rate for parameter updates.
+     * @param momentum                      The momentum coefficient.
+     * @param weightDecay                   The weight decay coefficient.
+     * @param trustCoefficient              Scales the per-layer trust ratio.
+     */
+    public static Optimizer LARS(double learningRate, double momentum, double weightDecay, double trustCoefficient) {
+        return new LARS(learningRate, momentum, weightDecay, trustCoefficient);
+    }
+
+    /**
+     * Categorical cross-entropy loss.
+     */
+    public static Loss CrossEntropy() {
+        return new CrossEntropy();
+    }
+
+    /**
+     * Categorical cross-entropy loss with label smoothing.
+     * @param labelSmoothing                The weight moved from the targets to a uniform distribution, e.g. 0.1.
+     */
+    public static Loss CrossEntropy(double labelSmoothing) {
+        return new CrossEntropy(labelSmoothing);
+    }
+
+    /**
+     * Binary cross-entropy loss, for outputs in [0, 1].
+     */
+    public static Loss BinaryCrossEntropy() {
+        return new BinaryCrossEntropy();
+    }
+
+    /**
+     * Mean squared error loss, for regression.
+     */
+    public static Loss MSE() {
+        return new MeanSquaredError();
+    }
+
+    /**
+     * Huber loss, for regression with outliers.
+     * @param delta                         The error at which the loss turns from quadratic to linear.
+     */
+    public static Loss Huber(double delta) {
+        return new Huber(delta);
+    }
+
+    /**
+     * Focal loss, which down-weights well-classified samples.
+     * @param gamma                         The focusing exponent. Typically 2.
+     */
+    public static Loss FocalLoss(double gamma) {
+        return new FocalLoss(gamma);
+    }
+
+    /**
+     * Linearly warms up the learning rate to its base value, stepped per batch.
+     * @param warmupSteps                   The number of steps to reach the base learning rate.
+     */
+    public static Scheduler LinearWarmup(int warmupSteps) {
+        return new LinearWarmup(warmupSteps, null);
+    }
+
+    /**
+     * Linearly warms up the learning rate to its base value, then follows another schedule.
+     * @param warmupSteps                   The number of steps to reach the base learning rate.
+     * @param after                         The schedule to follow warmup, stepped at the same interval.
+     */
+    public static Scheduler LinearWarmup(int warmupSteps, Scheduler after) {
+        return new LinearWarmup(warmupSteps, after);
+    }
+
+    /**
+     * Cosine decay of the learning rate, stepped per batch.
+     * @param decaySteps                    The number of steps to decay over.
+     * @param minLearningRate               The learning rate after decaySteps.
+     */
+    public static Scheduler CosineDecay(int decaySteps, double minLearningRate) {
+        return new CosineDecay(decaySteps, minLearningRate, false, 1.0);
+    }
+
+    /**
+     * Cosine decay of the learning rate with warm restarts, stepped per batch.
+     * @param firstDecaySteps               The length of the first period in steps.
+     * @param periodMultiplier              The growth of each period over the last, at least 1.
+     * @param minLearningRate               The learning rate at the end of each period.
+     */
+    public static Scheduler CosineDecayRestarts(int firstDecaySteps, double periodMultiplier, double minLearningRate) {
+        return new CosineDecay(firstDecaySteps, minLearningRate, true, periodMultiplier);
+    }
+
+    /**
+     * Multiplies the learning rate by a factor every stepSize epochs.
+     * @param stepSize                      The number of epochs between decays.
+     * @param factor                        The factor to multiply the learning rate by.
+     */
+    public static Scheduler StepDecay(int stepSize, double factor) {
+        return new StepDecay(stepSize, factor);
+    }
+
+    /**
+     * The one-cycle learning rate and momentum policy, stepped per batch, 
+     * with momentum cycled between 0.85 and 0.95.
+     * @param totalSteps                    The length of the cycle, usually epochs * batches.
+     * @param maxLearningRate               The peak learning rate.
+     */
+    public static Scheduler OneCycle(int totalSteps, double maxLearningRate) {
+        return new OneCycle(totalSteps, maxLearningRate, 0.85, 0.95);
+    }
+
+    /**
+     * The one-cycle learning rate and momentum policy, stepped per batch.
+     * @param totalSteps                    The length of the cycle, usually epochs * batches.
+     * @param maxLearningRate               The peak learning rate.
+     * @param minMomentum                   The momentum at the peak learning rate.
+     * @param maxMomentum                   The momentum at the start and end of the cycle.
+     */
+    public static Scheduler OneCycle(int totalSteps, double maxLearningRate, double minMomentum, double maxMomentum) {
+        return new OneCycle(totalSteps, maxLearningRate, minMomentum, maxMomentum);
+    }
+
+    /**
+     * Reduces the learning rate when the validation loss stops improving.
+     * @param factor                        The factor to multiply the learning rate by at each reduction.
+     * @param patience                      The number of epochs without improvement before reducing.
+     */
+    public static Scheduler ReduceOnPlateau(double factor, int patience) {
+        return new ReduceOnPlateau(factor, patience, 0);
+    }
+
+    /**
+     * Reduces the learning rate when the validation loss stops improving.
+     * @param factor                        The factor to multiply the learning rate by at each reduction.
+     * @param patience                      The number of epochs without improvement before reducing.
+     * @param minLearningRate               The lowest learning rate to reduce to.
+     */
+    public static Scheduler ReduceOnPlateau(double factor, int patience, double minLearningRate) {
+        return new ReduceOnPlateau(factor, patience, minLearningRate);
+    }
+
     /**
      * Passes data to the train function to faciliate the saving of model checkpoints.
      * @param metric                            the metric to track for improvement. Supported: 
@@ -337,4 +624,31 @@ public class Builder {
     public static ModelCheckpoint ModelCheckpoint(String metric, String savePath) {
         return new ModelCheckpoint(metric, savePath);
     }
+
+    /**
+     * Passes data to the train function to faciliate the saving of model checkpoints.
+     * @param metric                            the metric to track for improvement. Supported: 
+     *                                            <ul> <li> val_accuracy <li> val_loss 
+     *                                                 <li> train_accuracy <li> train_loss </ul>
+     * @param savePath                          the path to save checkpoints to.
+     * @param async                             write checkpoints on a background thread. Weights and 
+     *                                            optimizer state are copied into a snapshot first, 
+     *                                            so training continues during the write.
+     * @param keepLast                          the number of checkpoints to keep, each saved under
+     *                                            its epoch number. 0 overwrites a single checkpoint.
+     *                                            Epoch checkpoints of earlier runs in the same place count too.
+     */
+    public static ModelCheckpoint ModelCheckpoint(String metric, String savePath, boolean async, int keepLast) {
+        return new ModelCheckpoint(metric, savePath, async, keepLast);
+    }
+
+    /**
+     * Micro-batches single inference requests on a shared model.
+     * @param model                             the model to run inference on.
+     * @param maxBatchSize                      the largest number of samples to run in one forward pass.
+     * @param maxWaitMicros                     the longest time, in microseconds, that a request waits for a batch to fill.
+     */
+    public static InferenceBatcher InferenceBatcher(Sequential model, int maxBatchSize, long maxWaitMicros) {
+        return new InferenceBatcher(model, maxBatchSize, maxWaitMicros);
+    }
 }
@@ -0,0 +1,452 @@
+package jflow.model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import jflow.data.JMatrix;
+
+/**
+ * A single-file checkpoint holding named tensors. <p>
+ * Layout, little-endian throughout: <p>
+ * - The magic bytes JFLOWCKP, the format version, the number of tensors and the header length. <p>
+ * - An index entry per tensor: name, dtype, shape, payload offset, payload length and CRC32. <p>
+ * - The CRC32 of the header. <p>
+ * - The payloads, each aligned to 64 bytes. <p>
+ * Payloads are written and read through memory maps in parallel, one tensor per task,
+ * and checksums are verified before a tensor is loaded.
+ */
+final class CheckpointFile implements AutoCloseable {
+    static final String EXTENSION = ".jflow";
+    private static final byte[] MAGIC = "JFLOWCKP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int ALIGNMENT = 64;
+    // Fixed header fields: magic, version, tensor count, header length
+    private static final int PREAMBLE_SIZE = MAGIC.length + 12;
+    // Largest region mapped at once
+    private static final int MAX_MAP_BYTES = 1 << 30;
+
+    private static final byte FLOAT32 = 0;
+    private static final byte INT64 = 1;
+    private static final byte FLOAT64 = 2;
+
+    /**
+     * A named tensor to write: float32 values, or int64 or float64 state.
+     */
+    static final class Tensor {
+        final String name;
+        final int[] shape;
+        // Float32 values, or null for int64 and float64 tensors
+        final float[] values;
+        final long[] longs;
+        final double[] doubles;
+        final byte dtype;
+
+        private Tensor(String name, int[] shape, float[] values, long[] longs, double[] doubles, byte dtype) {
+            this.name = name;
+            this.shape = shape;
+            this.values = values;
+            this.longs = longs;
+            this.doubles = doubles;
+            this.dtype = dtype;
+        }
+
+        /**
+         * A float32 tensor that shares the values of a JMatrix. <p>
+         * Half-precision JMatrix storage is widened to a float32 copy.
+         */
+        static Tensor of(String name, JMatrix matrix) {
+            float[] values = matrix.dtype().equals("float32") ?
+                matrix.getMatrix() : matrix.toFloat32().getMatrix();
+            return new Tensor(name, matrix.shape(), values, null, null, FLOAT32);
+        }
+
+        /**
+         * A float32 tensor that shares an array of values.
+         */
+        static Tensor of(String name, int[] shape, float[] values) {
+            return new Tensor(name, shape, values, null, null, FLOAT32);
+        }
+
+        /**
+         * A single int64 value.
+         */
+        static Tensor ofLong(String name, long value) {
+            return ofLongs(name, new long[]{value});
+        }
+
+        /**
+         * A vector of int64 values.
+         */
+        static Tensor ofLongs(String name, long[] values) {
+            return new Tensor(name, new int[]{values.length, 1, 1, 1}, null, values, null, INT64);
+        }
+
+        /**
+         * A vector of float64 values.
+         */
+        static Tensor ofDoubles(String name, double[] values) {
+            return new Tensor(name, new int[]{values.length, 1, 1, 1}, null, null, values, FLOAT64);
+        }
+
+        long numBytes() {
+            return switch (dtype) {
+                case INT64 -> (long)longs.length * Long.BYTES;
+                case FLOAT64 -> (long)doubles.length * Double.BYTES;
+                default -> (long)values.length * Float.BYTES;
+            };
+        }
+    }
+
+    // Index entry of a tensor in an open file
+    private static final class Entry {
+        String name;
+        byte dtype;
+        int[] shape;
+        long offset;
+        long numBytes;
+        int checksum;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final LinkedHashMap<String, Entry> index;
+
+    private CheckpointFile(Path file, FileChannel channel, LinkedHashMap<String, Entry> index) {
+        this.file = file;
+        this.channel = channel;
+        this.index = index;
+    }
+
+    /**
+     * The checkpoint file of a path, which is either the file or its directory.
+     */
+    static Path resolve(String path) {
+        if (isCheckpointFile(path)) {
+            return Paths.get(path);
+        }
+        return Paths.get(path, "model" + EXTENSION);
+    }
+
+    /**
+     * Whether a path names a single-file checkpoint rather than a directory.
+     */
+    static boolean isCheckpointFile(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    /**
+     * Write tensors to a checkpoint file, replacing any existing file. <p>
+     * The file is written under a temporary name and then renamed, 
+     * so an interrupted save never leaves a partial checkpoint behind.
+     * @param file                  The file to write.
+     * @param tensors               The tensors to write, with unique names.
+     */
+    static void write(Path file, List<Tensor> tensors) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            writeContents(temp, tensors);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeContents(Path file, List<Tensor> tensors) throws IOException {
+        int numTensors = tensors.size();
+        byte[][] names = new byte[numTensors][];
+        int headerLength = PREAMBLE_SIZE + Integer.BYTES;
+        for (int t = 0; t < numTensors; t++) {
+            names[t] = tensors.get(t).name.getBytes(StandardCharsets.UTF_8);
+            // Name length and name, dtype, rank and shape, offset, length, checksum
+            headerLength += Short.BYTES + names[t].length + 2 + 4 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+        }
+
+        // Lay out payloads after the header
+        long[] offsets = new long[numTensors];
+        long end = align(headerLength);
+        for (int t = 0; t < numTensors; t++) {
+            offsets[t] = end;
+            end = align(end + tensors.get(t).numBytes());
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+                FileChannel channel = raf.getChannel()) {
+            raf.setLength(end);
+
+            // Write payloads in parallel, computing checksums on the way
+            int[] checksums = new int[numTensors];
+            IntStream.range(0, numTensors).parallel().forEach(t -> {
+                try {
+                    checksums[t] = writePayload(channel, tensors.get(t), offsets[t]);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error writing tensor " + tensors.get(t).name, e);
+                }
+            });
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(numTensors).putInt(headerLength);
+            for (int t = 0; t < numTensors; t++) {
+                Tensor tensor = tensors.get(t);
+                header.putShort((short)names[t].length).put(names[t]);
+                header.put(tensor.dtype).put((byte)4);
+                for (int dim : tensor.shape) {
+                    header.putInt(dim);
+                }
+                header.putLong(offsets[t]).putLong(tensor.numBytes()).putInt(checksums[t]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, header.position());
+            header.putInt((int)crc.getValue());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    // Copy one tensor into the file through a memory map
+    private static int writePayload(FileChannel channel, Tensor tensor, long offset) throws IOException {
+        CRC32 crc = new CRC32();
+        if (tensor.values == null) {
+            // Small state vectors are written from a heap buffer
+            ByteBuffer buffer = ByteBuffer.allocate((int)tensor.numBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            if (tensor.dtype == INT64) {
+                buffer.asLongBuffer().put(tensor.longs);
+            } else {
+                buffer.asDoubleBuffer().put(tensor.doubles);
+            }
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            return (int)crc.getValue();
+        }
+        float[] values = tensor.values;
+        int perMap = MAX_MAP_BYTES / Float.BYTES;
+        for (int start = 0; start < values.length; start += perMap) {
+            int count = Math.min(perMap, values.length - start);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE,
+                offset + (long)start * Float.BYTES, (long)count * Float.BYTES);
+            map.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(values, start, count);
+            crc.update(map.duplicate().clear());
+        }
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Open a checkpoint file and read its index.
+     * @throws IOException if the file is not a valid checkpoint or its header is corrupt.
+     */
+    static CheckpointFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, preamble, 0);
+            byte[] magic = new byte[MAGIC.length];
+            preamble.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a JFlow checkpoint.");
+            }
+            int version = preamble.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+            }
+            int numTensors = preamble.getInt();
+            int headerLength = preamble.getInt();
+            if (headerLength < PREAMBLE_SIZE + Integer.BYTES || headerLength > channel.size()) {
+                throw new IOException("Corrupt checkpoint header in " + file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, headerLength - Integer.BYTES);
+            if ((int)crc.getValue() != header.getInt(headerLength - Integer.BYTES)) {
+                throw new IOException("Checksum mismatch in checkpoint header of " + file);
+            }
+
+            header.position(PREAMBLE_SIZE);
+            LinkedHashMap<String, Entry> index = new LinkedHashMap<>();
+            for (int t = 0; t < numTensors; t++) {
+                Entry entry = new Entry();
+                byte[] name = new byte[header.getShort()];
+                header.get(name);
+                entry.name = new String(name, StandardCharsets.UTF_8);
+                entry.dtype = header.get();
+                entry.shape = new int[header.get()];
+                for (int d = 0; d < entry.shape.length; d++) {
+                    entry.shape[d] = header.getInt();
+                }
+                entry.offset = header.getLong();
+                entry.numBytes = header.getLong();
+                entry.checksum = header.getInt();
+                if (entry.offset + entry.numBytes > channel.size()) {
+                    throw new IOException("Tensor " + entry.name + " extends past the end of " + file);
+                }
+                index.put(entry.name, entry);
+            }
+            return new CheckpointFile(file, channel, index);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of checkpoint file.");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Whether the checkpoint holds a tensor.
+     */
+    boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * The names of all tensors, in file order.
+     */
+    List<String> names() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Read several float32 tensors into JMatrix objects in parallel.
+     * @param names                 The tensor names.
+     * @param targets               The JMatrix to fill for each name, with matching sizes.
+     */
+    void readAll(List<String> names, List<JMatrix> targets) throws IOException {
+        IntStream.range(0, names.size()).parallel().forEach(t -> {
+            try {
+                read(names.get(t), targets.get(t));
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading tensor " + names.get(t) + " from " + file, e);
+            }
+        });
+    }
+
+    /**
+     * Read a float32 tensor into a JMatrix of the same size.
+     * The checksum is verified before the JMatrix is changed.
+     */
+    void read(String name, JMatrix target) throws IOException {
+        Entry entry = entry(name, FLOAT32);
+        if (entry.numBytes != (long)target.size() * Float.BYTES) {
+            throw new IOException("Tensor " + name + " has " + entry.numBytes / Float.BYTES +
+                " elements, expected " + target.size() + ".");
+        }
+        MappedByteBuffer[] maps = mapPayload(entry);
+        // Half-precision storage is filled from a float32 copy
+        boolean direct = target.dtype().equals("float32");
+        float[] values = direct ? target.getMatrix() : new float[target.size()];
+        int start = 0;
+        for (MappedByteBuffer map : maps) {
+            int count = map.remaining() / Float.BYTES;
+            map.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values, start, count);
+            start += count;
+        }
+        if (!direct) {
+            IntStream.range(0, values.length).parallel().forEach(i -> {
+                target.set(i, values[i]);
+            });
+        }
+    }
+
+    /**
+     * Read a single int64 value.
+     */
+    long readLong(String name) throws IOException {
+        return readLongs(name)[0];
+    }
+
+    /**
+     * Read a vector of int64 values.
+     */
+    long[] readLongs(String name) throws IOException {
+        Entry entry = entry(name, INT64);
+        long[] values = new long[(int)(entry.numBytes / Long.BYTES)];
+        mapPayload(entry)[0].order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Read a vector of float64 values.
+     */
+    double[] readDoubles(String name) throws IOException {
+        Entry entry = entry(name, FLOAT64);
+        double[] values = new double[(int)(entry.numBytes / Double.BYTES)];
+        mapPayload(entry)[0].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    // Map a payload and verify its checksum
+    private MappedByteBuffer[] mapPayload(Entry entry) throws IOException {
+        int numMaps = (int)Math.max(1, (entry.numBytes + MAX_MAP_BYTES - 1) / MAX_MAP_BYTES);
+        MappedByteBuffer[] maps = new MappedByteBuffer[numMaps];
+        CRC32 crc = new CRC32();
+        for (int m = 0; m < numMaps; m++) {
+            long start = (long)m * MAX_MAP_BYTES;
+            long length = Math.min(MAX_MAP_BYTES, entry.numBytes - start);
+            maps[m] = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset + start, length);
+            crc.update(maps[m].duplicate());
+        }
+        if ((int)crc.getValue() != entry.checksum) {
+            throw new IOException("Checksum mismatch for tensor " + entry.name + " in " + file);
+        }
+        return maps;
+    }
+
+    private Entry entry(String name, byte dtype) throws IOException {
+        Entry entry = index.get(name);
+        if (entry == null) {
+            throw new IOException("Checkpoint " + file + " has no tensor " + name + ".");
+        }
+        if (entry.dtype != dtype) {
+            throw new IOException("Tensor " + name + " has an unexpected dtype.");
+        }
+        return entry;
+    }
+
+    /**
+     * Release the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
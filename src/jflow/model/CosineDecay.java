@@ -0,0 +1,51 @@
+package jflow.model;
+
+/**
+ * Cosine annealing of the learning rate, with optional warm restarts (SGDR). <p>
+ * The learning rate follows half a cosine from its base value down to a minimum
+ * over one period. With restarts, it then jumps back to the base value and each
+ * period is longer than the last by a multiplier.
+ */
+public class CosineDecay extends Scheduler {
+    private long decaySteps;
+    private double minLearningRate;
+    private boolean restarts;
+    private double periodMultiplier;
+
+    /**
+     * @param decaySteps                The length of the first period in steps.
+     * @param minLearningRate           The learning rate at the end of each period.
+     * @param restarts                  Whether to restart after each period, or hold the minimum.
+     * @param periodMultiplier          The growth of each period over the last, at least 1.
+     */
+    protected CosineDecay(long decaySteps, double minLearningRate, boolean restarts, double periodMultiplier) {
+        super("batch");
+        if (decaySteps < 1) {
+            throw new IllegalArgumentException("decaySteps must be at least 1.");
+        }
+        if (periodMultiplier < 1) {
+            throw new IllegalArgumentException("periodMultiplier must be at least 1.");
+        }
+        this.decaySteps = decaySteps;
+        this.minLearningRate = minLearningRate;
+        this.restarts = restarts;
+        this.periodMultiplier = periodMultiplier;
+    }
+
+    @Override
+    protected double learningRate(long step, double baseLearningRate) {
+        double period = decaySteps;
+        double position = step;
+        if (!restarts) {
+            position = Math.min(position, period);
+        } else {
+            // Find the period that holds this step
+            while (position >= period) {
+                position -= period;
+                period *= periodMultiplier;
+            }
+        }
+        double cosine = 0.5 * (1 + Math.cos(Math.PI * position / period));
+        return minLearningRate + (baseLearningRate - minLearningRate) * cosine;
+    }
+}
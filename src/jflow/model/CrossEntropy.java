@@ -0,0 +1,61 @@
+package jflow.model;
+
+/**
+ * Categorical cross-entropy, optionally with label smoothing. <p>
+ * With a Softmax output the gradient is p - target with respect to the logits,
+ * and the loss is taken from the logits so it stays finite when a probability underflows.
+ */
+public class CrossEntropy extends Loss {
+    private final float labelSmoothing;
+
+    protected CrossEntropy() {
+        this(0);
+    }
+
+    /**
+     * @param labelSmoothing        The weight moved from the targets to a uniform distribution, in [0, 1).
+     */
+    protected CrossEntropy(double labelSmoothing) {
+        super("cross_entropy");
+        if (labelSmoothing < 0 || labelSmoothing >= 1) {
+            throw new IllegalArgumentException("Label smoothing must be in the range [0, 1).");
+        }
+        this.labelSmoothing = (float)labelSmoothing;
+    }
+
+    @Override
+    double sample(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        int classes = batch.features;
+        float keep = 1 - labelSmoothing;
+        float uniform = labelSmoothing / classes;
+
+        // loss = -sum(target * log(p)), over the smoothed targets
+        double loss = 0;
+        float targetSum = 0;
+        for (int j = 0; j < classes; j++) {
+            float target = keep * batch.target(sample, j) + uniform;
+            if (target != 0) {
+                loss -= target * batch.logProbability(sample, j);
+                targetSum += target;
+            }
+        }
+
+        if (batch.activation.equals("softmax")) {
+            // dz = p * sum(target) - target, which is p - target for a distribution
+            for (int j = 0; j < classes; j++) {
+                int index = batch.index(sample, j);
+                g[index] = p[index] * targetSum - (keep * batch.target(sample, j) + uniform);
+            }
+            return loss;
+        }
+        for (int j = 0; j < classes; j++) {
+            int index = batch.index(sample, j);
+            float target = keep * batch.target(sample, j) + uniform;
+            g[index] = -target / Math.max(p[index], Float.MIN_NORMAL);
+        }
+        activationBackward(batch, sample);
+        return loss;
+    }
+}
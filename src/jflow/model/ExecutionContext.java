@@ -0,0 +1,48 @@
+package jflow.model;
+
+import java.util.IdentityHashMap;
+
+import jflow.data.JMatrix;
+
+/**
+ * Per-call state for inference on a shared model. <p>
+ * While a context is open on a thread, layers keep their tracked outputs here
+ * instead of in their own fields, so concurrent callers never write to a shared layer.
+ * Contexts are bound to the calling thread, which makes them safe to use from virtual threads.
+ */
+class ExecutionContext {
+    private static final ThreadLocal<ExecutionContext> CURRENT = new ThreadLocal<>();
+
+    private final IdentityHashMap<Layer, JMatrix> outputs = new IdentityHashMap<>();
+
+    private ExecutionContext() {}
+
+    // Open a new context on the calling thread
+    static ExecutionContext enter() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("An execution context is already open on this thread.");
+        }
+        ExecutionContext context = new ExecutionContext();
+        CURRENT.set(context);
+        return context;
+    }
+
+    // The context open on the calling thread, or null
+    static ExecutionContext current() {
+        return CURRENT.get();
+    }
+
+    // Close the context, releasing all per-call state
+    void exit() {
+        outputs.clear();
+        CURRENT.remove();
+    }
+
+    void trackOutput(Layer layer, JMatrix output) {
+        outputs.put(layer, output);
+    }
+
+    JMatrix getOutput(Layer layer) {
+        return outputs.get(layer);
+    }
+}
@@ -0,0 +1,212 @@
+package jflow.model;
+
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * An exponential moving average of the weights of a model. <p>
+ * A shadow copy of every weight tensor is laid out in one flat index space and
+ * updated after training steps with a parallel sweep over equal chunks, so many
+ * small tensors share a task. The averaged weights are swapped into the model
+ * for inference and swapped back before training continues.
+ */
+final class ExponentialMovingAverage {
+    // Elements per parallel task
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final float decay;
+    private final int interval;
+    private long steps = 0;
+
+    private TrainableLayer[] layers;
+    private float[][] weights;
+    private float[][] shadows;
+    // Start of each tensor, followed by the total size
+    private long[] offsets;
+    private int numChunks;
+    // Whether the model currently holds the averaged weights
+    private volatile boolean swapped = false;
+
+    /**
+     * @param decay                 The fraction of the average kept at each update.
+     * @param interval              The number of training steps between updates.
+     */
+    ExponentialMovingAverage(double decay, int interval) {
+        if (decay < 0 || decay >= 1) {
+            throw new IllegalArgumentException("Decay must be in the range [0, 1).");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("Update interval must be at least 1.");
+        }
+        this.decay = (float)decay;
+        this.interval = interval;
+    }
+
+    /**
+     * Count a training step, and update the average every interval steps.
+     * Weights are copied into the average on first use.
+     */
+    void step(ArrayList<Layer> modelLayers) {
+        ensureTrainingWeights(modelLayers);
+        if (++steps % interval != 0) {
+            return;
+        }
+        bind(modelLayers);
+        float weight = 1 - decay;
+        forEachChunk((w, s, start, end) -> {
+            // average += (1 - decay) * (weights - average)
+            for (int i = start; i < end; i++) {
+                s[i] += weight * (w[i] - s[i]);
+            }
+        });
+    }
+
+    /**
+     * Swap the averaged weights into the model if they are not already in place.
+     */
+    void ensureAveragedWeights(ArrayList<Layer> modelLayers) {
+        if (!swapped) {
+            swap(modelLayers, true);
+        }
+    }
+
+    /**
+     * Swap the training weights back into the model if the averaged weights are in place.
+     */
+    void ensureTrainingWeights(ArrayList<Layer> modelLayers) {
+        if (swapped) {
+            swap(modelLayers, false);
+        }
+    }
+
+    /**
+     * Whether the model currently holds the averaged weights.
+     */
+    boolean isSwapped() {
+        return swapped;
+    }
+
+    /**
+     * The averaged values of every weight tensor, in model order.
+     */
+    float[][] averagedValues(ArrayList<Layer> modelLayers) {
+        bind(modelLayers);
+        return (swapped ? weights : shadows).clone();
+    }
+
+    /**
+     * The training values of every weight tensor, in model order.
+     */
+    float[][] trainingValues(ArrayList<Layer> modelLayers) {
+        bind(modelLayers);
+        return (swapped ? shadows : weights).clone();
+    }
+
+    /**
+     * Restart the average from the current weights of the model,
+     * which are treated as the training weights.
+     */
+    void reset(ArrayList<Layer> modelLayers) {
+        layers = null;
+        swapped = false;
+        bind(modelLayers);
+    }
+
+    /**
+     * The number of training steps counted, which sets when the next update happens.
+     */
+    long getSteps() {
+        return steps;
+    }
+
+    void setSteps(long steps) {
+        this.steps = steps;
+    }
+
+    private synchronized void swap(ArrayList<Layer> modelLayers, boolean toAveraged) {
+        // Checked again, since concurrent inference may race to swap
+        if (swapped == toAveraged) {
+            return;
+        }
+        bind(modelLayers);
+        forEachChunk((w, s, start, end) -> {
+            for (int i = start; i < end; i++) {
+                float value = w[i];
+                w[i] = s[i];
+                s[i] = value;
+            }
+        });
+        // Not an optimizer step, so layers only drop values derived from the weights
+        for (TrainableLayer layer : layers) {
+            layer.weightsChanged();
+        }
+        swapped = toAveraged;
+    }
+
+    // Build the shadow on first use, and resolve raw buffers, which may be replaced between steps
+    private void bind(ArrayList<Layer> modelLayers) {
+        if (layers == null) {
+            ArrayList<TrainableLayer> layerList = new ArrayList<>();
+            ArrayList<float[]> shadowList = new ArrayList<>();
+            for (Layer layer : modelLayers) {
+                if (layer instanceof TrainableLayer trainable) {
+                    layerList.add(trainable);
+                    for (JMatrix weight : trainable.getWeights()) {
+                        shadowList.add(weight.getMatrix().clone());
+                    }
+                }
+            }
+            layers = layerList.toArray(new TrainableLayer[0]);
+            shadows = shadowList.toArray(new float[0][]);
+            weights = new float[shadows.length][];
+            offsets = new long[shadows.length + 1];
+            for (int t = 0; t < shadows.length; t++) {
+                offsets[t + 1] = offsets[t] + shadows[t].length;
+            }
+            numChunks = (int)((offsets[shadows.length] + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        }
+        int t = 0;
+        for (TrainableLayer layer : layers) {
+            for (JMatrix weight : layer.getWeights()) {
+                weights[t++] = weight.getMatrix();
+            }
+        }
+    }
+
+    private interface RangeKernel {
+        void apply(float[] weights, float[] shadow, int start, int end);
+    }
+
+    // Apply a kernel over every element in one parallel sweep
+    private void forEachChunk(RangeKernel kernel) {
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            long chunkStart = (long)chunk * CHUNK_SIZE;
+            long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, offsets[shadows.length]);
+            for (int t = findTensor(chunkStart); t < shadows.length && offsets[t] < chunkEnd; t++) {
+                int start = (int)(Math.max(chunkStart, offsets[t]) - offsets[t]);
+                int end = (int)(Math.min(chunkEnd, offsets[t + 1]) - offsets[t]);
+                if (start < end) {
+                    kernel.apply(weights[t], shadows[t], start, end);
+                }
+            }
+        });
+    }
+
+    // The last tensor starting at or before an offset
+    private int findTensor(long offset) {
+        int low = 0;
+        int high = shadows.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,67 @@
+package jflow.model;
+
+/**
+ * Focal loss, -sum(target * (1 - p)^gamma * log(p)), which down-weights
+ * well-classified samples so training concentrates on hard ones.
+ * With gamma = 0 it equals cross-entropy.
+ */
+public class FocalLoss extends Loss {
+    private final float gamma;
+
+    /**
+     * @param gamma                 The focusing exponent, at least 0. Typically 2.
+     */
+    protected FocalLoss(double gamma) {
+        super("focal");
+        if (gamma < 0) {
+            throw new IllegalArgumentException("Gamma must be at least 0.");
+        }
+        this.gamma = (float)gamma;
+    }
+
+    @Override
+    double sample(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        int classes = batch.features;
+
+        /*
+         * With w = (1 - p)^gamma, dL/dp = target * (gamma * w / (1 - p) * log(p) - w / p).
+         * The gradient is first formed as p * dL/dp, which stays finite as p underflows.
+         */
+        double loss = 0;
+        float weightedSum = 0;
+        for (int j = 0; j < classes; j++) {
+            int index = batch.index(sample, j);
+            float target = batch.target(sample, j);
+            if (target == 0) {
+                g[index] = 0;
+                continue;
+            }
+            float prob = p[index];
+            float logProb = (float)batch.logProbability(sample, j);
+            float complement = Math.max(1 - prob, Float.MIN_NORMAL);
+            float weight = (float)Math.pow(complement, gamma);
+            loss -= target * weight * logProb;
+
+            float scaled = target * (gamma * weight / complement * prob * logProb - weight);
+            g[index] = scaled;
+            weightedSum += scaled;
+        }
+
+        if (batch.activation.equals("softmax")) {
+            // dz = p * dL/dp - p * sum(p * dL/dp)
+            for (int j = 0; j < classes; j++) {
+                int index = batch.index(sample, j);
+                g[index] -= p[index] * weightedSum;
+            }
+            return loss;
+        }
+        for (int j = 0; j < classes; j++) {
+            int index = batch.index(sample, j);
+            g[index] /= Math.max(p[index], Float.MIN_NORMAL);
+        }
+        activationBackward(batch, sample);
+        return loss;
+    }
+}
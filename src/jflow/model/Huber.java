@@ -0,0 +1,38 @@
+package jflow.model;
+
+/**
+ * Huber loss between each output and its target, averaged over the outputs of a sample. <p>
+ * Quadratic for errors up to delta and linear beyond, so outliers contribute bounded gradients.
+ */
+public class Huber extends Loss {
+    private final float delta;
+
+    /**
+     * @param delta                 The error at which the loss turns from quadratic to linear.
+     */
+    protected Huber(double delta) {
+        super("huber");
+        if (delta <= 0) {
+            throw new IllegalArgumentException("Delta must be positive.");
+        }
+        this.delta = (float)delta;
+    }
+
+    @Override
+    double sample(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        int features = batch.features;
+
+        double loss = 0;
+        for (int j = 0; j < features; j++) {
+            int index = batch.index(sample, j);
+            float error = p[index] - batch.target(sample, j);
+            float magnitude = Math.abs(error);
+            loss += (magnitude <= delta) ? 0.5 * error * error : delta * (magnitude - 0.5 * delta);
+            g[index] = Math.max(-delta, Math.min(delta, error)) / features;
+        }
+        activationBackward(batch, sample);
+        return loss / features;
+    }
+}
@@ -0,0 +1,345 @@
+package jflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jflow.data.JMatrix;
+
+/**
+ * Micro-batches single inference requests on a shared Sequential model. <p>
+ * Incoming samples are queued and grouped into batches of up to maxBatchSize,
+ * waiting at most maxWait after the oldest queued request. Each batch runs
+ * as one forward pass, and every request receives its own slice of the output.
+ */
+public class InferenceBatcher implements AutoCloseable {
+    private final Sequential model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    // Makes the closed check and enqueue in submit() atomic against close()
+    private final Object submitLock = new Object();
+
+    // A request that did not fit in the last batch
+    private Request pending;
+
+    // Latency histogram in power-of-two microsecond buckets
+    private static final int NUM_LATENCY_BUCKETS = 32;
+    private final long[] latencyHistogram = new long[NUM_LATENCY_BUCKETS];
+    private final long[] batchSizeCounts;
+    private long numRequests;
+    private long numBatches;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    private final String BLUE = "\033[94m";
+    private final String ORANGE = "\033[38;2;255;165;1m";
+    private final String WHITE = "\033[37m";
+    private final String YELLOW = "\033[38;2;222;197;15m";
+    private final String BOLD = "\033[1m";
+    private final String RESET = "\033[0m";
+
+    private static class Request {
+        private final JMatrix sample;
+        private final long enqueueTime;
+        private final CompletableFuture<JMatrix> result = new CompletableFuture<>();
+
+        private Request(JMatrix sample) {
+            this.sample = sample;
+            this.enqueueTime = System.nanoTime();
+        }
+
+        private int rows() {
+            return sample.length();
+        }
+
+        private boolean sameSampleShape(Request other) {
+            return sample.channels() == other.sample.channels() &&
+                sample.height() == other.sample.height() &&
+                sample.width() == other.sample.width();
+        }
+    }
+
+    /**
+     * Start a batching front end for a model.
+     * @param model                     The model to run inference on.
+     * @param maxBatchSize              The largest number of samples to run in one forward pass.
+     * @param maxWaitMicros             The longest time, in microseconds, that a request waits for a batch to fill.
+     */
+    protected InferenceBatcher(Sequential model, int maxBatchSize, long maxWaitMicros) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1.");
+        }
+        if (maxWaitMicros < 0) {
+            throw new IllegalArgumentException("maxWaitMicros must not be negative.");
+        }
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.batchSizeCounts = new long[maxBatchSize + 1];
+
+        worker = new Thread(this::run, "jflow-inference-batcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queue a sample for inference.
+     * @param sample                    One or more samples in the shape the model expects,
+     *                                      e.g. (1, channels, height, width).
+     * @return                      A future completed with the model output for this sample,
+     *                                  laid out as forward() would return it for the sample alone.
+     */
+    public CompletableFuture<JMatrix> submit(JMatrix sample) {
+        Request request = new Request(sample);
+        synchronized (submitLock) {
+            if (!running) {
+                throw new IllegalStateException("InferenceBatcher is closed.");
+            }
+            queue.add(request);
+        }
+        return request.result;
+    }
+
+    /**
+     * Queue a sample for class prediction.
+     * @param sample                    One or more samples in the shape the model expects.
+     * @return                      A future completed with predicted class labels in the range [0, numClasses].
+     */
+    public CompletableFuture<int[]> predict(JMatrix sample) {
+        return submit(sample).thenApply(model::getPredictions);
+    }
+
+    /**
+     * Stop accepting requests, finish all queued requests, and stop the worker thread.
+     */
+    @Override
+    public void close() {
+        stopAccepting();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        ArrayList<Request> batch = new ArrayList<>();
+        while (running || pending != null || !queue.isEmpty()) {
+            try {
+                Request first = pending;
+                pending = null;
+                if (first == null) {
+                    first = queue.poll(10, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                }
+                batch.add(first);
+                int rows = first.rows();
+
+                // Fill the batch until it is full or the oldest request has waited long enough
+                long deadline = first.enqueueTime + maxWaitNanos;
+                while (rows < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = (remaining > 0) ?
+                        queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (!next.sameSampleShape(first) || rows + next.rows() > maxBatchSize) {
+                        pending = next;
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.rows();
+                }
+                runBatch(batch, rows);
+            } catch (InterruptedException e) {
+                // Nothing more will run, so fail every request in flight or still queued
+                stopAccepting();
+                failAll(batch, new IllegalStateException("InferenceBatcher worker was interrupted."));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void stopAccepting() {
+        synchronized (submitLock) {
+            running = false;
+        }
+    }
+
+    // Complete the batch, the pending request and all queued requests exceptionally
+    private void failAll(ArrayList<Request> batch, Throwable cause) {
+        if (pending != null) {
+            batch.add(pending);
+            pending = null;
+        }
+        queue.drainTo(batch);
+        for (Request request : batch) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    private void runBatch(ArrayList<Request> batch, int rows) {
+        try {
+            JMatrix output = model.forwardConcurrent(stack(batch, rows));
+            recordBatch(batch, rows, System.nanoTime());
+
+            // Dense outputs are transposed to (features, batch)
+            boolean columns = model.outputIsTransposed();
+            int offset = 0;
+            for (Request request : batch) {
+                request.result.complete(columns ?
+                    sliceColumns(output, offset, request.rows(), rows) :
+                    sliceRows(output, offset, request.rows(), rows));
+                offset += request.rows();
+            }
+        } catch (Throwable e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Concatenate request samples along the batch dimension
+    private JMatrix stack(ArrayList<Request> batch, int rows) {
+        JMatrix first = batch.get(0).sample;
+        if (batch.size() == 1) {
+            return first;
+        }
+        JMatrix stacked = new JMatrix(rows, first.channels(), first.height(), first.width());
+        float[] stackedMatrix = stacked.getMatrix();
+        int offset = 0;
+        for (Request request : batch) {
+            int size = request.sample.size();
+            System.arraycopy(request.sample.getMatrix(), 0, stackedMatrix, offset, size);
+            offset += size;
+        }
+        return stacked;
+    }
+
+    private JMatrix sliceRows(JMatrix output, int start, int count, int total) {
+        int rowSize = output.size() / total;
+        float[] slice = new float[rowSize * count];
+        System.arraycopy(output.getMatrix(), start * rowSize, slice, 0, slice.length);
+        return new JMatrix(slice, count, output.channels(), output.height(), output.width());
+    }
+
+    private JMatrix sliceColumns(JMatrix output, int start, int count, int total) {
+        int features = output.size() / total;
+        float[] outputMatrix = output.getMatrix();
+        float[] slice = new float[features * count];
+        for (int f = 0; f < features; f++) {
+            System.arraycopy(outputMatrix, f * total + start, slice, f * count, count);
+        }
+        return new JMatrix(slice, features, count, 1, 1);
+    }
+
+    private synchronized void recordBatch(ArrayList<Request> batch, int rows, long now) {
+        numBatches++;
+        batchSizeCounts[Math.min(rows, maxBatchSize)]++;
+        for (Request request : batch) {
+            long latency = now - request.enqueueTime;
+            long micros = Math.max(1, latency / 1000);
+            int bucket = Math.min(63 - Long.numberOfLeadingZeros(micros), NUM_LATENCY_BUCKETS - 1);
+            latencyHistogram[bucket]++;
+            totalLatencyNanos += latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            numRequests++;
+        }
+    }
+
+    /**
+     * Clear all recorded latency and batch size statistics.
+     */
+    public synchronized void resetStats() {
+        Arrays.fill(latencyHistogram, 0);
+        Arrays.fill(batchSizeCounts, 0);
+        numRequests = 0;
+        numBatches = 0;
+        totalLatencyNanos = 0;
+        maxLatencyNanos = 0;
+    }
+
+    /**
+     * Estimate a request latency percentile from the latency histogram.
+     * @param percentile                The percentile in the range [0, 100].
+     * @return                      The upper bound, in microseconds, of the histogram bucket holding the percentile.
+     */
+    public synchronized long latencyPercentileMicros(double percentile) {
+        if (numRequests == 0) {
+            return 0;
+        }
+        long target = (long)Math.ceil(numRequests * percentile / 100.0);
+        long seen = 0;
+        for (int b = 0; b < NUM_LATENCY_BUCKETS; b++) {
+            seen += latencyHistogram[b];
+            if (seen >= Math.max(1, target)) {
+                return 2L << b;
+            }
+        }
+        return 2L << (NUM_LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Print request latency and batch size statistics in the terminal.
+     */
+    public synchronized void printReport() {
+        System.out.println(BLUE + "=================== " + BOLD + "Inference Batcher" + RESET +
+            BLUE + " ===================" + RESET);
+        if (numRequests == 0) {
+            System.out.println(WHITE + "No requests served." + RESET);
+            return;
+        }
+        System.out.println(BOLD + ORANGE + "Requests: " + RESET + WHITE + numRequests +
+            BOLD + ORANGE + "  Batches: " + RESET + WHITE + numBatches +
+            BOLD + ORANGE + "  Mean batch size: " + RESET + WHITE +
+            String.format("%.2f", (double)numRequests / numBatches) + RESET);
+        System.out.println(BOLD + ORANGE + "Latency (us): " + RESET +
+            WHITE + "mean " + YELLOW + (totalLatencyNanos / numRequests / 1000) +
+            WHITE + "  p50 " + YELLOW + "<" + latencyPercentileMicros(50) +
+            WHITE + "  p90 " + YELLOW + "<" + latencyPercentileMicros(90) +
+            WHITE + "  p99 " + YELLOW + "<" + latencyPercentileMicros(99) +
+            WHITE + "  max " + YELLOW + (maxLatencyNanos / 1000) + RESET);
+
+        // Latency histogram
+        System.out.println(BOLD + ORANGE + "Latency histogram:" + RESET);
+        long maxCount = 0;
+        for (long count : latencyHistogram) {
+            maxCount = Math.max(maxCount, count);
+        }
+        for (int b = 0; b < NUM_LATENCY_BUCKETS; b++) {
+            if (latencyHistogram[b] != 0) {
+                String range = String.format("%10s", "<" + (2L << b) + "us");
+                System.out.println(WHITE + range + " " + bar(latencyHistogram[b], maxCount) +
+                    " " + YELLOW + latencyHistogram[b] + RESET);
+            }
+        }
+
+        // Batch size distribution
+        System.out.println(BOLD + ORANGE + "Batch size distribution:" + RESET);
+        maxCount = 0;
+        for (long count : batchSizeCounts) {
+            maxCount = Math.max(maxCount, count);
+        }
+        for (int size = 1; size <= maxBatchSize; size++) {
+            if (batchSizeCounts[size] != 0) {
+                System.out.println(WHITE + String.format("%10d", size) + " " +
+                    bar(batchSizeCounts[size], maxCount) + " " + YELLOW + batchSizeCounts[size] + RESET);
+            }
+        }
+    }
+
+    private String bar(long count, long maxCount) {
+        int width = (int)Math.max(1, 40 * count / maxCount);
+        return BLUE + "█".repeat(width) + RESET;
+    }
+}
@@ -0,0 +1,92 @@
+package jflow.model;
+
+import java.util.HashMap;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * Layer-wise Adaptive Moments for Batch training. <p>
+ * Adam with decoupled weight decay, where the update of each parameter tensor
+ * is rescaled by a trust ratio ||w|| / ||update||. This keeps the step size
+ * of every layer proportional to its weights, which allows large batches.
+ */
+public class LAMB extends Optimizer {
+    private double beta1; // Momentum coefficient of the first moment
+    private double beta2; // Momentum coefficient of the second moment
+    private double weightDecay;
+    private double epsilon = 1e-6; // Small constant for numerical stability
+
+    protected LAMB(double learningRate, double beta1, double beta2, double weightDecay) {
+        super("lamb", learningRate);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.weightDecay = weightDecay;
+    }
+
+    protected LAMB(double learningRate) {
+        this(learningRate, 0.9, 0.999, 0.01);
+    }
+
+    @Override
+    public double getMomentum() {
+        return beta1;
+    }
+
+    @Override
+    public void setMomentum(double momentum) {
+        this.beta1 = momentum;
+    }
+
+    @Override
+    public void apply(HashMap<String, JMatrix[]> layerGradients) {
+        long timesteps = incrementTimeSteps();
+
+        float biasCorrection1 = (float)(1 - Math.pow(beta1, timesteps));
+        float biasCorrection2 = (float)(1 - Math.pow(beta2, timesteps));
+        float decay = (float)weightDecay;
+        float eps = (float)epsilon;
+
+        // Update moments and measure each tensor and its update in one pass
+        ParameterSweep sweep = prepareStep(layerGradients);
+        double[][] norms = sweep.reduceSegments(2, (segment, start, end, clipScale, sums) -> {
+            JMatrix[] moments = segment.moments;
+            OptimizerKernels.lambMoments(segment.parameter, segment.gradient,
+                moments[2 * segment.index], moments[2 * segment.index + 1], start, end,
+                (float)beta1, (float)beta2, biasCorrection1, biasCorrection2,
+                eps, decay, clipScale, sums);
+        });
+
+        // Per-layer trust ratios
+        float[] stepSizes = new float[sweep.numSegments()];
+        for (int s = 0; s < stepSizes.length; s++) {
+            double paramNorm = Math.sqrt(norms[s][0]);
+            double updateNorm = Math.sqrt(norms[s][1]);
+            double trustRatio = (paramNorm > 0 && updateNorm > 0) ? paramNorm / updateNorm : 1.0;
+            stepSizes[s] = (float)(getLearningRate() * trustRatio * sweep.getSegment(s).updateScale);
+        }
+
+        sweep.update((segment, start, end, clipScale) -> {
+            JMatrix[] moments = segment.moments;
+            OptimizerKernels.lambApply(segment.parameter,
+                moments[2 * segment.index], moments[2 * segment.index + 1], start, end,
+                stepSizes[segment.id], biasCorrection1, biasCorrection2, eps, decay);
+        });
+    }
+
+    @Override
+    protected void initializeLayer(TrainableLayer layer) {
+        JMatrix[] gradients = layer.getParameterGradients();
+        int numWeights = gradients.length;
+
+        JMatrix[] moments = new JMatrix[numWeights * 2];
+
+        for (int i = 0; i < numWeights; i++) {
+            // Initialized to zero
+            moments[2 * i] = gradients[i].zerosLike();
+            moments[2 * i + 1] = gradients[i].zerosLike();
+        }
+
+        registerLayer(layer, moments);
+    }
+}
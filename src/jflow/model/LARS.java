@@ -0,0 +1,79 @@
+package jflow.model;
+
+import java.util.HashMap;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * Layer-wise Adaptive Rate Scaling. <p>
+ * SGD with momentum and weight decay, where each parameter tensor has its own
+ * learning rate scaled by the trust ratio trustCoefficient * ||w|| / (||g|| + weightDecay * ||w||).
+ * This keeps the step size of every layer proportional to its weights, which allows large batches.
+ */
+public class LARS extends Optimizer {
+    private double momentum;
+    private double weightDecay;
+    private double trustCoefficient;
+
+    protected LARS(double learningRate, double momentum, double weightDecay, double trustCoefficient) {
+        super("lars", learningRate);
+        this.momentum = momentum;
+        this.weightDecay = weightDecay;
+        this.trustCoefficient = trustCoefficient;
+    }
+
+    protected LARS(double learningRate) {
+        this(learningRate, 0.9, 5e-4, 0.001);
+    }
+
+    @Override
+    public double getMomentum() {
+        return momentum;
+    }
+
+    @Override
+    public void setMomentum(double momentum) {
+        this.momentum = momentum;
+    }
+
+    @Override
+    public void apply(HashMap<String, JMatrix[]> layerGradients) {
+        incrementTimeSteps();
+
+        // Measure each tensor and its gradient in one pass
+        ParameterSweep sweep = prepareStep(layerGradients);
+        double[][] norms = sweep.reduceSegments(2, (segment, start, end, clipScale, sums) -> {
+            OptimizerKernels.sumSquares(segment.parameter, segment.gradient, start, end, clipScale, sums);
+        });
+
+        // Per-layer learning rates
+        float[] localLearningRates = new float[sweep.numSegments()];
+        for (int s = 0; s < localLearningRates.length; s++) {
+            double paramNorm = Math.sqrt(norms[s][0]);
+            double gradNorm = Math.sqrt(norms[s][1]);
+            double trustRatio = (paramNorm > 0 && gradNorm > 0) ?
+                trustCoefficient * paramNorm / (gradNorm + weightDecay * paramNorm) : 1.0;
+            localLearningRates[s] = (float)(getLearningRate() * trustRatio);
+        }
+
+        sweep.update((segment, start, end, clipScale) -> {
+            OptimizerKernels.lars(segment.parameter, segment.gradient,
+                segment.moments[segment.index], start, end, localLearningRates[segment.id],
+                (float)momentum, (float)weightDecay, clipScale, segment.updateScale);
+        });
+    }
+
+    @Override
+    protected void initializeLayer(TrainableLayer layer) {
+        JMatrix[] gradients = layer.getParameterGradients();
+        JMatrix[] velocities = new JMatrix[gradients.length];
+
+        for (int i = 0; i < gradients.length; i++) {
+            // Initialized to zero
+            velocities[i] = gradients[i].zerosLike();
+        }
+
+        registerLayer(layer, velocities);
+    }
+}
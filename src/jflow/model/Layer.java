@@ -1,6 +1,8 @@
 package jflow.model;
 
 
+import java.lang.ref.WeakReference;
+
 import jflow.data.JMatrix;
 
 public abstract class Layer {
@@ -20,6 +22,11 @@ public abstract class Layer {
 
     private boolean isShapeInfluencer;
     private boolean gradientStorageDisabled = false;
+
+    private String storagePrecision = "float32";
+    private String mathMode = "exact";
+    // The float32 tensor that output was narrowed from
+    private WeakReference<JMatrix> retainedSource;
         
     protected Layer(String type, boolean isShapeInfluencer) {
         this.type = type;
@@ -45,6 +52,10 @@ public abstract class Layer {
     protected abstract JMatrix[] debugData();
 
     public JMatrix getOutput() {
+        ExecutionContext context = ExecutionContext.current();
+        if (context != null) {
+            return context.getOutput(this);
+        }
         return output;
     }
     public JMatrix getGradient() {
@@ -52,9 +63,26 @@ public abstract class Layer {
     }
 
     protected JMatrix trackOutput(JMatrix output, boolean training) {
+        ExecutionContext context = ExecutionContext.current();
+        if (context != null) {
+            if (training) {
+                throw new IllegalStateException(
+                    "In " + getName() + ": Training is not supported during concurrent inference."
+                );
+            }
+            // Keep the output off the shared layer
+            if (getNextLayer() == null) {
+                context.trackOutput(this, output);
+            }
+            return output;
+        }
         // Last layer must store output
-        if (training || getNextLayer() == null) {
+        if (getNextLayer() == null) {
             this.output = output;
+        } else if (training) {
+            // Kept for backward, so it may be stored in reduced precision
+            this.output = retain(output);
+            retainedSource = (this.output != output) ? new WeakReference<>(output) : null;
         } else {
             // Ensure memory is freed
             this.output = null;
@@ -69,6 +97,51 @@ public abstract class Layer {
         return gradient;
     }
 
+    /**
+     * Convert a tensor kept for the backward pass to this layer's storage precision.
+     * Reads widen back to float32, so backward computation is unchanged.
+     */
+    protected JMatrix retain(JMatrix activation) {
+        if (storagePrecision.equals("float32") || activation == null || 
+                activation.dtype().equals(storagePrecision)) {
+            return activation;
+        }
+        // Share the copy the previous layer kept of its output
+        Layer previous = getPreviousLayer();
+        if (previous != null && previous.retainedSource != null && 
+                previous.retainedSource.get() == activation && 
+                previous.output.dtype().equals(storagePrecision)) {
+            return previous.output;
+        }
+        return storagePrecision.equals("bfloat16") ? activation.toBFloat16() : activation.toFloat16();
+    }
+
+    protected void setStoragePrecision(String storagePrecision) {
+        if (!(storagePrecision.equals("float32") || storagePrecision.equals("bfloat16") || 
+                storagePrecision.equals("float16"))) {
+            throw new IllegalArgumentException("Only float32, bfloat16 and float16 allowed.");
+        }
+        this.storagePrecision = storagePrecision;
+    }
+
+    protected String getStoragePrecision() {
+        return storagePrecision;
+    }
+
+    protected void setMathMode(String mathMode) {
+        if (!(mathMode.equals("exact") || mathMode.equals("fast"))) {
+            throw new IllegalArgumentException("Only exact and fast allowed.");
+        }
+        this.mathMode = mathMode;
+    }
+
+    /**
+     * Whether transcendental functions use the float approximations in FastMath.
+     */
+    protected boolean useFastMath() {
+        return mathMode.equals("fast");
+    }
+
     protected void setInputShape(int[] inputShape) {
         this.inputShape = inputShape;
     }
@@ -92,6 +165,22 @@ public abstract class Layer {
         return internalGetInputShape();
     }
 
+    /**
+     * Whether this layer has kernels for channels-last (NHWC) input. <p>
+     * Such layers return output in the layout of their input. Other layers receive NCHW input.
+     */
+    protected boolean supportsChannelsLast() {
+        return false;
+    }
+
+    /**
+     * Whether this layer computes each output element from the same input element alone,
+     * so it runs in any layout without conversion.
+     */
+    protected boolean isLayoutAgnostic() {
+        return false;
+    }
+
     // True if this layer changes output shape (e.g., Dense, Conv2D, Flatten)
     protected boolean isShapeInfluencer() {
         return isShapeInfluencer;
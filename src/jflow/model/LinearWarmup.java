@@ -0,0 +1,59 @@
+package jflow.model;
+
+/**
+ * Linearly increases the learning rate from near zero to its base value,
+ * optionally followed by another schedule.
+ */
+public class LinearWarmup extends Scheduler {
+    private long warmupSteps;
+    private Scheduler after;
+
+    /**
+     * @param warmupSteps               The number of steps to reach the base learning rate.
+     * @param after                     The schedule to follow warmup, or null to hold the base learning rate.
+     *                                      Its steps are counted from the end of warmup.
+     */
+    protected LinearWarmup(long warmupSteps, Scheduler after) {
+        super((after == null) ? "batch" : after.getInterval());
+        if (warmupSteps < 1) {
+            throw new IllegalArgumentException("warmupSteps must be at least 1.");
+        }
+        this.warmupSteps = warmupSteps;
+        this.after = after;
+    }
+
+    @Override
+    public Scheduler setInterval(String interval) {
+        super.setInterval(interval);
+        if (after != null) {
+            after.setInterval(interval);
+        }
+        return this;
+    }
+
+    @Override
+    protected double learningRate(long step, double baseLearningRate) {
+        if (step < warmupSteps) {
+            return baseLearningRate * (step + 1) / warmupSteps;
+        }
+        if (after == null) {
+            return baseLearningRate;
+        }
+        return after.learningRate(step - warmupSteps, baseLearningRate);
+    }
+
+    @Override
+    protected double momentum(long step, double baseMomentum) {
+        if (step < warmupSteps || after == null) {
+            return baseMomentum;
+        }
+        return after.momentum(step - warmupSteps, baseMomentum);
+    }
+
+    @Override
+    protected void observe(double loss) {
+        if (after != null) {
+            after.observe(loss);
+        }
+    }
+}
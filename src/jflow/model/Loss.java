@@ -0,0 +1,78 @@
+package jflow.model;
+
+import java.util.stream.IntStream;
+
+/**
+ * A loss function, selected with Sequential.compile(optimizer, loss). <p>
+ * Each loss computes the loss of a sample and its gradient in one fused kernel.
+ * Samples are processed in parallel blocks, and the block sums are combined in order.
+ * When the model ends in Softmax or Sigmoid, the gradient is taken with respect to
+ * the logits of that activation, directly where the loss pairs with it, or through
+ * its Jacobian otherwise.
+ */
+public abstract class Loss {
+    // Samples per parallel task
+    private static final int SAMPLE_BLOCK = 64;
+    private String name;
+
+    protected Loss(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The name of the loss function.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Compute the loss of one sample, and write its gradient to batch.gradient.
+     * @return the loss of the sample.
+     */
+    abstract double sample(LossBatch batch, int sample);
+
+    // The mean loss over the samples of a batch, with the gradient written in place
+    final double compute(LossBatch batch) {
+        int numBlocks = (batch.samples + SAMPLE_BLOCK - 1) / SAMPLE_BLOCK;
+        double[] partials = new double[numBlocks];
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int end = Math.min(batch.samples, (block + 1) * SAMPLE_BLOCK);
+            double sum = 0;
+            for (int sample = block * SAMPLE_BLOCK; sample < end; sample++) {
+                sum += sample(batch, sample);
+            }
+            partials[block] = sum;
+        });
+        double total = 0;
+        for (double partial : partials) {
+            total += partial;
+        }
+        return total / batch.samples;
+    }
+
+    /**
+     * Chain a gradient with respect to the output of a sample through the output activation.
+     */
+    static void activationBackward(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        if (batch.activation.equals("softmax")) {
+            // dz = p * (g - sum(g * p))
+            float dot = 0;
+            for (int j = 0; j < batch.features; j++) {
+                int index = batch.index(sample, j);
+                dot += g[index] * p[index];
+            }
+            for (int j = 0; j < batch.features; j++) {
+                int index = batch.index(sample, j);
+                g[index] = p[index] * (g[index] - dot);
+            }
+        } else if (batch.activation.equals("sigmoid")) {
+            for (int j = 0; j < batch.features; j++) {
+                int index = batch.index(sample, j);
+                g[index] *= p[index] * (1 - p[index]);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package jflow.model;
+
+import jflow.data.JMatrix;
+import jflow.layers.Softmax;
+
+/**
+ * The model output of a batch, its targets and the gradient being written,
+ * indexed by sample and feature whatever the layout of the output.
+ */
+final class LossBatch {
+    // Matches the epsilon loss reports used before losses were pluggable
+    private static final double EPSILON = 1e-12;
+
+    final JMatrix outputMatrix;
+    final float[] output;
+    final float[] gradient;
+    // Either dense targets indexed like the output, or one class label per sample
+    private final float[] targets;
+    private final int[] labels;
+
+    final int samples;
+    final int features;
+    private final int sampleStride;
+    private final int featureStride;
+
+    // The output activation the gradient is taken through: softmax, sigmoid or none
+    final String activation;
+    // Set when the output came from a Softmax training pass that kept its logits
+    private final Softmax softmax;
+
+    /**
+     * @param output                The model output.
+     * @param transposed            Whether the output is (features, batch), as Dense layers produce.
+     * @param targets               Dense targets shaped like the output, or null.
+     * @param labels                One class label per sample, or null.
+     * @param activation            softmax, sigmoid or none.
+     * @param softmax               The Softmax output layer whose logits may be used, or null.
+     */
+    LossBatch(JMatrix output, boolean transposed, float[] targets, int[] labels,
+            String activation, Softmax softmax) {
+        this.outputMatrix = output;
+        this.output = output.dtype().equals("float32") ? output.getMatrix() : output.toFloat32().getMatrix();
+        this.gradient = new float[this.output.length];
+        this.targets = targets;
+        this.labels = labels;
+        this.activation = activation;
+        this.softmax = softmax;
+
+        int size = this.output.length;
+        if (transposed) {
+            features = output.length();
+            samples = size / features;
+            sampleStride = 1;
+            featureStride = samples;
+        } else {
+            samples = output.length();
+            features = size / samples;
+            sampleStride = features;
+            featureStride = 1;
+        }
+
+        if (targets != null && targets.length != size) {
+            throw new IllegalArgumentException(
+                "Expected " + size + " target values. Got: " + targets.length + "."
+            );
+        }
+        if (labels != null) {
+            if (labels.length != samples) {
+                throw new IllegalArgumentException(
+                    "Expected " + samples + " labels. Got: " + labels.length + "."
+                );
+            }
+            // A single output holds the label itself
+            int maxLabel = (features == 1) ? 2 : features;
+            for (int label : labels) {
+                if (label < 0 || label >= maxLabel) {
+                    throw new IllegalArgumentException(
+                        "Label " + label + " out of range [0, " + maxLabel + ")."
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * The index of a feature of a sample in the output and gradient.
+     */
+    int index(int sample, int feature) {
+        return sample * sampleStride + feature * featureStride;
+    }
+
+    /**
+     * The target of a feature of a sample. Labels are one-hot, or the value itself for a single output.
+     */
+    float target(int sample, int feature) {
+        if (labels == null) {
+            return targets[index(sample, feature)];
+        }
+        if (features == 1) {
+            return labels[sample];
+        }
+        return (labels[sample] == feature) ? 1.0f : 0.0f;
+    }
+
+    /**
+     * The log of an output probability, from the logits when available.
+     */
+    double logProbability(int sample, int feature) {
+        int index = index(sample, feature);
+        if (softmax != null) {
+            return softmax.logProbability(outputMatrix, index);
+        }
+        return Math.log(output[index] + EPSILON);
+    }
+
+    /**
+     * The log of one minus an output probability.
+     */
+    double logComplement(int sample, int feature) {
+        return Math.log(1 - output[index(sample, feature)] + EPSILON);
+    }
+}
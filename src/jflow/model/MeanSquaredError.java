@@ -0,0 +1,28 @@
+package jflow.model;
+
+/**
+ * Mean squared error between each output and its target, averaged over the outputs of a sample.
+ */
+public class MeanSquaredError extends Loss {
+    protected MeanSquaredError() {
+        super("mean_squared_error");
+    }
+
+    @Override
+    double sample(LossBatch batch, int sample) {
+        float[] p = batch.output;
+        float[] g = batch.gradient;
+        int features = batch.features;
+        float scale = 2.0f / features;
+
+        double loss = 0;
+        for (int j = 0; j < features; j++) {
+            int index = batch.index(sample, j);
+            float error = p[index] - batch.target(sample, j);
+            loss += error * error;
+            g[index] = scale * error;
+        }
+        activationBackward(batch, sample);
+        return loss / features;
+    }
+}
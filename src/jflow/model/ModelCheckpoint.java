@@ -1,22 +1,58 @@
 package jflow.model;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
 /**
- * Interface between the user and the train function to 
+ * Interface between the user and the train function to
  * facilitate the saving of model checkpoionts.
  */
 class ModelCheckpoint {
     private String metric;
     private String savePath;
+    private boolean async;
+    private int keepLast;
+    private AsyncCheckpointWriter writer;
+    // Checkpoints kept by the retention policy, oldest first
+    private final ArrayDeque<Path> kept = new ArrayDeque<>();
+    // Whether kept includes the checkpoints of earlier runs
+    private boolean seeded;
+
     /**
      * Passes data to the train function to faciliate the saving of model checkpoints.
-     * @param metric                            the metric to track for improvement. Supported: 
-     *                                            <ul> <li> val_loss <li> val_accuracy 
+     * @param metric                            the metric to track for improvement. Supported:
+     *                                            <ul> <li> val_loss <li> val_accuracy
      *                                                 <li> train_loss <li> train_accuracy </ul>
      * @param savePath                          the path to save checkpoints to.
      */
     protected ModelCheckpoint(String metric, String savePath) {
+        this(metric, savePath, false, 0);
+    }
+
+    /**
+     * Passes data to the train function to faciliate the saving of model checkpoints.
+     * @param metric                            the metric to track for improvement. Supported:
+     *                                            <ul> <li> val_loss <li> val_accuracy
+     *                                                 <li> train_loss <li> train_accuracy </ul>
+     * @param savePath                          the path to save checkpoints to.
+     * @param async                             whether to write checkpoints on a background thread.
+     * @param keepLast                          the number of checkpoints to keep, each saved
+     *                                            under its epoch number. 0 overwrites a single checkpoint.
+     */
+    protected ModelCheckpoint(String metric, String savePath, boolean async, int keepLast) {
+        if (keepLast < 0) {
+            throw new IllegalArgumentException("keepLast must not be negative.");
+        }
         this.metric = metric;
         this.savePath = savePath;
+        this.async = async;
+        this.keepLast = keepLast;
     }
 
     protected String getMetric() {
@@ -27,5 +63,105 @@ class ModelCheckpoint {
         return savePath;
     }
 
+    protected boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * The path to save the checkpoint of an epoch to.
+     */
+    protected String getSavePath(int epoch) {
+        if (keepLast == 0) {
+            return savePath;
+        }
+        return epochPathPrefix() + epoch + CheckpointFile.EXTENSION;
+    }
+
+    // The path of an epoch checkpoint up to its epoch number
+    private String epochPathPrefix() {
+        String base = CheckpointFile.isCheckpointFile(savePath) ?
+            savePath.substring(0, savePath.length() - CheckpointFile.EXTENSION.length()) :
+            savePath + "/model";
+        return base + "_epoch";
+    }
 
+    /**
+     * The background writer of this checkpoint, created on first use.
+     */
+    protected AsyncCheckpointWriter getWriter() {
+        if (writer == null) {
+            writer = new AsyncCheckpointWriter();
+        }
+        return writer;
+    }
+
+    /**
+     * Wait for checkpoints that are still being written.
+     */
+    protected void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Record a written checkpoint, and delete the oldest beyond the number to keep. <p>
+     * On first use, epoch checkpoints already in the save directory, e.g. from a run
+     * that was resumed, are counted as kept, ordered by epoch.
+     * @throws IOException if an old checkpoint could not be deleted.
+     */
+    protected synchronized void written(Path file) throws IOException {
+        if (keepLast == 0) {
+            return;
+        }
+        if (!seeded) {
+            seeded = true;
+            kept.addAll(existingCheckpoints());
+        }
+        kept.remove(file);
+        kept.addLast(file);
+        IOException failure = null;
+        while (kept.size() > keepLast) {
+            Path oldest = kept.removeFirst();
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = new IOException("Error deleting old checkpoint " + oldest, e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Epoch checkpoints in the save directory, oldest epoch first
+    private List<Path> existingCheckpoints() throws IOException {
+        Path prefix = Paths.get(epochPathPrefix());
+        Path directory = prefix.toAbsolutePath().getParent();
+        String namePrefix = prefix.getFileName().toString();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> epochOf(path.getFileName().toString(), namePrefix) >= 0)
+                .sorted(Comparator.comparingLong(path -> epochOf(path.getFileName().toString(), namePrefix)))
+                .map(path -> prefix.resolveSibling(path.getFileName()))
+                .toList();
+        }
+    }
+
+    // The epoch of a checkpoint file name, or -1 if it is not an epoch checkpoint
+    private static long epochOf(String name, String namePrefix) {
+        if (!name.startsWith(namePrefix) || !name.endsWith(CheckpointFile.EXTENSION)) {
+            return -1;
+        }
+        String epoch = name.substring(namePrefix.length(), name.length() - CheckpointFile.EXTENSION.length());
+        if (epoch.isEmpty() || epoch.length() > 18 || !epoch.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(epoch);
+    }
 }
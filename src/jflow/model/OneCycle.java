@@ -0,0 +1,69 @@
+package jflow.model;
+
+/**
+ * The one-cycle policy. The learning rate warms up from maxLearningRate / 25
+ * to maxLearningRate, then anneals to far below its starting value, both along
+ * cosine curves. Momentum moves inversely, from its maximum down to its minimum
+ * during warmup and back up during annealing.
+ */
+public class OneCycle extends Scheduler {
+    private long totalSteps;
+    private double maxLearningRate;
+    private double minMomentum;
+    private double maxMomentum;
+    private double warmupFraction = 0.3;
+    private double initialDivisor = 25;
+    private double finalDivisor = 1e4;
+
+    /**
+     * @param totalSteps                The length of the cycle in steps, usually epochs * batches.
+     * @param maxLearningRate           The peak learning rate.
+     * @param minMomentum               The momentum at the peak learning rate.
+     * @param maxMomentum               The momentum at the start and end of the cycle.
+     */
+    protected OneCycle(long totalSteps, double maxLearningRate, double minMomentum, double maxMomentum) {
+        super("batch");
+        if (totalSteps < 2) {
+            throw new IllegalArgumentException("totalSteps must be at least 2.");
+        }
+        this.totalSteps = totalSteps;
+        this.maxLearningRate = maxLearningRate;
+        this.minMomentum = minMomentum;
+        this.maxMomentum = maxMomentum;
+    }
+
+    // Cosine interpolation from start to end as progress goes from 0 to 1
+    private static double anneal(double start, double end, double progress) {
+        return end + (start - end) * 0.5 * (1 + Math.cos(Math.PI * progress));
+    }
+
+    private double progress(long step, boolean warmup) {
+        double warmupSteps = Math.max(1, warmupFraction * totalSteps);
+        step = Math.min(step, totalSteps);
+        if (warmup) {
+            return step / warmupSteps;
+        }
+        return (step - warmupSteps) / Math.max(1, totalSteps - warmupSteps);
+    }
+
+    private boolean inWarmup(long step) {
+        return step < warmupFraction * totalSteps;
+    }
+
+    @Override
+    protected double learningRate(long step, double baseLearningRate) {
+        double initial = maxLearningRate / initialDivisor;
+        if (inWarmup(step)) {
+            return anneal(initial, maxLearningRate, progress(step, true));
+        }
+        return anneal(maxLearningRate, initial / finalDivisor, progress(step, false));
+    }
+
+    @Override
+    protected double momentum(long step, double baseMomentum) {
+        if (inWarmup(step)) {
+            return anneal(maxMomentum, minMomentum, progress(step, true));
+        }
+        return anneal(minMomentum, maxMomentum, progress(step, false));
+    }
+}
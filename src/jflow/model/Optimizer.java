@@ -12,15 +12,95 @@ public abstract class Optimizer {
     private LinkedHashMap<TrainableLayer, JMatrix[]> layerMoments = new LinkedHashMap<>();
     private HashMap<String, TrainableLayer> layerID = new HashMap<>();
     private String name;
+    private double learningRate;
+    private long timesteps = 0;
+    private Scheduler scheduler;
     private double threshold = -1;
+    private String clipMode = "global";
+    private String momentPrecision = "float32";
+    // Parallel sweeps over all parameters, rebuilt when layers change
+    private ParameterSweep sweep;
 
-    protected Optimizer(String name){
+    protected Optimizer(String name, double learningRate){
         this.name = name;
+        this.learningRate = learningRate;
     }
     
 
     public abstract void apply(HashMap<String, JMatrix[]> layerGradients);
 
+    /**
+     * The current learning rate.
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Change the learning rate. Takes effect at the next update.
+     * @param learningRate the new learning rate.
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * The number of updates applied so far.
+     */
+    protected long getTimeSteps() {
+        return timesteps;
+    }
+
+    protected void setTimeSteps(long timeSteps) {
+        this.timesteps = timeSteps;
+    }
+
+    /**
+     * Count an update.
+     * @return the number of updates including this one.
+     */
+    protected long incrementTimeSteps() {
+        return ++timesteps;
+    }
+
+    /**
+     * The momentum coefficient, such as SGD momentum or Adam beta1.
+     * @return the momentum if this optimizer uses momentum. <li> otherwise -1.
+     */
+    public double getMomentum() {
+        return -1;
+    }
+
+    /**
+     * Change the momentum coefficient. Takes effect at the next update. 
+     * Ignored if this optimizer doesn't use momentum.
+     * @param momentum the new momentum coefficient.
+     */
+    public void setMomentum(double momentum) {}
+
+    /**
+     * Attach a learning rate scheduler to this optimizer. <p>
+     * During training, the scheduler is stepped after every batch or every epoch.
+     * @param scheduler the scheduler to attach, or null to keep the learning rate fixed.
+     */
+    public Optimizer setScheduler(Scheduler scheduler) {
+        if (this.scheduler != null) {
+            this.scheduler.detach();
+        }
+        this.scheduler = scheduler;
+        if (scheduler != null) {
+            scheduler.attach(this);
+        }
+        return this;
+    }
+
+    /**
+     * The attached learning rate scheduler, or null.
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
     /**
      * Set the global clip norm of this optimizer. 
      * If the global frobenius norm exceeds the the threshold,
@@ -28,10 +108,58 @@ public abstract class Optimizer {
      * @param threshold the frobenius norm threshold.
      */
     public Optimizer clipNorm(double threshold) {
+        return clipNorm(threshold, "global");
+    }
+
+    /**
+     * Set gradient clipping of this optimizer. <p>
+     * Norms are computed in one reduction over all gradients,
+     * and scaling is applied inside the update.
+     * @param threshold the frobenius norm threshold. <li> For adaptive clipping, 
+     *                      the largest allowed ratio of gradient norm to parameter norm.
+     * @param mode the clipping mode. Options: <p>
+     *                  - global: scale all gradients by the norm of all gradients. <p>
+     *                  - per_layer: scale the gradients of each layer by their own norm. <p>
+     *                  - adaptive: unit-wise adaptive gradient clipping (AGC), 
+     *                      per output row of each parameter.
+     */
+    public Optimizer clipNorm(double threshold, String mode) {
+        if (!(mode.equals("global") || mode.equals("per_layer") || mode.equals("adaptive"))) {
+            throw new IllegalArgumentException("Only global, per_layer and adaptive allowed.");
+        }
         this.threshold = Math.abs(threshold);
+        this.clipMode = mode;
+        return this;
+    }
+
+    /**
+     * Set the storage precision of optimizer state, such as Adam moments. <p>
+     * bfloat16 storage halves the memory of optimizer state. Updates are still computed in float32.
+     * float16 is not offered, since squared gradients underflow its range.
+     * @param dtype the storage type. Options: <p>
+     *                  - float32 - bfloat16
+     */
+    public Optimizer momentPrecision(String dtype) {
+        if (!(dtype.equals("float32") || dtype.equals("bfloat16"))) {
+            throw new IllegalArgumentException("Only float32 and bfloat16 allowed.");
+        }
+        this.momentPrecision = dtype;
+        // Convert state that already exists
+        for (TrainableLayer layer : layerMoments.keySet()) {
+            applyMomentPrecision(layer);
+        }
         return this;
     }
 
+    protected void applyMomentPrecision(TrainableLayer layer) {
+        JMatrix[] moments = layerMoments.get(layer);
+        if (moments != null) {
+            for (JMatrix moment : moments) {
+                moment.setDtype(momentPrecision);
+            }
+        }
+    }
+
     protected double getClipNorm() {
         return threshold;
     }
@@ -40,8 +168,52 @@ public abstract class Optimizer {
         return threshold != -1;
     }
 
+    protected String getClipMode() {
+        return clipMode;
+    }
+
+    /**
+     * The parameter sweep for a step, with clip factors computed for the current gradients.
+     */
+    ParameterSweep prepareStep(HashMap<String, JMatrix[]> layerGradients) {
+        ParameterSweep sweep = getSweep(layerGradients);
+        sweep.computeClipScales(useClipping() ? clipMode : null, threshold);
+        return sweep;
+    }
+
+    /**
+     * Whether updates may skip parameter rows without gradients, such as unused Embedding rows. <p>
+     * Skipped rows keep their parameters and optimizer state until they receive a gradient again.
+     * @return true for optimizers with lazy sparse updates. <li> otherwise false.
+     */
+    protected boolean sparseUpdates() {
+        return false;
+    }
+
     protected abstract void initializeLayer(TrainableLayer layer);
 
+    /**
+     * Track a layer and its optimizer state.
+     * @param layer the layer to track.
+     * @param moments the optimizer state of the layer, such as Adam moments.
+     */
+    protected void registerLayer(TrainableLayer layer, JMatrix[] moments) {
+        layerMoments.put(layer, moments);
+        layerID.put(layer.getName(), layer);
+        sweep = null;
+    }
+
+    /**
+     * The parameter sweep for a set of layer gradients,
+     * built on first use and reused while the layers stay the same.
+     */
+    ParameterSweep getSweep(HashMap<String, JMatrix[]> layerGradients) {
+        if (sweep == null || !sweep.covers(layerGradients)) {
+            sweep = new ParameterSweep(layerGradients, layerID, layerMoments, sparseUpdates());
+        }
+        return sweep;
+    }
+
     protected String getName() {
         return name;
     }
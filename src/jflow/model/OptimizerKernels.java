@@ -0,0 +1,324 @@
+package jflow.model;
+
+import jflow.data.JMatrix;
+
+/**
+ * Fused optimizer updates over raw parameter buffers. <p>
+ * Each kernel makes a single pass over a range of one parameter tensor that clips
+ * the gradient, updates optimizer state, updates the parameter in place and zeros
+ * the gradient, without allocating temporaries. ParameterSweep runs kernels in parallel
+ * over all tensors. Optimizer state stored in half precision is widened and narrowed
+ * one range at a time, through scratch buffers reused by each worker thread.
+ */
+final class OptimizerKernels {
+    private OptimizerKernels() {}
+
+    // Two state tensors per kernel, each range no longer than a ParameterSweep chunk
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    /*
+     * Optimizer state as a float[] for the range [start, end).
+     * float32 state is used directly. Half-precision state is widened
+     * into this thread's scratch buffer in the given slot, indexed from start.
+     */
+    private static float[] load(JMatrix state, int start, int end, int slot) {
+        if (state.dtype().equals("float32")) {
+            return state.getMatrix();
+        }
+        float[][] scratch = SCRATCH.get();
+        if (scratch[slot].length < end - start) {
+            scratch[slot] = new float[end - start];
+        }
+        float[] chunk = scratch[slot];
+        for (int i = start; i < end; i++) {
+            chunk[i - start] = state.get(i);
+        }
+        return chunk;
+    }
+
+    private static int offset(JMatrix state, int start) {
+        return state.dtype().equals("float32") ? 0 : start;
+    }
+
+    private static void storeBack(JMatrix state, float[] chunk, int start, int end) {
+        if (!state.dtype().equals("float32")) {
+            for (int i = start; i < end; i++) {
+                state.set(i, chunk[i - start]);
+            }
+        }
+    }
+
+    /**
+     * Adam update with bias correction.
+     * @param param                 The parameter buffer, updated in place.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param m                     The first moment.
+     * @param v                     The second moment.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param learningRate          The learning rate.
+     * @param beta1                 The first moment decay.
+     * @param beta2                 The second moment decay.
+     * @param biasCorrection1       1 - beta1^t.
+     * @param biasCorrection2       1 - beta2^t.
+     * @param epsilon               Added to the denominator for numerical stability.
+     * @param clipScale             Factor applied to the gradient.
+     * @param updateScale           Factor applied to the parameter update.
+     */
+    static void adam(float[] param, float[] grad, JMatrix m, JMatrix v, int start, int end,
+            float learningRate, float beta1, float beta2,
+            float biasCorrection1, float biasCorrection2, float epsilon,
+            float clipScale, float updateScale) {
+        float stepSize = learningRate * updateScale / biasCorrection1;
+        float invBiasCorrection2 = 1.0f / biasCorrection2;
+        float oneMinusBeta1 = 1 - beta1;
+        float oneMinusBeta2 = 1 - beta2;
+        float[] mChunk = load(m, start, end, 0);
+        float[] vChunk = load(v, start, end, 1);
+        int mOffset = offset(m, start);
+        int vOffset = offset(v, start);
+        for (int i = start; i < end; i++) {
+            float g = grad[i] * clipScale;
+            float mi = beta1 * mChunk[i - mOffset] + oneMinusBeta1 * g;
+            float vi = beta2 * vChunk[i - vOffset] + oneMinusBeta2 * g * g;
+            mChunk[i - mOffset] = mi;
+            vChunk[i - vOffset] = vi;
+            param[i] -= stepSize * mi / ((float)Math.sqrt(vi * invBiasCorrection2) + epsilon);
+            grad[i] = 0;
+        }
+        storeBack(m, mChunk, start, end);
+        storeBack(v, vChunk, start, end);
+    }
+
+    /**
+     * RMSprop update, with optional momentum.
+     * @param param                 The parameter buffer, updated in place.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param meanSquare            The decaying average of squared gradients.
+     * @param velocity              The momentum buffer, or null without momentum.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param learningRate          The learning rate.
+     * @param decay                 The decay of the squared gradient average.
+     * @param epsilon               Added to the denominator for numerical stability.
+     * @param momentum              The momentum coefficient.
+     * @param clipScale             Factor applied to the gradient.
+     * @param updateScale           Factor applied to the parameter update.
+     */
+    static void rmsprop(float[] param, float[] grad, JMatrix meanSquare, JMatrix velocity,
+            int start, int end, float learningRate, float decay, float epsilon, float momentum,
+            float clipScale, float updateScale) {
+        float oneMinusDecay = 1 - decay;
+        float[] sqChunk = load(meanSquare, start, end, 0);
+        int sqOffset = offset(meanSquare, start);
+        float[] velChunk = (velocity == null) ? null : load(velocity, start, end, 1);
+        int velOffset = (velocity == null) ? 0 : offset(velocity, start);
+        for (int i = start; i < end; i++) {
+            float g = grad[i] * clipScale;
+            float sq = decay * sqChunk[i - sqOffset] + oneMinusDecay * g * g;
+            sqChunk[i - sqOffset] = sq;
+            float step = learningRate * g / ((float)Math.sqrt(sq) + epsilon);
+            if (velChunk != null) {
+                step += momentum * velChunk[i - velOffset];
+                velChunk[i - velOffset] = step;
+            }
+            param[i] -= updateScale * step;
+            grad[i] = 0;
+        }
+        storeBack(meanSquare, sqChunk, start, end);
+        if (velocity != null) {
+            storeBack(velocity, velChunk, start, end);
+        }
+    }
+
+    /**
+     * AdaGrad update.
+     * @param param                 The parameter buffer, updated in place.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param accumulator           The sum of squared gradients.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param learningRate          The learning rate.
+     * @param epsilon               Added to the denominator for numerical stability.
+     * @param clipScale             Factor applied to the gradient.
+     * @param updateScale           Factor applied to the parameter update.
+     */
+    static void adagrad(float[] param, float[] grad, JMatrix accumulator, int start, int end,
+            float learningRate, float epsilon, float clipScale, float updateScale) {
+        float stepSize = learningRate * updateScale;
+        float[] accChunk = load(accumulator, start, end, 0);
+        int accOffset = offset(accumulator, start);
+        for (int i = start; i < end; i++) {
+            float g = grad[i] * clipScale;
+            float acc = accChunk[i - accOffset] + g * g;
+            accChunk[i - accOffset] = acc;
+            param[i] -= stepSize * g / ((float)Math.sqrt(acc) + epsilon);
+            grad[i] = 0;
+        }
+        storeBack(accumulator, accChunk, start, end);
+    }
+
+    /**
+     * SGD update, with optional momentum and Nesterov acceleration.
+     * @param param                 The parameter buffer, updated in place.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param velocity              The momentum buffer, or null without momentum.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param learningRate          The learning rate.
+     * @param momentum              The momentum coefficient.
+     * @param nesterov              Whether to use Nesterov accelerated gradient.
+     * @param clipScale             Factor applied to the gradient.
+     * @param updateScale           Factor applied to the parameter update.
+     */
+    static void sgd(float[] param, float[] grad, JMatrix velocity, int start, int end,
+            float learningRate, float momentum, boolean nesterov,
+            float clipScale, float updateScale) {
+        if (velocity == null) {
+            float stepSize = learningRate * clipScale * updateScale;
+            for (int i = start; i < end; i++) {
+                param[i] -= stepSize * grad[i];
+                grad[i] = 0;
+            }
+            return;
+        }
+        float[] velChunk = load(velocity, start, end, 0);
+        int velOffset = offset(velocity, start);
+        for (int i = start; i < end; i++) {
+            float step = learningRate * grad[i] * clipScale;
+            float vel = momentum * velChunk[i - velOffset] + step;
+            velChunk[i - velOffset] = vel;
+            param[i] -= updateScale * (nesterov ? step + momentum * vel : vel);
+            grad[i] = 0;
+        }
+        storeBack(velocity, velChunk, start, end);
+    }
+
+    /**
+     * First LAMB pass: update moments, zero the gradient, and sum the squares of the
+     * parameter and of the Adam update direction, including weight decay.
+     * @param param                 The parameter buffer.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param m                     The first moment.
+     * @param v                     The second moment.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param beta1                 The first moment decay.
+     * @param beta2                 The second moment decay.
+     * @param biasCorrection1       1 - beta1^t.
+     * @param biasCorrection2       1 - beta2^t.
+     * @param epsilon               Added to the denominator for numerical stability.
+     * @param weightDecay           The decoupled weight decay coefficient.
+     * @param clipScale             Factor applied to the gradient.
+     * @param sums                  Receives the sum of squares of the parameter, then of the update.
+     */
+    static void lambMoments(float[] param, float[] grad, JMatrix m, JMatrix v, int start, int end,
+            float beta1, float beta2, float biasCorrection1, float biasCorrection2,
+            float epsilon, float weightDecay, float clipScale, double[] sums) {
+        float invBiasCorrection1 = 1.0f / biasCorrection1;
+        float invBiasCorrection2 = 1.0f / biasCorrection2;
+        float oneMinusBeta1 = 1 - beta1;
+        float oneMinusBeta2 = 1 - beta2;
+        float[] mChunk = load(m, start, end, 0);
+        float[] vChunk = load(v, start, end, 1);
+        int mOffset = offset(m, start);
+        int vOffset = offset(v, start);
+        double paramSquares = 0;
+        double updateSquares = 0;
+        for (int i = start; i < end; i++) {
+            float g = grad[i] * clipScale;
+            float mi = beta1 * mChunk[i - mOffset] + oneMinusBeta1 * g;
+            float vi = beta2 * vChunk[i - vOffset] + oneMinusBeta2 * g * g;
+            mChunk[i - mOffset] = mi;
+            vChunk[i - vOffset] = vi;
+            float update = mi * invBiasCorrection1 / ((float)Math.sqrt(vi * invBiasCorrection2) + epsilon) +
+                weightDecay * param[i];
+            paramSquares += param[i] * param[i];
+            updateSquares += update * update;
+            grad[i] = 0;
+        }
+        storeBack(m, mChunk, start, end);
+        storeBack(v, vChunk, start, end);
+        sums[0] += paramSquares;
+        sums[1] += updateSquares;
+    }
+
+    /**
+     * Second LAMB pass: recompute the update direction from the moments
+     * and apply it with the layer's trust ratio.
+     * @param param                 The parameter buffer, updated in place.
+     * @param m                     The first moment.
+     * @param v                     The second moment.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param stepSize              The learning rate times the trust ratio and update scale.
+     * @param biasCorrection1       1 - beta1^t.
+     * @param biasCorrection2       1 - beta2^t.
+     * @param epsilon               Added to the denominator for numerical stability.
+     * @param weightDecay           The decoupled weight decay coefficient.
+     */
+    static void lambApply(float[] param, JMatrix m, JMatrix v, int start, int end, float stepSize,
+            float biasCorrection1, float biasCorrection2, float epsilon, float weightDecay) {
+        float invBiasCorrection1 = 1.0f / biasCorrection1;
+        float invBiasCorrection2 = 1.0f / biasCorrection2;
+        float[] mChunk = load(m, start, end, 0);
+        float[] vChunk = load(v, start, end, 1);
+        int mOffset = offset(m, start);
+        int vOffset = offset(v, start);
+        for (int i = start; i < end; i++) {
+            float update = mChunk[i - mOffset] * invBiasCorrection1 /
+                ((float)Math.sqrt(vChunk[i - vOffset] * invBiasCorrection2) + epsilon) +
+                weightDecay * param[i];
+            param[i] -= stepSize * update;
+        }
+    }
+
+    /**
+     * Sum the squares of a parameter and of its clipped gradient.
+     * @param param                 The parameter buffer.
+     * @param grad                  The gradient buffer.
+     * @param start                 The first index to read.
+     * @param end                   One past the last index to read.
+     * @param clipScale             Factor applied to the gradient.
+     * @param sums                  Receives the sum of squares of the parameter, then of the gradient.
+     */
+    static void sumSquares(float[] param, float[] grad, int start, int end, float clipScale, double[] sums) {
+        double paramSquares = 0;
+        double gradSquares = 0;
+        for (int i = start; i < end; i++) {
+            float g = grad[i] * clipScale;
+            paramSquares += param[i] * param[i];
+            gradSquares += g * g;
+        }
+        sums[0] += paramSquares;
+        sums[1] += gradSquares;
+    }
+
+    /**
+     * LARS update: SGD with momentum and weight decay, using a layer-wise learning rate.
+     * @param param                 The parameter buffer, updated in place.
+     * @param grad                  The gradient buffer, zeroed afterwards.
+     * @param velocity              The momentum buffer.
+     * @param start                 The first index to update.
+     * @param end                   One past the last index to update.
+     * @param localLearningRate     The learning rate times the layer's trust ratio.
+     * @param momentum              The momentum coefficient.
+     * @param weightDecay           The weight decay coefficient.
+     * @param clipScale             Factor applied to the gradient.
+     * @param updateScale           Factor applied to the parameter update.
+     */
+    static void lars(float[] param, float[] grad, JMatrix velocity, int start, int end,
+            float localLearningRate, float momentum, float weightDecay,
+            float clipScale, float updateScale) {
+        float[] velChunk = load(velocity, start, end, 0);
+        int velOffset = offset(velocity, start);
+        for (int i = start; i < end; i++) {
+            float step = localLearningRate * (grad[i] * clipScale + weightDecay * param[i]);
+            float vel = momentum * velChunk[i - velOffset] + step;
+            velChunk[i - velOffset] = vel;
+            param[i] -= updateScale * vel;
+            grad[i] = 0;
+        }
+        storeBack(velocity, velChunk, start, end);
+    }
+}
@@ -0,0 +1,434 @@
+package jflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import jflow.data.JMatrix;
+import jflow.layers.templates.TrainableLayer;
+
+/**
+ * Chunked parallel sweeps over the per-layer parameter, gradient and optimizer state buffers. <p>
+ * Buffers stay owned by their layers and optimizer. They are not slices of one shared float[],
+ * because JMatrix has no offset views and layers read their arrays from index 0.
+ * Each parameter tensor is instead a segment at a fixed offset in a virtual index space,
+ * and raw arrays are looked up at the start of every sweep.
+ * Optimizer updates and gradient reductions run as one parallel sweep over that index space in
+ * equal chunks, so many small tensors share a task instead of each being dispatched separately.
+ * The segment index is built once and reused every step. <p>
+ * Gradient clipping divides segments into units: whole tensors for global and per-layer
+ * clipping, or output rows for adaptive clipping. All unit norms come from one reduction,
+ * and each unit's clip factor is passed to the update kernel. <p>
+ * Layers with sparse gradients, such as Embedding, report the rows that received gradients.
+ * Reductions over gradients always skip the other rows, and so do updates when the optimizer
+ * supports sparse updates.
+ */
+final class ParameterSweep {
+    // Elements per parallel task
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final Set<String> layerNames;
+    private final TrainableLayer[] layers;
+    private final Segment[] segments;
+    // Start of each segment, followed by the total size
+    private final long[] offsets;
+    private final int numChunks;
+    // Whether updates skip rows without gradients
+    private final boolean sparseUpdates;
+
+    // Clipping units, set by computeClipScales()
+    private String unitMode;
+    // Start of each segment's units, followed by the total number of units
+    private int[] unitOffsets;
+    // Clip factor of each unit, or null without clipping
+    private float[] unitScales;
+
+    /**
+     * One parameter tensor, its gradient and its optimizer state.
+     * Buffers are bound at the start of every sweep.
+     */
+    static final class Segment {
+        final TrainableLayer layer;
+        // Position in the sweep
+        final int id;
+        // Index of the parameter in getParameterGradients()
+        final int index;
+        final JMatrix gradientMatrix;
+        // The optimizer state of the whole layer
+        final JMatrix[] moments;
+        final int size;
+        // Elements per clipping unit
+        int unitSize;
+
+        float[] parameter;
+        float[] gradient;
+        float updateScale;
+        // Rows with gradients in ascending order, or null if dense
+        int[] rows;
+        int rowSize;
+
+        private Segment(TrainableLayer layer, int id, int index, JMatrix gradientMatrix, JMatrix[] moments) {
+            this.layer = layer;
+            this.id = id;
+            this.index = index;
+            this.gradientMatrix = gradientMatrix;
+            this.moments = moments;
+            this.size = gradientMatrix.size();
+        }
+    }
+
+    interface SegmentKernel {
+        /**
+         * Update elements [start, end) of a segment.
+         * @param clipScale             The factor to scale these gradients by.
+         */
+        void apply(Segment segment, int start, int end, float clipScale);
+    }
+
+    interface SegmentReducer {
+        /**
+         * Add values computed over elements [start, end) of a segment to sums.
+         * @param clipScale             The factor to scale these gradients by.
+         */
+        void accumulate(Segment segment, int start, int end, float clipScale, double[] sums);
+    }
+
+    ParameterSweep(HashMap<String, JMatrix[]> layerGradients,
+            HashMap<String, TrainableLayer> layerID,
+            HashMap<TrainableLayer, JMatrix[]> layerMoments, boolean sparseUpdates) {
+        ArrayList<TrainableLayer> layerList = new ArrayList<>();
+        ArrayList<Segment> segmentList = new ArrayList<>();
+        for (Map.Entry<String, JMatrix[]> entry : layerGradients.entrySet()) {
+            TrainableLayer layer = layerID.get(entry.getKey());
+            if (layer == null) {
+                throw new IllegalStateException("Layer " + entry.getKey() + " is not registered with the optimizer.");
+            }
+            layerList.add(layer);
+            JMatrix[] gradients = entry.getValue();
+            for (int i = 0; i < gradients.length; i++) {
+                segmentList.add(new Segment(layer, segmentList.size(), i, gradients[i], layerMoments.get(layer)));
+            }
+        }
+        this.layerNames = Set.copyOf(layerGradients.keySet());
+        this.layers = layerList.toArray(new TrainableLayer[0]);
+        this.segments = segmentList.toArray(new Segment[0]);
+        this.offsets = new long[segments.length + 1];
+        for (int s = 0; s < segments.length; s++) {
+            offsets[s + 1] = offsets[s] + segments[s].size;
+        }
+        this.numChunks = (int)((offsets[segments.length] + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        this.sparseUpdates = sparseUpdates;
+    }
+
+    /**
+     * Whether this index was built for the same layers.
+     */
+    boolean covers(HashMap<String, JMatrix[]> layerGradients) {
+        return layerNames.equals(layerGradients.keySet());
+    }
+
+    /**
+     * The total number of parameters.
+     */
+    long size() {
+        return offsets[segments.length];
+    }
+
+    // Resolve raw buffers, which may be replaced between steps, e.g. by loading quantized weights
+    private void bind() {
+        int s = 0;
+        for (TrainableLayer layer : layers) {
+            JMatrix[] parameters = layer.getWeights();
+            for (; s < segments.length && segments[s].layer == layer; s++) {
+                Segment segment = segments[s];
+                segment.parameter = parameters[segment.index].getMatrix();
+                segment.gradient = segment.gradientMatrix.getMatrix();
+                segment.updateScale = layer.updateScale(segment.index);
+                segment.rows = layer.touchedRows(segment.index);
+                int length = segment.gradientMatrix.length();
+                segment.rowSize = (length > 0) ? segment.size / length : segment.size;
+            }
+        }
+    }
+
+    /**
+     * Apply a kernel over every element of every segment in one parallel sweep,
+     * then notify layers that their parameters changed. <p>
+     * With sparse updates, only rows with gradients are visited.
+     */
+    void update(SegmentKernel kernel) {
+        bind();
+        float[] scales = unitScales;
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            forEachClipped(chunk, scales, kernel);
+        });
+        for (TrainableLayer layer : layers) {
+            layer.parametersUpdated();
+        }
+    }
+
+    /**
+     * Reduce values of every segment in one parallel sweep, with gradient clip factors applied.
+     * @param width                 The number of values summed per segment.
+     * @param reducer               Adds the values of a range to sums.
+     * @return                  The sums of each segment, indexed [segment][value].
+     */
+    double[][] reduceSegments(int width, SegmentReducer reducer) {
+        bind();
+        float[] scales = unitScales;
+        // Each chunk sums the consecutive segments it covers
+        int[] firstSegments = new int[numChunks];
+        double[][] partials = new double[numChunks][];
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            long chunkStart = (long)chunk * CHUNK_SIZE;
+            long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, offsets[segments.length]);
+            int first = findSegment(chunkStart);
+            double[] sums = new double[width * (findSegment(chunkEnd - 1) - first + 1)];
+            double[] rangeSums = new double[width];
+            forEachClipped(chunk, scales, (segment, start, end, clipScale) -> {
+                Arrays.fill(rangeSums, 0);
+                reducer.accumulate(segment, start, end, clipScale, rangeSums);
+                int base = width * (segment.id - first);
+                for (int v = 0; v < width; v++) {
+                    sums[base + v] += rangeSums[v];
+                }
+            });
+            firstSegments[chunk] = first;
+            partials[chunk] = sums;
+        });
+
+        // Segments split across chunks are merged here
+        double[][] result = new double[segments.length][width];
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            double[] sums = partials[chunk];
+            for (int i = 0; i < sums.length; i++) {
+                result[firstSegments[chunk] + i / width][i % width] += sums[i];
+            }
+        }
+        return result;
+    }
+
+    // Visit the ranges of a chunk with their clip factors, split at unit boundaries
+    private void forEachClipped(int chunk, float[] scales, SegmentKernel kernel) {
+        forEachInChunk(chunk, sparseUpdates, (segment, start, end) -> {
+            if (scales == null) {
+                kernel.apply(segment, start, end, 1.0f);
+                return;
+            }
+            int firstUnit = unitOffsets[segment.id];
+            while (start < end) {
+                int unit = start / segment.unitSize;
+                int unitEnd = Math.min(end, (unit + 1) * segment.unitSize);
+                kernel.apply(segment, start, unitEnd, scales[firstUnit + unit]);
+                start = unitEnd;
+            }
+        });
+    }
+
+    /**
+     * The number of segments.
+     */
+    int numSegments() {
+        return segments.length;
+    }
+
+    /**
+     * A segment by its position in the sweep.
+     */
+    Segment getSegment(int id) {
+        return segments[id];
+    }
+
+    /**
+     * Compute the clip factor of every unit from one parallel reduction over all gradients.
+     * @param mode                  The clipping mode, or null to disable clipping. Options: <p>
+     *                                  - global - per_layer - adaptive
+     * @param threshold             The norm threshold, or the clip factor lambda for adaptive clipping.
+     */
+    void computeClipScales(String mode, double threshold) {
+        if (mode == null) {
+            unitScales = null;
+            return;
+        }
+        if (!mode.equals(unitMode)) {
+            defineUnits(mode.equals("adaptive"));
+            unitMode = mode;
+        }
+        bind();
+        boolean adaptive = mode.equals("adaptive");
+        double[][] sums = unitSumsOfSquares(adaptive);
+        double[] gradSquares = sums[0];
+        float[] scales = new float[gradSquares.length];
+
+        switch (mode) {
+            case "global" -> {
+                double total = 0;
+                for (double square : gradSquares) {
+                    total += square;
+                }
+                Arrays.fill(scales, clipFactor(Math.sqrt(total), threshold));
+            }
+            case "per_layer" -> {
+                // Units are whole tensors, and segments of a layer are adjacent
+                int s = 0;
+                while (s < segments.length) {
+                    TrainableLayer layer = segments[s].layer;
+                    int first = s;
+                    double total = 0;
+                    for (; s < segments.length && segments[s].layer == layer; s++) {
+                        total += gradSquares[s];
+                    }
+                    Arrays.fill(scales, first, s, clipFactor(Math.sqrt(total), threshold));
+                }
+            }
+            case "adaptive" -> {
+                // Unit-wise ratio of gradient norm to parameter norm
+                double[] paramSquares = sums[1];
+                for (int u = 0; u < scales.length; u++) {
+                    double maxNorm = threshold * Math.max(Math.sqrt(paramSquares[u]), 1e-3);
+                    scales[u] = clipFactor(Math.sqrt(gradSquares[u]), maxNorm);
+                }
+            }
+            default -> throw new IllegalArgumentException(
+                "Invalid clipping mode: " + mode + ". Options: global, per_layer, adaptive.");
+        }
+        unitScales = scales;
+    }
+
+    private static float clipFactor(double norm, double maxNorm) {
+        if (norm > maxNorm) {
+            return (float)(maxNorm / (norm + 1e-6));  // epsilon for numerical stability
+        }
+        return 1.0f;
+    }
+
+    // Whole tensors, or output rows for adaptive clipping
+    private void defineUnits(boolean rows) {
+        unitOffsets = new int[segments.length + 1];
+        for (int s = 0; s < segments.length; s++) {
+            Segment segment = segments[s];
+            int length = segment.gradientMatrix.length();
+            segment.unitSize = (rows && length > 0 && segment.size > 0) ?
+                segment.size / length : Math.max(segment.size, 1);
+            unitOffsets[s + 1] = unitOffsets[s] + (segment.size + segment.unitSize - 1) / segment.unitSize;
+        }
+    }
+
+    // Sums of squares of gradients, and optionally parameters, of every unit
+    private double[][] unitSumsOfSquares(boolean withParameters) {
+        int numUnits = unitOffsets[segments.length];
+        // Each chunk sums the consecutive units it covers
+        int[] firstUnits = new int[numChunks];
+        double[][] partials = new double[numChunks][];
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            long chunkStart = (long)chunk * CHUNK_SIZE;
+            long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, offsets[segments.length]);
+            int firstUnit = unitAt(chunkStart);
+            // Gradient and parameter sums, interleaved
+            double[] sums = new double[2 * (unitAt(chunkEnd - 1) - firstUnit + 1)];
+            // Rows without gradients add nothing to any norm
+            forEachInChunk(chunk, true, (segment, start, end) -> {
+                float[] gradient = segment.gradient;
+                float[] parameter = segment.parameter;
+                int unitBase = unitOffsets[segment.id] - firstUnit;
+                while (start < end) {
+                    int unit = start / segment.unitSize;
+                    int unitEnd = Math.min(end, (unit + 1) * segment.unitSize);
+                    double gradSum = 0;
+                    for (int i = start; i < unitEnd; i++) {
+                        gradSum += gradient[i] * gradient[i];
+                    }
+                    sums[2 * (unitBase + unit)] += gradSum;
+                    if (withParameters) {
+                        double paramSum = 0;
+                        for (int i = start; i < unitEnd; i++) {
+                            paramSum += parameter[i] * parameter[i];
+                        }
+                        sums[2 * (unitBase + unit) + 1] += paramSum;
+                    }
+                    start = unitEnd;
+                }
+            });
+            firstUnits[chunk] = firstUnit;
+            partials[chunk] = sums;
+        });
+
+        // Units split across chunks are merged here
+        double[] gradSquares = new double[numUnits];
+        double[] paramSquares = new double[numUnits];
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            double[] sums = partials[chunk];
+            for (int i = 0; i < sums.length / 2; i++) {
+                gradSquares[firstUnits[chunk] + i] += sums[2 * i];
+                paramSquares[firstUnits[chunk] + i] += sums[2 * i + 1];
+            }
+        }
+        return new double[][]{gradSquares, paramSquares};
+    }
+
+    // The unit holding an element of the index space
+    private int unitAt(long offset) {
+        int s = findSegment(offset);
+        // Skip empty segments
+        while (offsets[s + 1] <= offset) {
+            s++;
+        }
+        return unitOffsets[s] + (int)(offset - offsets[s]) / segments[s].unitSize;
+    }
+
+    private interface RangeVisitor {
+        void visit(Segment segment, int start, int end);
+    }
+
+    // Split a chunk of the index space into per-segment ranges, optionally only rows with gradients
+    private void forEachInChunk(int chunk, boolean sparse, RangeVisitor visitor) {
+        long chunkStart = (long)chunk * CHUNK_SIZE;
+        long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, offsets[segments.length]);
+        for (int s = findSegment(chunkStart); s < segments.length && offsets[s] < chunkEnd; s++) {
+            int start = (int)(Math.max(chunkStart, offsets[s]) - offsets[s]);
+            int end = (int)(Math.min(chunkEnd, offsets[s + 1]) - offsets[s]);
+            if (start >= end) {
+                continue;
+            }
+            Segment segment = segments[s];
+            if (sparse && segment.rows != null) {
+                forEachRow(segment, start, end, visitor);
+            } else {
+                visitor.visit(segment, start, end);
+            }
+        }
+    }
+
+    // Visit the parts of [start, end) that lie in rows with gradients
+    private static void forEachRow(Segment segment, int start, int end, RangeVisitor visitor) {
+        int[] rows = segment.rows;
+        int rowSize = segment.rowSize;
+        int r = Arrays.binarySearch(rows, start / rowSize);
+        if (r < 0) {
+            r = -r - 1;
+        }
+        for (; r < rows.length && (long)rows[r] * rowSize < end; r++) {
+            int rowStart = Math.max(start, rows[r] * rowSize);
+            int rowEnd = Math.min(end, (rows[r] + 1) * rowSize);
+            visitor.visit(segment, rowStart, rowEnd);
+        }
+    }
+
+    // The last segment starting at or before an offset
+    private int findSegment(long offset) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -1,103 +1,57 @@
 package jflow.model;
 
 import java.util.HashMap;
-import java.util.Map;
 import jflow.data.JMatrix;
 import jflow.layers.templates.TrainableLayer;
 
 public class RMSprop extends Optimizer {
-    private double learningRate;
     private double decay = 0.9;  // Decay rate for accumulated squared gradients
     private double epsilon = 1e-8;  // Small constant for numerical stability
     private double momentum = 0.0;  // Optional momentum parameter
 
     public RMSprop(double learningRate) {
-        super("rmsprop");
-        this.learningRate = learningRate;
+        super("rmsprop", learningRate);
     }
 
     public RMSprop(double learningRate, double decay, double epsilon) {
-        super("rmsprop");
-        this.learningRate = learningRate;
+        super("rmsprop", learningRate);
         this.decay = decay;
         this.epsilon = epsilon;
     }
 
     public RMSprop(double learningRate, double decay, double epsilon, double momentum) {
-        super("rmsprop");
-        this.learningRate = learningRate;
+        super("rmsprop", learningRate);
         this.decay = decay;
         this.epsilon = epsilon;
         this.momentum = momentum;
     }
 
     @Override
-    public void apply(HashMap<String, JMatrix[]> layerGradients) {
-        boolean needsClipping = false;
-        double clipScale = 1.0;
-        if (useClipping()) {
-            double globalGradNormSquared = 0.0;
-            for (JMatrix[] grads : layerGradients.values()) {
-                for (JMatrix grad : grads) {
-                    double frobeniusNorm = grad.frobeniusNorm();
-                    globalGradNormSquared += frobeniusNorm * frobeniusNorm;
-                }
-            }
+    public double getMomentum() {
+        return (momentum > 0) ? momentum : -1;
+    }
 
-            double globalGradNorm = Math.sqrt(globalGradNormSquared);
-            
-            if (useClipping() && globalGradNorm > getClipNorm()) {
-                clipScale = getClipNorm() / (globalGradNorm + 1e-6);  // epsilon for numerical stability
-                needsClipping = true;
-            }
+    @Override
+    public void setMomentum(double momentum) {
+        // Velocity is only tracked if momentum was enabled
+        if (this.momentum > 0) {
+            this.momentum = momentum;
         }
+    }
 
-        for (Map.Entry<String, JMatrix[]> entry : layerGradients.entrySet()) {
-            TrainableLayer layer = getLayerID().get(entry.getKey());
-            JMatrix[] gradients = entry.getValue();
-            JMatrix[] moments = getMoments().get(layer);
-            JMatrix[] updates = new JMatrix[gradients.length];
-
-            for (int i = 0; i < gradients.length; i++) {
-                JMatrix weightGradients = gradients[i];
+    @Override
+    public void apply(HashMap<String, JMatrix[]> layerGradients) {
+        incrementTimeSteps();
+        prepareStep(layerGradients).update((segment, start, end, clipScale) -> {
+            int i = segment.index;
+            // Accumulated squared gradients, and velocity if using momentum
+            JMatrix accumSqGrad = segment.moments[i * (momentum > 0 ? 2 : 1)];
+            JMatrix velocity = (momentum > 0) ? segment.moments[i * 2 + 1] : null;
 
-                // Clip if needed
-                if (needsClipping) {
-                    weightGradients.multiplyInPlace(clipScale);
-                }
-                
-                // Get accumulated squared gradients
-                JMatrix accumSqGrad = moments[i * (momentum > 0 ? 2 : 1)];
-                
-                // Update accumulated squared gradients
-                accumSqGrad.multiplyInPlace(decay)
-                           .addInPlace(weightGradients.multiply(weightGradients).multiply(1 - decay));
-                
-                if (momentum > 0) {
-                    // Get velocity matrix for momentum
-                    JMatrix velocity = moments[i * 2 + 1];
-                    
-                    // Calculate parameter update with momentum
-                    JMatrix paramUpdate = weightGradients.divide(accumSqGrad.sqrt().addInPlace(epsilon))
-                                                         .multiplyInPlace(learningRate);
-                    
-                    // Update velocity
-                    velocity.multiplyInPlace(momentum).addInPlace(paramUpdate);
-                    updates[i] = velocity.copy();
-                } else {
-                    // Standard RMSprop update without momentum
-                    updates[i] = weightGradients.divide(accumSqGrad.sqrt().addInPlace(epsilon))
-                                               .multiplyInPlace(learningRate);
-                }
-            }
-            
-            // Apply updates
-            layer.updateParameters(updates);
-            // Reset gradients
-            for (JMatrix m : layer.getParameterGradients()) {
-                m.fill(0);
-            }
-        }
+            OptimizerKernels.rmsprop(segment.parameter, segment.gradient,
+                accumSqGrad, velocity, start, end, (float)getLearningRate(), (float)decay, (float)epsilon,
+                (float)momentum, clipScale, segment.updateScale);
+        });
     }
 
     @Override
@@ -118,7 +72,6 @@ public class RMSprop extends Optimizer {
             }
         }
         
-        getMoments().put(layer, moments);
-        getLayerID().put(layer.getName(), layer);
+        registerLayer(layer, moments);
     }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package jflow.model;
+
+/**
+ * Reduces the learning rate when the loss stops improving. <p>
+ * Driven by the validation loss computed at the end of every epoch in training,
+ * or by the train loss when there is no validation set.
+ */
+public class ReduceOnPlateau extends Scheduler {
+    private double factor;
+    private int patience;
+    private double minLearningRate;
+    // Relative improvement needed to reset patience
+    private double threshold = 1e-4;
+
+    private double bestLoss = Double.POSITIVE_INFINITY;
+    private int epochsWithoutImprovement = 0;
+    private int numReductions = 0;
+
+    /**
+     * @param factor                    The factor to multiply the learning rate by at each reduction.
+     * @param patience                  The number of epochs without improvement before reducing.
+     * @param minLearningRate           The lowest learning rate to reduce to.
+     */
+    protected ReduceOnPlateau(double factor, int patience, double minLearningRate) {
+        super("epoch");
+        if (factor <= 0 || factor >= 1) {
+            throw new IllegalArgumentException("factor must be between 0 and 1.");
+        }
+        this.factor = factor;
+        this.patience = patience;
+        this.minLearningRate = minLearningRate;
+    }
+
+    @Override
+    protected void observe(double loss) {
+        if (loss < bestLoss * (1 - threshold)) {
+            bestLoss = loss;
+            epochsWithoutImprovement = 0;
+        } else if (++epochsWithoutImprovement > patience) {
+            numReductions++;
+            epochsWithoutImprovement = 0;
+        }
+    }
+
+    @Override
+    protected double learningRate(long step, double baseLearningRate) {
+        return Math.max(minLearningRate, baseLearningRate * Math.pow(factor, numReductions));
+    }
+
+    @Override
+    protected double[] getState() {
+        return new double[]{bestLoss, epochsWithoutImprovement, numReductions};
+    }
+
+    @Override
+    protected void setState(double[] state) {
+        bestLoss = state[0];
+        epochsWithoutImprovement = (int)state[1];
+        numReductions = (int)state[2];
+    }
+
+    /**
+     * The number of times the learning rate has been reduced.
+     */
+    public int getNumReductions() {
+        return numReductions;
+    }
+}
@@ -1,98 +1,57 @@
 package jflow.model;
 
 import java.util.HashMap;
-import java.util.Map;
 
 import jflow.data.JMatrix;
 import jflow.layers.templates.TrainableLayer;
 
 public class SGD extends Optimizer {
-    private double learningRate;
     private double momentum = 0.0; // Default to vanilla SGD (no momentum)
     private boolean useNesterov = false;
 
     protected SGD(double learningRate) {
-        super("sgd");
-        this.learningRate = learningRate;
+        super("sgd", learningRate);
     }
 
     protected SGD(double learningRate, double momentum, boolean useNesterov) {
-        super("sgd");
-        this.learningRate = learningRate;
+        super("sgd", learningRate);
         this.momentum = momentum;
         this.useNesterov = useNesterov;
     }
 
     @Override
-    public void apply(HashMap<String, JMatrix[]> layerGradients) {
-        boolean needsClipping = false;
-        double clipScale = 1.0;
-        if (useClipping()) {
-            double globalGradNormSquared = 0.0;
-            for (JMatrix[] grads : layerGradients.values()) {
-                for (JMatrix grad : grads) {
-                    double frobeniusNorm = grad.frobeniusNorm();
-                    globalGradNormSquared += frobeniusNorm * frobeniusNorm;
-                }
-            }
+    public double getMomentum() {
+        return (momentum > 0) ? momentum : -1;
+    }
 
-            double globalGradNorm = Math.sqrt(globalGradNormSquared);
-            
-            if (useClipping() && globalGradNorm > getClipNorm()) {
-                clipScale = getClipNorm() / (globalGradNorm + 1e-6);  // epsilon for numerical stability
-                needsClipping = true;
-            }
+    @Override
+    public void setMomentum(double momentum) {
+        // Velocity is only tracked if momentum was enabled
+        if (this.momentum > 0) {
+            this.momentum = momentum;
         }
-        for (Map.Entry<String, JMatrix[]> entry : layerGradients.entrySet()) {
-            TrainableLayer layer = getLayerID().get(entry.getKey());
-            JMatrix[] gradients = entry.getValue();
-            JMatrix[] updates = new JMatrix[gradients.length];
+    }
 
-            
-            if (momentum > 0) {
-                // SGD with momentum
-                JMatrix[] velocities = getMoments().get(layer);
-                
-                for (int i = 0; i < gradients.length; i++) {
-                    JMatrix weightGradients = gradients[i];
-                    JMatrix velocity = velocities[i];
+    /**
+     * Lazy updates: rows without gradients, such as unused Embedding rows, are skipped.
+     */
+    @Override
+    protected boolean sparseUpdates() {
+        return true;
+    }
 
-                    // Clip if needed
-                    if (needsClipping) {
-                        weightGradients.multiplyInPlace(clipScale);
-                    }
-                    
-                    // Update velocity (momentum term)
-                    velocity.multiplyInPlace(momentum).addInPlace(weightGradients.multiply(learningRate));
-                    
-                    if (useNesterov) {
-                        // Nesterov accelerated gradient
-                        updates[i] = weightGradients.multiply(learningRate).addInPlace(velocity.multiply(momentum));
-                    } else {
-                        // Standard momentum
-                        updates[i] = velocity;
-                    }
-                }
-            } else {
-                // Vanilla SGD (no momentum)
-                for (int i = 0; i < gradients.length; i++) {
-                    // Clip if needed
-                    if (needsClipping) {
-                        gradients[i].multiplyInPlace(clipScale);
-                    }
-                    updates[i] = gradients[i].multiply(learningRate);
-                }
-            }
-            
-            // Apply updates
-            layer.updateParameters(updates);
-            // Reset gradients
-            for (JMatrix m : layer.getParameterGradients()) {
-                m.fill(0);
-            }
-        }
+    @Override
+    public void apply(HashMap<String, JMatrix[]> layerGradients) {
+        incrementTimeSteps();
+        prepareStep(layerGradients).update((segment, start, end, clipScale) -> {
+            // Velocities are only used with momentum
+            JMatrix velocity = (momentum > 0) ? segment.moments[segment.index] : null;
+            OptimizerKernels.sgd(segment.parameter, segment.gradient,
+                velocity, start, end, (float)getLearningRate(), (float)momentum, useNesterov,
+                clipScale, segment.updateScale);
+        });
     }
-    
+
     @Override
     protected void initializeLayer(TrainableLayer layer) {
         JMatrix[] gradients = layer.getParameterGradients();
@@ -106,7 +65,6 @@ public class SGD extends Optimizer {
             moments[i] = vWeights;
         }
 
-        getMoments().put(layer, moments);
-        getLayerID().put(layer.getName(), layer);
+        registerLayer(layer, moments);
     }
 }
\ No newline at end of file
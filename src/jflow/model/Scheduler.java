@@ -0,0 +1,151 @@
+package jflow.model;
+
+/**
+ * Changes the learning rate, and optionally the momentum, of an optimizer during training. <p>
+ * A scheduler is attached with optimizer.setScheduler(scheduler) and is stepped
+ * after every batch or after every epoch. Schedules are computed from the step count
+ * and the learning rate and momentum the optimizer had when the scheduler was attached.
+ */
+public abstract class Scheduler {
+    private String interval;
+    private Optimizer optimizer;
+    private double baseLearningRate;
+    private double baseMomentum;
+    private long steps = 0;
+
+    /**
+     * @param interval              When to step the scheduler. Options: <p>
+     *                                  - batch - epoch
+     */
+    protected Scheduler(String interval) {
+        this.interval = checkInterval(interval);
+    }
+
+    /**
+     * Change when the scheduler is stepped.
+     * @param interval              When to step the scheduler. Options: <p>
+     *                                  - batch - epoch
+     */
+    public Scheduler setInterval(String interval) {
+        this.interval = checkInterval(interval);
+        return this;
+    }
+
+    private static String checkInterval(String interval) {
+        if (!(interval.equals("batch") || interval.equals("epoch"))) {
+            throw new IllegalArgumentException("Only batch and epoch allowed.");
+        }
+        return interval;
+    }
+
+    /**
+     * When the scheduler is stepped: batch or epoch.
+     */
+    public String getInterval() {
+        return interval;
+    }
+
+    /**
+     * The learning rate at a step.
+     * @param step                  The number of completed steps.
+     * @param baseLearningRate      The learning rate of the optimizer when attached.
+     */
+    protected abstract double learningRate(long step, double baseLearningRate);
+
+    /**
+     * The momentum at a step. Only applied to optimizers that use momentum.
+     * @param step                  The number of completed steps.
+     * @param baseMomentum          The momentum of the optimizer when attached.
+     */
+    protected double momentum(long step, double baseMomentum) {
+        return baseMomentum;
+    }
+
+    /**
+     * Observe the loss at the end of an epoch.
+     * @param loss                  The validation loss, or the train loss without a validation set.
+     */
+    protected void observe(double loss) {}
+
+    // Record the starting values of an optimizer and apply step 0
+    void attach(Optimizer optimizer) {
+        if (this.optimizer != null && this.optimizer != optimizer) {
+            throw new IllegalStateException("Scheduler is already attached to another optimizer.");
+        }
+        this.optimizer = optimizer;
+        this.baseLearningRate = optimizer.getLearningRate();
+        this.baseMomentum = optimizer.getMomentum();
+        this.steps = 0;
+        update();
+    }
+
+    // Restore the starting values of the optimizer
+    void detach() {
+        optimizer.setLearningRate(baseLearningRate);
+        if (baseMomentum >= 0) {
+            optimizer.setMomentum(baseMomentum);
+        }
+        optimizer = null;
+    }
+
+    /**
+     * Step the scheduler after a batch.
+     */
+    void stepBatch() {
+        if (interval.equals("batch")) {
+            steps++;
+            update();
+        }
+    }
+
+    /**
+     * Step the scheduler after an epoch.
+     * @param loss                  The validation loss, or the train loss without a validation set.
+     */
+    void stepEpoch(double loss) {
+        observe(loss);
+        if (interval.equals("epoch")) {
+            steps++;
+        }
+        update();
+    }
+
+    private void update() {
+        optimizer.setLearningRate(learningRate(steps, baseLearningRate));
+        if (baseMomentum >= 0) {
+            optimizer.setMomentum(momentum(steps, baseMomentum));
+        }
+    }
+
+    /**
+     * State beyond the step count, such as the best loss seen, for resuming training.
+     * @return the state of this scheduler. <li> By default, an empty array.
+     */
+    protected double[] getState() {
+        return new double[0];
+    }
+
+    /**
+     * Restore state returned by getState().
+     * @param state                 The saved state.
+     */
+    protected void setState(double[] state) {}
+
+    /**
+     * The number of completed steps.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Set the number of completed steps, e.g. when resuming training.
+     * @param steps                 The number of completed steps.
+     */
+    public void setSteps(long steps) {
+        this.steps = steps;
+        if (optimizer != null) {
+            update();
+        }
+    }
+}
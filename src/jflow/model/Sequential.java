@@ -11,18 +11,23 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.stream.IntStream;
 
 import jflow.data.*;
 import jflow.layers.Dense;
+import jflow.layers.Dropout;
 import jflow.layers.Embedding;
 import jflow.layers.Sigmoid;
+import jflow.layers.Softmax;
+import jflow.layers.templates.Quantizable;
 import jflow.layers.templates.TrainableLayer;
 import jflow.utils.Callbacks;
 import jflow.utils.Metrics;
@@ -38,9 +43,29 @@ public class Sequential{
     private String name = null;
     private boolean debugMode;
     private Optimizer optimizer;
+    // Null to infer cross-entropy or binary cross-entropy from the last layer
+    private Loss loss;
+    private double lastLoss = Double.NaN;
     private int[] inputShape;
     private HashMap<String, JMatrix[]> layerGradients = new HashMap<>();
     private HashMap<String, Integer> layerCounts = new HashMap<>();
+    private ExponentialMovingAverage ema;
+    // The layout spatial layers compute in, and the layout each layer ran in during training
+    private String layout = "NCHW";
+    private String[] inputLayouts;
+    // Training state loaded by loadTrainingState, resumed by the next train call
+    private TrainingState resumeState;
+    // The state and Dataloader of the current or last training run
+    private TrainingState trainingState;
+    private Dataloader trainingLoader;
+    // Periodic training-state snapshots, written in the background
+    private String statePath;
+    private int stateInterval;
+    private AsyncCheckpointWriter stateWriter;
+    // Checkpoint name prefix of training weights, which are saved alongside averaged weights
+    private static final String TRAINING_WEIGHTS = "training_weights/";
+    // Names of the random streams of Dataloader transforms in a training state
+    private static final String LOADER_RANDOM = "loader/";
 
     private final String TEAL = "\033[38;2;0;153;153;1m";
     private final String YELLOW = "\033[38;2;222;197;15m";
@@ -238,6 +263,26 @@ public class Sequential{
         return optimizer;
     }
 
+    /**
+     * Prepare the model for training with a loss function. <p>
+     * Without a loss, cross-entropy is used, or binary cross-entropy after a Sigmoid output.
+     * With a loss, backward(yTrue) also treats yTrue as targets for that loss,
+     * shaped like the model output.
+     * @param optimizer The desired optimizer.
+     * @param loss The loss function, such as CrossEntropy(), MSE() or Huber(delta).
+     */
+    public Optimizer compile(Optimizer optimizer, Loss loss) {
+        this.loss = loss;
+        return compile(optimizer);
+    }
+
+    /**
+     * The mean loss of the last backward pass from labels or targets.
+     */
+    public double getLastLoss() {
+        return lastLoss;
+    }
+
     // Initialize each trainable layer in the optimizer
     private void setOptimizer(Optimizer optimizer) {
         this.optimizer = optimizer;
@@ -245,6 +290,7 @@ public class Sequential{
             if (l instanceof TrainableLayer) {
                 TrainableLayer trainable = (TrainableLayer)l;
                 optimizer.initializeLayer(trainable);
+                optimizer.applyMomentPrecision(trainable);
                 /*
                  * Store references to internal gradients.
                  * References always remain valid.
@@ -257,9 +303,13 @@ public class Sequential{
 
      /**
      * Retrieve the parameter gradients from the model. <p>
-     * For custom train steps, use: optimizer.apply(model.trainableVariables())
+     * For custom train steps, use: optimizer.apply(model.trainableVariables()) <p>
+     * If inference swapped in the averaged EMA weights, the training weights are restored first.
      */
     public HashMap<String, JMatrix[]> trainableVariables() {
+        if (ema != null) {
+            ema.ensureTrainingWeights(layers);
+        }
         return layerGradients;
     }
 
@@ -297,6 +347,98 @@ public class Sequential{
         }
         return this;
     }
+    /**
+     * Set the storage precision of activations kept for the backward pass in every layer. <p>
+     * Half-precision storage halves the memory of stored activations.
+     * Computation still runs in float32.
+     * @param dtype                 The storage type. Options: <p>
+     *                                  - float32 - bfloat16 - float16
+     */
+    public Sequential setStoragePrecision(String dtype) {
+        for (Layer l : layers) {
+            l.setStoragePrecision(dtype);
+        }
+        return this;
+    }
+
+    /**
+     * Set the storage precision of activations kept for the backward pass in one layer.
+     * @param layerIndex            The index of the layer.
+     * @param dtype                 The storage type. Options: <p>
+     *                                  - float32 - bfloat16 - float16
+     */
+    public Sequential setStoragePrecision(int layerIndex, String dtype) {
+        layers.get(layerIndex).setStoragePrecision(dtype);
+        return this;
+    }
+
+    /**
+     * Set how activation layers evaluate transcendental functions in every layer. <p>
+     * Fast mode uses the float-precision approximations in FastMath for exp, tanh,
+     * erf, softplus and sigmoid in GELU, Swish, Mish, Sigmoid, Tanh and Softmax,
+     * with errors below 1e-6 of the exact functions.
+     * @param mode                  The math mode. Options: <p>
+     *                                  - exact (default) - fast
+     */
+    public Sequential setMathMode(String mode) {
+        for (Layer l : layers) {
+            l.setMathMode(mode);
+        }
+        return this;
+    }
+
+    /**
+     * Set the memory layout that spatial layers compute in. <p>
+     * With NHWC, Conv2D, MaxPool2D, AvgPool2D, Upsampling2D, GlobalAveragePooling2D and BatchNorm
+     * run channels-last kernels, where the channels of each pixel are contiguous.
+     * Activations are converted only where consecutive layers use different layouts.
+     * Model inputs, outputs, gradients and weights stay NCHW either way.
+     * @param layout                The layout. Options: <p>
+     *                                  - NCHW (default) - NHWC
+     */
+    public Sequential setLayout(String layout) {
+        if (!(layout.equals("NCHW") || layout.equals("NHWC"))) {
+            throw new IllegalArgumentException("Only NCHW and NHWC allowed.");
+        }
+        this.layout = layout;
+        return this;
+    }
+
+    /**
+     * Keep an exponential moving average (EMA) of the weights during training. <p>
+     * The averaged weights are used for validation, inference and saved checkpoints,
+     * and the training weights are restored before the next training step.
+     * @param decay                 The fraction of the average kept at each update, e.g. 0.999.
+     */
+    public Sequential useEMA(double decay) {
+        return useEMA(decay, 1);
+    }
+
+    /**
+     * Keep an exponential moving average (EMA) of the weights during training. <p>
+     * The averaged weights are used for validation, inference and saved checkpoints,
+     * and the training weights are restored before the next training step.
+     * @param decay                 The fraction of the average kept at each update, e.g. 0.999.
+     * @param updateInterval        The number of training steps between updates of the average.
+     */
+    public Sequential useEMA(double decay, int updateInterval) {
+        if (ema != null) {
+            ema.ensureTrainingWeights(layers);
+        }
+        ema = new ExponentialMovingAverage(decay, updateInterval);
+        return this;
+    }
+
+    /**
+     * Count a training step for the moving average of the weights. <p>
+     * Called by train. For custom train steps, call after optimizer.apply(model.trainableVariables()).
+     */
+    public void updateEMA() {
+        if (ema != null) {
+            ema.step(layers);
+        }
+    }
+
     /**
      * Train the model.
      * @param loader                A Dataloader containing train images.
@@ -323,17 +465,17 @@ public class Sequential{
         if (optimizer == null) {
             setOptimizer(new SGD(0.01)); // Simplest possible optimizer
         }
-        // Store values for metric tracking
-        double prevTrainAccuracy = 0;
-        double bestTrainAccuracy = 0;
-
-        double bestTrainLoss = Double.POSITIVE_INFINITY;
-
-        double prevValAccuracy = 0;
-        double bestValAccuracy = 0;
-
-        double prevValLoss = Double.POSITIVE_INFINITY;
-        double bestValLoss = Double.POSITIVE_INFINITY;
+        // Store values for metric tracking, resuming a loaded training state
+        TrainingState state = (resumeState == null) ? new TrainingState() : resumeState;
+        if (resumeState != null) {
+            List<RandomStream> streams = loader.getRandomStreams();
+            for (int i = 0; i < streams.size(); i++) {
+                state.restoreRandom(LOADER_RANDOM + i, streams.get(i));
+            }
+            resumeState = null;
+        }
+        trainingState = state;
+        trainingLoader = loader;
 
         // Print training header
         String name = (this.name == null) ? "sequential_" + modelNum : this.name;
@@ -350,15 +492,13 @@ public class Sequential{
         }
         
         int numBatches = loader.numBatches();
-        int batchSize = loader.getBatch(0).size();
-
         int classes = (numClasses == -1) ? countNumClasses(loader) : numClasses;
         // begin training
-        for (int epoch = 1; epoch <= epochs; epoch++) {
-            double accuracy = 0;
+        while (state.epoch <= epochs) {
+            int epoch = state.epoch;
             long startTime = System.nanoTime();
-            double totalLoss = 0;
-            for (int batch = 0; batch < numBatches; batch++) {
+            while (state.batch < numBatches) {
+                int batch = state.batch;
                 JMatrix xBatch = null;
                 int[] yBatch = null;
 
@@ -367,57 +507,54 @@ public class Sequential{
 
                 forward(xBatch, true);
 
-                JMatrix yTrue;
-                if (layers.getLast() instanceof Sigmoid) {
-                    float[] yBatchf = new float[batchSize];
-                    for (int i = 0; i < batchSize; i++) {
-                        yBatchf[i] = (float)yBatch[i];
-                    }
-                    yTrue = new JMatrix(yBatchf, batchSize, 1, 1, 1);
-                    
-                } else {
-                    yTrue = oneHotEncode(yBatch, classes, true);
-                }
-
-                backward(yTrue);
+                backward(new IntTensor(yBatch), classes);
 
                 // Apply updates
                 optimizer.apply(layerGradients);
+                updateEMA();
+                if (optimizer.getScheduler() != null) {
+                    optimizer.getScheduler().stepBatch();
+                }
 
                 JMatrix output = layers.getLast().getOutput();
 
                 int[] predictions = getPredictions(output);
 
-                accuracy += Metrics.getAccuracy(predictions, yBatch);
+                state.accuracy += Metrics.getAccuracy(predictions, yBatch);
 
-                totalLoss += crossEntropyLoss(output, yBatch);
+                // Computed with the gradient in backward
+                state.totalLoss += lastLoss;
 
                 long batchTime = System.nanoTime();
                 long timeSinceStart = batchTime - startTime;
 
                 LinkedHashMap<String, Double> lossReport = new LinkedHashMap<>();
-                lossReport.put("Loss", totalLoss / (batch + 1));
+                lossReport.put("Loss", state.totalLoss / (batch + 1));
 
                 if (!debugMode) {
                     Callbacks.printProgressCallback("Epoch", epoch, epochs, "Batch", batch + 1, numBatches,
                         timeSinceStart, lossReport);
                 }
+                state.batch++;
+                if (statePath != null && state.batch % stateInterval == 0 && state.batch < numBatches) {
+                    saveTrainingStateAsync(state, loader);
+                }
             }
-            Double trainLoss = totalLoss / numBatches;
+            Double trainLoss = state.totalLoss / numBatches;
 
             // Report train accuracy
             String report = BLUE + "    Training Accuracy: " + RESET;
             // Convert to percentage
-            double trainAccuracy = accuracy / loader.numBatches();
+            double trainAccuracy = state.accuracy / loader.numBatches();
             String trainPercentage = accuracyToPercentage(trainAccuracy);
 
             // Warn if performance declines with RED
-            if (trainAccuracy > prevTrainAccuracy) {
+            if (trainAccuracy > state.prevTrainAccuracy) {
                 report += GREEN;
             } else {
                 report += RED;
             }
-            prevTrainAccuracy = trainAccuracy;
+            state.prevTrainAccuracy = trainAccuracy;
 
             report += trainPercentage + RESET;
 
@@ -432,29 +569,36 @@ public class Sequential{
                 String valPercentage = accuracyToPercentage(valAccuracy);
 
                 // Warn if performance declines with RED
-                if (valAccuracy > prevValAccuracy) {
+                if (valAccuracy > state.prevValAccuracy) {
                     report += GREEN;
                 } else {
                     report += RED;
                 }
-                prevValAccuracy = valAccuracy;
+                state.prevValAccuracy = valAccuracy;
 
                 report += valPercentage + RESET;
 
                 // Report validation loss
                 report += BLUE + "\n    Validation Loss: ";
-                valLoss = crossEntropyLoss(layers.getLast().getOutput(), valLabels);
+                valLoss = evaluateLoss(layers.getLast().getOutput(), valLabels);
 
                 // Warn if performance declines with RED
-                if (valLoss < prevValLoss) {
+                if (valLoss < state.prevValLoss) {
                     report += GREEN;
                 } else {
                     report += RED;
                 }
-                prevValLoss = valLoss;
+                state.prevValLoss = valLoss;
 
                 report += capDouble(valLoss, 8) + RESET;
             }
+            Scheduler scheduler = optimizer.getScheduler();
+            if (scheduler != null) {
+                scheduler.stepEpoch(useValSet ? valLoss : trainLoss);
+                // Report the learning rate for the next epoch
+                report += BLUE + "\n    Learning Rate: " + WHITE + 
+                    String.format("%.3e", optimizer.getLearningRate()) + RESET;
+            }
             System.out.println("\n" + report);
             if (checkpoint == null) {
                 System.out.println("");
@@ -467,58 +611,59 @@ public class Sequential{
                 switch (checkpoint.getMetric()) {
                     case "val_loss":
                         reportName = "Validation loss";
-                        val1 = capDouble(bestValLoss, 8);
+                        val1 = capDouble(state.bestValLoss, 8);
                         val2 = capDouble(valLoss, 8);
-                        if (valLoss < bestValLoss) {
+                        if (valLoss < state.bestValLoss) {
                             improved = true;
-                            bestValLoss = valLoss;
+                            state.bestValLoss = valLoss;
                         } else {
                             improved = false;
                         }
                         break;
                     case "val_accuracy":
                         reportName = "Validation accuracy";
-                        val1 = capDouble(bestValAccuracy, 8);
+                        val1 = capDouble(state.bestValAccuracy, 8);
                         val2 = capDouble(valAccuracy, 8);
-                        if (valAccuracy > bestValAccuracy) {
+                        if (valAccuracy > state.bestValAccuracy) {
                             improved = true;
-                            bestValAccuracy = valAccuracy;
+                            state.bestValAccuracy = valAccuracy;
                         } else {
                             improved = false;
                         }
                         break;
                     case "train_loss":
                         reportName = "Train loss";
-                        val1 = capDouble(bestTrainLoss, 8);
+                        val1 = capDouble(state.bestTrainLoss, 8);
                         val2 = capDouble(trainLoss, 8);
-                        if (trainLoss < bestTrainLoss) {
+                        if (trainLoss < state.bestTrainLoss) {
                             improved = true;
-                            bestTrainLoss = trainLoss;
+                            state.bestTrainLoss = trainLoss;
                         } else {
                             improved = false;
                         }
                         break;
                     case "train_accuracy":
                         reportName = "Train accuracy";
-                        val1 = capDouble(bestTrainAccuracy, 8);
+                        val1 = capDouble(state.bestTrainAccuracy, 8);
                         val2 = capDouble(trainAccuracy, 8);
-                        if (trainAccuracy > bestTrainAccuracy) {
+                        if (trainAccuracy > state.bestTrainAccuracy) {
                             improved = true;
-                            bestTrainAccuracy = trainAccuracy;
+                            state.bestTrainAccuracy = trainAccuracy;
                         } else {
                             improved = false;
                         }
                         break;
                 }
                 if (improved) {
+                    String savePath = checkpoint.getSavePath(epoch);
                     System.out.println(
                         WHITE + reportName + " improved from "
                         + BLUE + val1 + 
                         WHITE + " to " + BLUE + val2 +
                         WHITE + ". Saving model to " + BLUE + 
-                        checkpoint.getSavePath() + RESET + "\n"
+                        savePath + RESET + "\n"
                     );
-                    internalSaveWeights(checkpoint.getSavePath(), false);
+                    saveCheckpoint(checkpoint, savePath);
                 } else {
                     System.out.println(
                         WHITE + reportName + " did not improve from "
@@ -526,7 +671,181 @@ public class Sequential{
                     );
                 }
             }
+            state.startEpoch(epoch + 1);
+            if (statePath != null) {
+                saveTrainingStateAsync(state, loader);
+            }
+        }
+        if (stateWriter != null) {
+            // Finish training-state snapshots still being written in the background
+            try {
+                stateWriter.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving training state to " + statePath, e);
+            }
+        }
+        if (checkpoint != null) {
+            // Finish checkpoints still being written in the background
+            try {
+                checkpoint.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving checkpoint to " + checkpoint.getSavePath(), e);
+            }
+        }
+    }
+
+    // Save a checkpoint during training, in the background if the checkpoint is async
+    private void saveCheckpoint(ModelCheckpoint checkpoint, String path) {
+        Path file = CheckpointFile.resolve(path);
+        try {
+            if (checkpoint.isAsync()) {
+                checkpoint.getWriter().save(file, checkpointTensors(), checkpoint::written);
+            } else {
+                CheckpointFile.write(file, checkpointTensors());
+                checkpoint.written(file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving checkpoint to " + file, e);
+        }
+    }
+
+    /**
+     * Seed the random numbers of the model, such as Dropout masks, for reproducible training. <p>
+     * Each layer draws from its own stream, derived from the seed and its position in the model.
+     * @param seed                  The seed.
+     */
+    public Sequential setSeed(long seed) {
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) instanceof Dropout dropout) {
+                dropout.getRandomStream().setSeed(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Save a snapshot of the training state during training, in the background. <p>
+     * A snapshot holds the weights and optimizer state, the epoch and batch to continue from,
+     * the running loss and accuracy, tracked metrics, the scheduler, and the random state of
+     * Dropout layers and Dataloader transforms. Saved every batchInterval batches and at
+     * the end of every epoch, replacing the previous snapshot.
+     * @param path                  The checkpoint file, ending in .jflow, 
+     *                                  or a directory to store model.jflow in.
+     * @param batchInterval         The number of batches between snapshots within an epoch.
+     *                                  0 saves only at the end of every epoch.
+     */
+    public Sequential checkpointTrainingState(String path, int batchInterval) {
+        if (batchInterval < 0) {
+            throw new IllegalArgumentException("batchInterval must not be negative.");
+        }
+        this.statePath = path;
+        this.stateInterval = (batchInterval == 0) ? Integer.MAX_VALUE : batchInterval;
+        return this;
+    }
+
+    /**
+     * Save the weights, optimizer state and the state of the last training run.
+     * @param path                  The checkpoint file, ending in .jflow, 
+     *                                  or a directory to store model.jflow in.
+     */
+    public void saveTrainingState(String path) {
+        Path file = CheckpointFile.resolve(path);
+        TrainingState state = (trainingState == null) ? new TrainingState() : trainingState;
+        try {
+            CheckpointFile.write(file, trainingStateTensors(state, trainingLoader));
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving training state to " + file, e);
+        }
+    }
+
+    /**
+     * Load weights, optimizer state and a training state saved by saveTrainingState
+     * or checkpointTrainingState. <p>
+     * The next call to train continues from the saved epoch and batch, up to its number of epochs.
+     * The Dataloader must be built the same way, with the same seed, as in the interrupted run.
+     * @param path                  The checkpoint file, ending in .jflow, 
+     *                                  or the directory it is stored in.
+     */
+    public void loadTrainingState(String path) {
+        loadWeights(path);
+        Path file = CheckpointFile.resolve(path);
+        TrainingState state;
+        try (CheckpointFile checkpoint = CheckpointFile.open(file)) {
+            if (!TrainingState.isIn(checkpoint)) {
+                throw new IllegalArgumentException("No training state in " + file);
+            }
+            state = TrainingState.read(checkpoint);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading training state from " + file, e);
+        }
+        if (optimizer != null) {
+            // Restore the learning rate, then let the scheduler recompute it from its steps
+            if (!Double.isNaN(state.learningRate)) {
+                optimizer.setLearningRate(state.learningRate);
+            }
+            if (state.momentum >= 0) {
+                optimizer.setMomentum(state.momentum);
+            }
+            Scheduler scheduler = optimizer.getScheduler();
+            if (scheduler != null && state.schedulerSteps >= 0) {
+                scheduler.setState(state.schedulerState);
+                scheduler.setSteps(state.schedulerSteps);
+            }
         }
+        if (ema != null && state.emaSteps >= 0) {
+            ema.setSteps(state.emaSteps);
+        }
+        for (Layer l : layers) {
+            if (l instanceof Dropout dropout) {
+                state.restoreRandom(l.getName(), dropout.getRandomStream());
+            }
+        }
+        trainingState = state;
+        trainingLoader = null;
+        resumeState = state;
+    }
+
+    // Write a training-state snapshot in the background
+    private void saveTrainingStateAsync(TrainingState state, Dataloader loader) {
+        if (stateWriter == null) {
+            stateWriter = new AsyncCheckpointWriter();
+        }
+        Path file = CheckpointFile.resolve(statePath);
+        try {
+            stateWriter.save(file, trainingStateTensors(state, loader), written -> {});
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving training state to " + file, e);
+        }
+    }
+
+    // Checkpoint tensors followed by the training state, with the current optimizer and random state
+    private ArrayList<CheckpointFile.Tensor> trainingStateTensors(TrainingState state, Dataloader loader) {
+        if (optimizer != null) {
+            state.learningRate = optimizer.getLearningRate();
+            state.momentum = optimizer.getMomentum();
+            Scheduler scheduler = optimizer.getScheduler();
+            if (scheduler != null) {
+                state.schedulerSteps = scheduler.getSteps();
+                state.schedulerState = scheduler.getState();
+            }
+        }
+        if (ema != null) {
+            state.emaSteps = ema.getSteps();
+        }
+        for (Layer l : layers) {
+            if (l instanceof Dropout dropout) {
+                state.captureRandom(l.getName(), dropout.getRandomStream());
+            }
+        }
+        if (loader != null) {
+            List<RandomStream> streams = loader.getRandomStreams();
+            for (int i = 0; i < streams.size(); i++) {
+                state.captureRandom(LOADER_RANDOM + i, streams.get(i));
+            }
+        }
+        ArrayList<CheckpointFile.Tensor> tensors = checkpointTensors();
+        tensors.addAll(state.tensors());
+        return tensors;
     }
 
     // Converts accuracy to percentage
@@ -555,11 +874,48 @@ public class Sequential{
 
         // Get predictions
         return getPredictions(output);
-        
+
+    }
+
+    /**
+     * Predict class labels on batched image data in a JMatrix. Safe to call from many threads at once. <p>
+     * Weights are shared read-only and all per-call state lives in an execution context
+     * owned by the calling thread, so one model can serve concurrent requests, including from virtual threads.
+     * Must not overlap with training.
+     * @param images                    a JMatrix of images in the shape (N, channels, height, width).
+     * @return                      predicted class labels in the range [0, numClasses].
+     */
+    public int[] predictConcurrent(JMatrix images) {
+        return getPredictions(forwardConcurrent(images));
+    }
+
+    /**
+     * Perform forward propagation for inference. Safe to call from many threads at once. <p>
+     * Unlike forward(images, false), the output is not recorded on the model,
+     * so getLastLayerOutput() does not reflect this call.
+     * @param images               Image data wrapped in a JMatrix.
+     * @return                     Returns the forward output of the last layer of the model.
+     */
+    public JMatrix forwardConcurrent(JMatrix images) {
+        ExecutionContext context = ExecutionContext.enter();
+        try {
+            return forward(images, false);
+        } finally {
+            context.exit();
+        }
+    }
+
+    // True if the model output is laid out as (features, batch), as Dense layers produce
+    boolean outputIsTransposed() {
+        Layer last = layers.getLast();
+        if (!last.isShapeInfluencer()) {
+            last = last.getPreviousShapeInfluencer();
+        }
+        return last instanceof Dense;
     }
 
     // Internal helper to convert output to predictions
-    private int[] getPredictions(JMatrix output) {
+    int[] getPredictions(JMatrix output) {
         int batchSize = output.channels();
         if (layers.getLast() instanceof Sigmoid) {
             int[] predictions = new int[batchSize];
@@ -600,62 +956,167 @@ public class Sequential{
      * @return                     Returns the forward output of the last layer of the model.
      */
     public JMatrix forward(JMatrix images, boolean training) {
+        if (ema != null) {
+            // Infer with the averaged weights
+            if (training) {
+                ema.ensureTrainingWeights(layers);
+            } else {
+                ema.ensureAveragedWeights(layers);
+            }
+        }
+        if (training && (inputLayouts == null || inputLayouts.length != layers.size())) {
+            inputLayouts = new String[layers.size()];
+        }
         JMatrix output = images;
         for (int i = 0; i < layers.size(); i++) {
-            if (!layers.get(i).isInternal()) {
-                output = layers.get(i).forward(output, training);
+            Layer layer = layers.get(i);
+            if (!layer.isInternal()) {
+                // Convert only where this layer runs in a different layout
+                output = output.toLayout(layoutFor(layer, output.layout()));
+                String inputLayout = output.layout();
+                if (training) {
+                    inputLayouts[i] = inputLayout;
+                }
+                output = layer.forward(output, training);
+                if (layer.isLayoutAgnostic() && !output.layout().equals(inputLayout)) {
+                    output.setLayout(inputLayout);
+                }
             }
         }
-        return output;
+        return output.toLayout("NCHW");
+    }
+
+    // The layout a layer runs in, given the layout of its input
+    private String layoutFor(Layer layer, String inputLayout) {
+        if (layer.isLayoutAgnostic()) {
+            return inputLayout;
+        }
+        return layer.supportsChannelsLast() ? layout : "NCHW";
+    }
+
+    // Backpropagate through a layer in the layout it ran in during the forward pass
+    private JMatrix layerBackward(int index, JMatrix gradient) {
+        Layer layer = layers.get(index);
+        String layerLayout = (inputLayouts == null || inputLayouts[index] == null) ? 
+            "NCHW" : inputLayouts[index];
+        JMatrix dX = layer.backward(gradient.toLayout(layerLayout));
+        if (dX != null && layer.isLayoutAgnostic() && !dX.layout().equals(layerLayout)) {
+            dX.setLayout(layerLayout);
+        }
+        return dX;
     }
 
     /**
-     * Perform backward propagation.
+     * Perform backward propagation. <p>
+     * With a loss set at compile, yTrue holds targets shaped like the model output,
+     * and the loss of the batch is available from getLastLoss().
      * @param images               yTrue data wrapped in a JMatrix.
      * @param learningRate         The desired learning rate for updating parameters.
      * @return                     Returns the gradient, dX, of the first layer of the model.
      */
     public JMatrix backward(JMatrix yTrue) {
-        JMatrix gradient = yTrue;
-        for (int i = layers.size() - 1; i >= 0; i--) {
-            if (!layers.get(i).isInternal()) {
-                gradient = layers.get(i).backward(gradient);
-            }
-            if (debugMode) {
-                layers.get(i).printDebug();
-            }
+        if (loss != null) {
+            float[] targets = yTrue.dtype().equals("float32") ? yTrue.getMatrix() : yTrue.toFloat32().getMatrix();
+            return backwardFromLoss(targets, null);
+        }
+        lastLoss = Double.NaN;
+        return backwardFrom(layers.size() - 1, yTrue);
+    }
+
+    /**
+     * Perform backward propagation from sparse class labels. <p>
+     * The loss and its gradient are formed directly from the labels,
+     * without materializing one-hot targets. The loss of the batch is available from getLastLoss().
+     * @param labels               One class label per sample.
+     * @return                     Returns the gradient, dX, of the first layer of the model.
+     */
+    public JMatrix backward(IntTensor labels) {
+        return backward(labels, (numClasses == -1) ? layers.getLast().getOutput().length() : numClasses);
+    }
+
+    private JMatrix backward(IntTensor labels, int classes) {
+        int lastIndex = lastLayerIndex();
+        Layer last = layers.get(lastIndex);
+        if (loss == null && !(last instanceof Softmax) && !(last instanceof Sigmoid)) {
+            // Without a loss or output activation, one-hot targets are passed back as before
+            lastLoss = evaluateLoss(last.getOutput(), labels.getArray());
+            return backwardFrom(lastIndex, oneHotEncode(labels.getArray(), classes, true));
         }
-        return gradient;
+        return backwardFromLoss(null, labels.getArray());
     }
 
-    // Calculate loss per batch
-    private double crossEntropyLoss(JMatrix output, int[] labels) {
-        double epsilon = 1e-12;
-        int batchSize = labels.length;
-        double totalLoss = 0;
+    // The index of the last layer that runs its own backward pass
+    private int lastLayerIndex() {
+        int lastIndex = layers.size() - 1;
+        while (layers.get(lastIndex).isInternal()) {
+            lastIndex--;
+        }
+        return lastIndex;
+    }
 
-        if (layers.getLast() instanceof Sigmoid) {
-            // b.c.e. for sigmoid activation
-            for (int i = 0; i < batchSize; i++) {
-                int label = labels[i];
-                double predictedProb = output.get(i);
-                
-                // b.c.e.
-                totalLoss += -label * Math.log(predictedProb + epsilon) - 
-                            (1 - label) * Math.log(1 - predictedProb + epsilon);
+    private Loss lossFunction() {
+        if (loss != null) {
+            return loss;
+        }
+        return (layers.getLast() instanceof Sigmoid) ? new BinaryCrossEntropy() : new CrossEntropy();
+    }
+
+    // The activation a loss takes its gradient through
+    private static String outputActivation(Layer last) {
+        if (last instanceof Softmax) {
+            return "softmax";
+        }
+        return (last instanceof Sigmoid) ? "sigmoid" : "none";
+    }
+
+    /*
+     * Compute the loss of the last training pass and its gradient, recording the loss, and backpropagate.
+     * The gradient is with respect to the logits of a Softmax or Sigmoid output,
+     * which is then skipped, or to the output otherwise.
+     */
+    private JMatrix backwardFromLoss(float[] targets, int[] labels) {
+        int lastIndex = lastLayerIndex();
+        Layer last = layers.get(lastIndex);
+        // Targets are in NCHW order, like the output forward() returns
+        JMatrix output = last.getOutput().toLayout("NCHW");
+        String activation = outputActivation(last);
+        LossBatch batch = new LossBatch(output, outputIsTransposed() || last instanceof Softmax, 
+            targets, labels, activation, (last instanceof Softmax softmax) ? softmax : null);
+        lastLoss = lossFunction().compute(batch);
+        JMatrix gradient = new JMatrix(batch.gradient, output.length(), output.channels(), 
+            output.height(), output.width());
+        if (activation.equals("none")) {
+            return backwardFrom(lastIndex, gradient);
+        }
+        last.trackGradient(gradient);
+        if (debugMode) {
+            last.printDebug();
+        }
+        return backwardFrom(lastIndex - 1, gradient);
+    }
+
+    // The loss of an output against labels, without its gradient
+    private double evaluateLoss(JMatrix output, int[] labels) {
+        Layer last = layers.getLast();
+        return lossFunction().compute(new LossBatch(output.toLayout("NCHW"), 
+            outputIsTransposed() || last instanceof Softmax,
+            null, labels, outputActivation(last), null));
+    }
+
+    // Backpropagate a gradient from a layer down to the first layer
+    private JMatrix backwardFrom(int startIndex, JMatrix gradient) {
+        for (int i = startIndex; i >= 0; i--) {
+            if (!layers.get(i).isInternal()) {
+                gradient = layerBackward(i, gradient);
             }
-        } else {
-            for (int i = 0; i < batchSize; i++) {
-                int label = labels[i];
-                int index = label * batchSize + i; // Tranposed
-                double predictedProb = output.get(index);
-                totalLoss += -Math.log(predictedProb + epsilon);
+            if (debugMode) {
+                layers.get(i).printDebug();
             }
         }
-    
-        return totalLoss / batchSize;
+        // Layers without an input gradient, such as Embedding, return null
+        return (gradient == null) ? null : gradient.toLayout("NCHW");
     }
-    
+
     // Find the max value per column
     private int[] argmax0(JMatrix output) {
         int height = output.length();
@@ -682,18 +1143,25 @@ public class Sequential{
     }
 
     /**
-     * Get the forward output of a layer in the model.
+     * Get the forward output of a layer in the model, in float32. <p>
+     * Outputs kept for backward in half precision are returned as a float32 copy.
      * @param layerIndex               The index of the desired layer.
      */
     public JMatrix getLayerOutput(int layerIndex) {
-        return layers.get(layerIndex).getOutput();
+        JMatrix output = layers.get(layerIndex).getOutput();
+        if (output == null) {
+            return null;
+        }
+        output = output.toLayout("NCHW");
+        return output.dtype().equals("float32") ? output : output.toFloat32();
     }
 
     /**
      * Get the forward output of the last layer in the model.
      */
     public JMatrix getLastLayerOutput() {
-        return layers.getLast().getOutput();
+        JMatrix output = layers.getLast().getOutput();
+        return (output == null) ? null : output.toLayout("NCHW");
     }
 
     /**
@@ -706,133 +1174,348 @@ public class Sequential{
 
 
     /**
-     * Save weights to binary files in a directory.
-     * @param path               The name of the directory to store files in.
+     * Save weights and optimizer state to a single checkpoint file. <p>
+     * The file holds an index of all tensors followed by aligned little-endian payloads
+     * with checksums, and is written and loaded through memory maps.
+     * @param path               The checkpoint file, ending in .jflow, 
+     *                              or a directory to store model.jflow in.
      */
     public void saveWeights(String path) {
         internalSaveWeights(path, true);
     }
     public void internalSaveWeights(String path, boolean printReport) {
-        // Save trainable layer weights
-        IntStream.range(0, layers.size())
-            .parallel()
-            .forEach(i -> {
-                jflow.model.Layer l = layers.get(i);
-                if (l instanceof TrainableLayer trainable) {
-                    for (JMatrix weight : trainable.getWeights()) {
-                        String filePath = path + "/" + trainable.getName() + "_" + weight.getName() + ".bin";
-                        saveWeightToBinary(filePath, weight);
-                    }
-                }
-            });
+        Path file = CheckpointFile.resolve(path);
+        try {
+            CheckpointFile.write(file, checkpointTensors());
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving checkpoint to " + file, e);
+        }
     
-        // Save optimizer time steps
+        if (printReport) {
+            System.out.println("Weights saved to " + file);
+        }
+    }
+
+    // Names and values of all trainable layer weights, in model order
+    private void collectLayerWeights(ArrayList<String> names, ArrayList<JMatrix> weights) {
+        for (Layer l : layers) {
+            if (l instanceof TrainableLayer trainable) {
+                for (JMatrix weight : trainable.getWeights()) {
+                    names.add(trainable.getName() + "_" + weight.getName());
+                    weights.add(weight);
+                }
+            }
+        }
+    }
+
+    // Every tensor in a checkpoint, sharing the buffers of the model
+    private ArrayList<CheckpointFile.Tensor> checkpointTensors() {
+        ArrayList<CheckpointFile.Tensor> tensors = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<JMatrix> weights = new ArrayList<>();
+        collectLayerWeights(names, weights);
+
+        if (ema != null) {
+            // Save the averaged weights, and the training weights for resuming
+            float[][] averaged = ema.averagedValues(layers);
+            float[][] training = ema.trainingValues(layers);
+            for (int i = 0; i < names.size(); i++) {
+                tensors.add(CheckpointFile.Tensor.of(names.get(i), weights.get(i).shape(), averaged[i]));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                tensors.add(CheckpointFile.Tensor.of(TRAINING_WEIGHTS + names.get(i), 
+                    weights.get(i).shape(), training[i]));
+            }
+        } else {
+            for (int i = 0; i < names.size(); i++) {
+                tensors.add(CheckpointFile.Tensor.of(names.get(i), weights.get(i)));
+            }
+        }
+
         if (optimizer != null) {
-            if (optimizer instanceof Adam adam) {
-                String timestepPath = path + "/" + optimizer.getName() + "/timesteps.bin";
-                try {
-                    Path dir = Paths.get(path + "/" + optimizer.getName());
-                    Files.createDirectories(dir);
-            
-                    try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(timestepPath))) {
-                        dos.writeLong(adam.getTimeSteps()); // Write 8-byte long
+            tensors.add(CheckpointFile.Tensor.ofLong(optimizer.getName() + "/timesteps", optimizer.getTimeSteps()));
+            for (JMatrix weight : optimizer.getWeights()) {
+                tensors.add(CheckpointFile.Tensor.of(optimizer.getName() + "/" + weight.getName(), weight));
+            }
+        }
+        return tensors;
+    }
+
+    /**
+     * Load weights and optimizer state from a checkpoint. <p>
+     * Checkpoints saved as one binary file per tensor by earlier versions are also supported.
+     * @param path               The checkpoint file, ending in .jflow, 
+     *                              or the directory it is stored in.
+     */
+    public void loadWeights(String path) {
+        Path file = CheckpointFile.resolve(path);
+        if (!Files.exists(file)) {
+            loadLegacyWeights(path);
+            return;
+        }
+        try (CheckpointFile checkpoint = CheckpointFile.open(file)) {
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<JMatrix> weights = new ArrayList<>();
+            collectLayerWeights(names, weights);
+            checkpoint.readAll(names, weights);
+
+            if (ema != null) {
+                // Restart the average from the saved averaged weights, and resume from the training weights
+                ema.reset(layers);
+                ArrayList<String> trainingNames = new ArrayList<>();
+                ArrayList<JMatrix> trainingWeights = new ArrayList<>();
+                for (int i = 0; i < names.size(); i++) {
+                    if (checkpoint.contains(TRAINING_WEIGHTS + names.get(i))) {
+                        trainingNames.add(TRAINING_WEIGHTS + names.get(i));
+                        trainingWeights.add(weights.get(i));
+                    }
+                }
+                checkpoint.readAll(trainingNames, trainingWeights);
+            }
+
+            if (optimizer != null) {
+                String timesteps = optimizer.getName() + "/timesteps";
+                if (checkpoint.contains(timesteps)) {
+                    optimizer.setTimeSteps(checkpoint.readLong(timesteps));
+                }
+                // Optimizer state is only restored if it was saved by the same optimizer
+                ArrayList<String> stateNames = new ArrayList<>();
+                ArrayList<JMatrix> states = new ArrayList<>();
+                for (JMatrix weight : optimizer.getWeights()) {
+                    String name = optimizer.getName() + "/" + weight.getName();
+                    if (checkpoint.contains(name)) {
+                        stateNames.add(name);
+                        states.add(weight);
                     }
+                }
+                checkpoint.readAll(stateNames, states);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading checkpoint from " + file, e);
+        }
+    }
+
+    // Load weights saved as one binary file per tensor
+    private void loadLegacyWeights(String path) {
+        loadLayerWeights(path);
+        if (ema != null) {
+            // Restart the average from the saved averaged weights, and resume from the training weights
+            ema.reset(layers);
+            if (Files.isDirectory(Paths.get(path + "/training_weights"))) {
+                loadLayerWeights(path + "/training_weights");
+            }
+        }
+
+        if (optimizer != null) {
+            // Load timestep, which older checkpoints only stored for Adam
+            String timestepPath = path + "/" + optimizer.getName() + "/timesteps.bin";
+            if (Files.exists(Paths.get(timestepPath))) {
+                try (DataInputStream dis = new DataInputStream(new FileInputStream(timestepPath))) {
+                    optimizer.setTimeSteps(dis.readLong());
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
-    
-            // Save optimizer weights
-            JMatrix[] optWeights = optimizer.getWeights();
-            IntStream.range(0, optWeights.length)
+
+            // Load optimizer weights
+            JMatrix[] weights = optimizer.getWeights();
+            IntStream.range(0, weights.length)
                 .parallel()
                 .forEach(i -> {
-                    JMatrix weight = optWeights[i];
+                    JMatrix weight = weights[i];
                     String filePath = path + "/" + optimizer.getName() + "/" + weight.getName() + ".bin";
-                    saveWeightToBinary(filePath, weight);
+                    loadWeightFromBinary(filePath, weight);
                 });
         }
-    
-        if (printReport) {
-            System.out.println("Weights saved to " + path);
-        }
     }
 
-    // Helper method to write weight values to binary
+    // Load all trainable layer weights
+    private void loadLayerWeights(String path) {
+        IntStream.range(0, layers.size())
+            .parallel()
+            .forEach(i -> {
+                jflow.model.Layer l = layers.get(i);
+                if (l instanceof TrainableLayer trainable) {
+                    JMatrix[] weights = trainable.getWeights();
+                    for (JMatrix weight : weights) {
+                        String filePath = path + "/" + trainable.getName() + "_" + weight.getName() + ".bin";
+                        loadWeightFromBinary(filePath, weight);
+                    }
+                }
+            });
+    }
+
+    // Helper method to write weight values to binary, big-endian
     private void saveWeightToBinary(String filePath, JMatrix weight) {
         try {
             Path dir = Paths.get(filePath).getParent();
             if (dir != null) Files.createDirectories(dir);
 
-            try (DataOutputStream dos = new DataOutputStream(
-                    new BufferedOutputStream(
-                        new FileOutputStream(filePath)))) {
+            float[] values = weight.dtype().equals("float32") ? 
+                weight.getMatrix() : weight.toFloat32().getMatrix();
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+            buffer.asFloatBuffer().put(values);
+            Files.write(Paths.get(filePath), buffer.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Helper method to read a big-endian binary file into a JMatrix
+    private void loadWeightFromBinary(String filePath, JMatrix weight) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filePath)));
+            if (buffer.capacity() < weight.size() * Float.BYTES) {
+                throw new IOException("Expected " + weight.size() + " floats in " + filePath);
+            }
+            if (weight.dtype().equals("float32")) {
+                buffer.asFloatBuffer().get(weight.getMatrix(), 0, weight.size());
+            } else {
                 for (int i = 0; i < weight.size(); i++) {
-                    dos.writeFloat(weight.get(i)); // Write 4 bytes per float
+                    weight.set(i, buffer.getFloat(i * Float.BYTES));
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+    
 
 
     /**
-     * Load weights from binary files in a directory.
+     * Quantize Dense and Conv2D layers to int8 for inference. <p>
+     * Weights are quantized per output channel. The input range of each layer is calibrated
+     * by running inference on batches from a Dataloader. Training is unaffected and runs in float.
+     * @param loader                     A batched Dataloader to calibrate on.
+     * @param numBatches                 The number of batches to calibrate on.
+     */
+    public void quantize(Dataloader loader, int numBatches) {
+        if (loader.numBatches() == 0) {
+            throw new IllegalStateException("Calibration requires a batched Dataloader.");
+        }
+        numBatches = Math.min(numBatches, loader.numBatches());
+
+        // Calibrate in float
+        dequantize();
+        for (Layer layer : layers) {
+            if (layer instanceof Quantizable quantizable) {
+                quantizable.setCalibrating(true);
+            }
+        }
+        for (int batch = 0; batch < numBatches; batch++) {
+            forward(loader.getBatchFlat(batch), false);
+        }
+        int numQuantized = 0;
+        for (Layer layer : layers) {
+            if (layer instanceof Quantizable quantizable) {
+                quantizable.setCalibrating(false);
+                quantizable.quantize();
+                numQuantized++;
+            }
+        }
+        System.out.println("Quantized " + numQuantized + " layers to int8");
+    }
+
+    /**
+     * Return all quantized layers to float inference.
+     */
+    public void dequantize() {
+        for (Layer layer : layers) {
+            if (layer instanceof Quantizable quantizable) {
+                quantizable.dequantize();
+            }
+        }
+    }
+
+    /**
+     * Save weights to binary files in a directory, storing quantized weights as int8.
+     * @param path               The location of the directory to save files to.
+     */
+    public void saveQuantizedWeights(String path) {
+        IntStream.range(0, layers.size())
+            .parallel()
+            .forEach(i -> {
+                jflow.model.Layer l = layers.get(i);
+                if (l instanceof TrainableLayer trainable) {
+                    JMatrix[] weights = trainable.getWeights();
+                    for (int w = 0; w < weights.length; w++) {
+                        String filePath = path + "/" + trainable.getName() + "_" + weights[w].getName();
+                        // The first weight holds the quantized kernel
+                        if (w == 0 && trainable instanceof Quantizable quantizable && quantizable.isQuantized()) {
+                            saveQuantizedToBinary(filePath + "_int8.bin", quantizable);
+                        } else {
+                            saveWeightToBinary(filePath + ".bin", weights[w]);
+                        }
+                    }
+                }
+            });
+        System.out.println("Quantized weights saved to " + path);
+    }
+
+    /**
+     * Load weights saved with saveQuantizedWeights(). Layers saved as int8 run int8 inference.
      * @param path               The location of the directory to load files from.
      */
-    public void loadWeights(String path) {
-        // Load all trainable layer weights
+    public void loadQuantizedWeights(String path) {
         IntStream.range(0, layers.size())
             .parallel()
             .forEach(i -> {
                 jflow.model.Layer l = layers.get(i);
                 if (l instanceof TrainableLayer trainable) {
                     JMatrix[] weights = trainable.getWeights();
-                    for (JMatrix weight : weights) {
-                        String filePath = path + "/" + trainable.getName() + "_" + weight.getName() + ".bin";
-                        loadWeightFromBinary(filePath, weight);
+                    for (int w = 0; w < weights.length; w++) {
+                        String filePath = path + "/" + trainable.getName() + "_" + weights[w].getName();
+                        if (w == 0 && trainable instanceof Quantizable quantizable && 
+                                Files.exists(Paths.get(filePath + "_int8.bin"))) {
+                            loadQuantizedFromBinary(filePath + "_int8.bin", quantizable, weights[w]);
+                        } else {
+                            loadWeightFromBinary(filePath + ".bin", weights[w]);
+                        }
                     }
                 }
             });
+    }
 
-        if (optimizer != null) {
-            // Load timestep
-            if (optimizer instanceof Adam adam) {
-                String timestepPath = path + "/" + optimizer.getName() + "/timesteps.bin";
-                try (DataInputStream dis = new DataInputStream(new FileInputStream(timestepPath))) {
-                    adam.setTimeSteps(dis.readLong());
-                } catch (IOException e) {
-                    e.printStackTrace();
+    // Write the activation scale, per-channel scales, then int8 values
+    private void saveQuantizedToBinary(String filePath, Quantizable layer) {
+        QuantizedMatrix weights = layer.getQuantizedWeights();
+        try {
+            Path dir = Paths.get(filePath).getParent();
+            if (dir != null) Files.createDirectories(dir);
+
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream(filePath)))) {
+                dos.writeFloat(layer.getInputScale());
+                for (float scale : weights.getScales()) {
+                    dos.writeFloat(scale);
                 }
+                dos.write(weights.getData()); // 1 byte per weight
             }
-
-            // Load optimizer weights
-            JMatrix[] weights = optimizer.getWeights();
-            IntStream.range(0, weights.length)
-                .parallel()
-                .forEach(i -> {
-                    JMatrix weight = weights[i];
-                    String filePath = path + "/" + optimizer.getName() + "/" + weight.getName() + ".bin";
-                    loadWeightFromBinary(filePath, weight);
-                });
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
-    // Helper method to read a binary file into a JMatrix
-    private void loadWeightFromBinary(String filePath, JMatrix weight) {
+    private void loadQuantizedFromBinary(String filePath, Quantizable layer, JMatrix shapeReference) {
+        int[] shape = shapeReference.shape();
         try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
-            for (int i = 0; i < weight.size(); i++) {
-                weight.set(i, dis.readFloat());
+            float inputScale = dis.readFloat();
+            float[] scales = new float[shape[0]];
+            for (int i = 0; i < scales.length; i++) {
+                scales[i] = dis.readFloat();
             }
+            byte[] data = new byte[shapeReference.size()];
+            dis.readFully(data);
+            layer.setQuantizedWeights(
+                new QuantizedMatrix(data, scales, shape[0], shape[1], shape[2], shape[3])
+                    .setName(shapeReference.getName()), 
+                inputScale);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    
-
-
     private boolean isFlat(Layer layer) {
         return layer instanceof Dense || layer instanceof Embedding;
     }
@@ -0,0 +1,27 @@
+package jflow.model;
+
+/**
+ * Multiplies the learning rate by a factor every fixed number of steps.
+ */
+public class StepDecay extends Scheduler {
+    private long stepSize;
+    private double factor;
+
+    /**
+     * @param stepSize                  The number of steps between decays.
+     * @param factor                    The factor to multiply the learning rate by at each decay.
+     */
+    protected StepDecay(long stepSize, double factor) {
+        super("epoch");
+        if (stepSize < 1) {
+            throw new IllegalArgumentException("stepSize must be at least 1.");
+        }
+        this.stepSize = stepSize;
+        this.factor = factor;
+    }
+
+    @Override
+    protected double learningRate(long step, double baseLearningRate) {
+        return baseLearningRate * Math.pow(factor, step / stepSize);
+    }
+}
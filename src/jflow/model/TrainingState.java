@@ -0,0 +1,153 @@
+package jflow.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jflow.data.RandomStream;
+
+/**
+ * The progress of a training run beyond its weights: the next epoch and batch,
+ * the running loss and accuracy of the epoch, the metrics tracked across epochs,
+ * the schedule and the state of random number streams. <p>
+ * Saved alongside the weights in a checkpoint file, so a run can resume mid-epoch.
+ */
+final class TrainingState {
+    static final String PREFIX = "state/";
+    private static final String PROGRESS = PREFIX + "progress";
+    private static final String METRICS = PREFIX + "metrics";
+    private static final String OPTIMIZER = PREFIX + "optimizer";
+    private static final String SCHEDULER = PREFIX + "scheduler";
+    private static final String SCHEDULER_STEPS = PREFIX + "scheduler_steps";
+    private static final String EMA_STEPS = PREFIX + "ema_steps";
+    private static final String RANDOM = PREFIX + "random/";
+
+    // The next epoch, starting from 1, and the next batch within it
+    int epoch = 1;
+    int batch = 0;
+
+    // Sums over the completed batches of the epoch
+    double totalLoss = 0;
+    double accuracy = 0;
+
+    // Metrics tracked across epochs for reports and checkpoints
+    double prevTrainAccuracy = 0;
+    double bestTrainAccuracy = 0;
+    double bestTrainLoss = Double.POSITIVE_INFINITY;
+    double prevValAccuracy = 0;
+    double bestValAccuracy = 0;
+    double prevValLoss = Double.POSITIVE_INFINITY;
+    double bestValLoss = Double.POSITIVE_INFINITY;
+
+    // Optimizer, scheduler and moving average state, captured when saving
+    double learningRate = Double.NaN;
+    double momentum = -1;
+    long schedulerSteps = -1;
+    double[] schedulerState;
+    long emaSteps = -1;
+
+    // Seed and position of each random stream, by name
+    final LinkedHashMap<String, long[]> randomStates = new LinkedHashMap<>();
+
+    /**
+     * Move to the start of an epoch.
+     */
+    void startEpoch(int epoch) {
+        this.epoch = epoch;
+        this.batch = 0;
+        this.totalLoss = 0;
+        this.accuracy = 0;
+    }
+
+    /**
+     * Record the state of a random stream.
+     */
+    void captureRandom(String name, RandomStream stream) {
+        randomStates.put(name, new long[]{stream.getSeed(), stream.getPosition()});
+    }
+
+    /**
+     * Restore a random stream, if its state was saved.
+     * @return whether the stream was restored.
+     */
+    boolean restoreRandom(String name, RandomStream stream) {
+        long[] state = randomStates.get(name);
+        if (state == null) {
+            return false;
+        }
+        stream.setState(state[0], state[1]);
+        return true;
+    }
+
+    /**
+     * The tensors holding this state.
+     */
+    List<CheckpointFile.Tensor> tensors() {
+        ArrayList<CheckpointFile.Tensor> tensors = new ArrayList<>();
+        tensors.add(CheckpointFile.Tensor.ofLongs(PROGRESS, new long[]{epoch, batch}));
+        tensors.add(CheckpointFile.Tensor.ofDoubles(METRICS, new double[]{
+            totalLoss, accuracy,
+            prevTrainAccuracy, bestTrainAccuracy, bestTrainLoss,
+            prevValAccuracy, bestValAccuracy, prevValLoss, bestValLoss
+        }));
+        tensors.add(CheckpointFile.Tensor.ofDoubles(OPTIMIZER, new double[]{learningRate, momentum}));
+        if (schedulerSteps >= 0) {
+            tensors.add(CheckpointFile.Tensor.ofLong(SCHEDULER_STEPS, schedulerSteps));
+            tensors.add(CheckpointFile.Tensor.ofDoubles(SCHEDULER, schedulerState));
+        }
+        if (emaSteps >= 0) {
+            tensors.add(CheckpointFile.Tensor.ofLong(EMA_STEPS, emaSteps));
+        }
+        for (Map.Entry<String, long[]> entry : randomStates.entrySet()) {
+            tensors.add(CheckpointFile.Tensor.ofLongs(RANDOM + entry.getKey(), entry.getValue()));
+        }
+        return tensors;
+    }
+
+    /**
+     * Whether a checkpoint holds a training state.
+     */
+    static boolean isIn(CheckpointFile checkpoint) {
+        return checkpoint.contains(PROGRESS);
+    }
+
+    /**
+     * Read a training state from a checkpoint.
+     */
+    static TrainingState read(CheckpointFile checkpoint) throws IOException {
+        TrainingState state = new TrainingState();
+        long[] progress = checkpoint.readLongs(PROGRESS);
+        state.epoch = (int)progress[0];
+        state.batch = (int)progress[1];
+
+        double[] metrics = checkpoint.readDoubles(METRICS);
+        state.totalLoss = metrics[0];
+        state.accuracy = metrics[1];
+        state.prevTrainAccuracy = metrics[2];
+        state.bestTrainAccuracy = metrics[3];
+        state.bestTrainLoss = metrics[4];
+        state.prevValAccuracy = metrics[5];
+        state.bestValAccuracy = metrics[6];
+        state.prevValLoss = metrics[7];
+        state.bestValLoss = metrics[8];
+
+        double[] optimizer = checkpoint.readDoubles(OPTIMIZER);
+        state.learningRate = optimizer[0];
+        state.momentum = optimizer[1];
+        if (checkpoint.contains(SCHEDULER_STEPS)) {
+            state.schedulerSteps = checkpoint.readLong(SCHEDULER_STEPS);
+            state.schedulerState = checkpoint.readDoubles(SCHEDULER);
+        }
+        if (checkpoint.contains(EMA_STEPS)) {
+            state.emaSteps = checkpoint.readLong(EMA_STEPS);
+        }
+        for (String name : checkpoint.names()) {
+            if (name.startsWith(RANDOM)) {
+                state.randomStates.put(name.substring(RANDOM.length()), checkpoint.readLongs(name));
+            }
+        }
+        return state;
+    }
+}
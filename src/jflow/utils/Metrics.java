@@ -1,5 +1,8 @@
 package jflow.utils;
 
+import jflow.data.IntTensor;
+import jflow.data.JMatrix;
+
 /**
  * A compilation of evaluation functions and more.
  */
@@ -20,6 +23,29 @@ public class Metrics {
         return sum / predictions.length;
     }
 
+    /**
+     * Get the mean cross-entropy loss of softmax probabilities against sparse class labels. <p>
+     * No one-hot targets are materialized.
+     * @param probabilities             Softmax output in the shape (numClasses, N), as a Softmax after Dense produces.
+     * @param labels                    One class label per sample.
+     * @return                          The mean loss over the N samples.
+     */
+    public static double sparseCrossEntropy(JMatrix probabilities, IntTensor labels) {
+        double epsilon = 1e-12;
+        int numSamples = labels.size();
+        if (probabilities.size() != probabilities.length() * numSamples) {
+            throw new IllegalArgumentException(
+                "Expected probabilities for " + numSamples + " samples. Got shape: " + 
+                probabilities.shapeAsString() + "."
+            );
+        }
+        double totalLoss = 0;
+        for (int i = 0; i < numSamples; i++) {
+            totalLoss += -Math.log(probabilities.get(labels.get(i) * numSamples + i) + epsilon);
+        }
+        return totalLoss / numSamples;
+    }
+
     /**
      * Display a confusion matrix in a new JFrame
      * @param predictions               The predicted class labels